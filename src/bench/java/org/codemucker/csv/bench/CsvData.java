@@ -0,0 +1,103 @@
+package org.codemucker.csv.bench;
+
+import java.util.Random;
+
+/**
+ * Generates repeatable synthetic csv data for the benchmarks
+ */
+public class CsvData {
+
+	private static final String CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+	private final int numRecords;
+	private final int numFields;
+	private final int fieldWidth;
+	private final double quoteDensity;
+	private final String lineEnding;
+
+	/**
+	 * @param fieldWidth
+	 *            average number of chars per field
+	 * @param quoteDensity
+	 *            fraction of fields which need quoting, of which half contain
+	 *            an escaped quote or newline
+	 * @param lineEnding
+	 *            "LF" or "CRLF"
+	 */
+	public CsvData(int numRecords, int numFields, int fieldWidth, double quoteDensity, String lineEnding) {
+		this.numRecords = numRecords;
+		this.numFields = numFields;
+		this.fieldWidth = fieldWidth;
+		this.quoteDensity = quoteDensity;
+		this.lineEnding = "CRLF".equals(lineEnding) ? "\r\n" : "\n";
+	}
+
+	public String generate() {
+		Random r = new Random(numRecords * 31 + fieldWidth);
+		StringBuilder sb = new StringBuilder(numRecords * numFields * (fieldWidth + 1));
+		for (int rec = 0; rec < numRecords; rec++) {
+			for (int f = 0; f < numFields; f++) {
+				if (f > 0) {
+					sb.append(',');
+				}
+				appendField(sb, r);
+			}
+			sb.append(lineEnding);
+		}
+		return sb.toString();
+	}
+
+	private void appendField(StringBuilder sb, Random r) {
+		int len = 1 + r.nextInt(fieldWidth * 2);
+		boolean quote = r.nextDouble() < quoteDensity;
+		if (quote) {
+			sb.append('"');
+		}
+		for (int i = 0; i < len; i++) {
+			sb.append(CHARS.charAt(r.nextInt(CHARS.length())));
+		}
+		if (quote) {
+			switch (r.nextInt(4)) {
+			case 0:
+				sb.append("\"\"");
+				break;
+			case 1:
+				sb.append('\n');
+				break;
+			default:
+				sb.append(',');
+			}
+			sb.append('"');
+		}
+	}
+
+	public static int[] ints(int num) {
+		Random r = new Random(1);
+		int[] vals = new int[num];
+		for (int i = 0; i < num; i++) {
+			vals[i] = r.nextInt();
+		}
+		return vals;
+	}
+
+	public static long[] longs(int num) {
+		Random r = new Random(2);
+		long[] vals = new long[num];
+		for (int i = 0; i < num; i++) {
+			vals[i] = r.nextLong() >> r.nextInt(64);
+		}
+		return vals;
+	}
+
+	/**
+	 * A mix of short prices and full precision values
+	 */
+	public static double[] doubles(int num) {
+		Random r = new Random(3);
+		double[] vals = new double[num];
+		for (int i = 0; i < num; i++) {
+			vals[i] = i % 2 == 0 ? Math.round(r.nextDouble() * 100000) / 100d : r.nextGaussian() * 1e6;
+		}
+		return vals;
+	}
+}
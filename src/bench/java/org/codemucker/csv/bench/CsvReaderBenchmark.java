@@ -0,0 +1,427 @@
+package org.codemucker.csv.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.codemucker.csv.BlockGzipOutputStream;
+import org.codemucker.csv.ColumnBatch;
+import org.codemucker.csv.ColumnarCsvReader;
+import org.codemucker.csv.CsvBinder;
+import org.codemucker.csv.CsvDialect;
+import org.codemucker.csv.CsvException;
+import org.codemucker.csv.CsvReader;
+import org.codemucker.csv.ICsvRecord;
+import org.codemucker.csv.RecordBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Read throughput, in records per second. Run with '-prof gc' to see the
+ * allocation per record
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvReaderBenchmark {
+
+	private static final int NUM_RECORDS = 10000;
+	private static final int NUM_FIELDS = 10;
+
+	/**
+	 * How the shape of the data changes read speed
+	 */
+	@State(Scope.Benchmark)
+	public static class Shape {
+
+		@Param({ "4", "16", "64" })
+		int fieldWidth;
+
+		@Param({ "0", "0.1", "0.5" })
+		double quoteDensity;
+
+		@Param({ "LF", "CRLF" })
+		String lineEnding;
+
+		String csv;
+
+		@Setup
+		public void setup() {
+			csv = new CsvData(NUM_RECORDS, NUM_FIELDS, fieldWidth, quoteDensity, lineEnding).generate();
+		}
+	}
+
+	/**
+	 * How reader options change read speed on the same data
+	 */
+	@State(Scope.Benchmark)
+	public static class Options {
+
+		/**
+		 * threadSafe and reuseRecord can't both be on
+		 */
+		@Param({ "threadSafe", "notThreadSafe", "reuseRecord", "flyweight" })
+		String mode;
+
+		@Param({ "chars", "bytes" })
+		String input;
+
+		String csv;
+		byte[] bytes;
+
+		@Setup
+		public void setup() {
+			csv = new CsvData(NUM_RECORDS, NUM_FIELDS, 16, 0.1, "LF").generate();
+			bytes = csv.getBytes(StandardCharsets.UTF_8);
+		}
+
+		CsvReader.Builder builder() {
+			CsvReader.Builder builder = CsvReader.with();
+			if ("bytes".equals(input)) {
+				builder.input(bytes, StandardCharsets.UTF_8);
+			} else {
+				builder.input(csv);
+			}
+			switch (mode) {
+			case "threadSafe":
+				return builder.threadSafe(true);
+			case "notThreadSafe":
+				return builder.threadSafe(false);
+			case "reuseRecord":
+				return builder.threadSafe(false).reuseRecord(true);
+			case "flyweight":
+				return builder.threadSafe(false).flyweight(true);
+			default:
+				throw new IllegalArgumentException("unknown mode " + mode);
+			}
+		}
+	}
+
+	/**
+	 * Byte scanning with and without the vector api. Needs running with
+	 * -Djmh.args="-jvmArgsAppend --add-modules=jdk.incubator.vector" on a jdk
+	 * which has it, else both are the same
+	 */
+	@State(Scope.Benchmark)
+	public static class Scan {
+
+		@Param({ "4", "16", "64", "256" })
+		int fieldWidth;
+
+		@Param({ "false", "true" })
+		boolean vectorScan;
+
+		byte[] bytes;
+
+		@Setup
+		public void setup() {
+			bytes = new CsvData(NUM_RECORDS, NUM_FIELDS, fieldWidth, 0.1, "LF").generate().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Quote free bytes, read as normal or with the sniffed dialect, which
+	 * splits records on the quote free fast path
+	 */
+	@State(Scope.Benchmark)
+	public static class Dialect {
+
+		@Param({ "4", "16", "64" })
+		int fieldWidth;
+
+		@Param({ "false", "true" })
+		boolean sniff;
+
+		byte[] bytes;
+		CsvDialect dialect;
+
+		@Setup
+		public void setup() {
+			bytes = new CsvData(NUM_RECORDS, NUM_FIELDS, fieldWidth, 0, "LF").generate().getBytes(StandardCharsets.UTF_8);
+			dialect = CsvDialect.sniff(bytes, 0, Math.min(bytes.length, CsvDialect.DEFAULT_SAMPLE_SIZE));
+		}
+
+		CsvReader.Builder builder() {
+			CsvReader.Builder builder = CsvReader.with().input(bytes, StandardCharsets.UTF_8).threadSafe(false).flyweight(true);
+			return sniff ? builder.dialect(dialect) : builder;
+		}
+	}
+
+	/**
+	 * Wide records, of which only an int and a double field are wanted
+	 */
+	@State(Scope.Benchmark)
+	public static class Projection {
+
+		@Param({ "chars", "bytes" })
+		String input;
+
+		String csv;
+		byte[] bytes;
+
+		@Setup
+		public void setup() {
+			// no quotes, so each line is a record
+			String text = new CsvData(NUM_RECORDS, NUM_FIELDS, 16, 0, "LF").generate();
+			String[] lines = text.split("\n");
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < NUM_RECORDS; i++) {
+				sb.append(i).append(',').append(lines[i]).append(',').append(i * 0.25).append('\n');
+			}
+			csv = sb.toString();
+			bytes = csv.getBytes(StandardCharsets.UTF_8);
+		}
+
+		CsvReader.Builder builder() {
+			if ("bytes".equals(input)) {
+				return CsvReader.with().input(bytes, StandardCharsets.UTF_8);
+			}
+			return CsvReader.with().input(csv);
+		}
+	}
+
+	/**
+	 * Records to map to objects
+	 */
+	@State(Scope.Benchmark)
+	public static class Binding {
+
+		String csv;
+		CsvBinder<Trade> binder;
+
+		@Setup
+		public void setup() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < NUM_RECORDS; i++) {
+				sb.append(i).append(",SYM").append(i % 100).append(',').append(i % 1000).append(',').append(i * 0.25).append('\n');
+			}
+			csv = sb.toString();
+			binder = CsvBinder.with(Trade.class).build();
+		}
+	}
+
+	/**
+	 * Gzipped records, read by stacking a GZIPInputStream under a reader as
+	 * before, or by the reader itself, from plain gzip or from blocks
+	 */
+	@State(Scope.Benchmark)
+	public static class Compressed {
+
+		@Param({ "gzipInputStream", "gzip", "blockGzip" })
+		String compression;
+
+		byte[] bytes;
+
+		@Setup
+		public void setup() throws IOException {
+			byte[] csv = new CsvData(NUM_RECORDS, NUM_FIELDS, 16, 0.1, "LF").generate().getBytes(StandardCharsets.UTF_8);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (OutputStream gzip = "blockGzip".equals(compression) ? new BlockGzipOutputStream(out) : new GZIPOutputStream(out)) {
+				gzip.write(csv);
+			}
+			bytes = out.toByteArray();
+		}
+
+		CsvReader.Builder builder() throws IOException {
+			CsvReader.Builder builder = CsvReader.with().threadSafe(false);
+			if ("gzipInputStream".equals(compression)) {
+				return builder.input(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8));
+			}
+			return builder.input(bytes, StandardCharsets.UTF_8).gzip(true);
+		}
+	}
+
+	public static class Trade {
+		private long id;
+		private String symbol;
+		private int qty;
+		private double price;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+
+		public void setSymbol(String symbol) {
+			this.symbol = symbol;
+		}
+
+		public int getQty() {
+			return qty;
+		}
+
+		public void setQty(int qty) {
+			this.qty = qty;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public void setPrice(double price) {
+			this.price = price;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readRecords(Shape shape, Blackhole bh) throws CsvException {
+		CsvReader r = CsvReader.with().input(shape.csv).threadSafe(false).build();
+		while (r.hasMore()) {
+			bh.consume(r.readNextRecord());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readBatches(Shape shape, Blackhole bh) throws CsvException {
+		CsvReader r = CsvReader.with().input(shape.csv).build();
+		RecordBatch batch = new RecordBatch();
+		while (r.readBatch(batch, 1024) > 0) {
+			for (int i = 0; i < batch.size(); i++) {
+				bh.consume(batch.get(i));
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readRecordsWithOptions(Options options, Blackhole bh) throws CsvException {
+		CsvReader r = options.builder().build();
+		while (r.hasMore()) {
+			bh.consume(r.readNextRecord());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readAllFieldsWithOptions(Options options, Blackhole bh) throws CsvException {
+		CsvReader r = options.builder().build();
+		while (r.hasMore()) {
+			ICsvRecord rec = r.readNextRecord();
+			for (int i = 0; i < rec.getTotalNumFields(); i++) {
+				bh.consume(rec.readChars(i));
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void skipRecordsWithOptions(Options options, Blackhole bh) throws CsvException {
+		CsvReader r = options.builder().build();
+		bh.consume(r.readNextRecord(0, NUM_RECORDS - 1));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readWithDialect(Dialect dialect, Blackhole bh) throws CsvException {
+		CsvReader r = dialect.builder().build();
+		while (r.hasMore()) {
+			bh.consume(r.readNextRecord());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readGzipped(Compressed compressed, Blackhole bh) throws IOException {
+		CsvReader r = compressed.builder().build();
+		while (r.hasMore()) {
+			bh.consume(r.readNextRecord());
+		}
+		r.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void scanBytes(Scan scan, Blackhole bh) throws CsvException {
+		CsvReader r = CsvReader.with().input(scan.bytes, StandardCharsets.UTF_8).threadSafe(false).flyweight(true)
+				.vectorScan(scan.vectorScan).build();
+		while (r.hasMore()) {
+			bh.consume(r.readNextRecord());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readProjectedFromRecords(Projection projection, Blackhole bh) throws CsvException {
+		CsvReader r = projection.builder().threadSafe(false).build();
+		while (r.hasMore()) {
+			ICsvRecord rec = r.readNextRecord();
+			if (rec.getTotalNumFields() > 1) {
+				bh.consume(rec.readInt(0));
+				bh.consume(rec.readDouble(NUM_FIELDS + 1));
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void readProjectedColumns(Projection projection, Blackhole bh) throws CsvException {
+		ColumnarCsvReader r = ColumnarCsvReader.with().settings(projection.builder())
+				.intColumn(0).doubleColumn(NUM_FIELDS + 1).build();
+		ColumnBatch batch = r.newBatch(1024);
+		while (r.readBatch(batch) > 0) {
+			int[] ints = batch.getInts(0);
+			double[] doubles = batch.getDoubles(1);
+			for (int i = 0; i < batch.size(); i++) {
+				bh.consume(ints[i]);
+				bh.consume(doubles[i]);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void bindByHand(Binding binding, Blackhole bh) throws CsvException {
+		CsvReader r = CsvReader.with().input(binding.csv).threadSafe(false).build();
+		while (r.hasMore()) {
+			ICsvRecord rec = r.readNextRecord();
+			if (rec.getTotalNumFields() > 1) {
+				Trade trade = new Trade();
+				trade.setId(rec.readLong(0));
+				trade.setSymbol(rec.readString(1));
+				trade.setQty(rec.readInt(2));
+				trade.setPrice(rec.readDouble(3));
+				bh.consume(trade);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_RECORDS)
+	public void bindWithBinder(Binding binding, Blackhole bh) throws CsvException {
+		CsvReader r = CsvReader.with().input(binding.csv).threadSafe(false).build();
+		while (r.hasMore()) {
+			ICsvRecord rec = r.readNextRecord();
+			if (rec.getTotalNumFields() > 1) {
+				bh.consume(binding.binder.read(rec));
+			}
+		}
+	}
+}
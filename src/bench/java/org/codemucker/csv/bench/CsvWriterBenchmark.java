@@ -0,0 +1,371 @@
+package org.codemucker.csv.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.codemucker.csv.CsvSchema;
+import org.codemucker.csv.CsvWriteException;
+import org.codemucker.csv.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Write throughput per field, for each of the write overloads. Output is
+ * thrown away so only the formatting and escaping is measured
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvWriterBenchmark {
+
+	private static final int NUM_VALUES = 1000;
+	private static final int FIELDS_PER_RECORD = 10;
+	private static final int FIELDS_PER_ROW = 4;
+
+	@Param({ "false", "true" })
+	boolean threadsafe;
+
+	private CsvWriter writer;
+	private NullAppendable out;
+
+	private String[] plainStrings;
+	private String[] quotedStrings;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	private Integer[] boxedInts;
+	private Date[] dates;
+	private Row[] rows;
+	private CsvSchema<Row> schema;
+
+	@Setup
+	public void setup() {
+		out = new NullAppendable();
+		writer = CsvWriter.with().output(out).threadsafe(threadsafe).build();
+
+		plainStrings = new CsvData(1, NUM_VALUES, 16, 0, "LF").generate().trim().split(",");
+		quotedStrings = new String[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++) {
+			quotedStrings[i] = plainStrings[i] + (i % 2 == 0 ? ",\"" : "\n");
+		}
+		ints = CsvData.ints(NUM_VALUES);
+		longs = CsvData.longs(NUM_VALUES);
+		doubles = CsvData.doubles(NUM_VALUES);
+		boxedInts = new Integer[NUM_VALUES];
+		dates = new Date[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++) {
+			boxedInts[i] = ints[i];
+			dates[i] = new Date(Math.abs(longs[i]) % 4000000000000L);
+		}
+		rows = new Row[NUM_VALUES / FIELDS_PER_ROW];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new Row(ints[i], longs[i], doubles[i], plainStrings[i]);
+		}
+		schema = CsvSchema.of(Row.class);
+	}
+
+	private void endRecord(int i) throws CsvWriteException {
+		if (i % FIELDS_PER_RECORD == FIELDS_PER_RECORD - 1) {
+			writer.endRecord();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeString() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(plainStrings[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeEscapedString() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(quotedStrings[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeInt() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(ints[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeBoxedInteger() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(boxedInts[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeLong() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(longs[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeDouble() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(doubles[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeFloat() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write((float) doubles[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeBool() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write((ints[i] & 1) == 0);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeDate() throws CsvWriteException {
+		for (int i = 0; i < NUM_VALUES; i++) {
+			writer.write(dates[i]);
+			endRecord(i);
+		}
+		return out.count;
+	}
+
+	/**
+	 * Numeric rows written as bytes, via an OutputStreamWriter as before, or
+	 * encoded by the writer to a stream or file channel
+	 */
+	@State(Scope.Thread)
+	public static class ByteSink {
+
+		@Param({ "outputStreamWriter", "stream", "channel" })
+		String output;
+
+		CsvWriter writer;
+		FileChannel channel;
+
+		@Setup
+		public void setup() throws IOException {
+			CsvWriter.Builder builder = CsvWriter.with();
+			if ("outputStreamWriter".equals(output)) {
+				builder.output(new OutputStreamWriter(new NullOutputStream(), StandardCharsets.UTF_8));
+			} else if ("stream".equals(output)) {
+				builder.output(new NullOutputStream(), StandardCharsets.UTF_8);
+			} else {
+				channel = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+				builder.output(channel, StandardCharsets.UTF_8);
+			}
+			writer = builder.build();
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public void writeRowsAsBytes(ByteSink sink) throws CsvWriteException {
+		sink.writer.writeRows(Arrays.asList(rows), schema);
+		sink.writer.flush();
+	}
+
+	/**
+	 * Rows compressed as they are written, through a GZIPOutputStream on the
+	 * writing thread, or in blocks compressed on a thread per core
+	 */
+	@State(Scope.Thread)
+	public static class GzipSink {
+
+		@Param({ "gzipOutputStream", "blockGzip" })
+		String compression;
+
+		CsvWriter writer;
+
+		@Setup
+		public void setup() throws IOException {
+			CsvWriter.Builder builder = CsvWriter.with();
+			if ("gzipOutputStream".equals(compression)) {
+				builder.output(new GZIPOutputStream(new NullOutputStream(), 64 * 1024), StandardCharsets.UTF_8);
+			} else {
+				builder.output(new NullOutputStream(), StandardCharsets.UTF_8).gzip(true);
+			}
+			writer = builder.build();
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			writer.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public void writeRowsGzipped(GzipSink sink) throws CsvWriteException {
+		// not flushed, which would end the gzip block early
+		sink.writer.writeRows(Arrays.asList(rows), schema);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeRowFieldByField() throws CsvWriteException {
+		for (Row row : rows) {
+			writer.lock();
+			try {
+				writer.beginRecord();
+				writer.write(row.id);
+				writer.write(row.time);
+				writer.write(row.price);
+				writer.write(row.name);
+				writer.endRecord();
+			} finally {
+				writer.unlock();
+			}
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeRowWithSchema() throws CsvWriteException {
+		for (Row row : rows) {
+			writer.writeRow(row, schema);
+		}
+		return out.count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long writeRowsWithSchema() throws CsvWriteException {
+		writer.writeRows(Arrays.asList(rows), schema);
+		return out.count;
+	}
+
+	public static class Row {
+		private final int id;
+		private final long time;
+		private final double price;
+		private final String name;
+
+		Row(int id, long time, double price, String name) {
+			this.id = id;
+			this.time = time;
+			this.price = price;
+			this.name = name;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Discards all bytes written
+	 */
+	static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+			// discard
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// discard
+		}
+	}
+
+	/**
+	 * Discards everything, only counting chars so the work can't be optimised
+	 * away
+	 */
+	static class NullAppendable implements Appendable {
+
+		long count;
+
+		@Override
+		public Appendable append(CharSequence csq) {
+			count += csq.length();
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			count += end - start;
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) {
+			count++;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package org.codemucker.csv.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codemucker.csv.Serialiser;
+import org.codemucker.csv.encode.DefaultSerialiser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of parsing and formatting single values, per value. The range
+ * versions read from one shared char buffer like a flyweight record does
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerialiserBenchmark {
+
+	private static final int NUM_VALUES = 1000;
+
+	private final Serialiser serialiser = DefaultSerialiser.get();
+
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+
+	private String[] intStrings;
+	private String[] longStrings;
+	private String[] doubleStrings;
+
+	private char[] intChars;
+	private int[] intOffsets;
+	private char[] doubleChars;
+	private int[] doubleOffsets;
+
+	private StringBuilder out;
+
+	@Setup
+	public void setup() {
+		ints = CsvData.ints(NUM_VALUES);
+		longs = CsvData.longs(NUM_VALUES);
+		doubles = CsvData.doubles(NUM_VALUES);
+
+		intStrings = new String[NUM_VALUES];
+		longStrings = new String[NUM_VALUES];
+		doubleStrings = new String[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++) {
+			intStrings[i] = Integer.toString(ints[i]);
+			longStrings[i] = Long.toString(longs[i]);
+			doubleStrings[i] = Double.toString(doubles[i]);
+		}
+		intOffsets = new int[NUM_VALUES + 1];
+		intChars = concat(intStrings, intOffsets);
+		doubleOffsets = new int[NUM_VALUES + 1];
+		doubleChars = concat(doubleStrings, doubleOffsets);
+
+		out = new StringBuilder(NUM_VALUES * 32);
+	}
+
+	private static char[] concat(String[] vals, int[] offsets) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < vals.length; i++) {
+			offsets[i] = sb.length();
+			sb.append(vals[i]);
+		}
+		offsets[vals.length] = sb.length();
+		return sb.toString().toCharArray();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long parseIntString() {
+		long sum = 0;
+		for (String s : intStrings) {
+			sum += serialiser.toInt(s);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long parseIntRange() {
+		long sum = 0;
+		for (int i = 0; i < NUM_VALUES; i++) {
+			sum += serialiser.toInt(intChars, intOffsets[i], intOffsets[i + 1]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public long parseLongString() {
+		long sum = 0;
+		for (String s : longStrings) {
+			sum += serialiser.toLong(s);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public double parseDoubleString() {
+		double sum = 0;
+		for (String s : doubleStrings) {
+			sum += serialiser.toDouble(s);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public double parseDoubleRange() {
+		double sum = 0;
+		for (int i = 0; i < NUM_VALUES; i++) {
+			sum += serialiser.toDouble(doubleChars, doubleOffsets[i], doubleOffsets[i + 1]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Baseline to compare the serialiser's double parsing against
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public double parseDoubleJdk() {
+		double sum = 0;
+		for (String s : doubleStrings) {
+			sum += Double.parseDouble(s);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public int formatInt() throws IOException {
+		out.setLength(0);
+		for (int i : ints) {
+			serialiser.toString(i, out);
+		}
+		return out.length();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public int formatLong() throws IOException {
+		out.setLength(0);
+		for (long l : longs) {
+			serialiser.toString(l, out);
+		}
+		return out.length();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_VALUES)
+	public int formatDouble() throws IOException {
+		out.setLength(0);
+		for (double d : doubles) {
+			serialiser.toString(d, out);
+		}
+		return out.length();
+	}
+}
@@ -38,12 +38,37 @@ public abstract class AbstractSerialiser implements Serialiser {
 
 	@Override
 	public void toString(float f, Appendable appender)  throws IOException {
-		appender.append(Float.toString(f));
+		char[] chars = new char[MAX_NUMBER_CHARS];
+		appender.append(new String(chars, 0, toChars(f, chars, 0)));
 	}
 
 	@Override
 	public void toString(double d, Appendable appender)  throws IOException {
-		appender.append(Double.toString(d));
+		char[] chars = new char[MAX_NUMBER_CHARS];
+		appender.append(new String(chars, 0, toChars(d, chars, 0)));
+	}
+
+	// if overriding the toString versions of these, override these too. The
+	// CsvWriter uses these
+
+	@Override
+	public int toChars(int i, char[] buf, int pos) {
+		return NumberFormatter.formatInt(i, buf, pos);
+	}
+
+	@Override
+	public int toChars(long l, char[] buf, int pos) {
+		return NumberFormatter.formatLong(l, buf, pos);
+	}
+
+	@Override
+	public int toChars(float f, char[] buf, int pos) {
+		return NumberFormatter.formatFloat(f, buf, pos);
+	}
+
+	@Override
+	public int toChars(double d, char[] buf, int pos) {
+		return NumberFormatter.formatDouble(d, buf, pos);
 	}
 
 	@Override
@@ -76,7 +101,7 @@ public abstract class AbstractSerialiser implements Serialiser {
 	@Override
 	public double toDouble(String s)  {
 		try {
-			return Double.parseDouble(s);
+			return NumberParser.parseDouble(s, 0, s.length());
 		} catch (NumberFormatException e) {
 			throw wrap(s, "double", e);
 		}
@@ -85,7 +110,7 @@ public abstract class AbstractSerialiser implements Serialiser {
 	@Override
 	public float toFloat(String s)  {
 		try {
-			return Float.parseFloat(s);
+			return NumberParser.parseFloat(s, 0, s.length());
 		} catch (NumberFormatException e) {
 			throw wrap(s, "float", e);
 		}
@@ -118,7 +143,7 @@ public abstract class AbstractSerialiser implements Serialiser {
 		}
 		for(int i = 0; i < FALSES.length;i++){
 			if(FALSES[i].equals(s)){
-				return true;
+				return false;
 			}
 		}
 		throw new IllegalArgumentException("expect one of " + Arrays.toString(TRUES) + " or " + Arrays.toString(FALSES) + ". Instead got " + s);
@@ -155,6 +180,239 @@ public abstract class AbstractSerialiser implements Serialiser {
 	private IllegalArgumentException wrap(String s, String type, Exception e){
 		return new IllegalArgumentException("Error parsing '" + s + "' as " + type,e);
 	}
-	
 
+	// the CharSequence versions hand strings over to the string versions, so
+	// subclasses which override those still get called. Anything else is
+	// parsed in place
+
+	@Override
+	public int toInt(CharSequence s) {
+		if (s instanceof String) {
+			return toInt((String) s);
+		}
+		return toInt(s, 0, s.length());
+	}
+
+	@Override
+	public long toLong(CharSequence s) {
+		if (s instanceof String) {
+			return toLong((String) s);
+		}
+		return toLong(s, 0, s.length());
+	}
+
+	@Override
+	public short toShort(CharSequence s) {
+		if (s instanceof String) {
+			return toShort((String) s);
+		}
+		return (short) parseLong(s, 0, s.length(), Short.MIN_VALUE, Short.MAX_VALUE, "short");
+	}
+
+	@Override
+	public byte toByte(CharSequence s) {
+		if (s instanceof String) {
+			return toByte((String) s);
+		}
+		return (byte) parseLong(s, 0, s.length(), Byte.MIN_VALUE, Byte.MAX_VALUE, "byte");
+	}
+
+	@Override
+	public double toDouble(CharSequence s) {
+		if (s instanceof String) {
+			return toDouble((String) s);
+		}
+		return toDouble(s, 0, s.length());
+	}
+
+	@Override
+	public float toFloat(CharSequence s) {
+		if (s instanceof String) {
+			return toFloat((String) s);
+		}
+		return toFloat(s, 0, s.length());
+	}
+
+	@Override
+	public boolean toBool(CharSequence s) {
+		if (s instanceof String) {
+			return toBool((String) s);
+		}
+		return toBool(s, 0, s.length());
+	}
+
+	@Override
+	public char toChar(CharSequence s) {
+		if (s instanceof String) {
+			return toChar((String) s);
+		}
+		if(s.length() == 1){
+			return s.charAt(0);
+		}
+		return toChar(s.toString());
+	}
+
+	@Override
+	public Date toDate(CharSequence s) {
+		if (s instanceof String) {
+			return toDate((String) s);
+		}
+		return toDate(s, 0, s.length());
+	}
+
+	@Override
+	public DateTime toDateTime(CharSequence s) {
+		if (s instanceof String) {
+			return toDateTime((String) s);
+		}
+		return toDateTime(s, 0, s.length());
+	}
+
+	@Override
+	public int toInt(CharSequence s, int start, int end) {
+		return (int) parseLong(s, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE, "int");
+	}
+
+	@Override
+	public long toLong(CharSequence s, int start, int end) {
+		return parseLong(s, start, end, Long.MIN_VALUE, Long.MAX_VALUE, "long");
+	}
+
+	@Override
+	public double toDouble(CharSequence s, int start, int end) {
+		try {
+			return NumberParser.parseDouble(s, start, end);
+		} catch (NumberFormatException e) {
+			throw wrap(s.subSequence(start, end).toString(), "double", e);
+		}
+	}
+
+	@Override
+	public float toFloat(CharSequence s, int start, int end) {
+		try {
+			return NumberParser.parseFloat(s, start, end);
+		} catch (NumberFormatException e) {
+			throw wrap(s.subSequence(start, end).toString(), "float", e);
+		}
+	}
+
+	@Override
+	public boolean toBool(CharSequence s, int start, int end) {
+		for(int i = 0; i < TRUES.length;i++){
+			if(contentEquals(TRUES[i], s, start, end)){
+				return true;
+			}
+		}
+		for(int i = 0; i < FALSES.length;i++){
+			if(contentEquals(FALSES[i], s, start, end)){
+				return false;
+			}
+		}
+		return toBool(s.subSequence(start, end).toString());
+	}
+
+	@Override
+	public Date toDate(CharSequence s, int start, int end) {
+		return new Date(parseLong(s, start, end, Long.MIN_VALUE, Long.MAX_VALUE, "date"));
+	}
+
+	@Override
+	public DateTime toDateTime(CharSequence s, int start, int end) {
+		return new DateTime(parseLong(s, start, end, Long.MIN_VALUE, Long.MAX_VALUE, "datetime"));
+	}
+
+	@Override
+	public int toInt(char[] chars, int start, int end) {
+		return (int) parseLong(chars, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE, "int");
+	}
+
+	@Override
+	public long toLong(char[] chars, int start, int end) {
+		return parseLong(chars, start, end, Long.MIN_VALUE, Long.MAX_VALUE, "long");
+	}
+
+	@Override
+	public double toDouble(char[] chars, int start, int end) {
+		try {
+			return NumberParser.parseDouble(chars, start, end);
+		} catch (NumberFormatException e) {
+			throw wrap(new String(chars, start, end - start), "double", e);
+		}
+	}
+
+	@Override
+	public float toFloat(char[] chars, int start, int end) {
+		try {
+			return NumberParser.parseFloat(chars, start, end);
+		} catch (NumberFormatException e) {
+			throw wrap(new String(chars, start, end - start), "float", e);
+		}
+	}
+
+	@Override
+	public boolean toBool(char[] chars, int start, int end) {
+		for(int i = 0; i < TRUES.length;i++){
+			if(contentEquals(TRUES[i], chars, start, end)){
+				return true;
+			}
+		}
+		for(int i = 0; i < FALSES.length;i++){
+			if(contentEquals(FALSES[i], chars, start, end)){
+				return false;
+			}
+		}
+		return toBool(new String(chars, start, end - start));
+	}
+
+	@Override
+	public Date toDate(char[] chars, int start, int end) {
+		return new Date(parseLong(chars, start, end, Long.MIN_VALUE, Long.MAX_VALUE, "date"));
+	}
+
+	@Override
+	public DateTime toDateTime(char[] chars, int start, int end) {
+		return new DateTime(parseLong(chars, start, end, Long.MIN_VALUE, Long.MAX_VALUE, "datetime"));
+	}
+
+	private static boolean contentEquals(String expect, CharSequence s, int start, int end) {
+		int len = expect.length();
+		if (end - start != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (expect.charAt(i) != s.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean contentEquals(String expect, char[] chars, int start, int end) {
+		int len = expect.length();
+		if (end - start != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (expect.charAt(i) != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long parseLong(CharSequence s, int start, int end, long min, long max, String type) {
+		try {
+			return NumberParser.parseLong(s, start, end, min, max);
+		} catch (NumberFormatException e) {
+			throw wrap(s.subSequence(start, end).toString(), type, e);
+		}
+	}
+
+	private long parseLong(char[] chars, int start, int end, long min, long max, String type) {
+		try {
+			return NumberParser.parseLong(chars, start, end, min, max);
+		} catch (NumberFormatException e) {
+			throw wrap(new String(chars, start, end - start), type, e);
+		}
+	}
 }
@@ -0,0 +1,341 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Parses records from a file only as fast as they are asked for, following
+ * the reactive streams rules for demand. Nothing is read until records are
+ * requested, and then only enough to satisfy the demand, so memory is bounded
+ * by the demand rather than by the size of the input.
+ *
+ * <p>
+ * The file is read with non blocking reads. As blocks arrive they are run
+ * through a {@link CsvBoundaryScanner} to count the records they complete, and
+ * the parser is only ever asked for a record once its end has been read, so
+ * it never has to wait on the input. Records are parsed and handed over on the
+ * executor, up to a batch at a time before giving the thread back.
+ * </p>
+ *
+ * <p>
+ * Calls to the sink are never concurrent. {@link #request(long)} and
+ * {@link #cancel()} can be called from any thread, including from within the
+ * sink
+ * </p>
+ */
+@ThreadSafe
+final class AsyncRecordSource {
+
+	/**
+	 * Receives the records, from one thread at a time
+	 */
+	interface Sink {
+		void onNext(ICsvRecord record);
+
+		void onError(Throwable error);
+
+		void onComplete();
+	}
+
+	private final AsynchronousFileChannel channel;
+	private final CsvBoundaryScanner scanner;
+	private final ByteCsvParser parser;
+	private final Serialiser serialiser;
+	private final Executor executor;
+	private final int batchSize;
+	private final int readBufSize;
+	private final Sink sink;
+
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	private final AtomicLong demand = new AtomicLong();
+	/**
+	 * Number of times a drain has been asked for. Whoever takes it from 0
+	 * drains until it is back to 0
+	 */
+	private final AtomicInteger wip = new AtomicInteger();
+	private volatile boolean cancelled;
+	/**
+	 * Set if asked for a non positive number of records
+	 */
+	private volatile Throwable requestError;
+
+	/**
+	 * Blocks read but not yet handed to the parser, and blocks the parser has
+	 * finished with
+	 */
+	private final Queue<ByteBuffer> readBlocks = new ConcurrentLinkedQueue<>();
+	private final Queue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<>();
+	/**
+	 * Number of records whose end has been read but which haven't been parsed
+	 */
+	private final AtomicInteger completeRecords = new AtomicInteger();
+	private volatile boolean reading;
+	private volatile boolean eof;
+	private volatile Throwable readError;
+
+	/**
+	 * Only touched by the read completion, and reads are one at a time
+	 */
+	private long readPos;
+	private int scanState = CsvBoundaryScanner.RECORD_START;
+
+	/**
+	 * Only touched within the drain
+	 */
+	private boolean done;
+
+	/**
+	 * @param settings
+	 *            the charset, separator, escape and buffer settings. The
+	 *            file is read a read buffer size at a time. A header can't be
+	 *            read
+	 */
+	AsyncRecordSource(AsynchronousFileChannel channel, CsvReader.Builder settings,
+			Executor executor, int batchSize, Sink sink) {
+		Preconditions.checkArgument(!settings.hasHeader(), "can't read a header or require columns asynchronously");
+		this.channel = channel;
+		this.scanner = settings.buildBoundaryScanner();
+		this.parser = settings.buildByteParser(new ReadBlocksInput(), settings.getCharset());
+		this.serialiser = settings.getSerialiser();
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.readBufSize = settings.getReadBufSize();
+		this.sink = sink;
+	}
+
+	/**
+	 * Ask for up to the given number more records
+	 */
+	void request(long n) {
+		if (n <= 0) {
+			requestError = new IllegalArgumentException("Expect a positive number of records to be requested, but was " + n);
+		} else {
+			long current;
+			long next;
+			do {
+				current = demand.get();
+				next = current + n;
+				if (next < 0) {
+					// effectively unbounded
+					next = Long.MAX_VALUE;
+				}
+			} while (!demand.compareAndSet(current, next));
+		}
+		schedule();
+	}
+
+	/**
+	 * Stop sending records and close the file. Records already being handed
+	 * over may still arrive
+	 */
+	void cancel() {
+		cancelled = true;
+		schedule();
+	}
+
+	private void schedule() {
+		if (wip.getAndIncrement() == 0) {
+			executor.execute(drainTask);
+		}
+	}
+
+	private void drain() {
+		int missed = 1;
+		while (true) {
+			if (!done && emit()) {
+				// more to send, give the thread back and carry on from a new
+				// task, which takes over the outstanding drain requests
+				executor.execute(drainTask);
+				return;
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Hand over records while there is demand, up to a batch
+	 *
+	 * @return true if a whole batch was sent and more could be sent straight
+	 *         away
+	 */
+	private boolean emit() {
+		if (cancelled) {
+			finish(null, false);
+			return false;
+		}
+		if (requestError != null) {
+			finish(requestError, true);
+			return false;
+		}
+		long requested = demand.get();
+		long emitted = 0;
+		while (true) {
+			if (cancelled) {
+				finish(null, false);
+				return false;
+			}
+			boolean ready = completeRecords.get() > 0 || (eof && parser.hasMore);
+			if (!ready) {
+				if (readError != null) {
+					finish(readError, true);
+					return false;
+				}
+				if (eof) {
+					finish(null, true);
+					return false;
+				}
+				if (emitted < requested && !reading) {
+					startRead();
+				}
+				break;
+			}
+			if (emitted == requested || emitted == batchSize) {
+				break;
+			}
+			ICsvRecord record;
+			try {
+				record = parseNext();
+			} catch (IOException | RuntimeException e) {
+				finish(e, true);
+				return false;
+			}
+			sink.onNext(record);
+			emitted++;
+		}
+		if (requested != Long.MAX_VALUE && emitted > 0) {
+			requested = demand.addAndGet(-emitted);
+		}
+		return emitted == batchSize && requested > 0;
+	}
+
+	private ICsvRecord parseNext() throws CsvException {
+		if (completeRecords.get() > 0) {
+			completeRecords.decrementAndGet();
+		}
+		try {
+			parser.parseRecord(0);
+			ICsvRecord record = parser.newRecord(null, serialiser);
+			parser.fillRecord(record, false);
+			return record;
+		} finally {
+			parser.resetBuffers();
+		}
+	}
+
+	private void startRead() {
+		reading = true;
+		ByteBuffer block = freeBlocks.poll();
+		if (block == null) {
+			block = ByteBuffer.allocate(readBufSize);
+		}
+		block.clear();
+		channel.read(block, readPos, block, new CompletionHandler<Integer, ByteBuffer>() {
+			@Override
+			public void completed(Integer numRead, ByteBuffer block) {
+				if (numRead == -1) {
+					eof = true;
+				} else {
+					block.flip();
+					int numRecords = countRecordEnds(block);
+					readPos += numRead;
+					// the block has to be there before the parser is told
+					readBlocks.add(block);
+					completeRecords.addAndGet(numRecords);
+				}
+				reading = false;
+				schedule();
+			}
+
+			@Override
+			public void failed(Throwable e, ByteBuffer block) {
+				readError = e;
+				reading = false;
+				schedule();
+			}
+		});
+	}
+
+	private int countRecordEnds(ByteBuffer block) {
+		int count = 0;
+		int pos = block.position();
+		int end = block.limit();
+		int state = scanState;
+		while (pos < end) {
+			int idx = scanner.findRecordStart(block, pos, end, state);
+			if (idx == -1) {
+				state = scanner.scan(block, pos, end, state);
+				break;
+			}
+			count++;
+			pos = idx;
+			state = CsvBoundaryScanner.RECORD_START;
+		}
+		scanState = state;
+		return count;
+	}
+
+	private void finish(Throwable error, boolean signal) {
+		done = true;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nothing more to read anyway
+		}
+		readBlocks.clear();
+		freeBlocks.clear();
+		if (!signal) {
+			return;
+		}
+		if (error != null) {
+			sink.onError(error);
+		} else {
+			sink.onComplete();
+		}
+	}
+
+	/**
+	 * Hands the blocks read so far to the parser, recycling each once the
+	 * parser has moved past it
+	 */
+	private class ReadBlocksInput implements ByteInput {
+
+		private ByteBuffer current;
+
+		@Override
+		public ByteBuffer nextBlock() throws IOException {
+			if (current != null) {
+				freeBlocks.add(current);
+			}
+			current = readBlocks.poll();
+			if (current == null && !eof) {
+				throw new IOException("Parser ran past the input read so far at byte " + readPos);
+			}
+			return current;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
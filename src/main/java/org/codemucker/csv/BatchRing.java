@@ -0,0 +1,117 @@
+package org.codemucker.csv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded lock-free ring for handing items between any number of producers
+ * and consumers. Each slot has a sequence number saying whether it's free to
+ * write to or ready to read for the current lap, so producers and consumers
+ * only ever compete on claiming a position with a single CAS, never on a lock.
+ *
+ * <p>
+ * Non blocking, offer and poll return straight away if the ring is full or
+ * empty, waiting is up to the caller.
+ * </p>
+ */
+@ThreadSafe
+final class BatchRing<T> {
+
+	private final Object[] items;
+	/**
+	 * For the slot at position p: p when free to write, p + 1 once written,
+	 * then p + capacity once read, so free for the next lap
+	 */
+	private final AtomicLongArray sequences;
+	private final int mask;
+
+	/**
+	 * Next position to write to
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * Next position to read from
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * Number of times a claim lost the race to another thread
+	 */
+	private final LongAdder contended = new LongAdder();
+
+	/**
+	 * @param capacity
+	 *            a power of two
+	 */
+	BatchRing(int capacity) {
+		Preconditions.checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1,
+				"expect capacity to be a power of two but was %s", capacity);
+		this.items = new Object[capacity];
+		this.sequences = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * @return false if the ring is full
+	 */
+	boolean offer(T item) {
+		long pos = tail.get();
+		while (true) {
+			int idx = (int) (pos & mask);
+			long diff = sequences.get(idx) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					items[idx] = item;
+					sequences.lazySet(idx, pos + 1);
+					return true;
+				}
+				contended.increment();
+				pos = tail.get();
+			} else if (diff < 0) {
+				// a lap behind, still being read
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * @return the next item, or null if the ring is empty
+	 */
+	@SuppressWarnings("unchecked")
+	T poll() {
+		long pos = head.get();
+		while (true) {
+			int idx = (int) (pos & mask);
+			long diff = sequences.get(idx) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					T item = (T) items[idx];
+					items[idx] = null;
+					sequences.lazySet(idx, pos + mask + 1);
+					return item;
+				}
+				contended.increment();
+				pos = head.get();
+			} else if (diff < 0) {
+				// not written yet
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	long getContendedCount() {
+		return contended.sum();
+	}
+}
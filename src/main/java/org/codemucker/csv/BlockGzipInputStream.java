@@ -0,0 +1,415 @@
+package org.codemucker.csv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads gzip, decompressing in parallel when the input is made of BGZF
+ * blocks, as written by {@link BlockGzipOutputStream} or bgzip. Any other
+ * gzip is read as normal, one block after another.
+ *
+ * <p>
+ * Block sizes are read from the block headers, so the compressed blocks can
+ * be read ahead and handed to a pool of threads to decompress, while the
+ * caller works through the blocks already done, in order.
+ * </p>
+ *
+ * <p>
+ * Nothing is read until the first read, and the threads are only started
+ * then if the input is in blocks. Close to stop them.
+ * </p>
+ */
+@NotThreadSafe
+public class BlockGzipInputStream extends InputStream {
+
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final int FHCRC = 2;
+	/**
+	 * Up to and including the length of the extra field
+	 */
+	private static final int FIXED_HEADER_SIZE = 12;
+	private static final byte[] EMPTY = new byte[0];
+
+	/**
+	 * The file to open on the first read, if not given the input
+	 */
+	private final Path file;
+	private final int numThreads;
+	private InputStream source;
+	private PushbackInputStream in;
+	/**
+	 * Set when not reading blocks
+	 */
+	private InputStream plain;
+	private ExecutorService executor;
+	private int maxPending;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+	/**
+	 * Set once closed, so tasks still running end their inflaters rather than
+	 * pool them
+	 */
+	private volatile boolean stopped;
+
+	private byte[] current = EMPTY;
+	private int pos;
+	private boolean started;
+	private boolean eof;
+	private boolean closed;
+
+	/**
+	 * Decompress on a thread per core
+	 */
+	public BlockGzipInputStream(InputStream in) {
+		this(in, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param numThreads
+	 *            threads to decompress blocks on
+	 */
+	public BlockGzipInputStream(InputStream in, int numThreads) {
+		this(Preconditions.checkNotNull(in, "expect input"), null, numThreads);
+	}
+
+	/**
+	 * Read the file, opening it on the first read
+	 */
+	BlockGzipInputStream(Path file, int numThreads) {
+		this(null, Preconditions.checkNotNull(file, "expect file"), numThreads);
+	}
+
+	private BlockGzipInputStream(InputStream source, Path file, int numThreads) {
+		Preconditions.checkArgument(numThreads > 0, "expect threads > 0");
+		this.source = source;
+		this.file = file;
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * If the input is in blocks, which are decompressed in parallel. Reads
+	 * the first block header if not read yet
+	 */
+	public boolean isParallel() throws IOException {
+		start();
+		return plain == null;
+	}
+
+	private void start() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (started) {
+			return;
+		}
+		started = true;
+		if (source == null) {
+			source = Files.newInputStream(file);
+		}
+		in = new PushbackInputStream(source, BlockGzipOutputStream.HEADER_SIZE);
+		if (startsWithBlock()) {
+			executor = Executors.newFixedThreadPool(numThreads, BlockGzipOutputStream.DEFAULT_THREAD_FACTORY);
+			// keep every thread busy while the caller reads
+			maxPending = numThreads * 2;
+		} else {
+			plain = new GZIPInputStream(in, 64 * 1024);
+		}
+	}
+
+	private boolean startsWithBlock() throws IOException {
+		byte[] header = new byte[BlockGzipOutputStream.HEADER_SIZE];
+		int len = 0;
+		int n;
+		while (len < header.length && (n = in.read(header, len, header.length - len)) != -1) {
+			len += n;
+		}
+		in.unread(header, 0, len);
+		return len == header.length && isGzip(header) && (header[3] & FEXTRA) != 0
+				&& header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+	}
+
+	private static boolean isGzip(byte[] header) {
+		return header[0] == 0x1f && header[1] == (byte) 0x8b && header[2] == 8;
+	}
+
+	@Override
+	public int read() throws IOException {
+		start();
+		if (plain != null) {
+			return plain.read();
+		}
+		if (!nextBlock()) {
+			return -1;
+		}
+		return current[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		start();
+		if (plain != null) {
+			return plain.read(b, off, len);
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, current.length - pos);
+		System.arraycopy(current, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		start();
+		if (plain != null) {
+			return plain.skip(n);
+		}
+		if (n <= 0 || !nextBlock()) {
+			return 0;
+		}
+		int skipped = (int) Math.min(n, current.length - pos);
+		pos += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		start();
+		if (plain != null) {
+			return plain.available();
+		}
+		return current.length - pos;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Move onto the next block with something in it, keeping the pool busy
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean nextBlock() throws IOException {
+		while (pos == current.length) {
+			readAhead();
+			Future<byte[]> block = pending.poll();
+			if (block == null) {
+				return false;
+			}
+			try {
+				current = block.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting on decompression");
+			} catch (ExecutionException e) {
+				throw new IOException("Error decompressing block", e.getCause());
+			}
+			pos = 0;
+		}
+		return true;
+	}
+
+	private void readAhead() throws IOException {
+		while (!eof && pending.size() < maxPending) {
+			final byte[] block = readCompressedBlock();
+			if (block == null) {
+				eof = true;
+				return;
+			}
+			pending.add(executor.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return decompress(block);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Read the next whole block, as sized by its header
+	 *
+	 * @return null at the end of the input
+	 */
+	private byte[] readCompressedBlock() throws IOException {
+		byte[] fixed = new byte[FIXED_HEADER_SIZE];
+		int first = in.read();
+		if (first == -1) {
+			return null;
+		}
+		fixed[0] = (byte) first;
+		readFully(fixed, 1, FIXED_HEADER_SIZE - 1);
+		if (!isGzip(fixed)) {
+			throw new ZipException("Not in gzip format");
+		}
+		if ((fixed[3] & FEXTRA) == 0) {
+			throw new ZipException("Gzip member without a block size, can't mix blocks with plain gzip");
+		}
+		int extraLen = getShort(fixed, 10);
+		byte[] extra = new byte[extraLen];
+		readFully(extra, 0, extraLen);
+		int blockSize = -1;
+		for (int i = 0; i + 4 <= extraLen;) {
+			int fieldLen = getShort(extra, i + 2);
+			if (extra[i] == 'B' && extra[i + 1] == 'C' && fieldLen == 2 && i + 6 <= extraLen) {
+				blockSize = getShort(extra, i + 4) + 1;
+				break;
+			}
+			i += 4 + fieldLen;
+		}
+		int headerLen = FIXED_HEADER_SIZE + extraLen;
+		if (blockSize < headerLen + BlockGzipOutputStream.TRAILER_SIZE) {
+			throw new ZipException("Gzip member without a block size, can't mix blocks with plain gzip");
+		}
+		byte[] block = new byte[blockSize];
+		System.arraycopy(fixed, 0, block, 0, FIXED_HEADER_SIZE);
+		System.arraycopy(extra, 0, block, FIXED_HEADER_SIZE, extraLen);
+		readFully(block, headerLen, blockSize - headerLen);
+		return block;
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(b, off, len);
+			if (n == -1) {
+				throw new EOFException("Unexpected end of gzip block");
+			}
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Called on the pool threads
+	 */
+	private byte[] decompress(byte[] block) throws IOException {
+		int off = FIXED_HEADER_SIZE + getShort(block, 10);
+		int flags = block[3];
+		if ((flags & FNAME) != 0) {
+			while (block[off++] != 0) {
+			}
+		}
+		if ((flags & FCOMMENT) != 0) {
+			while (block[off++] != 0) {
+			}
+		}
+		if ((flags & FHCRC) != 0) {
+			off += 2;
+		}
+		int trailer = block.length - BlockGzipOutputStream.TRAILER_SIZE;
+		int expectCrc = getInt(block, trailer);
+		int size = getInt(block, trailer + 4);
+		if (size < 0 || size > BlockGzipOutputStream.MAX_BLOCK_SIZE) {
+			throw new ZipException("Block of " + size + " bytes too big");
+		}
+		byte[] out = new byte[size];
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		try {
+			inflater.setInput(block, off, trailer - off);
+			int len = 0;
+			while (len < size && !inflater.finished()) {
+				int n = inflater.inflate(out, len, size - len);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				len += n;
+			}
+			if (len != size) {
+				throw new ZipException("Block size doesn't match its contents");
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Corrupt gzip block: " + e.getMessage());
+		} finally {
+			release(inflater);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out, 0, size);
+		if ((int) crc.getValue() != expectCrc) {
+			throw new ZipException("Corrupt gzip block, CRC mismatch");
+		}
+		return out;
+	}
+
+	/**
+	 * Pool the inflater, or end it if closed. Checked again once pooled in
+	 * case {@link #close()} drained the pool in between, only one of the two
+	 * gets to take it back out
+	 */
+	private void release(Inflater inflater) {
+		if (!stopped) {
+			inflater.reset();
+			inflaters.add(inflater);
+			if (!stopped || !inflaters.remove(inflater)) {
+				return;
+			}
+		}
+		inflater.end();
+	}
+
+	private static int getShort(byte[] b, int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return getShort(b, off) | getShort(b, off + 2) << 16;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (plain != null) {
+				plain.close();
+			} else if (source != null) {
+				source.close();
+			}
+		} finally {
+			stopped = true;
+			if (executor != null) {
+				for (Future<byte[]> f : pending) {
+					f.cancel(true);
+				}
+				pending.clear();
+				executor.shutdownNow();
+			}
+			Inflater inflater;
+			while ((inflater = inflaters.poll()) != null) {
+				inflater.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package org.codemucker.csv;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Writes gzip as a series of independent blocks, compressed in parallel. Each
+ * block is its own gzip member, so any gzip reader can read the output as
+ * normal. The blocks follow the BGZF layout, recording each block's
+ * compressed size in the header, which lets {@link BlockGzipInputStream} find
+ * the blocks and decompress them in parallel too.
+ *
+ * <p>
+ * Blocks are compressed on a pool of threads while the caller carries on
+ * filling the next, and written to the underlying stream in order on the
+ * caller's thread. A bounded number of blocks are compressed at once, so a
+ * slow stream holds up the caller rather than filling the heap.
+ * </p>
+ *
+ * <p>
+ * Must be closed, or {@link #finish()}ed, to write the last block and stop
+ * the threads.
+ * </p>
+ */
+@NotThreadSafe
+public class BlockGzipOutputStream extends FilterOutputStream {
+
+	/**
+	 * Most input per block, leaving room for the header and trailer when
+	 * stored uncompressed
+	 */
+	static final int MAX_BLOCK_INPUT = 0xff00;
+	static final int MAX_BLOCK_SIZE = 0x10000;
+	/**
+	 * Gzip header with the 'BC' extra field holding the block size, less one
+	 */
+	static final int HEADER_SIZE = 18;
+	static final int TRAILER_SIZE = 8;
+	/**
+	 * An empty block, marking the end of the stream
+	 */
+	static final byte[] EOF_BLOCK = { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+			0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+	static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactoryBuilder()
+			.setDaemon(true).setNameFormat("csv-gzip-%d").build();
+
+	private final int level;
+	private final ExecutorService executor;
+	private final int maxPending;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+	/**
+	 * Set once stopped, so tasks still running end their deflaters rather than
+	 * pool them
+	 */
+	private volatile boolean stopped;
+
+	private byte[] buf = new byte[MAX_BLOCK_INPUT];
+	private int count;
+	private boolean finished;
+
+	/**
+	 * Compress at the default level on a thread per core
+	 */
+	public BlockGzipOutputStream(OutputStream out) {
+		this(out, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param level
+	 *            the {@link Deflater} compression level
+	 * @param numThreads
+	 *            threads to compress on
+	 */
+	public BlockGzipOutputStream(OutputStream out, int level, int numThreads) {
+		super(Preconditions.checkNotNull(out, "expect output"));
+		Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION || (level >= 0 && level <= 9),
+				"expect compression level between 0 and 9");
+		Preconditions.checkArgument(numThreads > 0, "expect threads > 0");
+		this.level = level;
+		this.executor = Executors.newFixedThreadPool(numThreads, DEFAULT_THREAD_FACTORY);
+		// keep every thread busy while the caller fills and writes
+		this.maxPending = numThreads * 2;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkNotFinished();
+		buf[count++] = (byte) b;
+		if (count == MAX_BLOCK_INPUT) {
+			compressBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkNotFinished();
+		while (len > 0) {
+			int n = Math.min(len, MAX_BLOCK_INPUT - count);
+			System.arraycopy(b, off, buf, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == MAX_BLOCK_INPUT) {
+				compressBlock();
+			}
+		}
+	}
+
+	/**
+	 * Compress and write out everything written so far, ending the current
+	 * block early
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkNotFinished();
+		if (count > 0) {
+			compressBlock();
+		}
+		while (!pending.isEmpty()) {
+			writeNextBlock();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write out the remaining blocks and the end of stream marker, and stop
+	 * the threads, without closing the underlying stream
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		try {
+			flush();
+			out.write(EOF_BLOCK);
+			out.flush();
+		} finally {
+			finished = true;
+			stop();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void stop() {
+		for (Future<byte[]> f : pending) {
+			f.cancel(true);
+		}
+		pending.clear();
+		stopped = true;
+		executor.shutdownNow();
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+	}
+
+	private void checkNotFinished() throws IOException {
+		if (finished) {
+			throw new IOException("Stream finished");
+		}
+	}
+
+	private void compressBlock() throws IOException {
+		final byte[] input = buf;
+		final int len = count;
+		buf = new byte[MAX_BLOCK_INPUT];
+		count = 0;
+		pending.add(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return compress(input, len);
+			}
+		}));
+		while (pending.size() > maxPending) {
+			writeNextBlock();
+		}
+	}
+
+	private void writeNextBlock() throws IOException {
+		Future<byte[]> block = pending.poll();
+		try {
+			out.write(block.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting on compression");
+		} catch (ExecutionException e) {
+			throw new IOException("Error compressing block", e.getCause());
+		}
+	}
+
+	/**
+	 * Compress the input into a complete gzip block. Called on the pool
+	 * threads
+	 */
+	private byte[] compress(byte[] input, int len) throws IOException {
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+		}
+		try {
+			byte[] block = new byte[MAX_BLOCK_SIZE];
+			int dataLen = deflate(deflater, input, len, block);
+			if (dataLen < 0) {
+				// doesn't compress, store as is, which always fits
+				deflater.setLevel(Deflater.NO_COMPRESSION);
+				dataLen = deflate(deflater, input, len, block);
+				deflater.setLevel(level);
+				if (dataLen < 0) {
+					throw new IOException("Block of " + len + " bytes too big to store");
+				}
+			}
+			int size = HEADER_SIZE + dataLen + TRAILER_SIZE;
+			System.arraycopy(EOF_BLOCK, 0, block, 0, HEADER_SIZE);
+			putShort(block, 16, size - 1);
+			CRC32 crc = new CRC32();
+			crc.update(input, 0, len);
+			putInt(block, HEADER_SIZE + dataLen, (int) crc.getValue());
+			putInt(block, HEADER_SIZE + dataLen + 4, len);
+			return Arrays.copyOf(block, size);
+		} finally {
+			release(deflater);
+		}
+	}
+
+	/**
+	 * Pool the deflater, or end it if stopped. Checked again once pooled in
+	 * case {@link #stop()} drained the pool in between, only one of the two
+	 * gets to take it back out
+	 */
+	private void release(Deflater deflater) {
+		if (!stopped) {
+			deflater.reset();
+			deflaters.add(deflater);
+			if (!stopped || !deflaters.remove(deflater)) {
+				return;
+			}
+		}
+		deflater.end();
+	}
+
+	/**
+	 * @return the compressed size, or -1 if it doesn't fit in a block
+	 */
+	private static int deflate(Deflater deflater, byte[] input, int len, byte[] block) {
+		deflater.reset();
+		deflater.setInput(input, 0, len);
+		deflater.finish();
+		int max = MAX_BLOCK_SIZE - HEADER_SIZE - TRAILER_SIZE;
+		int dataLen = 0;
+		while (!deflater.finished() && dataLen < max) {
+			dataLen += deflater.deflate(block, HEADER_SIZE + dataLen, max - dataLen);
+		}
+		return deflater.finished() ? dataLen : -1;
+	}
+
+	private static void putShort(byte[] b, int off, int v) {
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >>> 8);
+	}
+
+	private static void putInt(byte[] b, int off, int v) {
+		putShort(b, off, v);
+		putShort(b, off + 2, v >>> 16);
+	}
+}
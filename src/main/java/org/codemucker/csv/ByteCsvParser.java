@@ -0,0 +1,429 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Parses records straight from raw bytes, without decoding the stream into
+ * chars first. Separators, escapes and newlines are found at the byte level,
+ * and field values are kept as bytes. They are only decoded when read as a
+ * string from the returned record.
+ *
+ * <p>
+ * This only works for charsets where the ascii chars are always encoded as
+ * single bytes, and no byte of a multi byte char can be mistaken for one. That
+ * is UTF-8, US-ASCII and ISO-8859-1. The separator, escape and comment chars
+ * need to be ascii
+ * </p>
+ *
+ * <p>
+ * Char numbers and the max record size are counted in bytes
+ * </p>
+ *
+ * <p>
+ * When the input is expected to be quote free, see {@link CsvDialect}, whole
+ * records are split straight out of the buffer without going through the
+ * escape handling. A record this can't handle, because it has a quote or
+ * comment or runs past the end of the buffer, is parsed as normal. Once a
+ * quote has been seen every record after it is parsed as normal too
+ * </p>
+ */
+@NotThreadSafe
+class ByteCsvParser extends CsvParser {
+
+	private static final int NULL_LENGTH = -1;
+
+	private ByteInput input;
+	private final Charset charset;
+
+	private final byte escapeByte;
+	private final boolean vectorScan;
+	private final ByteScanner scanner;
+	/**
+	 * If records are expected to be free of quotes, so can try the fast path
+	 */
+	private final boolean expectQuoteFree;
+	private boolean quoteFree;
+
+	/**
+	 * Current block of bytes being scanned. Read via absolute gets so we don't
+	 * care if it's heap, direct or mapped
+	 */
+	private ByteBuffer buf;
+	/**
+	 * Index of the next byte to read in the buffer
+	 */
+	private int bufPos;
+	/**
+	 * Index after the last valid byte in the buffer
+	 */
+	private int bufLen;
+
+	private final int fieldBufSize;
+	private final int fieldBufMaxSize;
+	private final int valueBufSize;
+	private final int valueBufMaxSize;
+
+	/**
+	 * The values of all the fields of the current record, back to back
+	 */
+	private byte[] valueBuf;
+	private int valueLen;
+	/**
+	 * Where the value of the field currently being read starts in the value
+	 * buffer
+	 */
+	private int fieldStart;
+	/**
+	 * Pairs of start and length of each field in the value buffer. A length of
+	 * {@link #NULL_LENGTH} marks a null
+	 */
+	private int[] fieldOffsets;
+	private int numFields;
+
+	ByteCsvParser(ByteInput input, Charset charset, char fieldSepChar,
+			char escapeChar, char commentChar, boolean commentsEnabled,
+			int fieldBufSize, int fieldBufMaxSize, int fieldCharCount,
+			int fieldValueBufMaxSize, int maxNumberOfCharsPerRecord,
+			boolean vectorScan, boolean quoteFree) {
+		super(fieldSepChar, escapeChar, commentChar, commentsEnabled,
+				maxNumberOfCharsPerRecord);
+		this.input = input;
+		this.charset = charset;
+		this.escapeByte = (byte) escapeChar;
+		this.vectorScan = vectorScan;
+		this.scanner = ByteScanner.create((byte) fieldSepChar, escapeByte, vectorScan);
+		this.expectQuoteFree = quoteFree;
+		this.quoteFree = quoteFree;
+
+		this.fieldBufSize = fieldBufSize;
+		this.fieldBufMaxSize = fieldBufMaxSize;
+		this.valueBufSize = fieldCharCount * fieldBufSize;
+		this.valueBufMaxSize = fieldValueBufMaxSize * fieldBufMaxSize;
+
+		this.valueBuf = new byte[valueBufSize];
+		this.fieldOffsets = new int[fieldBufSize * 2];
+	}
+
+	private ByteCsvParser(ByteCsvParser settings, ByteInput input) {
+		super(settings.fieldSepChar, settings.escapeChar, settings.commentChar,
+				settings.commentsEnabled, settings.maxNumberOfCharsPerRecord);
+		this.input = input;
+		this.charset = settings.charset;
+		this.escapeByte = settings.escapeByte;
+		this.vectorScan = settings.vectorScan;
+		this.scanner = ByteScanner.create((byte) fieldSepChar, escapeByte, vectorScan);
+		this.expectQuoteFree = settings.expectQuoteFree;
+		this.quoteFree = settings.expectQuoteFree;
+
+		this.fieldBufSize = settings.fieldBufSize;
+		this.fieldBufMaxSize = settings.fieldBufMaxSize;
+		this.valueBufSize = settings.valueBufSize;
+		this.valueBufMaxSize = settings.valueBufMaxSize;
+
+		this.valueBuf = new byte[valueBufSize];
+		this.fieldOffsets = new int[fieldBufSize * 2];
+	}
+
+	/**
+	 * Create a parser over the given input with the same settings as this one
+	 */
+	ByteCsvParser withInput(ByteInput input) {
+		return new ByteCsvParser(this, input);
+	}
+
+	/**
+	 * Close the current input and carry on from the start of the given one,
+	 * which needs to start on a record boundary. Line and char numbers start
+	 * again from 0
+	 */
+	void reset(ByteInput input) throws IOException {
+		this.input.close();
+		this.input = input;
+		buf = null;
+		bufPos = bufLen = 0;
+		hasMore = true;
+		endedEmpty = false;
+		lineNumber = 0;
+		charNumber = 0;
+		resetBuffers();
+	}
+
+	/**
+	 * The offset in the file of the next byte to parse, or -1 if not reading
+	 * a mapped file. Between records this is where the next record starts
+	 */
+	long getFileOffset() {
+		if (!(input instanceof ByteInput.MappedFileInput)) {
+			return -1;
+		}
+		return ((ByteInput.MappedFileInput) input).getBlockStart() + bufPos;
+	}
+
+	@Override
+	void parseRecord(int skipNumLines) throws CsvException {
+		if (quoteFree && skipNumLines == 0 && parseQuoteFreeRecord()) {
+			return;
+		}
+		super.parseRecord(skipNumLines);
+	}
+
+	/**
+	 * Split the next record out of the buffer, finding the field ends with
+	 * the scanner alone, without tracking any escape state
+	 *
+	 * @return false if the record needs parsing as normal, in which case
+	 *         nothing has been consumed
+	 */
+	private boolean parseQuoteFreeRecord() {
+		final ByteBuffer buf = this.buf;
+		final int end = bufLen;
+		final int start = bufPos;
+		if (buf == null || start >= end) {
+			return false;
+		}
+		final int startValueLen = valueLen;
+		final int startNumFields = numFields;
+		int pos = start;
+		while (true) {
+			if (commentsEnabled && pos < end && buf.get(pos) == commentChar && isStartOfField()) {
+				return undoRecord(startValueLen, startNumFields);
+			}
+			int runEnd = scanner.findPlainRunEnd(buf, pos, end);
+			if (runEnd == end || runEnd - start > maxNumberOfCharsPerRecord) {
+				return undoRecord(startValueLen, startNumFields);
+			}
+			byte b = buf.get(runEnd);
+			int next = runEnd + 1;
+			if (b == escapeByte) {
+				// stick to the normal parse from here on
+				quoteFree = false;
+				return undoRecord(startValueLen, startNumFields);
+			}
+			if (b == CR) {
+				if (next == end || buf.get(next) != NL) {
+					// a lone CR is dropped, leave that to the normal parse
+					return undoRecord(startValueLen, startNumFields);
+				}
+				b = NL;
+				next++;
+			}
+			if (runEnd > pos) {
+				appendBytes(pos, runEnd - pos);
+			}
+			endField(EMPTY_TO_NULL);
+			pos = next;
+			if (b == NL) {
+				break;
+			}
+		}
+		bufPos = pos;
+		lineNumber++;
+		charNumber = 0;
+		recordNumber++;
+		endedEmpty = false;
+		return true;
+	}
+
+	private boolean undoRecord(int startValueLen, int startNumFields) {
+		valueLen = startValueLen;
+		fieldStart = startValueLen;
+		numFields = startNumFields;
+		startField(startNumFields);
+		return false;
+	}
+
+	@Override
+	void readToEndOfLine() throws IOException {
+		while (next()) {
+			if (currentChar == NL) {
+				return;
+			}
+			// skip the rest of the buffered line in one go
+			final ByteBuffer buf = this.buf;
+			int i = bufPos;
+			while (i < bufLen && buf.get(i) != NL) {
+				i++;
+			}
+			charNumber += i - bufPos;
+			bufPos = i;
+		}
+	}
+
+	@Override
+	boolean next() throws IOException {
+		if (hasMore) {
+			if (bufPos < bufLen || fill()) {
+				// non ascii bytes are only ever appended back as bytes, so
+				// widening them here loses nothing
+				currentChar = (char) (buf.get(bufPos++) & 0xFF);
+				charNumber++;
+				if (currentChar == NL) {
+					lineNumber++;
+					charNumber = 0;
+				}
+			} else {
+				hasMore = false;
+			}
+		}
+		return hasMore;
+	}
+
+	/**
+	 * Move onto the next non empty block of input
+	 *
+	 * @return false if the end of the input has been reached
+	 */
+	private boolean fill() throws IOException {
+		ByteBuffer block;
+		do {
+			block = input.nextBlock();
+		} while (block != null && !block.hasRemaining());
+		if (block == null) {
+			bufPos = bufLen = 0;
+			return false;
+		}
+		buf = block;
+		scanner.reset();
+		bufPos = block.position();
+		bufLen = block.limit();
+		return true;
+	}
+
+	@Override
+	int appendPlainRun() {
+		final int start = bufPos;
+		final int i = scanner.findPlainRunEnd(buf, start, bufLen);
+		int len = i - start;
+		if (len > 0) {
+			appendBytes(start, len);
+			charNumber += len;
+			bufPos = i;
+		}
+		return len;
+	}
+
+	@Override
+	int appendEscapedRun() {
+		final ByteBuffer buf = this.buf;
+		final int start = bufPos;
+		final int end = bufLen;
+		int i = start;
+		while (i < end) {
+			byte b = buf.get(i);
+			if (b == escapeByte) {
+				break;
+			}
+			if (b == NL) {
+				lineNumber++;
+				charNumber = 0;
+			} else {
+				charNumber++;
+			}
+			i++;
+		}
+		int len = i - start;
+		if (len > 0) {
+			appendBytes(start, len);
+			bufPos = i;
+		}
+		return len;
+	}
+
+	private void appendBytes(int start, int len) {
+		if (skipField) {
+			skippedLen += len;
+			return;
+		}
+		ensureValueCapacity(len);
+		buf.position(start);
+		buf.get(valueBuf, valueLen, len);
+		valueLen += len;
+	}
+
+	@Override
+	boolean isStartOfField() {
+		return valueLen == fieldStart && skippedLen == 0;
+	}
+
+	@Override
+	void appendToField(char c) {
+		if (skipField) {
+			skippedLen++;
+			return;
+		}
+		ensureValueCapacity(1);
+		valueBuf[valueLen++] = (byte) c;
+	}
+
+	private void ensureValueCapacity(int extra) {
+		if (valueLen + extra > valueBuf.length) {
+			valueBuf = Arrays.copyOf(valueBuf,
+					Math.max(valueBuf.length * 2, valueLen + extra));
+		}
+	}
+
+	@Override
+	void endField(boolean emptyIsNull) {
+		int len = valueLen - fieldStart;
+		if ((len == 0 && emptyIsNull) || skipField) {
+			len = NULL_LENGTH;
+		}
+		int idx = numFields * 2;
+		if (idx + 2 > fieldOffsets.length) {
+			fieldOffsets = Arrays.copyOf(fieldOffsets, fieldOffsets.length * 2);
+		}
+		fieldOffsets[idx] = fieldStart;
+		fieldOffsets[idx + 1] = len;
+		numFields++;
+		fieldStart = valueLen;
+		startField(numFields);
+	}
+
+	@Override
+	ICsvRecord newRecord(ICsvReader reader, Serialiser serialiser) {
+		return new ByteCsvRecord(reader, serialiser, charset);
+	}
+
+	@Override
+	void fillRecord(ICsvRecord record, boolean share) {
+		ByteCsvRecord rec = (ByteCsvRecord) record;
+		if (share) {
+			rec.setValues(valueBuf, fieldOffsets, numFields);
+		} else {
+			rec.setValues(Arrays.copyOf(valueBuf, valueLen),
+					Arrays.copyOf(fieldOffsets, numFields * 2), numFields);
+		}
+	}
+
+	@Override
+	void appendTo(RecordBatch batch) {
+		batch.addBytes(valueBuf, valueLen, fieldOffsets, numFields, charset);
+	}
+
+	@Override
+	void resetBuffers() {
+		// replace rather than shrink in place, a shared record may still
+		// point to the old buffers
+		if (valueBuf.length > valueBufMaxSize) {
+			valueBuf = new byte[valueBufSize];
+		}
+		if (numFields > fieldBufMaxSize) {
+			fieldOffsets = new int[fieldBufSize * 2];
+		}
+		valueLen = 0;
+		fieldStart = 0;
+		numFields = 0;
+
+		super.resetBuffers();
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+}
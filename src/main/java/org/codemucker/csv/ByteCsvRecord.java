@@ -0,0 +1,131 @@
+package org.codemucker.csv;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * A record whose fields are still raw bytes, as read by a
+ * {@link ByteCsvParser}. A field is only decoded when it is read.
+ */
+@NotThreadSafe
+class ByteCsvRecord extends SlicedCsvRecord {
+
+	private final Charset charset;
+	/**
+	 * If every byte maps straight onto the same char, so views never need to
+	 * decode
+	 */
+	private final boolean latin1;
+
+	/**
+	 * The values of all the fields, back to back
+	 */
+	private byte[] values;
+
+	ByteCsvRecord(ICsvReader reader, Serialiser serialiser, Charset charset) {
+		super(reader, serialiser);
+		this.charset = charset;
+		this.latin1 = StandardCharsets.ISO_8859_1.equals(charset);
+	}
+
+	void setValues(byte[] values, int[] fieldOffsets, int numFields) {
+		setValues(values, fieldOffsets, 0, numFields);
+	}
+
+	/**
+	 * @param fieldBase
+	 *            index of the record's first field in the offsets
+	 */
+	void setValues(byte[] values, int[] fieldOffsets, int fieldBase, int numFields) {
+		super.setData(null);
+		this.values = values;
+		this.fieldOffsets = fieldOffsets;
+		this.fieldBase = fieldBase;
+		this.numFields = numFields;
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+
+	@Override
+	public void setData(String[] record) {
+		this.values = null;
+		super.setData(record);
+	}
+
+	@Override
+	boolean hasValues() {
+		return values != null;
+	}
+
+	@Override
+	String decode(int start, int len) {
+		return new String(values, start, len, charset);
+	}
+
+	@Override
+	CharSequence newView() {
+		return new View();
+	}
+
+	@Override
+	void moveView(CharSequence view, int start, int len) {
+		((View) view).moveTo(start, len);
+	}
+
+	/**
+	 * Reads ascii fields straight from the bytes. Anything else is decoded
+	 * first, as there is no longer a char per byte
+	 */
+	private class View implements CharSequence {
+
+		private byte[] bytes;
+		private int start;
+		private int len;
+		private String decoded;
+
+		void moveTo(int start, int len) {
+			this.bytes = values;
+			this.start = start;
+			this.len = len;
+			this.decoded = null;
+			if (!latin1) {
+				for (int i = start, end = start + len; i < end; i++) {
+					if (bytes[i] < 0) {
+						decoded = new String(bytes, start, len, charset);
+						break;
+					}
+				}
+			}
+		}
+
+		@Override
+		public int length() {
+			return decoded == null ? len : decoded.length();
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (decoded != null) {
+				return decoded.charAt(index);
+			}
+			if (index < 0 || index >= len) {
+				throw new IndexOutOfBoundsException("index " + index + ", length " + len);
+			}
+			return (char) (bytes[start + index] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().subSequence(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return decoded == null ? new String(bytes, start, len, charset) : decoded;
+		}
+	}
+}
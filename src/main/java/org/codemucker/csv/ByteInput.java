@@ -0,0 +1,214 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Supplies blocks of raw bytes to a {@link ByteCsvParser}
+ */
+interface ByteInput extends Closeable {
+
+	/**
+	 * Return the next block of bytes to parse. The parser reads from the
+	 * block's position up to its limit. The block is only valid until the next
+	 * call.
+	 *
+	 * @return the next block, or null if there is no more input
+	 */
+	ByteBuffer nextBlock() throws IOException;
+
+	/**
+	 * Reads blocks from a stream into a single reused buffer
+	 */
+	static class StreamInput implements ByteInput {
+
+		private final InputStream is;
+		private final boolean closeStream;
+		private final byte[] bytes;
+		private final ByteBuffer block;
+
+		StreamInput(InputStream is, int blockSize, boolean closeStream) {
+			this.is = is;
+			this.closeStream = closeStream;
+			this.bytes = new byte[blockSize];
+			this.block = ByteBuffer.wrap(bytes);
+		}
+
+		@Override
+		public ByteBuffer nextBlock() throws IOException {
+			int numRead;
+			do {
+				numRead = is.read(bytes, 0, bytes.length);
+			} while (numRead == 0);
+			if (numRead == -1) {
+				return null;
+			}
+			block.clear();
+			block.limit(numRead);
+			return block;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closeStream) {
+				is.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads blocks from a stream on a background thread, up to the given
+	 * number of blocks ahead of the parser. See {@link Prefetcher}
+	 */
+	static class PrefetchInput implements ByteInput {
+
+		private final Prefetcher<ByteBuffer> prefetcher;
+
+		PrefetchInput(final InputStream is, int blockSize, int depth,
+				ThreadFactory threadFactory, final boolean closeStream) {
+			ByteBuffer[] blocks = new ByteBuffer[depth + 1];
+			for (int i = 0; i < blocks.length; i++) {
+				blocks[i] = ByteBuffer.allocate(blockSize);
+			}
+			Prefetcher.Filler<ByteBuffer> filler = new Prefetcher.Filler<ByteBuffer>() {
+				@Override
+				public void fill(ByteBuffer block) throws IOException {
+					byte[] bytes = block.array();
+					int numRead;
+					do {
+						numRead = is.read(bytes, 0, bytes.length);
+					} while (numRead == 0);
+					block.clear();
+					block.limit(Math.max(numRead, 0));
+				}
+
+				@Override
+				public void close() throws IOException {
+					if (closeStream) {
+						is.close();
+					}
+				}
+			};
+			this.prefetcher = new Prefetcher<ByteBuffer>(filler, blocks, threadFactory);
+		}
+
+		@Override
+		public ByteBuffer nextBlock() throws IOException {
+			return prefetcher.next();
+		}
+
+		@Override
+		public void close() throws IOException {
+			prefetcher.close();
+		}
+	}
+
+	/**
+	 * All the input is already in memory, hand it over as a single block
+	 */
+	static class BufferInput implements ByteInput {
+
+		private ByteBuffer buf;
+
+		BufferInput(ByteBuffer buf) {
+			// don't disturb the callers position/limit
+			this.buf = buf.slice();
+		}
+
+		@Override
+		public ByteBuffer nextBlock() {
+			ByteBuffer block = buf;
+			buf = null;
+			return block;
+		}
+
+		@Override
+		public void close() {
+			buf = null;
+		}
+	}
+
+	/**
+	 * Memory maps a file a window at a time, so the parser reads straight from
+	 * the OS page cache without any copying onto the heap. Windows are mapped
+	 * back to back, records which span two windows are stitched together by
+	 * the parser like any other block boundary.
+	 *
+	 * <p>
+	 * The file is only opened on the first read. A window can't be unmapped
+	 * explicitly, the mapping is released once the window is garbage collected
+	 * </p>
+	 */
+	static class MappedFileInput implements ByteInput {
+
+		private final Path path;
+		private final int windowSize;
+
+		private FileChannel channel;
+		private long windowStart;
+		private long end;
+		/**
+		 * Where the last window returned starts
+		 */
+		private long blockStart;
+
+		MappedFileInput(Path path, int windowSize) {
+			this(path, 0, -1, windowSize);
+		}
+
+		/**
+		 * Only read the given range of the file
+		 *
+		 * @param end
+		 *            the offset after the last byte to read, or -1 to read to
+		 *            the end of the file
+		 */
+		MappedFileInput(Path path, long start, long end, int windowSize) {
+			this.path = path;
+			this.windowStart = start;
+			this.blockStart = start;
+			this.end = end;
+			this.windowSize = windowSize;
+		}
+
+		@Override
+		public ByteBuffer nextBlock() throws IOException {
+			if (channel == null) {
+				channel = FileChannel.open(path, StandardOpenOption.READ);
+				if (end == -1) {
+					end = channel.size();
+				}
+			}
+			if (windowStart >= end) {
+				return null;
+			}
+			long len = Math.min(windowSize, end - windowStart);
+			ByteBuffer window = channel.map(MapMode.READ_ONLY, windowStart, len);
+			blockStart = windowStart;
+			windowStart += len;
+			return window;
+		}
+
+		/**
+		 * The offset in the file of the start of the last block returned, or
+		 * of the range before the first
+		 */
+		long getBlockStart() {
+			return blockStart;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+}
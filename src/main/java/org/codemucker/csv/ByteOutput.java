@@ -0,0 +1,180 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes the chars a {@link CsvWriter} has buffered into blocks of bytes, and
+ * writes the blocks to a channel or stream once they are all full, in a
+ * single gathered write where the channel supports it
+ */
+final class ByteOutput {
+
+	private final WritableByteChannel channel;
+	private final OutputStream os;
+	private final CharsetEncoder encoder;
+
+	private final ByteBuffer[] blocks;
+	private int current;
+	private long numBytesWritten;
+	/**
+	 * A high surrogate at the end of the last chars, waiting on its pair
+	 */
+	private final CharBuffer leftover = CharBuffer.allocate(2);
+	private boolean ended;
+
+	ByteOutput(WritableByteChannel channel, Charset charset, int blockSize, int numBlocks) {
+		this(channel, null, charset, blockSize, numBlocks);
+	}
+
+	ByteOutput(OutputStream os, Charset charset, int blockSize, int numBlocks) {
+		this(null, os, charset, blockSize, numBlocks);
+	}
+
+	private ByteOutput(WritableByteChannel channel, OutputStream os, Charset charset, int blockSize, int numBlocks) {
+		this.channel = channel;
+		this.os = os;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.blocks = new ByteBuffer[numBlocks];
+		for (int i = 0; i < numBlocks; i++) {
+			blocks[i] = ByteBuffer.allocate(blockSize);
+		}
+		leftover.flip();
+	}
+
+	/**
+	 * Encode the chars into the blocks, writing them out when all are full.
+	 * The encoder copies ascii straight across for UTF-8 and the like
+	 */
+	void write(char[] chars, int off, int len) throws IOException {
+		if (len == 0) {
+			return;
+		}
+		if (leftover.hasRemaining()) {
+			leftover.compact();
+			leftover.put(chars[off++]);
+			leftover.flip();
+			encode(leftover);
+			len--;
+		}
+		CharBuffer in = CharBuffer.wrap(chars, off, len);
+		encode(in);
+		if (in.hasRemaining()) {
+			// split surrogate pair, finish it off next time
+			leftover.clear();
+			leftover.put(in);
+			leftover.flip();
+		}
+	}
+
+	private void encode(CharBuffer in) throws IOException {
+		while (true) {
+			CoderResult result = encoder.encode(in, blocks[current], false);
+			if (result.isOverflow()) {
+				nextBlock();
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * No more chars to come, so a high surrogate still waiting on its pair is
+	 * encoded as the replacement, and the encoder given the chance to finish
+	 * off
+	 */
+	private void endInput() throws IOException {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		while (encoder.encode(leftover, blocks[current], true).isOverflow()) {
+			nextBlock();
+		}
+		while (encoder.flush(blocks[current]).isOverflow()) {
+			nextBlock();
+		}
+	}
+
+	private void nextBlock() throws IOException {
+		current++;
+		if (current == blocks.length) {
+			writeBlocks();
+		}
+	}
+
+	/**
+	 * Number of bytes encoded so far, written out or not
+	 */
+	long getNumBytes() {
+		long numBytes = numBytesWritten;
+		for (int i = 0; i <= current; i++) {
+			numBytes += blocks[i].position();
+		}
+		return numBytes;
+	}
+
+	/**
+	 * Write out all the blocks filled so far, and flush the stream
+	 */
+	void flush() throws IOException {
+		writeBlocks();
+		if (os != null) {
+			os.flush();
+		}
+	}
+
+	/**
+	 * Encode anything left over, write out all the blocks filled so far, and
+	 * close the channel or stream
+	 */
+	void close() throws IOException {
+		endInput();
+		writeBlocks();
+		if (os != null) {
+			os.close();
+		} else {
+			channel.close();
+		}
+	}
+
+	private void writeBlocks() throws IOException {
+		int numBlocks = Math.min(current + 1, blocks.length);
+		long numBytes = 0;
+		for (int i = 0; i < numBlocks; i++) {
+			blocks[i].flip();
+			numBytes += blocks[i].remaining();
+		}
+		numBytesWritten += numBytes;
+		if (os != null) {
+			for (int i = 0; i < numBlocks; i++) {
+				os.write(blocks[i].array(), 0, blocks[i].limit());
+			}
+		} else if (channel instanceof GatheringByteChannel) {
+			GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			while (numBytes > 0) {
+				numBytes -= gathering.write(blocks, 0, numBlocks);
+			}
+		} else {
+			for (int i = 0; i < numBlocks; i++) {
+				while (blocks[i].hasRemaining()) {
+					channel.write(blocks[i]);
+				}
+			}
+		}
+		for (int i = 0; i < numBlocks; i++) {
+			blocks[i].clear();
+		}
+		current = 0;
+	}
+}
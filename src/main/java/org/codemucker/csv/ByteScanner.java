@@ -0,0 +1,101 @@
+package org.codemucker.csv;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Finds the end of a run of plain bytes for the {@link ByteCsvParser}, that
+ * is the next field separator, escape, newline or carriage return. Comment
+ * chars only matter at the start of a field, which the parser checks itself.
+ *
+ * <p>
+ * Where the JDK Vector API is available a vectorised scanner is used, which
+ * builds a bitmask of the structural bytes a block at a time. This is only
+ * compiled on newer JDKs, and only usable when the jdk.incubator.vector module
+ * has been added, so it's looked up at runtime. Otherwise this falls back to
+ * checking a byte at a time.
+ * </p>
+ */
+@NotThreadSafe
+class ByteScanner {
+
+	private static final String VECTOR_SCANNER = "org.codemucker.csv.VectorByteScanner";
+
+	/**
+	 * The vectorised scanner, or null if not available
+	 */
+	private static final Constructor<? extends ByteScanner> VECTOR_CONSTRUCTOR = findVectorScanner();
+
+	final byte fieldSep;
+	final byte escape;
+
+	ByteScanner(byte fieldSep, byte escape) {
+		this.fieldSep = fieldSep;
+		this.escape = escape;
+	}
+
+	/**
+	 * @param vectorised
+	 *            if the vectorised scanner should be used if available
+	 */
+	static ByteScanner create(byte fieldSep, byte escape, boolean vectorised) {
+		if (vectorised && VECTOR_CONSTRUCTOR != null) {
+			try {
+				return VECTOR_CONSTRUCTOR.newInstance(fieldSep, escape);
+			} catch (ReflectiveOperationException e) {
+				// fall back to scalar
+			}
+		}
+		return new ByteScanner(fieldSep, escape);
+	}
+
+	static boolean isVectorAvailable() {
+		return VECTOR_CONSTRUCTOR != null;
+	}
+
+	private static Constructor<? extends ByteScanner> findVectorScanner() {
+		try {
+			Class<? extends ByteScanner> type = Class.forName(VECTOR_SCANNER).asSubclass(ByteScanner.class);
+			Constructor<? extends ByteScanner> ctor = type.getDeclaredConstructor(byte.class, byte.class);
+			// fails if there is no hardware support
+			ctor.newInstance((byte) ',', (byte) '"');
+			return ctor;
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (LinkageError e) {
+			// the vector module isn't there
+			return null;
+		}
+	}
+
+	/**
+	 * The contents of the buffer being scanned have changed
+	 */
+	void reset() {
+		// nothing cached
+	}
+
+	/**
+	 * @return the index of the first structural byte from the given index, or
+	 *         to if there is none
+	 */
+	int findPlainRunEnd(ByteBuffer buf, int from, int to) {
+		return scanPlainRun(buf, from, to);
+	}
+
+	final int scanPlainRun(ByteBuffer buf, int from, int to) {
+		final byte fieldSep = this.fieldSep;
+		final byte escape = this.escape;
+		int i = from;
+		while (i < to) {
+			byte b = buf.get(i);
+			if (b == fieldSep || b == CsvParser.NL || b == CsvParser.CR || b == escape) {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,300 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Parses records from a {@link Reader}, reading blocks of chars into a buffer
+ * and scanning that in place
+ */
+@NotThreadSafe
+class CharCsvParser extends CsvParser {
+
+	/**
+	 * Block of chars read from the reader. We scan this in place rather than
+	 * going back to the reader for every char
+	 */
+	private final char[] buf;
+	/**
+	 * Index of the next char to read in the buffer
+	 */
+	private int bufPos;
+	/**
+	 * Number of valid chars in the buffer
+	 */
+	private int bufLen;
+
+	private static final int NULL_LENGTH = -1;
+
+	private final int fieldBufSize;
+	private final int fieldBufMaxSize;
+	private final int valueBufSize;
+	private final int valueBufMaxSize;
+
+	// reuse these structures so we don't need to reallocate on each record
+	/**
+	 * The values of all the fields of the current record, back to back
+	 */
+	private char[] valueBuf;
+	private int valueLen;
+	/**
+	 * Where the value of the field currently being read starts in the value
+	 * buffer
+	 */
+	private int fieldStart;
+	/**
+	 * Pairs of start and length of each field in the value buffer. A length of
+	 * {@link #NULL_LENGTH} marks a null
+	 */
+	private int[] fieldOffsets;
+	private int numFields;
+
+	/**
+	 * If records read straight from the value buffer rather than being given
+	 * strings
+	 */
+	private final boolean flyweight;
+
+	private final Reader reader;
+	private final boolean closeReader;
+
+	CharCsvParser(Reader reader, char fieldSepChar, char escapeChar,
+			char commentChar, boolean commentsEnabled, int fieldBufSize,
+			int fieldBufMaxSize, int fieldCharCount, int fieldValueBufMaxSize,
+			int maxNumberOfCharsPerRecord, int readBufSize, boolean closeReader,
+			boolean flyweight) {
+		super(fieldSepChar, escapeChar, commentChar, commentsEnabled,
+				maxNumberOfCharsPerRecord);
+		this.reader = reader;
+		this.buf = new char[readBufSize];
+
+		this.fieldBufSize = fieldBufSize;
+		this.fieldBufMaxSize = fieldBufMaxSize;
+		this.valueBufSize = fieldCharCount * fieldBufSize;
+		this.valueBufMaxSize = fieldValueBufMaxSize * fieldBufMaxSize;
+
+		this.valueBuf = new char[valueBufSize];
+		this.fieldOffsets = new int[fieldBufSize * 2];
+
+		this.closeReader = closeReader;
+		this.flyweight = flyweight;
+	}
+
+	@Override
+	void readToEndOfLine() throws IOException {
+		while (next()) {
+			if (currentChar == NL) {
+				return;
+			}
+			// skip the rest of the buffered line in one go
+			int i = bufPos;
+			while (i < bufLen && buf[i] != NL) {
+				i++;
+			}
+			charNumber += i - bufPos;
+			bufPos = i;
+		}
+	}
+
+	@Override
+	boolean next() throws IOException {
+		if (hasMore) {
+			if (bufPos < bufLen || fill()) {
+				currentChar = buf[bufPos++];
+				charNumber++;
+				if (currentChar == NL) {
+					lineNumber++;
+					charNumber = 0;
+				}
+			} else {
+				hasMore = false;
+			}
+		}
+		return hasMore;
+	}
+
+	/**
+	 * Read the next block of chars from the reader into the buffer
+	 *
+	 * @return false if the end of the stream has been reached
+	 */
+	private boolean fill() throws IOException {
+		int numRead;
+		do {
+			numRead = reader.read(buf, 0, buf.length);
+		} while (numRead == 0);
+		bufPos = 0;
+		bufLen = numRead == -1 ? 0 : numRead;
+		return bufLen > 0;
+	}
+
+	@Override
+	int appendPlainRun() {
+		final char[] buf = this.buf;
+		final int start = bufPos;
+		final int end = bufLen;
+		int i = start;
+		while (i < end) {
+			char c = buf[i];
+			if (c == fieldSepChar || c == NL || c == CR || c == escapeChar) {
+				break;
+			}
+			i++;
+		}
+		int len = i - start;
+		if (len > 0) {
+			appendChars(start, len);
+			charNumber += len;
+			bufPos = i;
+		}
+		return len;
+	}
+
+	@Override
+	int appendEscapedRun() {
+		final char[] buf = this.buf;
+		final int start = bufPos;
+		final int end = bufLen;
+		int i = start;
+		while (i < end) {
+			char c = buf[i];
+			if (c == escapeChar) {
+				break;
+			}
+			if (c == NL) {
+				lineNumber++;
+				charNumber = 0;
+			} else {
+				charNumber++;
+			}
+			i++;
+		}
+		int len = i - start;
+		if (len > 0) {
+			appendChars(start, len);
+			bufPos = i;
+		}
+		return len;
+	}
+
+	private void appendChars(int start, int len) {
+		if (skipField) {
+			skippedLen += len;
+			return;
+		}
+		ensureValueCapacity(len);
+		System.arraycopy(buf, start, valueBuf, valueLen, len);
+		valueLen += len;
+	}
+
+	@Override
+	boolean isStartOfField() {
+		return valueLen == fieldStart && skippedLen == 0;
+	}
+
+	@Override
+	void appendToField(char c) {
+		if (skipField) {
+			skippedLen++;
+			return;
+		}
+		ensureValueCapacity(1);
+		valueBuf[valueLen++] = c;
+	}
+
+	private void ensureValueCapacity(int extra) {
+		if (valueLen + extra > valueBuf.length) {
+			valueBuf = Arrays.copyOf(valueBuf,
+					Math.max(valueBuf.length * 2, valueLen + extra));
+		}
+	}
+
+	@Override
+	void endField(boolean emptyIsNull) {
+		int len = valueLen - fieldStart;
+		if ((len == 0 && emptyIsNull) || skipField) {
+			len = NULL_LENGTH;
+		}
+		int idx = numFields * 2;
+		if (idx + 2 > fieldOffsets.length) {
+			fieldOffsets = Arrays.copyOf(fieldOffsets, fieldOffsets.length * 2);
+		}
+		fieldOffsets[idx] = fieldStart;
+		fieldOffsets[idx + 1] = len;
+		numFields++;
+		fieldStart = valueLen;
+		startField(numFields);
+	}
+
+	@Override
+	ICsvRecord newRecord(ICsvReader reader, Serialiser serialiser) {
+		if (flyweight) {
+			return new CharCsvRecord(reader, serialiser);
+		}
+		return new CsvRecord(reader, serialiser);
+	}
+
+	@Override
+	void fillRecord(ICsvRecord record, boolean share) {
+		if (flyweight) {
+			CharCsvRecord rec = (CharCsvRecord) record;
+			if (share) {
+				rec.setValues(valueBuf, fieldOffsets, numFields);
+			} else {
+				rec.setValues(Arrays.copyOf(valueBuf, valueLen),
+						Arrays.copyOf(fieldOffsets, numFields * 2), numFields);
+			}
+			return;
+		}
+		String[] fields = new String[numFields];
+		for (int i = 0; i < numFields; i++) {
+			int len = fieldOffsets[i * 2 + 1];
+			String fieldVal = len < 0 ? null : new String(valueBuf, fieldOffsets[i * 2], len);
+			fields[i] = onField(recordNumber, i, fieldVal);
+		}
+		fields = onRecord(recordNumber, fields);
+		record.setData(fields);
+	}
+
+	@Override
+	void appendTo(RecordBatch batch) {
+		batch.addChars(valueBuf, valueLen, fieldOffsets, numFields);
+	}
+
+	private String onField(long recordNumber, int fieldNumber, String fieldVal) {
+		// TODO:user callbacks
+		return fieldVal;
+	}
+
+	private String[] onRecord(long recordNumber, String[] record) {
+		// TODO:user callbacks
+		return record;
+	}
+
+	@Override
+	void resetBuffers() {
+		// replace rather than shrink in place, a shared record may still
+		// point to the old buffers
+		if (valueBuf.length > valueBufMaxSize) {
+			valueBuf = new char[valueBufSize];
+		}
+		if (numFields > fieldBufMaxSize) {
+			fieldOffsets = new int[fieldBufSize * 2];
+		}
+		valueLen = 0;
+		fieldStart = 0;
+		numFields = 0;
+
+		super.resetBuffers();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closeReader) {
+			reader.close();
+		}
+	}
+}
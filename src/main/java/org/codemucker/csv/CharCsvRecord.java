@@ -0,0 +1,96 @@
+package org.codemucker.csv;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * A record which points straight into the value buffer of a
+ * {@link CharCsvParser}. Used for flyweight readers, where no string is
+ * created per field unless asked for.
+ */
+@NotThreadSafe
+class CharCsvRecord extends SlicedCsvRecord {
+
+	/**
+	 * The values of all the fields, back to back
+	 */
+	private char[] values;
+
+	CharCsvRecord(ICsvReader reader, Serialiser serialiser) {
+		super(reader, serialiser);
+	}
+
+	void setValues(char[] values, int[] fieldOffsets, int numFields) {
+		setValues(values, fieldOffsets, 0, numFields);
+	}
+
+	/**
+	 * @param fieldBase
+	 *            index of the record's first field in the offsets
+	 */
+	void setValues(char[] values, int[] fieldOffsets, int fieldBase, int numFields) {
+		super.setData(null);
+		this.values = values;
+		this.fieldOffsets = fieldOffsets;
+		this.fieldBase = fieldBase;
+		this.numFields = numFields;
+	}
+
+	@Override
+	public void setData(String[] record) {
+		this.values = null;
+		super.setData(record);
+	}
+
+	@Override
+	boolean hasValues() {
+		return values != null;
+	}
+
+	@Override
+	String decode(int start, int len) {
+		return new String(values, start, len);
+	}
+
+	@Override
+	CharSequence newView() {
+		return new View();
+	}
+
+	@Override
+	void moveView(CharSequence view, int start, int len) {
+		View v = (View) view;
+		v.chars = values;
+		v.start = start;
+		v.len = len;
+	}
+
+	private static class View implements CharSequence {
+
+		private char[] chars;
+		private int start;
+		private int len;
+
+		@Override
+		public int length() {
+			return len;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= len) {
+				throw new IndexOutOfBoundsException("index " + index + ", length " + len);
+			}
+			return chars[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().subSequence(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, start, len);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.codemucker.csv;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A reusable batch of rows held column by column, filled by
+ * {@link ColumnarCsvReader#readBatch(ColumnBatch)}. Each column is a primitive
+ * array of its {@link ColumnType}, plus a flag per row saying whether the
+ * field was null or missing, in which case the value is 0 or null. Use:
+ *
+ * <pre>
+ * ColumnBatch batch = r.newBatch(4096);
+ * while (r.readBatch(batch) > 0) {
+ * 	int[] ids = batch.getInts(0);
+ * 	double[] prices = batch.getDoubles(1);
+ * 	for (int row = 0; row &lt; batch.size(); row++) {
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * The arrays are sized to the capacity of the batch and reused on each fill,
+ * only the first {@link #size()} values are valid.
+ * </p>
+ */
+@NotThreadSafe
+public class ColumnBatch {
+
+	/**
+	 * Shared with the reader which created the batch
+	 */
+	final ColumnType[] types;
+	/**
+	 * The int[], long[], double[] or String[] of each column
+	 */
+	final Object[] values;
+	final boolean[][] nulls;
+	final int capacity;
+	int size;
+
+	ColumnBatch(ColumnType[] types, int capacity) {
+		this.types = types;
+		this.capacity = capacity;
+		this.values = new Object[types.length];
+		this.nulls = new boolean[types.length][capacity];
+		for (int col = 0; col < types.length; col++) {
+			switch (types[col]) {
+			case INT:
+				values[col] = new int[capacity];
+				break;
+			case LONG:
+			case DATE:
+				values[col] = new long[capacity];
+				break;
+			case DOUBLE:
+				values[col] = new double[capacity];
+				break;
+			case STRING:
+				values[col] = new String[capacity];
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown column type " + types[col]);
+			}
+		}
+	}
+
+	/**
+	 * Number of rows in the batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Max number of rows read into the batch at a time
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	public int getNumColumns() {
+		return types.length;
+	}
+
+	public ColumnType getType(int col) {
+		Preconditions.checkElementIndex(col, types.length, "column");
+		return types[col];
+	}
+
+	public int[] getInts(int col) {
+		return (int[]) values(col, ColumnType.INT);
+	}
+
+	public long[] getLongs(int col) {
+		return (long[]) values(col, ColumnType.LONG);
+	}
+
+	public double[] getDoubles(int col) {
+		return (double[]) values(col, ColumnType.DOUBLE);
+	}
+
+	public String[] getStrings(int col) {
+		return (String[]) values(col, ColumnType.STRING);
+	}
+
+	/**
+	 * The dates in a date column, as millis since the epoch
+	 */
+	public long[] getDates(int col) {
+		return (long[]) values(col, ColumnType.DATE);
+	}
+
+	/**
+	 * If the field was empty, or missing from the row
+	 */
+	public boolean isNull(int col, int row) {
+		Preconditions.checkElementIndex(col, types.length, "column");
+		Preconditions.checkElementIndex(row, size, "row");
+		return nulls[col][row];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	private Object values(int col, ColumnType type) {
+		Preconditions.checkElementIndex(col, types.length, "column");
+		Preconditions.checkArgument(types[col] == type, "column %s is %s, not %s", col, types[col], type);
+		return values[col];
+	}
+}
@@ -0,0 +1,106 @@
+package org.codemucker.csv;
+
+import java.util.Date;
+
+import org.codemucker.lang.annotation.ThreadSafe;
+import org.joda.time.DateTime;
+
+/**
+ * A named column, resolved against the header once up front so reading it
+ * from each record costs the same as reading by position. Get one from
+ * {@link CsvHeader#column(String)}. Use:
+ *
+ * <pre>
+ * ColumnHandle price = reader.getHeader().column("price");
+ * while (reader.hasMore()) {
+ * 	double p = price.readDouble(reader.readNextRecord());
+ * }
+ * </pre>
+ */
+@ThreadSafe
+public final class ColumnHandle {
+
+	private final String name;
+	private final int index;
+
+	ColumnHandle(String name, int index) {
+		this.name = name;
+		this.index = index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The position of the column in the record, to pass to the positional
+	 * reads on {@link ICsvRecord}
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public boolean readBool(ICsvRecord record) {
+		return record.readBool(index);
+	}
+
+	public int readInt(ICsvRecord record) {
+		return record.readInt(index);
+	}
+
+	public int readInt(ICsvRecord record, int defaultVal) {
+		return record.readInt(index, defaultVal);
+	}
+
+	public Integer readIntOrNull(ICsvRecord record) {
+		return record.readIntOrNull(index);
+	}
+
+	public long readLong(ICsvRecord record) {
+		return record.readLong(index);
+	}
+
+	public long readLong(ICsvRecord record, long defaultVal) {
+		return record.readLong(index, defaultVal);
+	}
+
+	public Long readLongOrNull(ICsvRecord record) {
+		return record.readLongOrNull(index);
+	}
+
+	public double readDouble(ICsvRecord record) {
+		return record.readDouble(index);
+	}
+
+	public double readDouble(ICsvRecord record, double defaultVal) {
+		return record.readDouble(index, defaultVal);
+	}
+
+	public Double readDoubleOrNull(ICsvRecord record) {
+		return record.readDoubleOrNull(index);
+	}
+
+	public String readString(ICsvRecord record) {
+		return record.readString(index);
+	}
+
+	/**
+	 * See {@link ICsvRecord#readChars(int)}
+	 */
+	public CharSequence readChars(ICsvRecord record) {
+		return record.readChars(index);
+	}
+
+	public DateTime readDateTime(ICsvRecord record) {
+		return record.readDateTime(index);
+	}
+
+	public Date readDate(ICsvRecord record) {
+		return record.readDate(index);
+	}
+
+	@Override
+	public String toString() {
+		return name + "@" + index;
+	}
+}
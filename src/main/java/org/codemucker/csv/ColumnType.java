@@ -0,0 +1,29 @@
+package org.codemucker.csv;
+
+/**
+ * The type a column is read into by {@link ColumnarCsvReader}, and so which
+ * array of {@link ColumnBatch} holds its values
+ */
+public enum ColumnType {
+	/**
+	 * Read via {@link ColumnBatch#getInts(int)}
+	 */
+	INT,
+	/**
+	 * Read via {@link ColumnBatch#getLongs(int)}
+	 */
+	LONG,
+	/**
+	 * Read via {@link ColumnBatch#getDoubles(int)}
+	 */
+	DOUBLE,
+	/**
+	 * Read via {@link ColumnBatch#getStrings(int)}
+	 */
+	STRING,
+	/**
+	 * Parsed as a date, read as millis since the epoch via
+	 * {@link ColumnBatch#getDates(int)}
+	 */
+	DATE;
+}
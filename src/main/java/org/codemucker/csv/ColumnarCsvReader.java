@@ -0,0 +1,251 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Read only the given fields of each record, straight into primitive column
+ * arrays. Use:
+ *
+ * <pre>
+ * ColumnarCsvReader r = ColumnarCsvReader.with()
+ * 	.settings(CsvReader.with().input(...))
+ * 	.intColumn(3)
+ * 	.doubleColumn(7)
+ * 	.build();
+ *
+ * ColumnBatch batch = r.newBatch(4096);
+ * while (r.readBatch(batch) > 0) {
+ * 	int[] col0 = batch.getInts(0);
+ * 	double[] col1 = batch.getDoubles(1);
+ * 	...
+ * }
+ * </pre>
+ *
+ * <p>
+ * Columns are numbered in the order declared. Fields which aren't asked for
+ * are still parsed, as the separators and escapes in them have to be found,
+ * but their values are never copied out of the input. The fields asked for
+ * are converted in place using the serialiser's rules, without creating a
+ * string per field, apart from string columns.
+ * </p>
+ *
+ * <p>
+ * Empty and missing fields are flagged as null in the batch. A field which
+ * can't be converted fails the read with a {@link CsvInvalidRecordException},
+ * the rows before it are left in the batch.
+ * </p>
+ */
+@NotThreadSafe
+public class ColumnarCsvReader implements Closeable {
+
+	private final CsvParser parser;
+	private final Serialiser serialiser;
+	/**
+	 * Reads the fields of the record just parsed, straight from the parser's
+	 * buffers
+	 */
+	private final SlicedCsvRecord record;
+
+	private final ColumnType[] types;
+	/**
+	 * The field each column is read from
+	 */
+	private final int[] fieldIdxs;
+
+	private int skipLines;
+
+	private ColumnarCsvReader(CsvParser parser, Serialiser serialiser,
+			ColumnType[] types, int[] fieldIdxs, int skipLines) {
+		this.parser = parser;
+		this.serialiser = serialiser;
+		this.types = types;
+		this.fieldIdxs = fieldIdxs;
+		this.skipLines = skipLines;
+
+		int maxFieldIdx = 0;
+		for (int idx : fieldIdxs) {
+			maxFieldIdx = Math.max(maxFieldIdx, idx);
+		}
+		boolean[] keepFields = new boolean[maxFieldIdx + 1];
+		for (int idx : fieldIdxs) {
+			keepFields[idx] = true;
+		}
+		parser.project(keepFields);
+		this.record = (SlicedCsvRecord) parser.newRecord(null, serialiser);
+	}
+
+	/**
+	 * Create a batch to read into, holding up to the given number of rows
+	 */
+	public ColumnBatch newBatch(int capacity) {
+		Preconditions.checkArgument(capacity > 0, "expect capacity > 0");
+		return new ColumnBatch(types, capacity);
+	}
+
+	/**
+	 * Read rows until the batch is full or the input ends
+	 *
+	 * @param batch
+	 *            as returned from {@link #newBatch(int)}
+	 * @return the number of rows read, 0 once all the input has been read
+	 */
+	public int readBatch(ColumnBatch batch) throws CsvException {
+		Preconditions.checkArgument(batch.types == types, "expect a batch created by this reader");
+		batch.clear();
+		while (batch.size < batch.capacity && parser.hasMore) {
+			try {
+				parser.parseRecord(skipLines);
+				skipLines = 0;
+				if (parser.endedEmpty) {
+					// trailing newline, not a row
+					break;
+				}
+				parser.fillRecord(record, true);
+				readRow(batch, batch.size);
+				batch.size++;
+			} finally {
+				parser.resetBuffers();
+			}
+		}
+		return batch.size;
+	}
+
+	private void readRow(ColumnBatch batch, int row) throws CsvInvalidRecordException {
+		final SlicedCsvRecord record = this.record;
+		final Serialiser serialiser = this.serialiser;
+		for (int col = 0; col < types.length; col++) {
+			int fieldIdx = fieldIdxs[col];
+			try {
+				if (types[col] == ColumnType.STRING) {
+					String s = record._readStringOrNull(fieldIdx);
+					((String[]) batch.values[col])[row] = s;
+					batch.nulls[col][row] = s == null;
+					continue;
+				}
+				CharSequence s = record._readCharsOrNull(fieldIdx);
+				boolean isNull = s == null;
+				batch.nulls[col][row] = isNull;
+				switch (types[col]) {
+				case INT:
+					((int[]) batch.values[col])[row] = isNull ? 0 : serialiser.toInt(s);
+					break;
+				case LONG:
+					((long[]) batch.values[col])[row] = isNull ? 0 : serialiser.toLong(s);
+					break;
+				case DOUBLE:
+					((double[]) batch.values[col])[row] = isNull ? 0 : serialiser.toDouble(s);
+					break;
+				case DATE:
+					((long[]) batch.values[col])[row] = isNull ? 0 : serialiser.toDate(s).getTime();
+					break;
+				default:
+					throw new IllegalStateException("Unknown column type " + types[col]);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new CsvInvalidRecordException("Can't read field " + fieldIdx
+						+ " as " + types[col] + ". " + parser.readToMsg(), e);
+			}
+		}
+	}
+
+	/**
+	 * If there may be more rows to read
+	 */
+	public boolean hasMore() {
+		return parser.hasMore;
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder implements IBuilder<ColumnarCsvReader> {
+
+		private CsvReader.Builder settings;
+		private final List<ColumnType> types = new ArrayList<>();
+		private final List<Integer> fieldIdxs = new ArrayList<>();
+		private int skipLines;
+
+		@Override
+		public ColumnarCsvReader build() {
+			Preconditions.checkNotNull(settings, "expect settings with the input to read");
+			Preconditions.checkArgument(!settings.hasHeader(), "can't read a header or require columns, use skipLines() to skip a header");
+			Preconditions.checkArgument(!types.isEmpty(), "expect at least one column");
+			Preconditions.checkArgument(skipLines >= 0, "expect skip lines >= 0");
+			int[] idxs = new int[fieldIdxs.size()];
+			for (int i = 0; i < idxs.length; i++) {
+				idxs[i] = fieldIdxs.get(i);
+			}
+			return new ColumnarCsvReader(settings.buildParser(true),
+					settings.getSerialiser(),
+					types.toArray(new ColumnType[types.size()]), idxs, skipLines);
+		}
+
+		/**
+		 * The input to read, along with the separator, escape and comment
+		 * chars, buffer sizes and the serialiser. Whether it's threadsafe or
+		 * reuses records is ignored. A header can't be read, see
+		 * {@link #skipLines(int)}
+		 */
+		public Builder settings(CsvReader.Builder settings) {
+			this.settings = settings;
+			return this;
+		}
+
+		/**
+		 * Number of lines to skip before the first row, such as a header
+		 */
+		public Builder skipLines(int numLines) {
+			this.skipLines = numLines;
+			return this;
+		}
+
+		/**
+		 * Add a column read from the given field
+		 *
+		 * @param fieldIdx
+		 *            index of the field in each record, from 0
+		 */
+		public Builder column(int fieldIdx, ColumnType type) {
+			Preconditions.checkArgument(fieldIdx >= 0, "expect field index >= 0");
+			Preconditions.checkNotNull(type, "expect column type");
+			fieldIdxs.add(fieldIdx);
+			types.add(type);
+			return this;
+		}
+
+		public Builder intColumn(int fieldIdx) {
+			return column(fieldIdx, ColumnType.INT);
+		}
+
+		public Builder longColumn(int fieldIdx) {
+			return column(fieldIdx, ColumnType.LONG);
+		}
+
+		public Builder doubleColumn(int fieldIdx) {
+			return column(fieldIdx, ColumnType.DOUBLE);
+		}
+
+		public Builder stringColumn(int fieldIdx) {
+			return column(fieldIdx, ColumnType.STRING);
+		}
+
+		public Builder dateColumn(int fieldIdx) {
+			return column(fieldIdx, ColumnType.DATE);
+		}
+	}
+}
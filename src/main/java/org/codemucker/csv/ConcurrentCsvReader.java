@@ -0,0 +1,433 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Read records from many threads at once without locking. Use:
+ *
+ * <pre>
+ * ConcurrentCsvReader r = ConcurrentCsvReader.with().settings(CsvReader.with().input(...)).build();
+ *
+ * // on each worker thread
+ * while (r.hasMore()) {
+ * 	ICsvRecord rec = r.readNextRecord();
+ * 	...
+ * }
+ * </pre>
+ *
+ * <p>
+ * A single background thread parses the input into batches of records and
+ * publishes them into a lock-free ring (see {@link BatchRing}). Each reading
+ * thread claims a whole batch at a time, then reads records from it without
+ * touching anything shared, so threads only compete once per batch instead of
+ * taking a lock once per record as {@link CsvReader} does in threadsafe mode.
+ * Workers can also take whole batches via {@link #nextBatch()}.
+ * </p>
+ *
+ * <p>
+ * Records are handed out in file order per batch, but which thread gets which
+ * batch is up to whichever gets there first. Records are never reused. How
+ * long threads spent waiting on each other is available from
+ * {@link #getStats()}
+ * </p>
+ */
+@ThreadSafe
+public class ConcurrentCsvReader implements Closeable, ICsvReader {
+
+	private static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactoryBuilder()
+			.setDaemon(true).setNameFormat("csv-dispatch-%d").build();
+
+	/**
+	 * Busy spins before yielding, then yields before parking, while waiting
+	 * on the ring
+	 */
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 200;
+	private static final long PARK_NANOS = 50 * 1000;
+
+	private final CsvParser parser;
+	private final Serialiser serialiser;
+	private final int batchSize;
+	private final BatchRing<List<ICsvRecord>> ring;
+	private final ThreadFactory threadFactory;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+	private volatile boolean closed;
+	/**
+	 * Set once the last batch has been published
+	 */
+	private volatile boolean done;
+	private volatile CsvException error;
+
+	/**
+	 * The batch each reading thread is working through
+	 */
+	private final ThreadLocal<Cursor> cursors = new ThreadLocal<Cursor>() {
+		@Override
+		protected Cursor initialValue() {
+			return new Cursor();
+		}
+	};
+
+	private final LongAdder batchesPublished = new LongAdder();
+	private final LongAdder recordsPublished = new LongAdder();
+	private final LongAdder batchesClaimed = new LongAdder();
+	private final LongAdder parserWaitNanos = new LongAdder();
+	private final LongAdder readerWaitNanos = new LongAdder();
+
+	private ConcurrentCsvReader(CsvParser parser, Serialiser serialiser,
+			int batchSize, int ringSize, ThreadFactory threadFactory) {
+		this.parser = parser;
+		this.serialiser = serialiser;
+		this.batchSize = batchSize;
+		this.ring = new BatchRing<>(ringSize);
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Return the next record from this thread's current batch, claiming the
+	 * next batch if need be
+	 */
+	@Override
+	public ICsvRecord readNextRecord() throws CsvException {
+		Cursor cursor = cursors.get();
+		if (!hasMore(cursor)) {
+			throw new CsvEndOfStreamException("No more records");
+		}
+		if (cursor.batch == null) {
+			throw error;
+		}
+		return cursor.batch.get(cursor.pos++);
+	}
+
+	/**
+	 * Skipping lines isn't supported as lines are parsed on another thread
+	 */
+	@Override
+	public ICsvRecord readNextRecord(int skipLines, int skipRecords)
+			throws CsvException {
+		Preconditions.checkArgument(skipLines == 0,
+				"can't skip lines when reading concurrently, skip records instead");
+		for (int i = 0; i < skipRecords; i++) {
+			readNextRecord();
+		}
+		return readNextRecord();
+	}
+
+	@Override
+	public ICsvRecord readNextRecord(int skipNumLines) throws CsvException {
+		return readNextRecord(skipNumLines, 0);
+	}
+
+	/**
+	 * Copies in records already parsed on the parsing thread, claiming batches as needed
+	 */
+	@Override
+	public int readBatch(RecordBatch batch, int maxRecords) throws CsvException {
+		Preconditions.checkArgument(maxRecords > 0, "expect max records > 0");
+		batch.reset(this, serialiser);
+		while (batch.size() < maxRecords && hasMore()) {
+			batch.add(readNextRecord());
+		}
+		return batch.size();
+	}
+
+	/**
+	 * Blocks until this thread has a record to read or all the input has been
+	 * read. Another thread may take the remaining records in between, so only
+	 * the thread calling this can rely on the answer
+	 */
+	@Override
+	public boolean hasMore() {
+		return hasMore(cursors.get());
+	}
+
+	private boolean hasMore(Cursor cursor) {
+		if (cursor.batch != null && cursor.pos < cursor.batch.size()) {
+			return true;
+		}
+		cursor.batch = nextBatch();
+		cursor.pos = 0;
+		return cursor.batch != null || error != null;
+	}
+
+	/**
+	 * Claim the next whole batch of records, blocking until one has been
+	 * parsed. The batch is the caller's to keep.
+	 *
+	 * @return the batch, or null if all the input has been read or there was
+	 *         an error
+	 */
+	public List<ICsvRecord> nextBatch() {
+		start();
+		long waitStart = 0;
+		int tries = 0;
+		while (true) {
+			List<ICsvRecord> batch = ring.poll();
+			if (batch != null) {
+				batchesClaimed.increment();
+				if (waitStart != 0) {
+					readerWaitNanos.add(System.nanoTime() - waitStart);
+				}
+				return batch;
+			}
+			if (done) {
+				// may have been published just before done was set
+				batch = ring.poll();
+				if (batch != null) {
+					batchesClaimed.increment();
+					return batch;
+				}
+				return null;
+			}
+			if (waitStart == 0) {
+				waitStart = System.nanoTime();
+			}
+			idle(tries++);
+		}
+	}
+
+	private static void idle(int tries) {
+		if (tries < SPIN_TRIES) {
+			// spin
+		} else if (tries < YIELD_TRIES) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	private void start() {
+		if (!started.get() && started.compareAndSet(false, true)) {
+			threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					parseBatches();
+				}
+			}).start();
+		}
+	}
+
+	private void parseBatches() {
+		try (CsvParser parser = this.parser) {
+			List<ICsvRecord> records = new ArrayList<>(batchSize);
+			while (parser.hasMore && !closed) {
+				try {
+					parser.parseRecord(0);
+					ICsvRecord record = parser.newRecord(this, serialiser);
+					parser.fillRecord(record, false);
+					records.add(record);
+				} finally {
+					parser.resetBuffers();
+				}
+				if (records.size() == batchSize) {
+					publish(records);
+					records = new ArrayList<>(batchSize);
+				}
+			}
+			if (!records.isEmpty()) {
+				publish(records);
+			}
+		} catch (CsvException e) {
+			error = e;
+		} catch (IOException | RuntimeException e) {
+			error = new CsvException("Error reading csv input", e);
+		} finally {
+			done = true;
+		}
+	}
+
+	private void publish(List<ICsvRecord> records) {
+		long waitStart = 0;
+		int tries = 0;
+		while (!ring.offer(records)) {
+			if (closed) {
+				return;
+			}
+			if (waitStart == 0) {
+				waitStart = System.nanoTime();
+			}
+			idle(tries++);
+		}
+		if (waitStart != 0) {
+			parserWaitNanos.add(System.nanoTime() - waitStart);
+		}
+		batchesPublished.increment();
+		recordsPublished.add(records.size());
+	}
+
+	/**
+	 * Stop parsing. Any records not yet read are dropped
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (started.compareAndSet(false, true)) {
+			// never started, so nothing else will close it
+			done = true;
+			parser.close();
+		}
+	}
+
+	/**
+	 * How the parsing and reading threads have been getting on so far
+	 */
+	public Stats getStats() {
+		return new Stats(batchesPublished.sum(), recordsPublished.sum(),
+				batchesClaimed.sum(), parserWaitNanos.sum(),
+				readerWaitNanos.sum(), ring.getContendedCount());
+	}
+
+	/**
+	 * Where this thread is up to in its batch
+	 */
+	private static class Cursor {
+		List<ICsvRecord> batch;
+		int pos;
+	}
+
+	/**
+	 * Snapshot of the counters. There are no locks, so rather than lock hold
+	 * and wait times this has the time spent waiting on the ring, and how
+	 * often threads raced each other to claim a slot in it
+	 */
+	public static class Stats {
+		private final long batchesPublished;
+		private final long recordsPublished;
+		private final long batchesClaimed;
+		private final long parserWaitNanos;
+		private final long readerWaitNanos;
+		private final long contendedClaims;
+
+		Stats(long batchesPublished, long recordsPublished,
+				long batchesClaimed, long parserWaitNanos,
+				long readerWaitNanos, long contendedClaims) {
+			this.batchesPublished = batchesPublished;
+			this.recordsPublished = recordsPublished;
+			this.batchesClaimed = batchesClaimed;
+			this.parserWaitNanos = parserWaitNanos;
+			this.readerWaitNanos = readerWaitNanos;
+			this.contendedClaims = contendedClaims;
+		}
+
+		public long getBatchesPublished() {
+			return batchesPublished;
+		}
+
+		public long getRecordsPublished() {
+			return recordsPublished;
+		}
+
+		public long getBatchesClaimed() {
+			return batchesClaimed;
+		}
+
+		/**
+		 * Total time the parser spent waiting for the readers to make room in
+		 * the ring
+		 */
+		public long getParserWaitNanos() {
+			return parserWaitNanos;
+		}
+
+		/**
+		 * Total time, across all the reading threads, spent waiting for the
+		 * parser to publish a batch
+		 */
+		public long getReaderWaitNanos() {
+			return readerWaitNanos;
+		}
+
+		/**
+		 * Number of times a thread lost the race to claim a slot in the ring
+		 * and had to retry
+		 */
+		public long getContendedClaims() {
+			return contendedClaims;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats [batchesPublished=" + batchesPublished
+					+ ", recordsPublished=" + recordsPublished
+					+ ", batchesClaimed=" + batchesClaimed
+					+ ", parserWaitNanos=" + parserWaitNanos
+					+ ", readerWaitNanos=" + readerWaitNanos
+					+ ", contendedClaims=" + contendedClaims + "]";
+		}
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder implements IBuilder<ConcurrentCsvReader> {
+
+		private CsvReader.Builder settings;
+		private int batchSize = 256;
+		private int ringSize = 64;
+		private ThreadFactory threadFactory = DEFAULT_THREAD_FACTORY;
+
+		@Override
+		public ConcurrentCsvReader build() {
+			Preconditions.checkNotNull(settings, "expect settings with the input to read");
+			Preconditions.checkArgument(!settings.hasHeader(), "can't read a header or require columns concurrently");
+			Preconditions.checkArgument(batchSize > 0, "expect batch size > 0");
+			Preconditions.checkArgument(ringSize > 0 && Integer.bitCount(ringSize) == 1,
+					"expect ring size to be a power of two");
+			return new ConcurrentCsvReader(settings.buildParser(),
+					settings.getSerialiser(), batchSize, ringSize, threadFactory);
+		}
+
+		/**
+		 * The input to read, along with the separator, escape and comment
+		 * chars, buffer sizes and the serialiser. Whether it's threadsafe or
+		 * reuses records is ignored. A header can't be read
+		 */
+		public Builder settings(CsvReader.Builder settings) {
+			this.settings = settings;
+			return this;
+		}
+
+		/**
+		 * Number of records claimed by a reading thread at a time. Default is
+		 * 256
+		 */
+		public Builder batchSize(int numRecords) {
+			this.batchSize = numRecords;
+			return this;
+		}
+
+		/**
+		 * Number of batches the parser can get ahead of the readers, a power
+		 * of two. Default is 64
+		 */
+		public Builder ringSize(int numBatches) {
+			this.ringSize = numBatches;
+			return this;
+		}
+
+		/**
+		 * Creates the parsing thread. Default creates daemon threads
+		 */
+		public Builder threadFactory(ThreadFactory threadFactory) {
+			this.threadFactory = Preconditions.checkNotNull(threadFactory, "expect thread factory");
+			return this;
+		}
+	}
+}
@@ -0,0 +1,1031 @@
+package org.codemucker.csv;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Maps records to objects and back. Use:
+ *
+ * <pre>
+ * CsvBinder&lt;Trade&gt; binder = CsvBinder.with(Trade.class).header(reader.getHeader()).build();
+ * while (reader.hasMore()) {
+ * 	Trade trade = binder.read(reader.readNextRecord());
+ * }
+ * ...
+ * binder.write(trade, writer);
+ * </pre>
+ *
+ * <p>
+ * The class is looked over once, when building. Each property is then read
+ * with the typed read for its type, so ints, longs and doubles are never
+ * boxed. Public constructors, setters and getters are called through lambdas
+ * generated by {@link LambdaMetafactory}, which inline like hand written
+ * code. Anything else is reached through a method handle. Nothing reflective
+ * happens per record.
+ * </p>
+ *
+ * <p>
+ * A POJO needs a no arg constructor. Its properties are its non static, non
+ * transient fields, inherited ones first, in the order declared. Each is set
+ * via its setter and read via its getter if it has public ones, else directly.
+ * A java record is created through its canonical constructor, its properties
+ * are its components.
+ * </p>
+ *
+ * <p>
+ * Supported property types are the primitives and their boxes, String, Date,
+ * DateTime, byte[] and enums, by name. An empty field fails a primitive
+ * property, anything else is set to null
+ * </p>
+ */
+@ThreadSafe
+public class CsvBinder<T> {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/**
+	 * Only there when running on a jdk with records
+	 */
+	private static final Method IS_RECORD = methodOrNull(Class.class, "isRecord");
+	private static final Method GET_RECORD_COMPONENTS = methodOrNull(Class.class, "getRecordComponents");
+
+	private final Property[] properties;
+	/**
+	 * The column each property is read from
+	 */
+	private final int[] columns;
+	/**
+	 * Creates a POJO, or null if binding a record
+	 */
+	private final Supplier<Object> factory;
+	/**
+	 * Creates a record from all its components as an array, or null if
+	 * binding a POJO
+	 */
+	private final MethodHandle recordConstructor;
+	/**
+	 * Values for the record components not bound
+	 */
+	private final Object[] defaultArgs;
+	/**
+	 * The properties as columns, for writing whole rows
+	 */
+	private final CsvSchema<T> schema;
+
+	private CsvBinder(Property[] properties, int[] columns,
+			Supplier<Object> factory, MethodHandle recordConstructor,
+			Object[] defaultArgs) {
+		this.properties = properties;
+		this.columns = columns;
+		this.factory = factory;
+		this.recordConstructor = recordConstructor;
+		this.defaultArgs = defaultArgs;
+		this.schema = toSchema(properties);
+	}
+
+	/**
+	 * Create a new object from the record
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a field can't be converted to its property's type
+	 */
+	@SuppressWarnings("unchecked")
+	public T read(ICsvRecord record) {
+		if (factory != null) {
+			Object target = factory.get();
+			readInto(record, target);
+			return (T) target;
+		}
+		Object[] args = defaultArgs.clone();
+		for (int i = 0; i < properties.length; i++) {
+			Property property = properties[i];
+			args[property.argIdx] = property.readValue(record, columns[i]);
+		}
+		try {
+			return (T) (Object) recordConstructor.invokeExact(args);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * Set the properties of an existing object from the record. Only for
+	 * POJOs, as records can't be changed
+	 */
+	public void read(ICsvRecord record, T target) {
+		Preconditions.checkState(factory != null, "can't set the properties of a record, use read(record)");
+		readInto(record, target);
+	}
+
+	private void readInto(ICsvRecord record, Object target) {
+		for (int i = 0; i < properties.length; i++) {
+			properties[i].read(record, columns[i], target);
+		}
+	}
+
+	/**
+	 * Write the object's properties as a record, holding the writer's lock
+	 * while doing so. A {@link CsvWriter} writes the whole record in one call,
+	 * see {@link CsvWriter#writeRow(Object, CsvSchema)}
+	 */
+	public void write(T obj, ICsvWriter writer) throws CsvWriteException {
+		if (writer instanceof CsvWriter) {
+			((CsvWriter) writer).writeRow(obj, schema);
+			return;
+		}
+		writer.lock();
+		try {
+			writer.beginRecord();
+			for (Property property : properties) {
+				property.write(obj, writer);
+			}
+			writer.endRecord();
+		} finally {
+			writer.unlock();
+		}
+	}
+
+	/**
+	 * Write the property names as a header record
+	 */
+	public void writeHeader(ICsvWriter writer) throws CsvWriteException {
+		writer.lock();
+		try {
+			writer.beginRecord();
+			for (Property property : properties) {
+				writer.write(property.name);
+			}
+			writer.endRecord();
+		} finally {
+			writer.unlock();
+		}
+	}
+
+	/**
+	 * The properties bound as columns, in the order they are written
+	 */
+	public CsvSchema<T> getSchema() {
+		return schema;
+	}
+
+	/**
+	 * The properties bound, in the order they are written
+	 */
+	public List<String> getPropertyNames() {
+		List<String> names = new ArrayList<>(properties.length);
+		for (Property property : properties) {
+			names.add(property.name);
+		}
+		return names;
+	}
+
+	public static <T> Builder<T> with(Class<T> type) {
+		return new Builder<T>(type);
+	}
+
+	@NotThreadSafe
+	public static class Builder<T> implements IBuilder<CsvBinder<T>> {
+
+		private final Class<T> type;
+		private List<String> propertyNames;
+		private CsvHeader header;
+
+		Builder(Class<T> type) {
+			this.type = Preconditions.checkNotNull(type, "expect type");
+		}
+
+		/**
+		 * @throws IllegalArgumentException
+		 *             if the type can't be bound
+		 */
+		@Override
+		public CsvBinder<T> build() {
+			Preconditions.checkArgument(!type.isInterface() && !Modifier.isAbstract(type.getModifiers()),
+					"expect a concrete class, not %s", type.getName());
+			boolean isRecord = isRecord(type);
+			List<Property> all = isRecord ? recordProperties(type) : pojoProperties(type);
+
+			List<Property> bound = select(type, all, propertyNames);
+			int[] columns = new int[bound.size()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = header == null ? i : header.column(bound.get(i).name).getIndex();
+			}
+			Property[] properties = bound.toArray(new Property[bound.size()]);
+			if (isRecord) {
+				Object[] defaultArgs = new Object[all.size()];
+				Class<?>[] argTypes = new Class<?>[all.size()];
+				for (int i = 0; i < argTypes.length; i++) {
+					argTypes[i] = all.get(i).type;
+					if (argTypes[i].isPrimitive()) {
+						defaultArgs[i] = Array.get(Array.newInstance(argTypes[i], 1), 0);
+					}
+				}
+				MethodHandle ctor = unreflect(constructor(type, argTypes))
+						.asSpreader(Object[].class, argTypes.length)
+						.asType(methodType(Object.class, Object[].class));
+				return new CsvBinder<T>(properties, columns, null, ctor, defaultArgs);
+			}
+			for (Property property : properties) {
+				Preconditions.checkArgument(property.canSet(), "can't set final field %s of %s", property.name, type.getName());
+			}
+			return new CsvBinder<T>(properties, columns, factory(type), null, null);
+		}
+
+		/**
+		 * Only bind the given properties, in the given order. Default is all
+		 * of them
+		 */
+		public Builder<T> properties(String... names) {
+			this.propertyNames = Arrays.asList(names);
+			return this;
+		}
+
+		/**
+		 * Read each property from the column of the same name, rather than
+		 * by position
+		 */
+		public Builder<T> header(CsvHeader header) {
+			this.header = header;
+			return this;
+		}
+	}
+
+	/**
+	 * The columns for the properties of the type, which needn't be settable
+	 * or creatable as only writing
+	 */
+	static <T> CsvSchema<T> schemaFor(Class<T> type, List<String> propertyNames) {
+		List<Property> all = isRecord(type) ? recordProperties(type) : pojoProperties(type);
+		List<Property> bound = select(type, all, propertyNames);
+		return toSchema(bound.toArray(new Property[bound.size()]));
+	}
+
+	private static <T> CsvSchema<T> toSchema(Property[] properties) {
+		CsvSchema.Builder<T> schema = CsvSchema.with();
+		for (Property property : properties) {
+			property.addTo(schema);
+		}
+		return schema.build();
+	}
+
+	/**
+	 * The properties with the given names, in the order given, or all of them
+	 * if no names
+	 */
+	private static List<Property> select(Class<?> type, List<Property> all, List<String> names) {
+		if (names == null) {
+			return all;
+		}
+		List<Property> selected = new ArrayList<>();
+		for (String name : names) {
+			selected.add(find(type, all, name));
+		}
+		return selected;
+	}
+
+	private static Property find(Class<?> type, List<Property> all, String name) {
+		for (Property property : all) {
+			if (property.name.equals(name)) {
+				return property;
+			}
+		}
+		throw new IllegalArgumentException("No property '" + name + "' in " + type.getName());
+	}
+
+	private static List<Property> pojoProperties(Class<?> type) {
+		List<Class<?>> hierarchy = new ArrayList<>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			hierarchy.add(0, c);
+		}
+		List<Property> properties = new ArrayList<>();
+		for (Class<?> c : hierarchy) {
+			for (Field field : c.getDeclaredFields()) {
+				int mod = field.getModifiers();
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || field.isSynthetic()) {
+					continue;
+				}
+				String name = field.getName();
+				Class<?> fieldType = field.getType();
+				Member setter = publicMethodOrNull(type, "set" + capitalise(name), fieldType);
+				if (setter == null && !Modifier.isFinal(mod)) {
+					setter = field;
+				}
+				Member getter = publicMethodOrNull(type, "get" + capitalise(name));
+				if (getter == null && (fieldType == boolean.class || fieldType == Boolean.class)) {
+					getter = publicMethodOrNull(type, "is" + capitalise(name));
+				}
+				if (getter == null || ((Method) getter).getReturnType() != fieldType) {
+					getter = field;
+				}
+				properties.add(newProperty(name, fieldType, properties.size(), setter, getter));
+			}
+		}
+		return properties;
+	}
+
+	private static List<Property> recordProperties(Class<?> type) {
+		List<Property> properties = new ArrayList<>();
+		try {
+			for (Object component : (Object[]) GET_RECORD_COMPONENTS.invoke(type)) {
+				Class<?> c = component.getClass();
+				String name = (String) c.getMethod("getName").invoke(component);
+				Class<?> componentType = (Class<?>) c.getMethod("getType").invoke(component);
+				Method accessor = (Method) c.getMethod("getAccessor").invoke(component);
+				properties.add(newProperty(name, componentType, properties.size(), null, accessor));
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Can't read the components of " + type.getName(), e);
+		}
+		return properties;
+	}
+
+	private static Property newProperty(String name, Class<?> type, int argIdx,
+			Member setter, Member getter) {
+		if (type == int.class) {
+			return new IntProperty(name, argIdx, setter == null ? null : intSetter(setter), intGetter(getter));
+		}
+		if (type == long.class) {
+			return new LongProperty(name, argIdx, setter == null ? null : longSetter(setter), longGetter(getter));
+		}
+		if (type == double.class) {
+			return new DoubleProperty(name, argIdx, setter == null ? null : doubleSetter(setter), doubleGetter(getter));
+		}
+		Kind kind = Kind.of(type);
+		Preconditions.checkArgument(kind != null, "unsupported type %s of property %s", type.getName(), name);
+		return new ObjectProperty(name, type, argIdx, kind, setter == null ? null : objectSetter(setter, type),
+				objectGetter(getter, type));
+	}
+
+	private static Supplier<Object> factory(Class<?> type) {
+		Constructor<?> ctor = constructor(type);
+		MethodHandle mh = unreflect(ctor);
+		Object lambda = lambdaOrNull(Supplier.class, "get", methodType(Object.class), methodType(type), mh, ctor, type);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle create = mh.asType(methodType(Object.class));
+		return new Supplier<Object>() {
+			@Override
+			public Object get() {
+				try {
+					return (Object) create.invokeExact();
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static ObjIntConsumer<Object> intSetter(Member member) {
+		MethodHandle mh = unreflectSetter(member);
+		Object lambda = lambdaOrNull(ObjIntConsumer.class, "accept", methodType(void.class, Object.class, int.class),
+				methodType(void.class, member.getDeclaringClass(), int.class), mh, member, int.class);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle set = mh.asType(methodType(void.class, Object.class, int.class));
+		return new ObjIntConsumer<Object>() {
+			@Override
+			public void accept(Object target, int val) {
+				try {
+					set.invokeExact(target, val);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static ObjLongConsumer<Object> longSetter(Member member) {
+		MethodHandle mh = unreflectSetter(member);
+		Object lambda = lambdaOrNull(ObjLongConsumer.class, "accept", methodType(void.class, Object.class, long.class),
+				methodType(void.class, member.getDeclaringClass(), long.class), mh, member, long.class);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle set = mh.asType(methodType(void.class, Object.class, long.class));
+		return new ObjLongConsumer<Object>() {
+			@Override
+			public void accept(Object target, long val) {
+				try {
+					set.invokeExact(target, val);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static ObjDoubleConsumer<Object> doubleSetter(Member member) {
+		MethodHandle mh = unreflectSetter(member);
+		Object lambda = lambdaOrNull(ObjDoubleConsumer.class, "accept", methodType(void.class, Object.class, double.class),
+				methodType(void.class, member.getDeclaringClass(), double.class), mh, member, double.class);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle set = mh.asType(methodType(void.class, Object.class, double.class));
+		return new ObjDoubleConsumer<Object>() {
+			@Override
+			public void accept(Object target, double val) {
+				try {
+					set.invokeExact(target, val);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static BiConsumer<Object, Object> objectSetter(Member member, Class<?> type) {
+		MethodHandle mh = unreflectSetter(member);
+		Object lambda = lambdaOrNull(BiConsumer.class, "accept", methodType(void.class, Object.class, Object.class),
+				methodType(void.class, member.getDeclaringClass(), box(type)), mh, member, type);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle set = mh.asType(methodType(void.class, Object.class, Object.class));
+		return new BiConsumer<Object, Object>() {
+			@Override
+			public void accept(Object target, Object val) {
+				try {
+					set.invokeExact(target, val);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static ToIntFunction<Object> intGetter(Member member) {
+		MethodHandle mh = unreflectGetter(member);
+		Object lambda = lambdaOrNull(ToIntFunction.class, "applyAsInt", methodType(int.class, Object.class),
+				methodType(int.class, member.getDeclaringClass()), mh, member, int.class);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle get = mh.asType(methodType(int.class, Object.class));
+		return new ToIntFunction<Object>() {
+			@Override
+			public int applyAsInt(Object source) {
+				try {
+					return (int) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static ToLongFunction<Object> longGetter(Member member) {
+		MethodHandle mh = unreflectGetter(member);
+		Object lambda = lambdaOrNull(ToLongFunction.class, "applyAsLong", methodType(long.class, Object.class),
+				methodType(long.class, member.getDeclaringClass()), mh, member, long.class);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle get = mh.asType(methodType(long.class, Object.class));
+		return new ToLongFunction<Object>() {
+			@Override
+			public long applyAsLong(Object source) {
+				try {
+					return (long) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static ToDoubleFunction<Object> doubleGetter(Member member) {
+		MethodHandle mh = unreflectGetter(member);
+		Object lambda = lambdaOrNull(ToDoubleFunction.class, "applyAsDouble", methodType(double.class, Object.class),
+				methodType(double.class, member.getDeclaringClass()), mh, member, double.class);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle get = mh.asType(methodType(double.class, Object.class));
+		return new ToDoubleFunction<Object>() {
+			@Override
+			public double applyAsDouble(Object source) {
+				try {
+					return (double) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	private static Function<Object, Object> objectGetter(Member member, Class<?> type) {
+		MethodHandle mh = unreflectGetter(member);
+		Object lambda = lambdaOrNull(Function.class, "apply", methodType(Object.class, Object.class),
+				methodType(box(type), member.getDeclaringClass()), mh, member, type);
+		if (lambda != null) {
+			return cast(lambda);
+		}
+		final MethodHandle get = mh.asType(methodType(Object.class, Object.class));
+		return new Function<Object, Object>() {
+			@Override
+			public Object apply(Object source) {
+				try {
+					return (Object) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw rethrow(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Implement the functional interface with a generated class calling the
+	 * member directly. Only possible for public methods and constructors of
+	 * public classes, as the generated class lives in this package
+	 *
+	 * @return the lambda, or null if the member can't be called this way
+	 */
+	private static Object lambdaOrNull(Class<?> iface, String methodName,
+			MethodType erasedType, MethodType instantiatedType,
+			MethodHandle impl, Member member, Class<?> valueType) {
+		if (member instanceof Field || !isPublic(member.getModifiers(), member.getDeclaringClass())
+				|| !isPublicType(valueType)) {
+			return null;
+		}
+		try {
+			return LambdaMetafactory.metafactory(LOOKUP, methodName, methodType(iface), erasedType, impl,
+					instantiatedType).getTarget().invoke();
+		} catch (Throwable e) {
+			// fall back to calling through the method handle
+			return null;
+		}
+	}
+
+	private static boolean isPublic(int modifiers, Class<?> declaringClass) {
+		return Modifier.isPublic(modifiers) && isPublicType(declaringClass);
+	}
+
+	private static boolean isPublicType(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+			if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static MethodHandle unreflect(Constructor<?> ctor) {
+		try {
+			return LOOKUP.unreflectConstructor(accessible(ctor));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Can't call " + ctor, e);
+		}
+	}
+
+	private static MethodHandle unreflectSetter(Member member) {
+		try {
+			if (member instanceof Field) {
+				return LOOKUP.unreflectSetter(accessible((Field) member));
+			}
+			return LOOKUP.unreflect(accessible((Method) member));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Can't set via " + member, e);
+		}
+	}
+
+	private static MethodHandle unreflectGetter(Member member) {
+		try {
+			if (member instanceof Field) {
+				return LOOKUP.unreflectGetter(accessible((Field) member));
+			}
+			return LOOKUP.unreflect(accessible((Method) member));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Can't get via " + member, e);
+		}
+	}
+
+	private static <A extends AccessibleObject & Member> A accessible(A member) {
+		if (!isPublic(member.getModifiers(), member.getDeclaringClass())) {
+			member.setAccessible(true);
+		}
+		return member;
+	}
+
+	private static Constructor<?> constructor(Class<?> type, Class<?>... argTypes) {
+		try {
+			return type.getDeclaredConstructor(argTypes);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Expect " + type.getName() + " to have a constructor taking "
+					+ Arrays.toString(argTypes), e);
+		}
+	}
+
+	private static Method publicMethodOrNull(Class<?> type, String name, Class<?>... argTypes) {
+		try {
+			return type.getMethod(name, argTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Method methodOrNull(Class<?> type, String name) {
+		try {
+			return type.getMethod(name);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static boolean isRecord(Class<?> type) {
+		if (IS_RECORD == null) {
+			return false;
+		}
+		try {
+			return (Boolean) IS_RECORD.invoke(type);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	private static String capitalise(String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private static Class<?> box(Class<?> type) {
+		return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <F> F cast(Object lambda) {
+		return (F) lambda;
+	}
+
+	private static RuntimeException rethrow(Throwable e) {
+		if (e instanceof RuntimeException) {
+			return (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new IllegalStateException(e);
+	}
+
+	/**
+	 * Reads and writes one property
+	 */
+	private abstract static class Property {
+		final String name;
+		final Class<?> type;
+		/**
+		 * Position of the property in a record's constructor
+		 */
+		final int argIdx;
+
+		Property(String name, Class<?> type, int argIdx) {
+			this.name = name;
+			this.type = type;
+			this.argIdx = argIdx;
+		}
+
+		abstract boolean canSet();
+
+		abstract void read(ICsvRecord record, int idx, Object target);
+
+		abstract Object readValue(ICsvRecord record, int idx);
+
+		abstract void write(Object source, ICsvWriter writer) throws CsvWriteException;
+
+		abstract void addTo(CsvSchema.Builder<?> schema);
+	}
+
+	private static class IntProperty extends Property {
+		private final ObjIntConsumer<Object> setter;
+		private final ToIntFunction<Object> getter;
+
+		IntProperty(String name, int argIdx, ObjIntConsumer<Object> setter, ToIntFunction<Object> getter) {
+			super(name, int.class, argIdx);
+			this.setter = setter;
+			this.getter = getter;
+		}
+
+		@Override
+		boolean canSet() {
+			return setter != null;
+		}
+
+		@Override
+		void read(ICsvRecord record, int idx, Object target) {
+			setter.accept(target, record.readInt(idx));
+		}
+
+		@Override
+		Object readValue(ICsvRecord record, int idx) {
+			return Integer.valueOf(record.readInt(idx));
+		}
+
+		@Override
+		void write(Object source, ICsvWriter writer) throws CsvWriteException {
+			writer.write(getter.applyAsInt(source));
+		}
+
+		@Override
+		void addTo(CsvSchema.Builder<?> schema) {
+			schema.intColumn(name, getter);
+		}
+	}
+
+	private static class LongProperty extends Property {
+		private final ObjLongConsumer<Object> setter;
+		private final ToLongFunction<Object> getter;
+
+		LongProperty(String name, int argIdx, ObjLongConsumer<Object> setter, ToLongFunction<Object> getter) {
+			super(name, long.class, argIdx);
+			this.setter = setter;
+			this.getter = getter;
+		}
+
+		@Override
+		boolean canSet() {
+			return setter != null;
+		}
+
+		@Override
+		void read(ICsvRecord record, int idx, Object target) {
+			setter.accept(target, record.readLong(idx));
+		}
+
+		@Override
+		Object readValue(ICsvRecord record, int idx) {
+			return Long.valueOf(record.readLong(idx));
+		}
+
+		@Override
+		void write(Object source, ICsvWriter writer) throws CsvWriteException {
+			writer.write(getter.applyAsLong(source));
+		}
+
+		@Override
+		void addTo(CsvSchema.Builder<?> schema) {
+			schema.longColumn(name, getter);
+		}
+	}
+
+	private static class DoubleProperty extends Property {
+		private final ObjDoubleConsumer<Object> setter;
+		private final ToDoubleFunction<Object> getter;
+
+		DoubleProperty(String name, int argIdx, ObjDoubleConsumer<Object> setter, ToDoubleFunction<Object> getter) {
+			super(name, double.class, argIdx);
+			this.setter = setter;
+			this.getter = getter;
+		}
+
+		@Override
+		boolean canSet() {
+			return setter != null;
+		}
+
+		@Override
+		void read(ICsvRecord record, int idx, Object target) {
+			setter.accept(target, record.readDouble(idx));
+		}
+
+		@Override
+		Object readValue(ICsvRecord record, int idx) {
+			return Double.valueOf(record.readDouble(idx));
+		}
+
+		@Override
+		void write(Object source, ICsvWriter writer) throws CsvWriteException {
+			writer.write(getter.applyAsDouble(source));
+		}
+
+		@Override
+		void addTo(CsvSchema.Builder<?> schema) {
+			schema.doubleColumn(name, getter);
+		}
+	}
+
+	/**
+	 * The types other than int, long and double, which are boxed on the way
+	 * through. Mostly cached boxes or objects anyway
+	 */
+	private enum Kind {
+		BOOL, BOOL_OBJ, FLOAT, FLOAT_OBJ, SHORT, SHORT_OBJ, BYTE, BYTE_OBJ, CHAR, CHAR_OBJ,
+		INT_OBJ, LONG_OBJ, DOUBLE_OBJ, STRING, DATE, DATE_TIME, BYTES, ENUM;
+
+		static Kind of(Class<?> type) {
+			if (type.isEnum()) {
+				return ENUM;
+			}
+			return KINDS.get(type);
+		}
+
+		private static final Map<Class<?>, Kind> KINDS = new HashMap<>();
+
+		static {
+			KINDS.put(boolean.class, BOOL);
+			KINDS.put(Boolean.class, BOOL_OBJ);
+			KINDS.put(float.class, FLOAT);
+			KINDS.put(Float.class, FLOAT_OBJ);
+			KINDS.put(short.class, SHORT);
+			KINDS.put(Short.class, SHORT_OBJ);
+			KINDS.put(byte.class, BYTE);
+			KINDS.put(Byte.class, BYTE_OBJ);
+			KINDS.put(char.class, CHAR);
+			KINDS.put(Character.class, CHAR_OBJ);
+			KINDS.put(Integer.class, INT_OBJ);
+			KINDS.put(Long.class, LONG_OBJ);
+			KINDS.put(Double.class, DOUBLE_OBJ);
+			KINDS.put(String.class, STRING);
+			KINDS.put(Date.class, DATE);
+			KINDS.put(DateTime.class, DATE_TIME);
+			KINDS.put(byte[].class, BYTES);
+		}
+	}
+
+	private static class ObjectProperty extends Property {
+		private final Kind kind;
+		private final BiConsumer<Object, Object> setter;
+		private final Function<Object, Object> getter;
+		/**
+		 * By name, if an enum
+		 */
+		private final Map<String, Object> enumValues;
+
+		ObjectProperty(String name, Class<?> type, int argIdx, Kind kind,
+				BiConsumer<Object, Object> setter, Function<Object, Object> getter) {
+			super(name, type, argIdx);
+			this.kind = kind;
+			this.setter = setter;
+			this.getter = getter;
+			if (kind == Kind.ENUM) {
+				enumValues = new HashMap<>();
+				for (Object val : type.getEnumConstants()) {
+					enumValues.put(((Enum<?>) val).name(), val);
+				}
+			} else {
+				enumValues = null;
+			}
+		}
+
+		@Override
+		boolean canSet() {
+			return setter != null;
+		}
+
+		@Override
+		void read(ICsvRecord record, int idx, Object target) {
+			setter.accept(target, readValue(record, idx));
+		}
+
+		@Override
+		Object readValue(ICsvRecord record, int idx) {
+			switch (kind) {
+			case BOOL:
+				return record.readBool(idx);
+			case BOOL_OBJ:
+				return record.readBoolOrNull(idx);
+			case FLOAT:
+				return record.readFloat(idx);
+			case FLOAT_OBJ:
+				return record.readFloatOrNull(idx);
+			case SHORT:
+				return record.readShort(idx);
+			case SHORT_OBJ:
+				return record.readShortOrNull(idx);
+			case BYTE:
+				return record.readByte(idx);
+			case BYTE_OBJ:
+				return record.readByteOrNull(idx);
+			case CHAR:
+				return record.readChar(idx);
+			case CHAR_OBJ:
+				return record.readCharOrNull(idx);
+			case INT_OBJ:
+				return record.readIntOrNull(idx);
+			case LONG_OBJ:
+				return record.readLongOrNull(idx);
+			case DOUBLE_OBJ:
+				return record.readDoubleOrNull(idx);
+			case STRING:
+				return record.readString(idx, null);
+			case DATE:
+				return record.readDate(idx, null);
+			case DATE_TIME:
+				return record.readDateTime(idx, null);
+			case BYTES:
+				return record.readBytes(idx, null);
+			case ENUM:
+				String s = record.readString(idx, null);
+				if (s == null) {
+					return null;
+				}
+				Object val = enumValues.get(s);
+				if (val == null) {
+					throw record.newInvalidValue(idx, s, "one of " + enumValues.keySet());
+				}
+				return val;
+			default:
+				throw new IllegalStateException("unknown kind " + kind);
+			}
+		}
+
+		@Override
+		void write(Object source, ICsvWriter writer) throws CsvWriteException {
+			Object val = getter.apply(source);
+			switch (kind) {
+			case BOOL:
+			case BOOL_OBJ:
+				writer.write((Boolean) val);
+				break;
+			case FLOAT:
+			case FLOAT_OBJ:
+				writer.write((Float) val);
+				break;
+			case SHORT:
+			case SHORT_OBJ:
+				writer.write(val == null ? null : Integer.valueOf((Short) val));
+				break;
+			case BYTE:
+			case BYTE_OBJ:
+				writer.write((Byte) val);
+				break;
+			case CHAR:
+			case CHAR_OBJ:
+				writer.write((Character) val);
+				break;
+			case INT_OBJ:
+				writer.write((Integer) val);
+				break;
+			case LONG_OBJ:
+				writer.write((Long) val);
+				break;
+			case DOUBLE_OBJ:
+				writer.write((Double) val);
+				break;
+			case STRING:
+				writer.write((String) val);
+				break;
+			case DATE:
+				writer.write((Date) val);
+				break;
+			case DATE_TIME:
+				writer.write((DateTime) val);
+				break;
+			case BYTES:
+				writer.write((byte[]) val);
+				break;
+			case ENUM:
+				writer.write(val == null ? null : ((Enum<?>) val).name());
+				break;
+			default:
+				throw new IllegalStateException("unknown kind " + kind);
+			}
+		}
+
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		void addTo(CsvSchema.Builder<?> schema) {
+			if (kind == Kind.STRING) {
+				schema.stringColumn(name, (Function) getter);
+			} else {
+				schema.column(name, getter);
+			}
+		}
+	}
+}
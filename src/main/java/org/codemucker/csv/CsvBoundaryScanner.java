@@ -0,0 +1,198 @@
+package org.codemucker.csv;
+
+import java.nio.ByteBuffer;
+
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds where records start in raw csv bytes without parsing any fields.
+ *
+ * <p>
+ * Only tracks enough state to know if a newline ends a record: whether we are
+ * within an escaped field (where a newline is part of the value) or a comment
+ * line (where it isn't the end of the record if the comment started part way
+ * through one). This follows the same rules as {@link CsvParser}.
+ * </p>
+ *
+ * <p>
+ * As the state at some arbitrary offset can't be known without reading
+ * everything before it, {@link #scan(ByteBuffer, int, int)} works out the end
+ * state for every possible start state at once. Blocks can then be scanned in
+ * parallel and the results chained together afterwards.
+ * </p>
+ */
+@ThreadSafe
+class CsvBoundaryScanner {
+
+	/**
+	 * At the start of a new record. The only state a parser can be started in
+	 */
+	static final int RECORD_START = 0;
+	private static final int FIELD_START = 1;
+	private static final int IN_FIELD = 2;
+	private static final int IN_ESCAPE = 3;
+	/**
+	 * Just read an escape char within an escaped field. Either the closing
+	 * escape, or the first of a doubled one
+	 */
+	private static final int ESCAPE_END = 4;
+	/**
+	 * Comment line at the start of a record
+	 */
+	private static final int RECORD_COMMENT = 5;
+	/**
+	 * Comment line part way through a record, the record carries on after it
+	 */
+	private static final int FIELD_COMMENT = 6;
+
+	static final int NUM_STATES = 7;
+
+	private static final int OTHER = 0;
+	private static final int SEP = 1;
+	private static final int NL = 2;
+	private static final int CR = 3;
+	private static final int ESC = 4;
+	private static final int COMMENT = 5;
+
+	private static final int NUM_CLASSES = 6;
+
+	/**
+	 * Class of each byte value
+	 */
+	private final byte[] classes = new byte[256];
+	/**
+	 * Next state, indexed by state * {@link #NUM_CLASSES} + class
+	 */
+	private final byte[] transitions = new byte[NUM_STATES * NUM_CLASSES];
+
+	CsvBoundaryScanner(char fieldSepChar, char escapeChar, char commentChar,
+			boolean commentsEnabled) {
+		Preconditions.checkArgument(fieldSepChar < 0x80 && escapeChar < 0x80 && commentChar < 0x80,
+				"expect ascii field separator, escape and comment chars");
+		if (commentsEnabled) {
+			classes[commentChar] = COMMENT;
+		}
+		classes[escapeChar] = ESC;
+		classes[fieldSepChar] = SEP;
+		classes[CsvParser.CR] = CR;
+		classes[CsvParser.NL] = NL;
+
+		on(RECORD_START, IN_FIELD, FIELD_START, RECORD_START, RECORD_START, IN_ESCAPE, RECORD_COMMENT);
+		on(FIELD_START, IN_FIELD, FIELD_START, RECORD_START, FIELD_START, IN_ESCAPE, FIELD_COMMENT);
+		on(IN_FIELD, IN_FIELD, FIELD_START, RECORD_START, IN_FIELD, IN_ESCAPE, IN_FIELD);
+		on(IN_ESCAPE, IN_ESCAPE, IN_ESCAPE, IN_ESCAPE, IN_ESCAPE, ESCAPE_END, IN_ESCAPE);
+		on(ESCAPE_END, IN_FIELD, FIELD_START, RECORD_START, ESCAPE_END, IN_ESCAPE, IN_FIELD);
+		on(RECORD_COMMENT, RECORD_COMMENT, RECORD_COMMENT, RECORD_START, RECORD_COMMENT, RECORD_COMMENT, RECORD_COMMENT);
+		on(FIELD_COMMENT, FIELD_COMMENT, FIELD_COMMENT, FIELD_START, FIELD_COMMENT, FIELD_COMMENT, FIELD_COMMENT);
+	}
+
+	private void on(int state, int other, int sep, int nl, int cr, int esc,
+			int comment) {
+		int i = state * NUM_CLASSES;
+		transitions[i + OTHER] = (byte) other;
+		transitions[i + SEP] = (byte) sep;
+		transitions[i + NL] = (byte) nl;
+		transitions[i + CR] = (byte) cr;
+		transitions[i + ESC] = (byte) esc;
+		transitions[i + COMMENT] = (byte) comment;
+	}
+
+	/**
+	 * Scan the given range for every possible start state at once.
+	 *
+	 * <p>
+	 * Rather than tracking all the states for the whole range, states which end
+	 * up the same are merged at each newline. Normally this leaves just two,
+	 * within an escape or not.
+	 * </p>
+	 *
+	 * @return the end state for each start state, indexed by start state
+	 */
+	int[] scan(ByteBuffer buf, int from, int to) {
+		final byte[] classes = this.classes;
+		final byte[] transitions = this.transitions;
+		// current state of each distinct lane, and which lane each start
+		// state ended up in
+		final int[] lanes = new int[NUM_STATES];
+		final int[] laneOf = new int[NUM_STATES];
+		final int[] remap = new int[NUM_STATES];
+		for (int state = 0; state < NUM_STATES; state++) {
+			lanes[state] = state;
+			laneOf[state] = state;
+		}
+		int numLanes = NUM_STATES;
+		for (int i = from; i < to; i++) {
+			int cls = classes[buf.get(i) & 0xFF];
+			for (int lane = 0; lane < numLanes; lane++) {
+				lanes[lane] = transitions[lanes[lane] * NUM_CLASSES + cls];
+			}
+			if (cls == NL && numLanes > 1) {
+				numLanes = mergeLanes(lanes, numLanes, laneOf, remap);
+			}
+		}
+		int[] endStates = new int[NUM_STATES];
+		for (int state = 0; state < NUM_STATES; state++) {
+			endStates[state] = lanes[laneOf[state]];
+		}
+		return endStates;
+	}
+
+	/**
+	 * Scan the given range from a known start state
+	 *
+	 * @return the state at the end of the range
+	 */
+	int scan(ByteBuffer buf, int from, int to, int state) {
+		final byte[] classes = this.classes;
+		final byte[] transitions = this.transitions;
+		for (int i = from; i < to; i++) {
+			state = transitions[state * NUM_CLASSES + classes[buf.get(i) & 0xFF]];
+		}
+		return state;
+	}
+
+	private static int mergeLanes(int[] lanes, int numLanes, int[] laneOf,
+			int[] remap) {
+		int numDistinct = 0;
+		for (int lane = 0; lane < numLanes; lane++) {
+			int same = 0;
+			while (same < numDistinct && lanes[same] != lanes[lane]) {
+				same++;
+			}
+			if (same == numDistinct) {
+				lanes[numDistinct++] = lanes[lane];
+			}
+			remap[lane] = same;
+		}
+		for (int state = 0; state < NUM_STATES; state++) {
+			laneOf[state] = remap[laneOf[state]];
+		}
+		return numDistinct;
+	}
+
+	/**
+	 * Find where the first record starts within the given range. The end of a
+	 * comment line doesn't count, as the parser doesn't treat it as a record
+	 * on its own. Any comment lines go with the record which follows them
+	 *
+	 * @param state
+	 *            the state at the start of the range
+	 * @return the index just after the newline which ends the previous
+	 *         record, or -1 if no record starts in the range
+	 */
+	int findRecordStart(ByteBuffer buf, int from, int to, int state) {
+		final byte[] classes = this.classes;
+		final byte[] transitions = this.transitions;
+		for (int i = from; i < to; i++) {
+			int cls = classes[buf.get(i) & 0xFF];
+			int prevState = state;
+			state = transitions[state * NUM_CLASSES + cls];
+			if (cls == NL && state == RECORD_START && prevState != RECORD_COMMENT) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,296 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codemucker.lang.annotation.ThreadSafe;
+
+/**
+ * The separator, quoting and line endings of a csv input, as worked out from
+ * a sample of its start. Use:
+ *
+ * <pre>
+ * CsvDialect dialect = CsvDialect.sniff(file);
+ * CsvReader r = CsvReader.with().input(file).dialect(dialect).build();
+ * </pre>
+ *
+ * or let the reader sniff its own input with
+ * {@link CsvReader.Builder#sniffDialect(boolean)}.
+ *
+ * <p>
+ * The separator is the candidate which splits the most sample lines into the
+ * same number of fields. Where the sample has no quotes at all the reader
+ * parses records on a quote free fast path, falling back to the full escape
+ * handling for any record which does turn out to have a quote in it.
+ * </p>
+ */
+@ThreadSafe
+public final class CsvDialect {
+
+	/**
+	 * Bytes or chars sampled by default
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+	/**
+	 * Separators tried, in order of preference when equally likely
+	 */
+	private static final char[] SEPARATORS = { ',', '\t', '|', ';' };
+	private static final char QUOTE = '"';
+	private static final char COMMENT = '#';
+
+	/**
+	 * Comma separated, quoted, LF line endings
+	 */
+	public static final CsvDialect DEFAULT = new CsvDialect(',', QUOTE, true, false);
+
+	private final char fieldSep;
+	private final char quote;
+	private final boolean quoted;
+	private final boolean crlf;
+
+	private CsvDialect(char fieldSep, char quote, boolean quoted, boolean crlf) {
+		this.fieldSep = fieldSep;
+		this.quote = quote;
+		this.quoted = quoted;
+		this.crlf = crlf;
+	}
+
+	public char getFieldSeparator() {
+		return fieldSep;
+	}
+
+	public char getQuote() {
+		return quote;
+	}
+
+	/**
+	 * If any quotes were seen. If not the reader can skip escape handling
+	 * until it meets one
+	 */
+	public boolean isQuoted() {
+		return quoted;
+	}
+
+	/**
+	 * Either '\r\n' or '\n'
+	 */
+	public String getLineEnding() {
+		return crlf ? "\r\n" : "\n";
+	}
+
+	/**
+	 * Sniff the first {@link #DEFAULT_SAMPLE_SIZE} bytes of the file
+	 */
+	public static CsvDialect sniff(Path file) throws IOException {
+		try (InputStream is = Files.newInputStream(file)) {
+			return sniff(is, DEFAULT_SAMPLE_SIZE);
+		}
+	}
+
+	/**
+	 * Sniff up to the given number of bytes read from the stream, with the
+	 * default quote and comment chars. The stream is left part read
+	 */
+	static CsvDialect sniff(InputStream is, int sampleSize) throws IOException {
+		return sniff(is, sampleSize, QUOTE, COMMENT);
+	}
+
+	/**
+	 * Sniff up to the given number of bytes read from the stream. The stream
+	 * is left part read
+	 */
+	static CsvDialect sniff(InputStream is, int sampleSize, char quote, char comment) throws IOException {
+		byte[] sample = new byte[sampleSize];
+		int len = 0;
+		int n;
+		while (len < sampleSize && (n = is.read(sample, len, sampleSize - len)) != -1) {
+			len += n;
+		}
+		return sniff(new String(sample, 0, len, StandardCharsets.ISO_8859_1), quote, comment);
+	}
+
+	/**
+	 * Sniff up to the given number of chars read from the reader. The reader
+	 * is left part read
+	 */
+	static CsvDialect sniff(Reader reader, int sampleSize, char quote, char comment) throws IOException {
+		char[] sample = new char[sampleSize];
+		int len = 0;
+		int n;
+		while (len < sampleSize && (n = reader.read(sample, len, sampleSize - len)) != -1) {
+			len += n;
+		}
+		return sniff(new String(sample, 0, len), quote, comment);
+	}
+
+	/**
+	 * Sniff the bytes between the buffer's position and limit, up to
+	 * {@link #DEFAULT_SAMPLE_SIZE} of them. The buffer is left as is
+	 */
+	public static CsvDialect sniff(ByteBuffer buf) {
+		ByteBuffer sample = buf.duplicate();
+		byte[] bytes = new byte[Math.min(sample.remaining(), DEFAULT_SAMPLE_SIZE)];
+		sample.get(bytes);
+		return sniff(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Sniff the given bytes. Only the ascii structural chars matter, so any
+	 * ascii compatible charset reads the same
+	 */
+	public static CsvDialect sniff(byte[] sample, int off, int len) {
+		return sniff(new String(sample, off, len, StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Sniff the sample, taking '"' as the quote char and '#' as the comment
+	 * char
+	 */
+	public static CsvDialect sniff(CharSequence sample) {
+		return sniff(sample, QUOTE, COMMENT);
+	}
+
+	/**
+	 * Sniff the sample, with the quote (escape) and comment chars the input
+	 * is read with. Lines starting with the comment char are left out. Pass
+	 * a comment char of 0 if comments aren't enabled
+	 */
+	public static CsvDialect sniff(CharSequence sample, char quote, char comment) {
+		boolean quoted = indexOf(sample, quote) >= 0;
+		char bestSep = DEFAULT.fieldSep;
+		double bestScore = 0;
+		for (char sep : SEPARATORS) {
+			if (sep == quote || sep == comment) {
+				continue;
+			}
+			double score = score(sample, sep, quote, comment);
+			if (score > bestScore) {
+				bestScore = score;
+				bestSep = sep;
+			}
+		}
+		return new CsvDialect(bestSep, quote, quoted, isCrlf(sample));
+	}
+
+	/**
+	 * How well the separator splits the lines. The share of lines with the
+	 * most common number of fields, plus a little for more fields, or 0 if
+	 * the lines aren't split at all
+	 */
+	private static double score(CharSequence sample, char sep, char quote, char comment) {
+		Map<Integer, Integer> numLinesByFields = new HashMap<>();
+		int numLines = 0;
+		int numFields = 1;
+		boolean inQuote = false;
+		boolean lineStart = true;
+		boolean isComment = false;
+		int len = sample.length();
+		for (int i = 0; i < len; i++) {
+			char c = sample.charAt(i);
+			if (lineStart) {
+				isComment = comment != 0 && c == comment;
+				lineStart = false;
+			}
+			if (c == quote) {
+				inQuote = !inQuote;
+			} else if (inQuote) {
+				// quoted separators and newlines are part of the value
+			} else if (c == sep) {
+				numFields++;
+			} else if (c == '\n') {
+				if (!isComment && i > 0 && !isBlankLineEnd(sample, i)) {
+					Integer count = numLinesByFields.get(numFields);
+					numLinesByFields.put(numFields, count == null ? 1 : count + 1);
+					numLines++;
+				}
+				numFields = 1;
+				lineStart = true;
+			}
+		}
+		if (numLines == 0 && numFields > 1) {
+			// a single partial line, going on the one line seen
+			return 1 + Math.min(numFields, 100) / 1000.0;
+		}
+		int modeFields = 0;
+		int modeCount = 0;
+		for (Map.Entry<Integer, Integer> e : numLinesByFields.entrySet()) {
+			if (e.getValue() > modeCount || (e.getValue() == modeCount && e.getKey() > modeFields)) {
+				modeFields = e.getKey();
+				modeCount = e.getValue();
+			}
+		}
+		if (modeFields < 2) {
+			return 0;
+		}
+		return (double) modeCount / numLines + Math.min(modeFields, 100) / 1000.0;
+	}
+
+	private static boolean isBlankLineEnd(CharSequence sample, int nl) {
+		char prev = sample.charAt(nl - 1);
+		if (prev == '\r') {
+			return nl == 1 || sample.charAt(nl - 2) == '\n';
+		}
+		return prev == '\n';
+	}
+
+	private static boolean isCrlf(CharSequence sample) {
+		int numCrlf = 0;
+		int numLf = 0;
+		int len = sample.length();
+		for (int i = 0; i < len; i++) {
+			if (sample.charAt(i) == '\n') {
+				if (i > 0 && sample.charAt(i - 1) == '\r') {
+					numCrlf++;
+				} else {
+					numLf++;
+				}
+			}
+		}
+		return numCrlf > numLf;
+	}
+
+	private static int indexOf(CharSequence s, char c) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			if (s.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return "CsvDialect [fieldSep=" + printable(fieldSep) + ", quote=" + quote + ", quoted=" + quoted
+				+ ", lineEnding=" + (crlf ? "CRLF" : "LF") + "]";
+	}
+
+	private static String printable(char c) {
+		return c == '\t' ? "\\t" : String.valueOf(c);
+	}
+
+	@Override
+	public int hashCode() {
+		return fieldSep * 31 * 31 + quote * 31 + (quoted ? 2 : 0) + (crlf ? 1 : 0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CsvDialect)) {
+			return false;
+		}
+		CsvDialect other = (CsvDialect) obj;
+		return fieldSep == other.fieldSep && quote == other.quote && quoted == other.quoted && crlf == other.crlf;
+	}
+}
@@ -0,0 +1,326 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Spliterator over the records in a range of a file. Splitting hands off the
+ * first half of the range, moved onto a record boundary, so each half is
+ * parsed on whichever thread takes it. Once parsing has started the range
+ * can't be split any further.
+ *
+ * <p>
+ * The boundaries are found on the first split, the same way as
+ * {@link ParallelCsvReader} does: the range is cut into chunks which are
+ * scanned in parallel for every possible start state, then chained together
+ * to find where the first record in each chunk starts. Every later split
+ * picks the boundary nearest its middle without scanning again. Records are
+ * never reused. Read errors are thrown as {@link UncheckedIOException}
+ * </p>
+ */
+@NotThreadSafe
+final class CsvFileSpliterator implements Spliterator<ICsvRecord> {
+
+	/**
+	 * Don't bother splitting smaller than this
+	 */
+	static final long MIN_SPLIT_SIZE = 1024 * 1024;
+	/**
+	 * Largest block we'll map in one go when scanning for a boundary
+	 */
+	private static final int SCAN_WINDOW_SIZE = 64 * 1024 * 1024;
+	/**
+	 * Most chunks to cut the range into when finding boundaries, so the
+	 * finest split of a very large file is this fraction of it
+	 */
+	private static final int MAX_SCAN_CHUNKS = 1024;
+
+	private final ICsvReader reader;
+	private final Serialiser serialiser;
+	/**
+	 * Supplies the settings for the parser of each range
+	 */
+	private final ByteCsvParser settings;
+	private final CsvBoundaryScanner scanner;
+	private final Path file;
+	private final long fileSize;
+	private final int mapWindowSize;
+	private final long minSplitSize;
+
+	/**
+	 * The range still to read, starting on a record boundary
+	 */
+	private long start;
+	private final long end;
+	/**
+	 * Where records start within the range first split, in order. Shared
+	 * with the splits taken from it. Null until the first split
+	 */
+	private long[] recordStarts;
+
+	/**
+	 * Set once parsing has started
+	 */
+	private ByteCsvParser parser;
+	private boolean done;
+
+	CsvFileSpliterator(ICsvReader reader, Serialiser serialiser,
+			ByteCsvParser settings, Path file, long fileSize,
+			int mapWindowSize, long minSplitSize) {
+		this(reader, serialiser, settings, file, fileSize, mapWindowSize,
+				minSplitSize, 0);
+	}
+
+	/**
+	 * @param start
+	 *            where the first record starts
+	 */
+	CsvFileSpliterator(ICsvReader reader, Serialiser serialiser,
+			ByteCsvParser settings, Path file, long fileSize,
+			int mapWindowSize, long minSplitSize, long start) {
+		this(reader, serialiser, settings, new CsvBoundaryScanner(
+				settings.fieldSepChar, settings.escapeChar,
+				settings.commentChar, settings.commentsEnabled), file,
+				fileSize, mapWindowSize, minSplitSize, start, fileSize, null);
+	}
+
+	private CsvFileSpliterator(ICsvReader reader, Serialiser serialiser,
+			ByteCsvParser settings, CsvBoundaryScanner scanner, Path file,
+			long fileSize, int mapWindowSize, long minSplitSize, long start,
+			long end, long[] recordStarts) {
+		this.reader = reader;
+		this.serialiser = serialiser;
+		this.settings = settings;
+		this.scanner = scanner;
+		this.file = file;
+		this.fileSize = fileSize;
+		this.mapWindowSize = mapWindowSize;
+		this.minSplitSize = minSplitSize;
+		this.start = start;
+		this.end = end;
+		this.recordStarts = recordStarts;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ICsvRecord> action) {
+		if (done) {
+			return false;
+		}
+		try {
+			if (parser == null) {
+				parser = settings.withInput(new ByteInput.MappedFileInput(file,
+						start, end, mapWindowSize));
+			}
+			// the end of a range which isn't the end of the file isn't a
+			// record
+			boolean last = end == fileSize;
+			while (parser.hasMore) {
+				ICsvRecord record = null;
+				try {
+					parser.parseRecord(0);
+					if (!parser.endedEmpty || last) {
+						record = parser.newRecord(reader, serialiser);
+						parser.fillRecord(record, false);
+					}
+				} finally {
+					parser.resetBuffers();
+				}
+				if (record != null) {
+					action.accept(record);
+					return true;
+				}
+			}
+			done = true;
+			parser.close();
+			return false;
+		} catch (IOException e) {
+			done = true;
+			closeQuietly();
+			throw new UncheckedIOException("Error reading " + file + " from byte " + start, e);
+		}
+	}
+
+	@Override
+	public Spliterator<ICsvRecord> trySplit() {
+		if (parser != null || end - start < minSplitSize * 2) {
+			return null;
+		}
+		if (recordStarts == null) {
+			try {
+				recordStarts = findRecordStarts();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error splitting " + file, e);
+			}
+		}
+		long split = recordStartNear(start + (end - start) / 2);
+		if (split <= start || split >= end) {
+			return null;
+		}
+		CsvFileSpliterator prefix = new CsvFileSpliterator(reader, serialiser,
+				settings, scanner, file, fileSize, mapWindowSize, minSplitSize,
+				start, split, recordStarts);
+		start = split;
+		return prefix;
+	}
+
+	/**
+	 * @return the record start closest after the given offset, or before it
+	 *         if there's none after within the range, or -1 if none
+	 */
+	private long recordStartNear(long offset) {
+		int idx = Arrays.binarySearch(recordStarts, offset);
+		if (idx < 0) {
+			idx = -idx - 1;
+		}
+		if (idx < recordStarts.length && recordStarts[idx] < end) {
+			return recordStarts[idx];
+		}
+		return idx > 0 ? recordStarts[idx - 1] : -1;
+	}
+
+	/**
+	 * Cut the range into chunks and find the first record start in each, with
+	 * the chunks scanned in parallel on the pool the stream runs on
+	 *
+	 * @return the record starts, in order
+	 */
+	private long[] findRecordStarts() throws IOException {
+		long size = end - start;
+		long chunkSize = Math.max(minSplitSize, (size + MAX_SCAN_CHUNKS - 1) / MAX_SCAN_CHUNKS);
+		int numChunks = (int) ((size + chunkSize - 1) / chunkSize);
+		final long[] chunkStarts = new long[numChunks + 1];
+		for (int i = 0; i < numChunks; i++) {
+			chunkStarts[i] = start + i * chunkSize;
+		}
+		chunkStarts[numChunks] = end;
+
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the state at the end of every chunk for every start state. The
+			// last chunk's end state isn't needed
+			List<RecursiveTask<int[]>> chunkEndStates = new ArrayList<>();
+			for (int i = 0; i < numChunks - 1; i++) {
+				final int chunk = i;
+				chunkEndStates.add(new RecursiveTask<int[]>() {
+					@Override
+					protected int[] compute() {
+						try {
+							return scanAllStates(channel, chunkStarts[chunk], chunkStarts[chunk + 1]);
+						} catch (IOException e) {
+							throw new UncheckedIOException("Error splitting " + file, e);
+						}
+					}
+				});
+			}
+			ForkJoinTask.invokeAll(chunkEndStates);
+
+			// chain them together to get the real state at the start of each
+			// chunk, then find the first record start from there
+			List<RecursiveTask<Long>> chunkRecordStarts = new ArrayList<>();
+			int state = CsvBoundaryScanner.RECORD_START;
+			for (int i = 1; i < numChunks; i++) {
+				state = chunkEndStates.get(i - 1).join()[state];
+				final int chunk = i;
+				final int startState = state;
+				chunkRecordStarts.add(new RecursiveTask<Long>() {
+					@Override
+					protected Long compute() {
+						try {
+							return findRecordStart(channel, chunkStarts[chunk], chunkStarts[chunk + 1], startState);
+						} catch (IOException e) {
+							throw new UncheckedIOException("Error splitting " + file, e);
+						}
+					}
+				});
+			}
+			ForkJoinTask.invokeAll(chunkRecordStarts);
+
+			long[] starts = new long[chunkRecordStarts.size()];
+			int numStarts = 0;
+			for (RecursiveTask<Long> recordStart : chunkRecordStarts) {
+				// no record starts within the chunk, so it's all part of the
+				// one before
+				long offset = recordStart.join();
+				if (offset != -1) {
+					starts[numStarts++] = offset;
+				}
+			}
+			return Arrays.copyOf(starts, numStarts);
+		}
+	}
+
+	/**
+	 * @return the state at the end of the given range, for every start state
+	 */
+	private int[] scanAllStates(FileChannel channel, long from, long to) throws IOException {
+		int[] endStates = null;
+		for (long pos = from; pos < to; pos += SCAN_WINDOW_SIZE) {
+			ByteBuffer buf = map(channel, pos, Math.min(pos + SCAN_WINDOW_SIZE, to));
+			int[] windowEndStates = scanner.scan(buf, 0, buf.limit());
+			if (endStates == null) {
+				endStates = windowEndStates;
+			} else {
+				for (int state = 0; state < endStates.length; state++) {
+					endStates[state] = windowEndStates[endStates[state]];
+				}
+			}
+		}
+		return endStates;
+	}
+
+	/**
+	 * @return the offset of the first record starting within the given
+	 *         range, or -1 if there isn't one
+	 */
+	private long findRecordStart(FileChannel channel, long from, long to, int state) throws IOException {
+		for (long pos = from; pos < to; pos += SCAN_WINDOW_SIZE) {
+			ByteBuffer buf = map(channel, pos, Math.min(pos + SCAN_WINDOW_SIZE, to));
+			int idx = scanner.findRecordStart(buf, 0, buf.limit(), state);
+			if (idx != -1) {
+				return pos + idx;
+			}
+			state = scanner.scan(buf, 0, buf.limit(), state);
+		}
+		return -1;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long start, long end)
+			throws IOException {
+		return channel.map(MapMode.READ_ONLY, start, end - start);
+	}
+
+	private void closeQuietly() {
+		try {
+			parser.close();
+		} catch (IOException | RuntimeException e) {
+			// already failing
+		}
+	}
+
+	/**
+	 * The number of bytes left to read, so an upper bound on the number of
+	 * records. Only the proportion between splits matters when splitting
+	 */
+	@Override
+	public long estimateSize() {
+		return done ? 0 : end - start;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,121 @@
+package org.codemucker.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codemucker.lang.annotation.ThreadSafe;
+
+/**
+ * The column names read from the first record of the input. Resolve the
+ * columns wanted into {@link ColumnHandle}s once, then read each record
+ * through them. See {@link CsvReader.Builder#header(boolean)}
+ *
+ * <p>
+ * If a name appears more than once, the first column with it is used
+ * </p>
+ */
+@ThreadSafe
+public final class CsvHeader {
+
+	private final String[] names;
+	private final Map<String, ColumnHandle> columns;
+
+	CsvHeader(String[] names) {
+		this.names = names;
+		this.columns = new HashMap<>(names.length * 2);
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i] == null ? "" : names[i];
+			if (!columns.containsKey(name)) {
+				columns.put(name, new ColumnHandle(name, i));
+			}
+		}
+	}
+
+	/**
+	 * The column names in the order they appear in the input
+	 */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	public int getNumColumns() {
+		return names.length;
+	}
+
+	public boolean hasColumn(String name) {
+		return columns.containsKey(name);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if there is no column with the given name
+	 */
+	public ColumnHandle column(String name) {
+		ColumnHandle column = columns.get(name);
+		if (column == null) {
+			throw new IllegalArgumentException("No column '" + name + "', columns are " + Arrays.toString(names));
+		}
+		return column;
+	}
+
+	/**
+	 * Resolve the given columns, in the order given rather than the order
+	 * they appear in the input. Reading a record through them in turn reads
+	 * its fields in that order
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any column is missing
+	 */
+	public ColumnHandle[] columns(String... names) {
+		requireColumns(names);
+		ColumnHandle[] handles = new ColumnHandle[names.length];
+		for (int i = 0; i < names.length; i++) {
+			handles[i] = columns.get(names[i]);
+		}
+		return handles;
+	}
+
+	/**
+	 * Read the given columns of the record as strings, in the order of the
+	 * columns rather than the order they appear in the input
+	 */
+	public static String[] reorder(ICsvRecord record, ColumnHandle[] columns) {
+		String[] data = record.getData();
+		String[] fields = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			int idx = record.getOffset() + columns[i].getIndex();
+			fields[i] = data != null && idx < data.length ? data[idx] : null;
+		}
+		return fields;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             listing all the given columns which are missing
+	 */
+	public void requireColumns(String... names) {
+		List<String> missing = missingColumns(names);
+		if (!missing.isEmpty()) {
+			throw new IllegalArgumentException("Missing columns " + missing + ", columns are " + Arrays.toString(this.names));
+		}
+	}
+
+	List<String> missingColumns(String... names) {
+		List<String> missing = new ArrayList<>();
+		for (String name : names) {
+			if (!columns.containsKey(name)) {
+				missing.add(name);
+			}
+		}
+		return missing;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(names);
+	}
+}
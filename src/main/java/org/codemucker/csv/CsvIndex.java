@@ -0,0 +1,294 @@
+package org.codemucker.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The byte offset of every Nth record of a file, so a reader can jump straight
+ * to any record rather than parsing everything before it. Use:
+ *
+ * <pre>
+ * CsvIndex index = CsvIndex.with().settings(CsvReader.with().input(path)).build();
+ * index.writeTo(CsvIndex.sidecarFor(path));
+ * ...
+ * CsvReader r = CsvReader.with().input(path).index(CsvIndex.readFrom(CsvIndex.sidecarFor(path))).build();
+ * r.seek(1000000);
+ * ICsvRecord rec = r.readNextRecord();
+ * </pre>
+ *
+ * <p>
+ * Built in a single pass over the file which only looks for record
+ * boundaries, using the same rules as the parser, so quoted fields spanning
+ * lines and comment lines are handled. Records are counted the same as the
+ * reader returns them.
+ * </p>
+ *
+ * <p>
+ * The index records the size and modification time of the file, and the
+ * separator, escape and comment settings it was built with. It's only used if
+ * they still match
+ * </p>
+ */
+@ThreadSafe
+public class CsvIndex {
+
+	private static final int MAGIC = 0x43535649;// 'CSVI'
+	private static final int VERSION = 1;
+	/**
+	 * Largest block mapped in one go when building
+	 */
+	private static final int SCAN_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final long fileSize;
+	private final long lastModified;
+	private final char fieldSepChar;
+	private final char escapeChar;
+	private final char commentChar;
+	private final boolean commentsEnabled;
+	private final int interval;
+	private final long recordCount;
+	/**
+	 * Offset of every {@link #interval}th record, starting with the first
+	 */
+	private final long[] offsets;
+
+	private CsvIndex(long fileSize, long lastModified, char fieldSepChar,
+			char escapeChar, char commentChar, boolean commentsEnabled,
+			int interval, long recordCount, long[] offsets) {
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.fieldSepChar = fieldSepChar;
+		this.escapeChar = escapeChar;
+		this.commentChar = commentChar;
+		this.commentsEnabled = commentsEnabled;
+		this.interval = interval;
+		this.recordCount = recordCount;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * The default place to keep the index of a file, alongside it with an
+	 * '.idx' extension added
+	 */
+	public static Path sidecarFor(Path file) {
+		return file.resolveSibling(file.getFileName() + ".idx");
+	}
+
+	/**
+	 * Number of records in the file, as returned by a reader
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Every how many records an offset is kept
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * The offset of the nearest indexed record at or before the given record
+	 */
+	long getOffsetBefore(long recordNumber) {
+		return offsets[(int) (recordNumber / interval)];
+	}
+
+	/**
+	 * If the file looks unchanged since the index was built
+	 */
+	public boolean isCurrentFor(Path file) throws IOException {
+		return Files.size(file) == fileSize
+				&& Files.getLastModifiedTime(file).toMillis() == lastModified;
+	}
+
+	/**
+	 * If the index was built with the same boundary rules as the parser uses
+	 */
+	boolean isBuiltLike(CsvParser parser) {
+		return parser.fieldSepChar == fieldSepChar
+				&& parser.escapeChar == escapeChar
+				&& parser.commentsEnabled == commentsEnabled
+				&& (!commentsEnabled || parser.commentChar == commentChar);
+	}
+
+	/**
+	 * Write the index to the given file. Offsets are stored as the variable
+	 * length difference to the previous one, so typically take 2 or 3 bytes
+	 * each
+	 */
+	public void writeTo(Path sidecar) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(sidecar)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+			out.writeChar(fieldSepChar);
+			out.writeChar(escapeChar);
+			out.writeChar(commentChar);
+			out.writeBoolean(commentsEnabled);
+			out.writeInt(interval);
+			out.writeLong(recordCount);
+			out.writeInt(offsets.length);
+			long prev = 0;
+			for (long offset : offsets) {
+				writeVarLong(out, offset - prev);
+				prev = offset;
+			}
+		}
+	}
+
+	/**
+	 * Read an index written by {@link #writeTo(Path)}
+	 */
+	public static CsvIndex readFrom(Path sidecar) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(sidecar)))) {
+			if (in.readInt() != MAGIC) {
+				throw new CsvException("Not a csv index " + sidecar);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new CsvException("Unsupported csv index version " + version + " in " + sidecar);
+			}
+			long fileSize = in.readLong();
+			long lastModified = in.readLong();
+			char fieldSepChar = in.readChar();
+			char escapeChar = in.readChar();
+			char commentChar = in.readChar();
+			boolean commentsEnabled = in.readBoolean();
+			int interval = in.readInt();
+			long recordCount = in.readLong();
+			long[] offsets = new long[in.readInt()];
+			long prev = 0;
+			for (int i = 0; i < offsets.length; i++) {
+				prev += readVarLong(in);
+				offsets[i] = prev;
+			}
+			return new CsvIndex(fileSize, lastModified, fieldSepChar,
+					escapeChar, commentChar, commentsEnabled, interval,
+					recordCount, offsets);
+		}
+	}
+
+	private static void writeVarLong(DataOutputStream out, long val) throws IOException {
+		while ((val & ~0x7FL) != 0) {
+			out.writeByte((int) (val & 0x7F) | 0x80);
+			val >>>= 7;
+		}
+		out.writeByte((int) val);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long val = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.readUnsignedByte();
+			val |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return val;
+			}
+		}
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder {
+
+		private CsvReader.Builder settings;
+		private int interval = 256;
+
+		/**
+		 * Scan the file and build the index
+		 */
+		public CsvIndex build() throws CsvException {
+			Preconditions.checkNotNull(settings, "expect settings with the file to index");
+			Preconditions.checkArgument(settings.getFile() != null, "expect settings with a file as the input");
+			Preconditions.checkArgument(interval > 0, "expect interval > 0");
+			Path file = settings.getFile();
+			// never reads, just checks and holds the settings
+			CsvParser parser = settings.buildByteParser(null, settings.getCharset());
+			CsvBoundaryScanner scanner = settings.buildBoundaryScanner();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long lastModified = Files.getLastModifiedTime(file).toMillis();
+				long fileSize = channel.size();
+
+				long[] offsets = new long[16];
+				int numOffsets = 1;
+				// the first record starts at the start, even in an empty file
+				long recordCount = 1;
+				int state = CsvBoundaryScanner.RECORD_START;
+				for (long windowStart = 0; windowStart < fileSize; windowStart += SCAN_WINDOW_SIZE) {
+					ByteBuffer buf = channel.map(MapMode.READ_ONLY, windowStart,
+							Math.min(SCAN_WINDOW_SIZE, fileSize - windowStart));
+					int pos = 0;
+					int end = buf.limit();
+					while (pos < end) {
+						int idx = scanner.findRecordStart(buf, pos, end, state);
+						if (idx == -1) {
+							state = scanner.scan(buf, pos, end, state);
+							break;
+						}
+						if (recordCount % interval == 0) {
+							if (numOffsets == offsets.length) {
+								offsets = Arrays.copyOf(offsets, numOffsets * 2);
+							}
+							offsets[numOffsets++] = windowStart + idx;
+						}
+						recordCount++;
+						pos = idx;
+						state = CsvBoundaryScanner.RECORD_START;
+					}
+				}
+				return new CsvIndex(fileSize, lastModified,
+						parser.fieldSepChar, parser.escapeChar,
+						parser.commentChar, parser.commentsEnabled, interval,
+						recordCount, Arrays.copyOf(offsets, numOffsets));
+			} catch (IOException e) {
+				throw new CsvException("Error indexing " + file, e);
+			}
+		}
+
+		/**
+		 * The file to index, along with the charset, separator, escape and
+		 * comment settings it is read with
+		 */
+		public Builder settings(CsvReader.Builder settings) {
+			this.settings = settings;
+			return this;
+		}
+
+		/**
+		 * Keep the offset of every this many records. A seek parses at most
+		 * this many records less one to get to the one asked for. Default is
+		 * 256
+		 */
+		public Builder interval(int numRecords) {
+			this.interval = numRecords;
+			return this;
+		}
+	}
+}
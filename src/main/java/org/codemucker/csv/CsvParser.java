@@ -0,0 +1,351 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * The record parsing state machine. This is shared by the char and byte based
+ * parsers so both follow exactly the same escape rules. Subclasses supply the
+ * input buffer and decide how field values are collected.
+ *
+ * <p>
+ * Subclasses only ever need to hand over chars in the ascii range for the
+ * separator, escape, comment and newline chars. Anything else is only ever
+ * appended to the current field
+ * </p>
+ */
+@NotThreadSafe
+abstract class CsvParser implements Closeable {
+
+	static final char NL = '\n';
+	static final char CR = '\r';
+
+	/**
+	 * Projection which collects no fields, used to skip records
+	 */
+	private static final boolean[] KEEP_NONE = new boolean[0];
+
+	static final boolean EMPTY_TO_NULL = true;
+	static final boolean EMPTY_IF_BLANK = false;
+
+	final char fieldSepChar;// = ',';
+	final char escapeChar;// = '"';
+	final char commentChar;// = '#';
+	final boolean commentsEnabled;// = true;
+
+	/**
+	 * Largest number of chars any single record can contain. Used to protect
+	 * OOM eerors due to uploading very large csv files
+	 */
+	final int maxNumberOfCharsPerRecord;
+
+	int lineNumber;
+	int charNumber;
+	long recordNumber = 0;
+
+	boolean hasMore = true;
+
+	/**
+	 * Set if the last parse hit the end of the input without reading a single
+	 * char. When reading a split of a larger input this isn't a real record
+	 */
+	boolean endedEmpty;
+
+	/**
+	 * The char last read via {@link #next()}
+	 */
+	char currentChar;
+
+	private int conseqNumEscapes = 0;
+	private boolean inEscape = false;
+
+	/**
+	 * Which fields to collect, by index, or null for all. Fields not
+	 * collected are still parsed but their values are dropped, and they read
+	 * as null
+	 */
+	private boolean[] keepFields;
+	/**
+	 * If the value of the field currently being read is being dropped
+	 */
+	boolean skipField;
+	/**
+	 * Number of chars dropped so far from the current field. Escapes depend on
+	 * whether we're at the start of the field, so this still needs counting
+	 */
+	int skippedLen;
+
+	CsvParser(char fieldSepChar, char escapeChar, char commentChar,
+			boolean commentsEnabled, int maxNumberOfCharsPerRecord) {
+		this.fieldSepChar = fieldSepChar;
+		this.escapeChar = escapeChar;
+		this.commentChar = commentChar;
+		this.commentsEnabled = commentsEnabled;
+		this.maxNumberOfCharsPerRecord = maxNumberOfCharsPerRecord;
+	}
+
+	/**
+	 * Blocking read of the next record into the field buffers. Call
+	 * {@link #resetBuffers()} once the fields have been consumed
+	 *
+	 * @throws CsvException
+	 */
+	void parseRecord(int skipNumLines) throws CsvException {
+		try {
+			conseqNumEscapes = 0;
+			inEscape = false;
+			endedEmpty = false;
+			if (skipNumLines > 0) {
+				for (int lineNum = 0; lineNum < skipNumLines; lineNum++) {
+					readToEndOfLine();
+				}
+			}
+			for (int numCharsRead = 0;; numCharsRead++) {
+				next();
+				if (numCharsRead > maxNumberOfCharsPerRecord) {
+					throw new CvsRecordTooLongException("Exceeded "
+							+ maxNumberOfCharsPerRecord + " characters. " + readToMsg(numCharsRead));
+				}
+				char c = currentChar;
+				if (!hasMore) {
+					endedEmpty = numCharsRead == 0;
+					if (inEscape) {
+						if (isEndEscape()) {
+							appendEscapes();
+							endEscapedField();
+						} else {
+							throw new CsvEndOfStreamException(
+									"End of stream, expecting more characters for escape sequence. " + readToMsg(numCharsRead));
+						}
+					} else {
+						endNonEscapedField();
+					}
+					break;
+				} else if (inEscape) {
+					if (c == escapeChar) {
+						conseqNumEscapes++;
+					} else if (c == fieldSepChar || c == NL) {
+						if (isEndEscape()) {
+							appendEscapes();
+							endEscapedField();
+							inEscape = false;
+							conseqNumEscapes = 0;
+							if (c == NL) {
+								nextRecord();
+								break;
+							}
+						} else {
+							appendEscapes();
+							appendToField(c);
+							conseqNumEscapes = 0;
+							numCharsRead += appendEscapedRun();
+						}
+					} else if (c == CR && isEndEscape()) {
+						// CR of a CRLF after the closing escape, the NL ends
+						// the field
+					} else {
+						//"f, "f""x, """x
+						if (isEndEscape()) {
+							throw new CsvInvalidRecordException(
+									"Unexpected character, invalid number of escape '"
+											+ escapeChar
+											+ "' characters (" + conseqNumEscapes + "). " + readToMsg(numCharsRead));
+						} else {
+							appendEscapes();
+							appendToField(c);
+							conseqNumEscapes = 0;
+							numCharsRead += appendEscapedRun();
+						}
+					}
+				} else {
+					if (commentsEnabled && c == commentChar
+							&& isStartOfField()) {// comment char at
+													// start of line
+													// only
+						// skip line
+						readToEndOfLine();
+					} else if (c == fieldSepChar) {
+						endNonEscapedField();
+					} else if (c == CR) {
+						// ignore/drop;
+					} else if (c == NL) {
+						endNonEscapedField();
+						nextRecord();
+						break;
+					} else if (c == escapeChar) {
+						conseqNumEscapes++;
+						inEscape = true;
+					} else {
+						appendToField(c);
+						numCharsRead += appendPlainRun();
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new CsvException("Error reading csv input. " + readToMsg(), e);
+		}
+	}
+
+	/**
+	 * Parse past the next record without collecting any of its values. The
+	 * escapes, comments and newlines are tracked exactly as when parsing, but
+	 * the runs between them are skipped straight over in the buffer, and
+	 * nothing is copied or allocated. The buffers are left reset
+	 */
+	void skipRecord(int skipNumLines) throws CsvException {
+		boolean[] keep = keepFields;
+		project(KEEP_NONE);
+		try {
+			parseRecord(skipNumLines);
+		} finally {
+			keepFields = keep;
+			resetBuffers();
+		}
+	}
+
+	String readToMsg(int numCharsRead) {
+		return "Read " + numCharsRead + " characters for record "
+				+ recordNumber + ". " + readToMsg();
+	}
+
+	String readToMsg() {
+		return "Line " + lineNumber + ", char "
+				+ charNumber;
+	}
+
+	private boolean isEndEscape() {
+		if (isStartOfField()) {
+			return isEvenEscapes();// e.g. "", or """"
+		} else {
+			return !isEvenEscapes();// odd num. e.g. "foo" or "foo"""
+		}
+	}
+
+	private boolean isEvenEscapes() {
+		return conseqNumEscapes % 2 == 0;
+	}
+
+	private void appendEscapes() {
+		if (conseqNumEscapes == 0) {
+			return;
+		}
+		if (isStartOfField()) {
+			// only odd number escapes
+			if (conseqNumEscapes > 2) {
+				appendEscapes((conseqNumEscapes - 1) / 2);
+			}
+		} else { // even num escapes
+			appendEscapes(conseqNumEscapes / 2);
+		}
+	}
+
+	private void appendEscapes(int num) {
+		for (int i = 0; i < num; i++) {
+			appendToField(escapeChar);
+		}
+	}
+
+	private void endEscapedField() {
+		endField(EMPTY_IF_BLANK);
+	}
+
+	private void endNonEscapedField() {
+		endField(EMPTY_TO_NULL);
+	}
+
+	private void nextRecord() {
+		recordNumber++;
+	}
+
+	/**
+	 * Only collect the values of the given fields
+	 *
+	 * @param keepFields
+	 *            by field index, true to collect it. Fields past the end
+	 *            aren't collected. Null to collect all
+	 */
+	void project(boolean[] keepFields) {
+		this.keepFields = keepFields;
+		startField(0);
+	}
+
+	/**
+	 * Called as each field is started, with the index of the field
+	 */
+	final void startField(int idx) {
+		boolean[] keep = keepFields;
+		skipField = keep != null && (idx >= keep.length || !keep[idx]);
+		skippedLen = 0;
+	}
+
+	/**
+	 * Clear the field buffers ready for the next record
+	 */
+	void resetBuffers() {
+		conseqNumEscapes = 0;
+		inEscape = false;
+		startField(0);
+	}
+
+	/**
+	 * Move onto the next char, setting {@link #currentChar} and updating the
+	 * line and char counts.
+	 *
+	 * @return false if there is no more input
+	 */
+	abstract boolean next() throws IOException;
+
+	abstract void readToEndOfLine() throws IOException;
+
+	/**
+	 * Append the run of plain chars following the current char straight from
+	 * the buffer, stopping at the next separator, newline or escape char. The
+	 * state machine then picks up from there.
+	 *
+	 * @return the number of chars appended
+	 */
+	abstract int appendPlainRun();
+
+	/**
+	 * Within an escaped field everything up to the next escape char is part of
+	 * the value, so append it straight from the buffer
+	 *
+	 * @return the number of chars appended
+	 */
+	abstract int appendEscapedRun();
+
+	abstract void appendToField(char c);
+
+	abstract boolean isStartOfField();
+
+	abstract void endField(boolean emptyIsNull);
+
+	/**
+	 * Create an empty record which can be passed to
+	 * {@link #fillRecord(ICsvRecord, boolean)}
+	 *
+	 * @param reader
+	 *            to read the next record from, or null if there isn't one, in
+	 *            which case {@link ICsvRecord#nextRecord()} fails
+	 */
+	abstract ICsvRecord newRecord(ICsvReader reader, Serialiser serialiser);
+
+	/**
+	 * Set the fields just parsed on the given record
+	 *
+	 * @param record
+	 *            as returned from {@link #newRecord(ICsvReader, Serialiser)}
+	 * @param share
+	 *            if true the record can share the parser's buffers, so is only
+	 *            valid until the next record is parsed
+	 */
+	abstract void fillRecord(ICsvRecord record, boolean share);
+
+	/**
+	 * Copy the fields just parsed onto the end of the given batch
+	 */
+	abstract void appendTo(RecordBatch batch);
+
+}
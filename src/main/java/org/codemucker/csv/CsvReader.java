@@ -1,15 +1,31 @@
 package org.codemucker.csv;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
 
 import org.codemucker.csv.encode.DefaultSerialiser;
 import org.codemucker.lang.IBuilder;
@@ -32,107 +48,69 @@ import com.google.common.base.Preconditions;
 @ThreadSafe(caveats = "only if threadSafe true has been set")
 public class CsvReader implements Closeable, ICsvReader {
 
-	private static final String[] EMPTY_ARRAY = new String[] {};
+	private final CsvParser parser;
 
-	private static final boolean EMPTY_TO_NULL = true;
-	private static final boolean EMPTY_IF_BLANK = false;
-
-	private static final char NL = '\n';
+	private final boolean reuseRecord;
 
-	private final char[] charBuf = new char[1];// avoid constant reallocation
+	private final Lock lock;
 
 	/**
-	 * Indication of the maximum number of fields per record
+	 * Reuse a record (if enabled) to reduce object allocation
 	 */
-	private final int fieldBufSize;
+	private ICsvRecord record;
+	private Serialiser serialiser;
 
 	/**
-	 * Indication of the maximum number of chars any field will be
+	 * The file being read, if it's memory mapped, so it can be split up for
+	 * a parallel stream
 	 */
-	private final int fieldValueBufSize;
+	private final Path file;
+	private final int mapWindowSize;
 
 	/**
-	 * If the field value buffer exceeds this value, trim it
+	 * Offsets of records within the file, to seek with. Null if none
 	 */
-	private final int fieldValueBufMaxSize;
+	private final CsvIndex index;
+	private boolean indexChecked;
+
 	/**
-	 * If the field buffer exceeds this value, trim it
+	 * If the first record is the header, and the columns it has to have
 	 */
-	private final int fieldBufMaxSize;
-
-	private int lineNumber;
-	private int charNumber;
-
+	private final boolean hasHeader;
+	private final String[] requiredColumns;
 	/**
-	 * Largest number of chars any single record can contain. Used to protect
-	 * OOM eerors due to uploading very large csv files
+	 * Set once the header has been read
 	 */
-	private final int maxNumberOfCharsPerRecord;
-
-	// reuse these structures so we don't need to reallocate on each record
-	private final ArrayList<String> fieldBuf;
-	private final StringBuilder fieldValueBuf;
-
-	private final char fieldSepChar;// = ',';
-	private final char escapeChar;// = '"';
-	private final char commentChar;// = '#';
-	private boolean commentsEnabled;// = true;
-
-	private final Reader reader;
-
-	private final boolean closeReader;
-	private final boolean reuseRecord;
-
-	private int recordNumber = 0;
-
-	private final Lock lock;
-
-	private boolean hasMore = true;
-
-	private int conseqNumEscapes = 0;
-	boolean inEscape = false;
-
+	private CsvHeader header;
 	/**
-	 * Reuse a record (if enabled) to reduce object allocation
+	 * Set if the header read didn't have the required columns, so every read
+	 * after fails the same way
 	 */
-	private ICsvRecord record;
-	private Serialiser serialiser;
-
-	private CsvReader(Reader reader, char fieldSepChar, char escapeChar,
-			char commentChar, boolean commentsEnabled, int fieldBufSize,
-			int fieldBufMaxSize, int fieldCharCount, int fieldValueBufMaxSize,
-			int maxNumberOfCharsPerRecord, boolean closeReader,
-			boolean threadSafe, boolean reuseRecord, Serialiser serialiser) {
-		this.reader = reader;
-		this.fieldSepChar = fieldSepChar;
-		this.escapeChar = escapeChar;
-		this.commentChar = commentChar;
-		this.commentsEnabled = commentsEnabled;
-
-		this.fieldBufSize = fieldBufSize;
-		this.fieldBufMaxSize = fieldBufMaxSize;
+	private String headerError;
 
-		this.fieldValueBufSize = fieldCharCount;
-		this.fieldValueBufMaxSize = fieldValueBufMaxSize;
-
-		this.maxNumberOfCharsPerRecord = maxNumberOfCharsPerRecord;
-
-		this.fieldBuf = new ArrayList<>(fieldBufSize);
-		this.fieldValueBuf = new StringBuilder(fieldCharCount);
-
-		this.closeReader = closeReader;
+	private CsvReader(CsvParser parser, boolean threadSafe,
+			boolean reuseRecord, Serialiser serialiser, Path file,
+			int mapWindowSize, CsvIndex index, boolean hasHeader,
+			String[] requiredColumns) {
+		this.parser = parser;
 		this.lock = threadSafe ? new ReentrantLock() : null;
 
 		this.reuseRecord = reuseRecord;
 		this.serialiser = serialiser;
+		this.file = file;
+		this.mapWindowSize = mapWindowSize;
+		this.index = index;
+		this.hasHeader = hasHeader;
+		this.requiredColumns = requiredColumns;
 
-		this.record = reuseRecord ? new CsvRecord(this, serialiser) : null;
+		this.record = reuseRecord ? parser.newRecord(this, serialiser) : null;
 	}
 
 	@Override
 	public ICsvRecord readNextRecord() throws CsvException {
 		lock();
 		try {
+			readHeaderIfNeeded();
 			return internalReadNextRecord(0);
 		} finally {
 			unlock();
@@ -144,11 +122,16 @@ public class CsvReader implements Closeable, ICsvReader {
 			throws CsvException {
 		lock();
 		try {
-			ICsvRecord record = internalReadNextRecord(skipLines);
-			for (int i = 0; i < skipRecords; i++) {
-				record = internalReadNextRecord(0);
+			readHeaderIfNeeded();
+			if (skipRecords > 0) {
+				// only the last record is returned, so don't build the others
+				parser.skipRecord(skipLines);
+				for (int i = 1; i < skipRecords; i++) {
+					parser.skipRecord(0);
+				}
+				skipLines = 0;
 			}
-			return record;
+			return internalReadNextRecord(skipLines);
 		} finally {
 			unlock();
 		}
@@ -158,6 +141,7 @@ public class CsvReader implements Closeable, ICsvReader {
 	public ICsvRecord readNextRecord(int skipNumLines) throws CsvException {
 		lock();
 		try {
+			readHeaderIfNeeded();
 			return internalReadNextRecord(skipNumLines);
 		} finally {
 			unlock();
@@ -165,260 +149,275 @@ public class CsvReader implements Closeable, ICsvReader {
 	}
 
 	/**
-	 * Blocking read for the next record
-	 * 
-	 * @return
-	 * @throws CsvException
+	 * Parse up to the given number of records straight into the batch, taking
+	 * the lock once for the whole batch rather than once per record
 	 */
-	private ICsvRecord internalReadNextRecord(int skipNumLines)
-			throws CsvException {
-		// we use existing buffer structures so we don't need to reallocate each
-		// time
+	@Override
+	public int readBatch(RecordBatch batch, int maxRecords) throws CsvException {
+		Preconditions.checkArgument(maxRecords > 0, "expect max records > 0");
+		lock();
 		try {
-			conseqNumEscapes = 0;
-			inEscape = false;
-			if (skipNumLines > 0) {
-				for (int lineNum = 0; lineNum < skipNumLines; lineNum++) {
-					readToEndOfLine();
+			readHeaderIfNeeded();
+			batch.reset(this, serialiser);
+			while (batch.size() < maxRecords && parser.hasMore) {
+				try {
+					parser.parseRecord(0);
+					parser.appendTo(batch);
+				} finally {
+					parser.resetBuffers();
 				}
 			}
-			for (int numCharsRead = 0;; numCharsRead++) {
-				next();
-				if (numCharsRead > maxNumberOfCharsPerRecord) {
-					throw new CvsRecordTooLongException("Exceeded "
-							+ maxNumberOfCharsPerRecord + " characters. " + readToMsg(numCharsRead));
-				}
-				char c = read();
-				if (isEndStream()) {
-					if (inEscape) {
-						if (isEndEscape()) {
-							appendEscapes();
-							endEscapedField();
-						} else {
-							throw new CsvEndOfStreamException(
-									"End of stream, expecting more characters for escape sequence. " + readToMsg(numCharsRead));
-						}
-					} else {
-						endNonEscapedField();
-					}
-					break;
-				} else if (inEscape) {
-					if (c == escapeChar) {
-						conseqNumEscapes++;
-					} else if (c == fieldSepChar || c == NL) {
-						if (isEndEscape()) {
-							appendEscapes();
-							endEscapedField();
-							inEscape = false;
-						} else {
-							appendEscapes();
-							appendToField(c);
-						}
-						conseqNumEscapes = 0;
-					} else {
-						//"f, "f""x, """x
-						if (isEndEscape()) {
-							throw new CsvInvalidRecordException(
-									"Unexpected character, invalid number of escape '"
-											+ escapeChar
-											+ "' characters (" + conseqNumEscapes + "). " + readToMsg(numCharsRead));
-						} else {
-							appendEscapes();
-							appendToField(c);
-						}
-						conseqNumEscapes = 0;
-					}
-				} else {
-					if (commentsEnabled && c == commentChar
-							&& fieldValueBuf.length() == 0) {// comment char at
-																// start of line
-																// only
-						// skip line
-						readToEndOfLine();
-					} else if (c == fieldSepChar) {
-						endNonEscapedField();
-					} else if (c == '\r') {
-						// ignore/drop;
-					} else if (c == NL) {
-						endNonEscapedField();
-						nextRecord();
-						break;
-					} else if (c == escapeChar) {
-						conseqNumEscapes++;
-						inEscape = true;
-					} else {
-						appendToField(c);
-					}
-				}
-			}
-
-			String[] fields = fieldBuf.toArray(EMPTY_ARRAY);
-			fields = onRecord(recordNumber, fields);
-			return newRecord(fields);
-		} catch (IOException e) {
-			throw new CsvException("Error reading csv input. " + readToMsg(), e);
+			return batch.size();
 		} finally {
-			resetBuffers();
+			unlock();
 		}
 	}
 
-	private String readToMsg(int numCharsRead) {
-		return "Read " + numCharsRead + " characters for record "
-				+ recordNumber + ". " + readToMsg();
-	}
-	
-	private String readToMsg() {
-		return "Line " + lineNumber + ", char "
-				+ charNumber;
-	}
-	private void readToEndOfLine() throws IOException {
-		while (next()) {
-			if (read() == NL) {
-				return;
+	/**
+	 * Skip over the given number of records without building them. See
+	 * {@link CsvParser#skipRecord(int)}
+	 *
+	 * @return the number of records skipped, less than asked for if the end
+	 *         of the input was reached
+	 */
+	public long skipRecords(long numRecords) throws CsvException {
+		Preconditions.checkArgument(numRecords >= 0, "expect num records >= 0");
+		lock();
+		try {
+			readHeaderIfNeeded();
+			long numSkipped = 0;
+			while (numSkipped < numRecords && parser.hasMore) {
+				parser.skipRecord(0);
+				numSkipped++;
 			}
+			return numSkipped;
+		} finally {
+			unlock();
 		}
 	}
 
-	private boolean next() throws IOException {
-		if (hasMore) {
-			int i = reader.read(charBuf);
-			if (i != -1) {
-				charNumber++;
-				if (read() == NL) {
-					lineNumber++;
-					charNumber = 0;
+	/**
+	 * Move to the given record, so it's the next one read. Jumps straight to
+	 * the nearest indexed record before it, then parses its way forward at
+	 * most the index interval of records. Needs an index, see
+	 * {@link Builder#index(CsvIndex)}. Line numbers in errors count from the
+	 * indexed record.
+	 *
+	 * @param recordNumber
+	 *            the record to read next, from 0. If there's a header, the
+	 *            first record after it
+	 * @throws CsvException
+	 *             if the file has changed since the index was built
+	 */
+	public void seek(long recordNumber) throws CsvException {
+		Preconditions.checkState(index != null, "no index to seek with, see Builder.index()");
+		int numHeaders = hasHeader ? 1 : 0;
+		Preconditions.checkArgument(recordNumber >= 0 && recordNumber + numHeaders < index.getRecordCount(),
+				"expect record number between 0 and %s, but was %s", index.getRecordCount() - numHeaders - 1, recordNumber);
+		lock();
+		try {
+			readHeaderIfNeeded();
+			recordNumber += numHeaders;
+			if (!indexChecked) {
+				try {
+					if (!index.isCurrentFor(file)) {
+						throw new CsvException("File has changed since it was indexed, " + file);
+					}
+				} catch (IOException e) {
+					throw new CsvException("Error reading " + file, e);
 				}
-			} else {
-				hasMore = false;
+				indexChecked = true;
+			}
+			long fileStart = index.getOffsetBefore(recordNumber);
+			try {
+				((ByteCsvParser) parser).reset(new ByteInput.MappedFileInput(file,
+						fileStart, -1, mapWindowSize));
+			} catch (IOException e) {
+				throw new CsvException("Error seeking in " + file, e);
+			}
+			long skip = recordNumber % index.getInterval();
+			for (long i = 0; i < skip; i++) {
+				parser.skipRecord(0);
 			}
+			parser.recordNumber = recordNumber;
+		} finally {
+			unlock();
 		}
-		return hasMore;
 	}
 
-	@Override
-	public boolean hasMore() {
-		return hasMore;
-	}
-
-	private char read() {
-		return charBuf[0];
-	}
-
-	private boolean isEndStream() {
-		return !hasMore;
-	}
-
-	private boolean isEndEscape() {
-		if (isStartOfField()) {
-			return isEvenEscapes();// e.g. "", or """"
+	/**
+	 * Stream the records not yet read. Records are never reused, whatever
+	 * {@link Builder#reuseRecord(boolean)} is set to. Closing the stream
+	 * closes the reader.
+	 *
+	 * <p>
+	 * When parallel, the rest of a memory mapped file, from after the header
+	 * and any records already read or sought past, is split into byte ranges
+	 * on record boundaries, each parsed on its own thread. The reader itself
+	 * is then finished with; all records come from the stream. Any other
+	 * input is parsed in order on whichever thread gets to it first, handing
+	 * off batches of parsed records to be processed in parallel.
+	 * </p>
+	 *
+	 * <p>
+	 * Read errors are thrown as {@link UncheckedIOException}
+	 * </p>
+	 */
+	public Stream<ICsvRecord> stream() {
+		lock();
+		try {
+			readHeaderIfNeeded();
+		} catch (CsvException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			unlock();
+		}
+		Spliterator<ICsvRecord> spliterator;
+		long splitStart = file != null ? getNextRecordOffset() : -1;
+		if (splitStart >= 0) {
+			long fileSize;
+			try {
+				fileSize = Files.size(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error reading " + file, e);
+			}
+			spliterator = new CsvFileSpliterator(this, serialiser,
+					(ByteCsvParser) parser, file, fileSize, mapWindowSize,
+					CsvFileSpliterator.MIN_SPLIT_SIZE, splitStart);
+			// the ranges are read by their own parsers
+			parser.hasMore = false;
 		} else {
-			return !isEvenEscapes();// odd num. e.g. "foo" or "foo"""
+			spliterator = new CsvRecordSpliterator(this);
 		}
+		return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
 	}
 
-	private boolean isOddEscapes() {
-		return !isEndEscape();
-	}
-	
-	private boolean isEvenEscapes() {
-		return conseqNumEscapes % 2 == 0;
-	}
-
-	private boolean isStartOfField() {
-		return fieldValueBuf.length() == 0;
+	/**
+	 * Where the next record starts in the file, or -1 if there are no more or
+	 * the input isn't a mapped file
+	 */
+	private long getNextRecordOffset() {
+		if (!parser.hasMore || !(parser instanceof ByteCsvParser)) {
+			return -1;
+		}
+		return ((ByteCsvParser) parser).getFileOffset();
 	}
 
-	private void appendEscapes() {
-		if (conseqNumEscapes == 0) {
-			return;
-		}
-		if (isStartOfField()) {
-			// only odd number escapes
-			if (conseqNumEscapes > 2) {
-				appendEscapes((conseqNumEscapes - 1) / 2);
+	/**
+	 * Read the next record into a new record, never reused
+	 *
+	 * @return the record, or null if there are no more
+	 */
+	ICsvRecord readNewRecordOrNull() throws CsvException {
+		lock();
+		try {
+			readHeaderIfNeeded();
+			if (!parser.hasMore) {
+				return null;
 			}
-		} else { // even num escapes
-			appendEscapes(conseqNumEscapes / 2);
+			try {
+				parser.parseRecord(0);
+				ICsvRecord record = parser.newRecord(this, serialiser);
+				parser.fillRecord(record, false);
+				return record;
+			} finally {
+				parser.resetBuffers();
+			}
+		} finally {
+			unlock();
 		}
 	}
 
-	private void appendEscapes(int num) {
-		for (int i = 0; i < num; i++) {
-			appendToField(escapeChar);
+	/**
+	 * The column names from the first record, reading it if no records have
+	 * been read yet. See {@link Builder#header(boolean)}
+	 *
+	 * @throws CsvInvalidRecordException
+	 *             if the header is missing any of the
+	 *             {@link Builder#requireColumns(String...)}
+	 */
+	public CsvHeader getHeader() throws CsvException {
+		Preconditions.checkState(hasHeader, "not reading a header, see Builder.header()");
+		lock();
+		try {
+			readHeaderIfNeeded();
+			return header;
+		} finally {
+			unlock();
 		}
 	}
 
-	private void endEscapedField() {
-		endField(EMPTY_IF_BLANK);
-	}
-
-	private void endNonEscapedField() {
-		endField(EMPTY_TO_NULL);
+	private void readHeaderIfNeeded() throws CsvException {
+		if (headerError != null) {
+			throw new CsvInvalidRecordException(headerError);
+		}
+		if (!hasHeader || header != null) {
+			return;
+		}
+		String[] names;
+		try {
+			parser.parseRecord(0);
+			ICsvRecord record = parser.newRecord(this, serialiser);
+			parser.fillRecord(record, false);
+			names = record.getData();
+		} finally {
+			parser.resetBuffers();
+		}
+		CsvHeader read = new CsvHeader(names == null ? new String[0] : names);
+		List<String> missing = read.missingColumns(requiredColumns);
+		if (!missing.isEmpty()) {
+			headerError = "Header is missing columns " + missing + ", columns are " + read;
+			throw new CsvInvalidRecordException(headerError);
+		}
+		header = read;
 	}
 
-	private void endField(boolean emptyIsNull) {
-		String fieldVal = fieldValueBuf.toString();
-		if (fieldVal.length() == 0 && emptyIsNull) {
-			fieldVal = null;
+	/**
+	 * Blocking read for the next record
+	 * 
+	 * @return
+	 * @throws CsvException
+	 */
+	private ICsvRecord internalReadNextRecord(int skipNumLines)
+			throws CsvException {
+		// we use existing buffer structures so we don't need to reallocate each
+		// time
+		try {
+			parser.parseRecord(skipNumLines);
+			return newRecord();
+		} finally {
+			parser.resetBuffers();
 		}
-		fieldVal = onField(recordNumber, fieldBuf.size(), fieldVal);
-		fieldBuf.add(fieldVal);
-		fieldValueBuf.setLength(0);
 	}
 
-	private void appendToField(char c) {
-		fieldValueBuf.append(c);
-	};
-
-	private ICsvRecord newRecord(String[] data) {
+	private ICsvRecord newRecord() {
 		if (reuseRecord) {
 			// reuse record to avoid allocation
-			record.setData(data);
+			parser.fillRecord(record, true);
 			return record;
 		}
-		return new CsvRecord(this, serialiser, data);
-	}
-
-	private void nextRecord() {
-		recordNumber++;
-	}
-
-	private String onField(int recordNumber, int fieldNumber, String fieldVal) {
-		// TODO:user callbacks
-		return fieldVal;
-	}
-
-	private String[] onRecord(int recordNumber, String[] record) {
-		// TODO:user callbacks
+		ICsvRecord record = parser.newRecord(this, serialiser);
+		parser.fillRecord(record, false);
 		return record;
 	}
 
-	private void resetBuffers() {
-		if (fieldBuf.size() > fieldBufMaxSize) {
-			fieldBuf.clear();
-			fieldBuf.trimToSize();
-			fieldBuf.ensureCapacity(fieldBufSize);
-		} else {
-			fieldBuf.clear();
-		}
-		if (fieldValueBuf.length() > fieldValueBufMaxSize) {
-			fieldValueBuf.setLength(fieldValueBufSize);
-			fieldValueBuf.trimToSize();
-		}
-		fieldValueBuf.setLength(0);
-
-		conseqNumEscapes = 0;
-		inEscape = false;
+	@Override
+	public boolean hasMore() {
+		return parser.hasMore;
 	}
 
 	@Override
 	public void close() throws IOException {
-		fieldBuf.clear();
-		fieldValueBuf.setLength(0);
-		fieldValueBuf.trimToSize();
-		if (closeReader) {
-			reader.close();
-		}
+		parser.close();
 	}
 
 	private void lock() {
@@ -456,6 +455,7 @@ public class CsvReader implements Closeable, ICsvReader {
 		private int fieldBufMaxSize;
 
 		private int maxNumberOfCharsPerRecord;
+		private int readBufSize;
 		private char fieldSepChar;
 		private char escapeChar;
 		private char commentChar;
@@ -463,31 +463,263 @@ public class CsvReader implements Closeable, ICsvReader {
 		private boolean closeReader;
 		private boolean threadSafe;
 		private boolean reuseRecord;
+		private boolean flyweight;
+		private boolean vectorScan;
+		private int prefetchDepth;
+		private ThreadFactory prefetchThreadFactory;
+		private boolean gzip;
+		private int decompressionThreads;
+		private boolean quoteFree;
+		private boolean sniffDialect;
+		private int sniffSampleSize;
 		private Serialiser serialiser;
 
 		// char is 2 bytes, so memory size ~= X * 2 chars
 		private static final int SIZE_1_MEG = (1 * 1000 * 1000) / 2;
 
 		private Reader reader;
+		private InputStream byteStream;
+		private ByteBuffer byteBuf;
+		private Path file;
+		private Charset charset;
+		private int mapWindowSize;
+		private CsvIndex index;
+		private boolean header;
+		private List<String> requiredColumns;
 
 		public Builder() {
 			defaults();
 		}
 
 		public CsvReader build() {
-			Preconditions.checkNotNull(reader,
-					"expect reader, string or input stream");
-
-			Preconditions.checkArgument(!(threadSafe && reuseRecord),
+			Preconditions.checkArgument(!(threadSafe && (reuseRecord || flyweight)),
 					"can't reuse record if in threadsafe mode");
 			Serialiser ser = serialiser == null ? DefaultSerialiser.get()
 					: serialiser;
 
-			return new CsvReader(reader, fieldSepChar, escapeChar, commentChar,
-					commentsEnabled, fieldBufSize, fieldBufMaxSize,
-					fieldValueBufSize, fieldValueBufMaxSize,
-					maxNumberOfCharsPerRecord, closeReader, threadSafe,
-					reuseRecord, ser);
+			// only a mapped file can be split up for streaming
+			Path splitFile = reader == null && byteStream == null && !gzip ? file : null;
+			CsvParser parser = buildParser();
+			if (index != null) {
+				Preconditions.checkArgument(splitFile != null, "can only use an index when reading a file");
+				Preconditions.checkArgument(index.isBuiltLike(parser),
+						"index was built with different separator, escape or comment settings");
+			}
+			return new CsvReader(parser, threadSafe, reuseRecord || flyweight, ser,
+					splitFile, mapWindowSize, index, header,
+					requiredColumns.toArray(new String[requiredColumns.size()]));
+		}
+
+		/**
+		 * Build a parser over the input using these settings
+		 */
+		CsvParser buildParser() {
+			return buildParser(flyweight);
+		}
+
+		/**
+		 * Build a parser over the input using these settings
+		 *
+		 * @param flyweight
+		 *            if records from a char input read straight from the
+		 *            parser's buffers. Records from byte input always do
+		 */
+		CsvParser buildParser(boolean flyweight) {
+			Preconditions.checkArgument(reader != null || byteStream != null || byteBuf != null || file != null,
+					"expect reader, string, bytes, file or input stream");
+			Preconditions.checkArgument(readBufSize > 0,
+					"expect read buffer size > 0");
+			Preconditions.checkArgument(prefetchDepth >= 0,
+					"expect prefetch depth >= 0");
+			Preconditions.checkArgument(reader == null || !gzip,
+					"can only decompress byte input, give the input with its charset");
+			if (sniffDialect) {
+				try {
+					dialect(sniff());
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error sniffing the csv dialect", e);
+				}
+			}
+
+			if (reader != null) {
+				if (prefetchDepth > 0) {
+					// the prefetch reader has to be closed to stop its thread,
+					// it decides whether to close the underlying reader
+					Reader prefetchReader = new PrefetchReader(reader, readBufSize,
+							prefetchDepth, prefetchThreadFactory, closeReader);
+					return new CharCsvParser(prefetchReader, fieldSepChar, escapeChar,
+							commentChar, commentsEnabled, fieldBufSize,
+							fieldBufMaxSize, fieldValueBufSize, fieldValueBufMaxSize,
+							maxNumberOfCharsPerRecord, readBufSize, true,
+							flyweight);
+				}
+				return new CharCsvParser(reader, fieldSepChar, escapeChar,
+						commentChar, commentsEnabled, fieldBufSize,
+						fieldBufMaxSize, fieldValueBufSize, fieldValueBufMaxSize,
+						maxNumberOfCharsPerRecord, readBufSize, closeReader,
+						flyweight);
+			}
+			return buildByteParser(buildByteInput(), charset);
+		}
+
+		/**
+		 * Build a parser over the given bytes using these settings, ignoring
+		 * whatever input has been set
+		 */
+		ByteCsvParser buildByteParser(ByteInput input, Charset charset) {
+			Preconditions.checkArgument(isByteSafe(charset),
+					"can only parse bytes directly for UTF-8, US-ASCII or ISO-8859-1, not " + charset);
+			Preconditions.checkArgument(fieldSepChar < 0x80 && escapeChar < 0x80 && commentChar < 0x80,
+					"when parsing bytes directly expect ascii field separator, escape and comment chars");
+			return new ByteCsvParser(input, charset, fieldSepChar, escapeChar,
+					commentChar, commentsEnabled, fieldBufSize,
+					fieldBufMaxSize, fieldValueBufSize, fieldValueBufMaxSize,
+					maxNumberOfCharsPerRecord, vectorScan, quoteFree);
+		}
+
+		/**
+		 * Sniff a sample from the start of the input, leaving the input to be
+		 * read from the start again
+		 */
+		private CsvDialect sniff() throws IOException {
+			if (reader != null) {
+				if (!reader.markSupported()) {
+					reader = new BufferedReader(reader);
+				}
+				reader.mark(sniffSampleSize);
+				CsvDialect dialect = CsvDialect.sniff(reader, sniffSampleSize, escapeChar, sniffCommentChar());
+				reader.reset();
+				return dialect;
+			}
+			if (file != null) {
+				try (InputStream is = Files.newInputStream(file)) {
+					return sniff(is);
+				}
+			}
+			if (byteBuf != null) {
+				ByteBuffer sample = byteBuf.duplicate();
+				if (!gzip && sample.remaining() > sniffSampleSize) {
+					sample.limit(sample.position() + sniffSampleSize);
+				}
+				byte[] bytes = new byte[sample.remaining()];
+				sample.get(bytes);
+				return sniff(new ByteArrayInputStream(bytes));
+			}
+			if (!byteStream.markSupported()) {
+				byteStream = new BufferedInputStream(byteStream);
+			}
+			// room for the compressed sample with plenty to spare
+			byteStream.mark(sniffSampleSize * 2 + 64 * 1024);
+			CsvDialect dialect = sniff(nonClosing(byteStream));
+			byteStream.reset();
+			return dialect;
+		}
+
+		private CsvDialect sniff(InputStream is) throws IOException {
+			if (!gzip) {
+				return CsvDialect.sniff(is, sniffSampleSize, escapeChar, sniffCommentChar());
+			}
+			try (InputStream gzipStream = new GZIPInputStream(is)) {
+				return CsvDialect.sniff(gzipStream, sniffSampleSize, escapeChar, sniffCommentChar());
+			}
+		}
+
+		private char sniffCommentChar() {
+			return commentsEnabled ? commentChar : 0;
+		}
+
+		private static InputStream nonClosing(InputStream is) {
+			return new FilterInputStream(is) {
+				@Override
+				public void close() {
+					// leave open
+				}
+			};
+		}
+
+		CsvBoundaryScanner buildBoundaryScanner() {
+			return new CsvBoundaryScanner(fieldSepChar, escapeChar,
+					commentChar, commentsEnabled);
+		}
+
+		Serialiser getSerialiser() {
+			return serialiser == null ? DefaultSerialiser.get() : serialiser;
+		}
+
+		/**
+		 * If a header is to be read, or columns required. Only a
+		 * {@link CsvReader} reads a header, other readers reject it
+		 */
+		boolean hasHeader() {
+			return header;
+		}
+
+		int getMapWindowSize() {
+			return mapWindowSize;
+		}
+
+		/**
+		 * The file to read, or null if reading some other input
+		 */
+		Path getFile() {
+			return gzip ? null : file;
+		}
+
+		Charset getCharset() {
+			return charset;
+		}
+
+		int getReadBufSize() {
+			return readBufSize;
+		}
+
+		private ByteInput buildByteInput() {
+			if (gzip) {
+				return buildGzipInput();
+			}
+			if (byteStream != null && prefetchDepth > 0) {
+				return new ByteInput.PrefetchInput(byteStream, readBufSize,
+						prefetchDepth, prefetchThreadFactory, closeReader);
+			}
+			if (byteStream != null) {
+				return new ByteInput.StreamInput(byteStream, readBufSize, closeReader);
+			}
+			if (file != null) {
+				Preconditions.checkArgument(mapWindowSize > 0,
+						"expect map window size > 0");
+				return new ByteInput.MappedFileInput(file, mapWindowSize);
+			}
+			return new ByteInput.BufferInput(byteBuf);
+		}
+
+		private ByteInput buildGzipInput() {
+			InputStream gzipStream;
+			if (file != null) {
+				gzipStream = new BlockGzipInputStream(file, decompressionThreads);
+			} else {
+				InputStream is = byteStream;
+				if (is == null) {
+					byte[] bytes = new byte[byteBuf.remaining()];
+					byteBuf.duplicate().get(bytes);
+					is = new ByteArrayInputStream(bytes);
+				}
+				if (!closeReader) {
+					// only the decompression is stopped
+					is = nonClosing(is);
+				}
+				gzipStream = new BlockGzipInputStream(is, decompressionThreads);
+			}
+			// plain gzip is decompressed on the one thread, so at least do it
+			// ahead of the parser. Always closed to stop the threads
+			int depth = prefetchDepth > 0 ? prefetchDepth : 2;
+			return new ByteInput.PrefetchInput(gzipStream, readBufSize,
+					depth, prefetchThreadFactory, true);
+		}
+
+		private static boolean isByteSafe(Charset charset) {
+			return StandardCharsets.UTF_8.equals(charset)
+					|| StandardCharsets.US_ASCII.equals(charset)
+					|| StandardCharsets.ISO_8859_1.equals(charset);
 		}
 
 		public Builder defaults() {
@@ -503,12 +735,26 @@ public class CsvReader implements Closeable, ICsvReader {
 			commentsEnabled = true;
 
 			maxNumberOfCharsPerRecord = SIZE_1_MEG * 10;
+			readBufSize = 64 * 1024;
+			mapWindowSize = 256 * 1024 * 1024;
 
 			closeReader = true;
 			threadSafe = true;
 			reuseRecord = false;
+			flyweight = false;
+			vectorScan = false;
+			prefetchDepth = 0;
+			prefetchThreadFactory = Prefetcher.DEFAULT_THREAD_FACTORY;
+			gzip = false;
+			decompressionThreads = Runtime.getRuntime().availableProcessors();
+			quoteFree = false;
+			sniffDialect = false;
+			sniffSampleSize = CsvDialect.DEFAULT_SAMPLE_SIZE;
 
 			serialiser = DefaultSerialiser.get();
+			index = null;
+			header = false;
+			requiredColumns = new ArrayList<>();
 			return this;
 		}
 
@@ -529,6 +775,102 @@ public class CsvReader implements Closeable, ICsvReader {
 
 		public Builder input(Reader r) {
 			this.reader = r;
+			this.byteStream = null;
+			this.byteBuf = null;
+			this.file = null;
+			return this;
+		}
+
+		/**
+		 * Parse the raw bytes of the stream directly, only decoding the field
+		 * values which are read as strings. This skips decoding the whole
+		 * stream up front. The charset needs to be one of UTF-8, US-ASCII or
+		 * ISO-8859-1
+		 */
+		public Builder input(InputStream is, Charset charset) {
+			this.byteStream = is;
+			this.charset = charset;
+			this.reader = null;
+			this.byteBuf = null;
+			this.file = null;
+			return this;
+		}
+
+		/**
+		 * Parse the given bytes directly. See
+		 * {@link #input(InputStream, Charset)}
+		 */
+		public Builder input(byte[] bytes, Charset charset) {
+			input(ByteBuffer.wrap(bytes), charset);
+			return this;
+		}
+
+		/**
+		 * Parse the bytes between the buffer's position and limit directly.
+		 * See {@link #input(InputStream, Charset)}
+		 */
+		public Builder input(ByteBuffer buf, Charset charset) {
+			this.byteBuf = buf;
+			this.charset = charset;
+			this.reader = null;
+			this.byteStream = null;
+			this.file = null;
+			return this;
+		}
+
+		/**
+		 * Memory map the given UTF-8 file and parse its bytes directly. See
+		 * {@link #input(Path, Charset)}
+		 */
+		public Builder input(Path file) {
+			input(file, StandardCharsets.UTF_8);
+			return this;
+		}
+
+		/**
+		 * Memory map the file a window at a time and parse its bytes directly
+		 * from the OS page cache, without copying them onto the heap first.
+		 * Use for large local files which won't change while being read. See
+		 * {@link #input(InputStream, Charset)} for the supported charsets
+		 */
+		public Builder input(Path file, Charset charset) {
+			this.file = file;
+			this.charset = charset;
+			this.reader = null;
+			this.byteStream = null;
+			this.byteBuf = null;
+			return this;
+		}
+
+		/**
+		 * Index of the file being read, to allow {@link CsvReader#seek(long)}.
+		 * Only for file input. See {@link CsvIndex}
+		 */
+		public Builder index(CsvIndex index) {
+			this.index = index;
+			return this;
+		}
+
+		/**
+		 * If true then the first record is the header, naming the columns.
+		 * It's read before any other record, and isn't returned as a record.
+		 * See {@link CsvReader#getHeader()}.
+		 * 
+		 * Default is false
+		 */
+		public Builder header(boolean header) {
+			this.header = header;
+			return this;
+		}
+
+		/**
+		 * Fail reading the header if it doesn't have all the given columns,
+		 * rather than finding out on the first record. Implies
+		 * {@link #header(boolean)}
+		 */
+		public Builder requireColumns(String... names) {
+			this.header = true;
+			this.requiredColumns.addAll(Arrays.asList(names));
 			return this;
 		}
 
@@ -562,11 +904,62 @@ public class CsvReader implements Closeable, ICsvReader {
 			return this;
 		}
 
+		/**
+		 * Number of chars (or bytes when parsing bytes directly) to read from
+		 * the input at a time. Default is 64K
+		 */
+		public Builder readBufSize(int numChars) {
+			this.readBufSize = numChars;
+			return this;
+		}
+
+		/**
+		 * Number of bytes of a file to memory map at a time, when reading from
+		 * a {@link Path}. Default is 256MB
+		 */
+		public Builder mapWindowSize(int numBytes) {
+			this.mapWindowSize = numBytes;
+			return this;
+		}
+
 		public Builder fieldSeparator(char fieldSepChar) {
 			this.fieldSepChar = fieldSepChar;
 			return this;
 		}
 
+		/**
+		 * Use the dialect's separator, and if it has no quotes parse records
+		 * on a quote free fast path until a quote turns up. The escape char set
+		 * here is kept, the fast path is only used if the dialect was sniffed
+		 * with the same quote char. See {@link CsvDialect}
+		 */
+		public Builder dialect(CsvDialect dialect) {
+			this.fieldSepChar = dialect.getFieldSeparator();
+			this.quoteFree = !dialect.isQuoted() && dialect.getQuote() == escapeChar;
+			return this;
+		}
+
+		/**
+		 * Work out the {@link #dialect(CsvDialect)} from a sample of the start
+		 * of the input when the reader is built, in place of the separator set
+		 * here. The sample is read with the escape and comment chars set
+		 * here. Stream and reader input is buffered so the sample can be read
+		 * again. Default is false
+		 */
+		public Builder sniffDialect(boolean sniff) {
+			this.sniffDialect = sniff;
+			return this;
+		}
+
+		/**
+		 * Bytes or chars to {@link #sniffDialect(boolean)} from. Default is
+		 * 64k
+		 */
+		public Builder sniffSampleSize(int size) {
+			this.sniffSampleSize = size;
+			return this;
+		}
+
 		public Builder escapChar(char escapeChar) {
 			this.escapeChar = escapeChar;
 			return this;
@@ -603,6 +996,82 @@ public class CsvReader implements Closeable, ICsvReader {
 			return this;
 		}
 
+		/**
+		 * If true then a single record is reused which reads straight from the
+		 * reader's buffers. No string is created per field unless read as a
+		 * string, {@link ICsvRecord#readChars(int)} and the typed reads work
+		 * from views onto the buffers instead. Implies
+		 * {@link #reuseRecord(boolean)}, so can't be used in threadsafe mode.
+		 * 
+		 * Default is false
+		 */
+		public Builder flyweight(boolean flyweight) {
+			this.flyweight = flyweight;
+			return this;
+		}
+
+		/**
+		 * If true then when parsing bytes the separators, escapes and line
+		 * endings are found using the JDK Vector API, a block of bytes at a
+		 * time. Only takes effect on a JDK with the vector support, and run with
+		 * '--add-modules jdk.incubator.vector', otherwise the bytes are checked
+		 * one at a time as usual. Pays off for long fields, for short ones
+		 * the per block overhead can cost more than it saves.
+		 * 
+		 * Default is false
+		 */
+		public Builder vectorScan(boolean vectorScan) {
+			this.vectorScan = vectorScan;
+			return this;
+		}
+
+		/**
+		 * Number of blocks of {@link #readBufSize(int)} to read ahead of the
+		 * parser on a background thread, so waiting on slow input such as
+		 * network storage overlaps with the parsing. Only applies to reader and
+		 * stream input, memory and mapped file input is read in place. The
+		 * thread is started on the first read and stopped when the end of the
+		 * input is reached or the reader is closed.
+		 * 
+		 * Default is 0, read on the parsing thread
+		 */
+		public Builder prefetch(int depth) {
+			this.prefetchDepth = depth;
+			return this;
+		}
+
+		/**
+		 * Creates the thread used to {@link #prefetch(int)} input, for example
+		 * to use virtual threads. Default creates daemon threads
+		 */
+		public Builder prefetchThreadFactory(ThreadFactory threadFactory) {
+			this.prefetchThreadFactory = Preconditions.checkNotNull(threadFactory, "expect thread factory");
+			return this;
+		}
+
+		/**
+		 * Decompress gzip stream, file or memory input as it is read. Input
+		 * in BGZF blocks, as written by {@link CsvWriter.Builder#gzip(boolean)},
+		 * is decompressed in parallel, see {@link BlockGzipInputStream}. Other
+		 * gzip is decompressed on the {@link #prefetch(int)} thread, ahead of
+		 * the parser. Prefetches 2 blocks if no prefetch is set.
+		 * 
+		 * Default is false
+		 */
+		public Builder gzip(boolean gzip) {
+			this.gzip = gzip;
+			return this;
+		}
+
+		/**
+		 * Threads to decompress {@link #gzip(boolean)} blocks on. Default is
+		 * one per core
+		 */
+		public Builder decompressionThreads(int numThreads) {
+			this.decompressionThreads = numThreads;
+			return this;
+		}
+
 		public Builder serialiser(Serialiser serialiser) {
 			this.serialiser = serialiser;
 			return this;
@@ -53,8 +53,16 @@ public class CsvRecord implements ICsvRecord {
 		return this.data;
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             if the record wasn't read from a reader, as with records
+	 *             published by an {@link AsyncRecordSource}
+	 */
 	@Override
 	public ICsvRecord nextRecord() throws CsvException {
+		if (reader == null) {
+			throw new IllegalStateException("Record has no reader to read the next record from, it was read asynchronously");
+		}
 		return reader.readNextRecord();
 	}
 	@Override
@@ -64,7 +72,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public boolean readBool(int idx, boolean defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toBool(s);
 		}
@@ -73,12 +81,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public boolean readBool(int idx) {
-		return serialiser.toBool(_readStringOrError(idx));
+		return serialiser.toBool(_readCharsOrError(idx));
 	}
 
 	@Override
 	public Boolean readBoolOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toBool(s);
 		}
@@ -87,12 +95,12 @@ public class CsvRecord implements ICsvRecord {
 	
 	@Override
 	public byte readByte(int idx) {
-		return serialiser.toByte(_readStringOrError(idx));
+		return serialiser.toByte(_readCharsOrError(idx));
 	}
 
 	@Override
 	public byte readByte(int idx, byte defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toByte(s);
 		}
@@ -101,7 +109,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Byte readByteOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toByte(s);
 		}
@@ -110,17 +118,17 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Character readCharOrNull(int idx) {
-		return serialiser.toChar(_readStringOrError(idx));
+		return serialiser.toChar(_readCharsOrError(idx));
 	}
 	
 	@Override
 	public char readChar(int idx) {
-		return serialiser.toChar(_readStringOrError(idx));
+		return serialiser.toChar(_readCharsOrError(idx));
 	}
 
 	@Override
 	public char readChar(int idx, char defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toChar(s);
 		}
@@ -129,12 +137,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public short readShort(int idx) {
-		return serialiser.toShort(_readStringOrError(idx));
+		return serialiser.toShort(_readCharsOrError(idx));
 	}
 
 	@Override
 	public short readShort(int idx, short defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toShort(s);
 		}
@@ -143,7 +151,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Short readShortOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toShort(s);
 		}
@@ -152,7 +160,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public int readInt(int idx, int defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toInt(s);
 		}
@@ -161,12 +169,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public int readInt(int idx) {
-		return serialiser.toInt(_readStringOrError(idx));
+		return serialiser.toInt(_readCharsOrError(idx));
 	}
 	
 	@Override
 	public Integer readIntOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toInt(s);
 		}
@@ -175,12 +183,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public long readLong(int idx) {
-		return serialiser.toLong(_readStringOrError(idx));
+		return serialiser.toLong(_readCharsOrError(idx));
 	}
 
 	@Override
 	public long readLong(int idx, long defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toLong(s);
 		}
@@ -189,7 +197,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Long readLongOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toLong(s);
 		}
@@ -198,12 +206,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public double readDouble(int idx) {
-		return serialiser.toDouble(_readStringOrError(idx));
+		return serialiser.toDouble(_readCharsOrError(idx));
 	}
 
 	@Override
 	public double readDouble(int idx, double defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toDouble(s);
 		}
@@ -212,7 +220,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Double readDoubleOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toDouble(s);
 		}
@@ -221,12 +229,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public float readFloat(int idx) {
-		return serialiser.toFloat(_readStringOrError(idx));
+		return serialiser.toFloat(_readCharsOrError(idx));
 	}
 
 	@Override
 	public float readFloat(int idx, float defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toFloat(s);
 		}
@@ -235,7 +243,7 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Float readFloatOrNull(int idx) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toFloat(s);
 		}
@@ -261,23 +269,28 @@ public class CsvRecord implements ICsvRecord {
 		return _readStringOrError(idx);
 	}
 
+	@Override
+	public CharSequence readChars(int idx) {
+		return _readCharsOrError(idx);
+	}
+
 	@Override
 	public String readString(int idx, String defaultVal) {
 		String s = _readStringOrNull(idx);
 		if (s != null) {
-			return defaultVal;
+			return s;
 		}
 		return defaultVal;
 	}
 
 	@Override
 	public DateTime readDateTime(int idx) {
-		return serialiser.toDateTime(_readStringOrError(idx));
+		return serialiser.toDateTime(_readCharsOrError(idx));
 	}
 
 	@Override
 	public DateTime readDateTime(int idx, DateTime defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toDateTime(s);
 		}
@@ -286,12 +299,12 @@ public class CsvRecord implements ICsvRecord {
 
 	@Override
 	public Date readDate(int idx) {
-		return serialiser.toDate(_readStringOrError(idx));
+		return serialiser.toDate(_readCharsOrError(idx));
 	}
 
 	@Override
 	public Date readDate(int idx, Date defaultVal) {
-		String s = _readStringOrNull(idx);
+		CharSequence s = _readCharsOrNull(idx);
 		if (s != null) {
 			return serialiser.toDate(s);
 		}
@@ -314,6 +327,18 @@ public class CsvRecord implements ICsvRecord {
 		return data[idx];
 	}
 
+	/**
+	 * The field value for reading typed values. Subclasses can return a view
+	 * of the field rather than creating a string
+	 */
+	public CharSequence _readCharsOrError(int idx) {
+		return _readStringOrError(idx);
+	}
+
+	public CharSequence _readCharsOrNull(int idx) {
+		return _readStringOrNull(idx);
+	}
+
 	@Override
 	public int getRemainingNumFields() {
 		return Math.max(0, getTotalNumFields() - offset);
@@ -337,9 +362,11 @@ public class CsvRecord implements ICsvRecord {
 		StringWriter sw = new StringWriter();
 		try {
 			ICsvWriter w = CsvWriter.with().output(sw).build();
-			for (String field : data) {
+			for (String field : getData()) {
 				w.write(field);
 			}
+			// the writer buffers
+			w.flush();
 		} catch (CsvWriteException e) {
 			// never thrown
 			e.printStackTrace();
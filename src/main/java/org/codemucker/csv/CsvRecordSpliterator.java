@@ -0,0 +1,88 @@
+package org.codemucker.csv;
+
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Spliterator over the records of a reader whose input can only be read in
+ * order. Splitting parses the next batch of records and hands them off as an
+ * array, so the records can be processed in parallel even though they are
+ * parsed one after the other. Batches get bigger on each split, so small
+ * inputs aren't spread too thinly and large ones don't split too often.
+ *
+ * <p>
+ * Read errors are thrown as {@link UncheckedIOException}
+ * </p>
+ */
+@NotThreadSafe
+final class CsvRecordSpliterator implements Spliterator<ICsvRecord> {
+
+	static final int BATCH_UNIT = 1024;
+	static final int MAX_BATCH = 1 << 20;
+
+	private final CsvReader reader;
+	private int batchSize;
+
+	CsvRecordSpliterator(CsvReader reader) {
+		this.reader = reader;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ICsvRecord> action) {
+		ICsvRecord record = next();
+		if (record == null) {
+			return false;
+		}
+		action.accept(record);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super ICsvRecord> action) {
+		ICsvRecord record;
+		while ((record = next()) != null) {
+			action.accept(record);
+		}
+	}
+
+	@Override
+	public Spliterator<ICsvRecord> trySplit() {
+		int size = Math.min(batchSize + BATCH_UNIT, MAX_BATCH);
+		Object[] records = new Object[size];
+		int n = 0;
+		ICsvRecord record;
+		while (n < size && (record = next()) != null) {
+			records[n++] = record;
+		}
+		if (n == 0) {
+			return null;
+		}
+		batchSize = n;
+		return Spliterators.spliterator(records, 0, n, characteristics());
+	}
+
+	private ICsvRecord next() {
+		try {
+			return reader.readNewRecordOrNull();
+		} catch (CsvException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Unknown until it's all been read
+	 */
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,186 @@
+package org.codemucker.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The columns of a row type, for writing whole rows in one call via
+ * {@link CsvWriter#writeRow(Object, CsvSchema)}. Declare the columns:
+ *
+ * <pre>
+ * CsvSchema&lt;Trade&gt; schema = CsvSchema.&lt;Trade&gt; with()
+ * 	.longColumn("id", Trade::getId)
+ * 	.plainStringColumn("symbol", Trade::getSymbol)
+ * 	.doubleColumn("price", Trade::getPrice)
+ * 	.build();
+ * </pre>
+ *
+ * or take them from the properties of a class with {@link #of(Class)}.
+ *
+ * <p>
+ * Each column knows its type up front, so the writer formats numbers straight
+ * into its buffer and only scans strings for chars which need quoting
+ * </p>
+ */
+@ThreadSafe
+public final class CsvSchema<T> {
+
+	enum Kind {
+		INT, LONG, DOUBLE,
+		/**
+		 * Scanned for chars needing quoting
+		 */
+		STRING,
+		/**
+		 * Known to never need quoting, so written as is
+		 */
+		PLAIN_STRING,
+		/**
+		 * Written according to its type at the time
+		 */
+		OBJECT
+	}
+
+	final Column[] columns;
+
+	private CsvSchema(Column[] columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * A column for each property of the class, as bound by {@link CsvBinder}
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the class has properties which can't be written
+	 */
+	public static <T> CsvSchema<T> of(Class<T> type) {
+		return CsvBinder.schemaFor(type, null);
+	}
+
+	/**
+	 * A column for each of the given properties of the class, in the order
+	 * given
+	 */
+	public static <T> CsvSchema<T> of(Class<T> type, String... properties) {
+		return CsvBinder.schemaFor(type, Arrays.asList(properties));
+	}
+
+	public List<String> getNames() {
+		List<String> names = new ArrayList<>(columns.length);
+		for (Column column : columns) {
+			names.add(column.name);
+		}
+		return Collections.unmodifiableList(names);
+	}
+
+	public int getNumColumns() {
+		return columns.length;
+	}
+
+	@Override
+	public String toString() {
+		return getNames().toString();
+	}
+
+	public static <T> Builder<T> with() {
+		return new Builder<T>();
+	}
+
+	@NotThreadSafe
+	public static class Builder<T> implements IBuilder<CsvSchema<T>> {
+
+		private final List<Column> columns = new ArrayList<>();
+
+		@Override
+		public CsvSchema<T> build() {
+			Preconditions.checkState(!columns.isEmpty(), "expect at least one column");
+			return new CsvSchema<T>(columns.toArray(new Column[columns.size()]));
+		}
+
+		@SuppressWarnings("unchecked")
+		public Builder<T> intColumn(String name, ToIntFunction<? super T> getter) {
+			Preconditions.checkNotNull(getter, "expect getter");
+			columns.add(new Column(name, Kind.INT, (ToIntFunction<Object>) getter, null, null, null));
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Builder<T> longColumn(String name, ToLongFunction<? super T> getter) {
+			Preconditions.checkNotNull(getter, "expect getter");
+			columns.add(new Column(name, Kind.LONG, null, (ToLongFunction<Object>) getter, null, null));
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Builder<T> doubleColumn(String name, ToDoubleFunction<? super T> getter) {
+			Preconditions.checkNotNull(getter, "expect getter");
+			columns.add(new Column(name, Kind.DOUBLE, null, null, (ToDoubleFunction<Object>) getter, null));
+			return this;
+		}
+
+		/**
+		 * A string which is quoted if it contains a quote, the field separator
+		 * or a newline
+		 */
+		public Builder<T> stringColumn(String name, Function<? super T, String> getter) {
+			return add(name, Kind.STRING, getter);
+		}
+
+		/**
+		 * A string which never contains a quote, the field separator or a
+		 * newline, such as an id or code, so is written without being scanned
+		 */
+		public Builder<T> plainStringColumn(String name, Function<? super T, String> getter) {
+			return add(name, Kind.PLAIN_STRING, getter);
+		}
+
+		/**
+		 * Any other value, written the same as passing it to the matching
+		 * {@link ICsvWriter} write
+		 */
+		public Builder<T> column(String name, Function<? super T, ?> getter) {
+			return add(name, Kind.OBJECT, getter);
+		}
+
+		@SuppressWarnings("unchecked")
+		private Builder<T> add(String name, Kind kind, Function<? super T, ?> getter) {
+			Preconditions.checkNotNull(getter, "expect getter");
+			columns.add(new Column(name, kind, null, null, null, (Function<Object, Object>) getter));
+			return this;
+		}
+	}
+
+	/**
+	 * One column, with the getter for its kind set
+	 */
+	static final class Column {
+		final String name;
+		final Kind kind;
+		final ToIntFunction<Object> intGetter;
+		final ToLongFunction<Object> longGetter;
+		final ToDoubleFunction<Object> doubleGetter;
+		final Function<Object, Object> getter;
+
+		Column(String name, Kind kind, ToIntFunction<Object> intGetter, ToLongFunction<Object> longGetter,
+				ToDoubleFunction<Object> doubleGetter, Function<Object, Object> getter) {
+			this.name = Preconditions.checkNotNull(name, "expect name");
+			this.kind = kind;
+			this.intGetter = intGetter;
+			this.longGetter = longGetter;
+			this.doubleGetter = doubleGetter;
+			this.getter = getter;
+		}
+	}
+}
@@ -1,14 +1,22 @@
 package org.codemucker.csv;
 
+import java.io.CharArrayWriter;
+import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
 
 import org.codemucker.csv.encode.DefaultSerialiser;
 import org.codemucker.lang.annotation.ThreadSafe;
@@ -28,11 +36,16 @@ import com.google.common.base.Preconditions;
  * 	w.write("abc");
  * 	w.write(1234);
  *  w.endRecord();
+ *  w.flush();
  * 
  * </pre>
+ * 
+ * Output is collected in a buffer and handed over to the underlying output in
+ * large blocks, when the buffer fills up and on {@link #flush()}. Numbers are
+ * written straight into the buffer.
  */
 @ThreadSafe(caveats="only if threadSafe true has been set")
-public class CsvWriter implements ICsvWriter {
+public class CsvWriter implements ICsvWriter, Closeable {
 
 	private static final String EMPTY_STRING = "\"\"";
 	private static final char NL = '\n';
@@ -43,7 +56,7 @@ public class CsvWriter implements ICsvWriter {
 	private final boolean quoteEmptyStrings;
 	private final boolean flushable;
 
-	private final Appendable appender;
+	private final Output out;
 	private final Serialiser serialiser;
 
 	private int fieldNum = -1;
@@ -53,14 +66,14 @@ public class CsvWriter implements ICsvWriter {
 	
 	private final String linePrefix;
 
-	private CsvWriter(Appendable appender, Serialiser serialiser, char fieldSep,
+	private CsvWriter(Output out, Serialiser serialiser, char fieldSep,
 			char commentChar, boolean quoteEmptyStrings, Lock lock,String linePrefix) {
 		this.serialiser = serialiser;
-		this.appender = appender;
+		this.out = out;
 		this.fieldSep = fieldSep;
 		this.commentChar = commentChar;
 		this.quoteEmptyStrings = quoteEmptyStrings;
-		this.flushable = (appender instanceof Flushable);
+		this.flushable = (out.appender instanceof Flushable);
 		this.lock = lock;
 		this.linePrefix = linePrefix;
 	}
@@ -69,20 +82,48 @@ public class CsvWriter implements ICsvWriter {
 	@Override
 	public ICsvWriter getEmbeddedWriter() {
 		String childPefix =  linePrefix==null?"":(linePrefix + recordNumber + fieldSep);
-		return new CsvWriter(appender,serialiser,fieldSep,commentChar,quoteEmptyStrings,lock, childPefix);
+		// share the buffer so output stays in order
+		return new CsvWriter(out,serialiser,fieldSep,commentChar,quoteEmptyStrings,lock, childPefix);
 	}
 
+	/**
+	 * Number of the record being written, or of the next one if none is.
+	 * The same as the number of records ended so far
+	 */
 	public int getRecordNumber() {
 		return recordNumber;
 	}
 
+	/**
+	 * If fields have been written to a record not yet ended
+	 */
+	boolean inRecord() {
+		return hasOutputFields();
+	}
+
+	/**
+	 * Number of chars written but not yet handed over to the output
+	 */
+	int getBufferedChars() {
+		return out.len;
+	}
+
+	/**
+	 * Roughly the number of bytes written so far when writing bytes, counting
+	 * the chars not yet encoded as a byte each. Exact after a flush
+	 */
+	long getNumBytes() {
+		Preconditions.checkState(out.bytes != null, "not writing bytes");
+		return out.bytes.getNumBytes() + out.len;
+	}
+
 	@Override
 	public ICsvWriter write(byte[] bytes) throws CsvWriteException {
 		nextField();
 		if (bytes != null) {
 			try {
 				print(DQUOTE);
-				serialiser.toString(bytes, appender);
+				serialiser.toString(bytes, out);
 				print(DQUOTE);
 			} catch (IOException e) {
 				throw wrap(e);
@@ -142,7 +183,7 @@ public class CsvWriter implements ICsvWriter {
 		nextField();
 		if (obj != null) {
 			try {
-				serialiser.toString(obj, appender);
+				serialiser.toString(obj, out);
 			} catch (IOException e) {
 				throw wrap(e);
 			}
@@ -155,7 +196,7 @@ public class CsvWriter implements ICsvWriter {
 		nextField();
 		if (d != null) {
 			try {
-				serialiser.toString(d, appender);
+				serialiser.toString(d, out);
 			} catch (IOException e) {
 				throw wrap(e);
 			}
@@ -168,7 +209,7 @@ public class CsvWriter implements ICsvWriter {
 		nextField();
 		if (d != null) {
 			try {
-				serialiser.toString(d, appender);
+				serialiser.toString(d, out);
 			} catch (IOException e) {
 				throw wrap(e);
 			}
@@ -182,7 +223,7 @@ public class CsvWriter implements ICsvWriter {
 		nextField();
 		if (b != null) {
 			try {
-				serialiser.toString(b.booleanValue(), appender);
+				serialiser.toString(b.booleanValue(), out);
 			} catch (IOException e) {
 				throw wrap(e);
 			}
@@ -194,7 +235,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(boolean b) throws CsvWriteException {
 		nextField();
 		try {
-			serialiser.toString(b, appender);
+			serialiser.toString(b, out);
 		} catch (IOException e) {
 			throw wrap(e);
 		}
@@ -206,7 +247,7 @@ public class CsvWriter implements ICsvWriter {
 		nextField();
 		if (c != null) {
 			try {
-				serialiser.toString(c.charValue(), appender);
+				serialiser.toString(c.charValue(), out);
 			} catch (IOException e) {
 				throw wrap(e);
 			}
@@ -218,7 +259,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(char c) throws CsvWriteException {
 		nextField();
 		try {
-			serialiser.toString(c, appender);
+			serialiser.toString(c, out);
 		} catch (IOException e) {
 			throw wrap(e);
 		}
@@ -229,11 +270,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(Float f) throws CsvWriteException {
 		nextField();
 		if (f != null) {
-			try {
-				serialiser.toString(f.floatValue(), appender);
-			} catch (IOException e) {
-				throw wrap(e);
-			}
+			printNumber(f.floatValue());
 		}
 		return this;
 	}
@@ -241,11 +278,7 @@ public class CsvWriter implements ICsvWriter {
 	@Override
 	public ICsvWriter write(float f) throws CsvWriteException {
 		nextField();
-		try {
-			serialiser.toString(f, appender);
-		} catch (IOException e) {
-			throw wrap(e);
-		}
+		printNumber(f);
 		return this;
 	}
 
@@ -253,11 +286,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(Long l) throws CsvWriteException {
 		nextField();
 		if (l != null) {
-			try {
-				serialiser.toString(l.longValue(), appender);
-			} catch (IOException e) {
-				throw wrap(e);
-			}
+			printNumber(l.longValue());
 		}
 		return this;
 	}
@@ -265,11 +294,7 @@ public class CsvWriter implements ICsvWriter {
 	@Override
 	public ICsvWriter write(long l) throws CsvWriteException {
 		nextField();
-		try {
-			serialiser.toString(l, appender);
-		} catch (IOException e) {
-			throw wrap(e);
-		}
+		printNumber(l);
 		return this;
 	}
 
@@ -278,7 +303,7 @@ public class CsvWriter implements ICsvWriter {
 		nextField();
 		if (b != null) {
 			try {
-				serialiser.toString(b, appender);
+				serialiser.toString(b, out);
 			} catch (IOException e) {
 				throw wrap(e);
 			}
@@ -290,7 +315,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(byte b) throws CsvWriteException {
 		nextField();
 		try {
-			serialiser.toString(b, appender);
+			serialiser.toString(b, out);
 		} catch (IOException e) {
 			throw wrap(e);
 		}
@@ -301,11 +326,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(Integer i) throws CsvWriteException {
 		nextField();
 		if (i != null) {
-			try {
-				serialiser.toString(i.intValue(), appender);
-			} catch (IOException e) {
-				throw wrap(e);
-			}
+			printNumber(i.intValue());
 		}
 		return this;
 	}
@@ -313,12 +334,7 @@ public class CsvWriter implements ICsvWriter {
 	@Override
 	public ICsvWriter write(int i) throws CsvWriteException {
 		nextField();
-		try {
-			serialiser.toString(i, appender);
-		} catch (IOException e) {
-			throw wrap(e);
-		}
-
+		printNumber(i);
 		return this;
 	}
 
@@ -326,11 +342,7 @@ public class CsvWriter implements ICsvWriter {
 	public ICsvWriter write(Double d) throws CsvWriteException {
 		nextField();
 		if (d != null) {
-			try {
-				serialiser.toString(d.doubleValue(), appender);
-			} catch (IOException e) {
-				throw wrap(e);
-			}
+			printNumber(d.doubleValue());
 		}
 		return this;
 	}
@@ -338,12 +350,7 @@ public class CsvWriter implements ICsvWriter {
 	@Override
 	public ICsvWriter write(double d) throws CsvWriteException {
 		nextField();
-		try {
-			serialiser.toString(d, appender);
-		} catch (IOException e) {
-			throw wrap(e);
-		}
-
+		printNumber(d);
 		return this;
 	}
 
@@ -354,7 +361,137 @@ public class CsvWriter implements ICsvWriter {
 			print(linePrefix + recordNumber + fieldSep);
 		}
 		if (fieldNum > 0) {
-			print(',');
+			print(fieldSep);
+		}
+	}
+
+	/**
+	 * Write the row as a record in one call, with the columns laid out by the
+	 * schema. Holds the lock while writing. Numbers are formatted straight
+	 * into the buffer, and only string columns are scanned for chars needing
+	 * quoting
+	 */
+	public <T> void writeRow(T row, CsvSchema<? super T> schema) throws CsvWriteException {
+		lock.lock();
+		try {
+			beginRecord();
+			printRow(row, schema.columns);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write each row as a record, taking the lock once for all of them. See
+	 * {@link #writeRow(Object, CsvSchema)}
+	 */
+	public <T> void writeRows(Iterable<? extends T> rows, CsvSchema<? super T> schema) throws CsvWriteException {
+		lock.lock();
+		try {
+			beginRecord();
+			CsvSchema.Column[] columns = schema.columns;
+			for (T row : rows) {
+				printRow(row, columns);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write the column names as a record
+	 */
+	public void writeHeader(CsvSchema<?> schema) throws CsvWriteException {
+		lock.lock();
+		try {
+			beginRecord();
+			for (CsvSchema.Column column : schema.columns) {
+				write(column.name);
+			}
+			endRecord();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void printRow(Object row, CsvSchema.Column[] columns) throws CsvWriteException {
+		if (linePrefix != null) {
+			print(linePrefix + recordNumber + fieldSep);
+		}
+		Output out = this.out;
+		try {
+			for (int i = 0; i < columns.length; i++) {
+				CsvSchema.Column column = columns[i];
+				// room for the separator and any number
+				out.ensureFree(Serialiser.MAX_NUMBER_CHARS + 1);
+				if (i > 0) {
+					out.buf[out.len++] = fieldSep;
+				}
+				switch (column.kind) {
+				case INT:
+					out.len = serialiser.toChars(column.intGetter.applyAsInt(row), out.buf, out.len);
+					break;
+				case LONG:
+					out.len = serialiser.toChars(column.longGetter.applyAsLong(row), out.buf, out.len);
+					break;
+				case DOUBLE:
+					out.len = serialiser.toChars(column.doubleGetter.applyAsDouble(row), out.buf, out.len);
+					break;
+				case STRING:
+					printEscaped((String) column.getter.apply(row));
+					break;
+				case PLAIN_STRING:
+					String s = (String) column.getter.apply(row);
+					if (s != null) {
+						out.append(s.length() == 0 ? EMPTY_STRING : s);
+					}
+					break;
+				default:
+					printValue(column.getter.apply(row));
+				}
+			}
+			out.endLine();
+		} catch (IOException e) {
+			throw wrap(e);
+		}
+		recordNumber++;
+	}
+
+	/**
+	 * Print a value of a type only known at runtime, the same as the matching
+	 * write would
+	 */
+	private void printValue(Object val) throws IOException, CsvWriteException {
+		if (val == null) {
+			// nothing
+		} else if (val instanceof String) {
+			printEscaped((String) val);
+		} else if (val instanceof Integer || val instanceof Short) {
+			printNumber(((Number) val).intValue());
+		} else if (val instanceof Long) {
+			printNumber(((Long) val).longValue());
+		} else if (val instanceof Double) {
+			printNumber(((Double) val).doubleValue());
+		} else if (val instanceof Float) {
+			printNumber(((Float) val).floatValue());
+		} else if (val instanceof Enum) {
+			printEscaped(((Enum<?>) val).name());
+		} else if (val instanceof Boolean) {
+			serialiser.toString(((Boolean) val).booleanValue(), out);
+		} else if (val instanceof Byte) {
+			serialiser.toString(((Byte) val).byteValue(), out);
+		} else if (val instanceof Character) {
+			serialiser.toString(((Character) val).charValue(), out);
+		} else if (val instanceof Date) {
+			serialiser.toString((Date) val, out);
+		} else if (val instanceof DateTime) {
+			serialiser.toString((DateTime) val, out);
+		} else if (val instanceof byte[]) {
+			out.append(DQUOTE);
+			serialiser.toString((byte[]) val, out);
+			out.append(DQUOTE);
+		} else {
+			serialiser.toString(val, out);
 		}
 	}
 
@@ -370,10 +507,7 @@ public class CsvWriter implements ICsvWriter {
 	
 	@Override
 	public void beginRecord() throws CsvWriteException {
-		if(hasOutputFields()){
-			endRecord();
-			recordNumber++;
-		}
+		endRecord();
 	}
 
 	@Override
@@ -381,6 +515,7 @@ public class CsvWriter implements ICsvWriter {
 		if(hasOutputFields()){
 			println();
 			fieldNum = -1;
+			recordNumber++;
 		}
 	}
 	
@@ -404,19 +539,19 @@ public class CsvWriter implements ICsvWriter {
 					}
 				}
 				if (doEscape) {
-					appender.append('"');
+					out.append('"');
+					// copy the runs between quotes in one go
+					int start = 0;
 					for (int i = 0; i < s.length(); i++) {
-						char c = s.charAt(i);
-						if (c == '"') {
-							appender.append('"').append('"');
-						} else {
-							appender.append(c);
+						if (s.charAt(i) == '"') {
+							out.append(s, start, i + 1);
+							start = i;
 						}
 					}
-					appender.append('"');
-
+					out.append(s, start, s.length());
+					out.append('"');
 				} else {
-					appender.append(s);
+					out.append(s);
 				}
 			}
 		} catch (IOException e) {
@@ -425,16 +560,52 @@ public class CsvWriter implements ICsvWriter {
 		return;
 	}
 
+	private void printNumber(int i) throws CsvWriteException {
+		try {
+			out.ensureFree(Serialiser.MAX_NUMBER_CHARS);
+			out.len = serialiser.toChars(i, out.buf, out.len);
+		} catch (IOException e) {
+			throw wrap(e);
+		}
+	}
+
+	private void printNumber(long l) throws CsvWriteException {
+		try {
+			out.ensureFree(Serialiser.MAX_NUMBER_CHARS);
+			out.len = serialiser.toChars(l, out.buf, out.len);
+		} catch (IOException e) {
+			throw wrap(e);
+		}
+	}
+
+	private void printNumber(float f) throws CsvWriteException {
+		try {
+			out.ensureFree(Serialiser.MAX_NUMBER_CHARS);
+			out.len = serialiser.toChars(f, out.buf, out.len);
+		} catch (IOException e) {
+			throw wrap(e);
+		}
+	}
+
+	private void printNumber(double d) throws CsvWriteException {
+		try {
+			out.ensureFree(Serialiser.MAX_NUMBER_CHARS);
+			out.len = serialiser.toChars(d, out.buf, out.len);
+		} catch (IOException e) {
+			throw wrap(e);
+		}
+	}
+
 	private void print(String s) throws CsvWriteException {
 		try {
 			if (s == null) {
 				// print nothing
 			} else if (s.length() == 0) {
 				if (quoteEmptyStrings) {
-					appender.append(EMPTY_STRING);
+					out.append(EMPTY_STRING);
 				}
 			} else {
-				appender.append(s);
+				out.append(s);
 			}
 		} catch (IOException e) {
 			throw wrap(e);
@@ -443,7 +614,7 @@ public class CsvWriter implements ICsvWriter {
 
 	private void print(char c) throws CsvWriteException {
 		try {
-			appender.append(c);
+			out.append(c);
 		} catch (IOException e) {
 			throw wrap(e);
 		}
@@ -451,20 +622,45 @@ public class CsvWriter implements ICsvWriter {
 
 	private void println() throws CsvWriteException {
 		try {
-			appender.append(NL);
+			out.endLine();
 		} catch (IOException e) {
 			throw wrap(e);
 		}
 	}
 
+	/**
+	 * Hand over anything buffered to the underlying output, and flush that too
+	 * if it can be
+	 */
 	@Override
 	public void flush() throws CsvWriteException {
-		if (flushable) {
-			try {
-				((Flushable) appender).flush();
-			} catch (IOException e) {
-				throw wrap(e);
+		try {
+			out.flushBuffer();
+			if (out.bytes != null) {
+				out.bytes.flush();
+			} else if (flushable) {
+				((Flushable) out.appender).flush();
 			}
+		} catch (IOException e) {
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * Flush and close the output. Needed to finish off compressed output, see
+	 * {@link Builder#gzip(boolean)}
+	 */
+	@Override
+	public void close() throws CsvWriteException {
+		flush();
+		try {
+			if (out.bytes != null) {
+				out.bytes.close();
+			} else if (out.appender instanceof Closeable) {
+				((Closeable) out.appender).close();
+			}
+		} catch (IOException e) {
+			throw new CsvWriteException("Error closing output", e);
 		}
 	}
 
@@ -473,9 +669,13 @@ public class CsvWriter implements ICsvWriter {
 				"stream threw an error while writing record", e);
 	}
 
+	/**
+	 * Appends via the buffer, so anything written here stays in order with the
+	 * records
+	 */
 	@Override
 	public Appendable getAppender() {
-		return appender;
+		return out;
 	}
 
 	public static Builder with() {
@@ -487,16 +687,74 @@ public class CsvWriter implements ICsvWriter {
 		private char fieldSep = ',';
 		private boolean threadsafe = false;
 		private boolean quoteEmptyStrings = true;
+		private int bufferSize = 64 * 1024;
 		
+		/**
+		 * Blocks of encoded bytes collected before writing them out in one go
+		 */
+		private static final int NUM_BYTE_BLOCKS = 4;
+
 		private Serialiser serialiser;
 		private Appendable appender;
+		private OutputStream os;
+		private WritableByteChannel channel;
+		private Charset charset;
+		private boolean gzip;
+		private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+		private int compressionThreads = Runtime.getRuntime().availableProcessors();
 
 		public CsvWriter build() {
+			if (os != null) {
+				checkBufferSize(bufferSize);
+				return build(new Output(buildByteOutput(os, charset), bufferSize), threadsafe);
+			}
+			if (channel != null) {
+				checkBufferSize(bufferSize);
+				return build(channel, charset, threadsafe);
+			}
+			Preconditions.checkState(!gzip, "can only compress stream or channel output");
+			return build(appender, bufferSize, threadsafe);
+		}
+
+		/**
+		 * A writer with these settings but the given output, leaving the
+		 * builder as is
+		 */
+		CsvWriter build(Appendable appender, int bufferSize, boolean threadsafe) {
 			Preconditions.checkNotNull(appender, "expect output");
+			checkBufferSize(bufferSize);
+			return build(new Output(appender, bufferSize), threadsafe);
+		}
+
+		/**
+		 * A writer with these settings writing bytes to the given channel,
+		 * leaving the builder as is
+		 */
+		CsvWriter build(WritableByteChannel channel, Charset charset, boolean threadsafe) {
+			checkBufferSize(bufferSize);
+			ByteOutput bytes = gzip
+					? buildByteOutput(Channels.newOutputStream(channel), charset)
+					: new ByteOutput(channel, charset, bufferSize, NUM_BYTE_BLOCKS);
+			return build(new Output(bytes, bufferSize), threadsafe);
+		}
+
+		private ByteOutput buildByteOutput(OutputStream os, Charset charset) {
+			if (gzip) {
+				os = new BlockGzipOutputStream(os, compressionLevel, compressionThreads);
+			}
+			return new ByteOutput(os, charset, bufferSize, NUM_BYTE_BLOCKS);
+		}
+
+		private static void checkBufferSize(int bufferSize) {
+			Preconditions.checkArgument(bufferSize >= Serialiser.MAX_NUMBER_CHARS,
+					"expect buffer size >= " + Serialiser.MAX_NUMBER_CHARS);
+		}
+
+		private CsvWriter build(Output out, boolean threadsafe) {
 			Serialiser ser = serialiser == null ? DefaultSerialiser
 					.get() : serialiser;
 			Lock lock = threadsafe?new ReentrantLock():new NoLock();
-			return new CsvWriter(appender, ser, fieldSep, commentChar, quoteEmptyStrings, lock, null);
+			return new CsvWriter(out, ser, fieldSep, commentChar, quoteEmptyStrings, lock, null);
 		}
 
 		public Builder defaults() {
@@ -504,16 +762,76 @@ public class CsvWriter implements ICsvWriter {
 			return this;
 		}
 
+		/**
+		 * Write bytes in the platform charset
+		 */
 		public Builder output(OutputStream os) {
-			output(new OutputStreamWriter(os));
+			return output(os, Charset.defaultCharset());
+		}
+
+		/**
+		 * Write bytes in the given charset. The buffered chars are encoded
+		 * straight into blocks of bytes, with ascii copied across as is for
+		 * UTF-8 and the like, and written out a few blocks at a time
+		 */
+		public Builder output(OutputStream os, Charset charset) {
+			clearOutput();
+			this.os = Preconditions.checkNotNull(os, "expect output");
+			this.charset = Preconditions.checkNotNull(charset, "expect charset");
+			return this;
+		}
+
+		/**
+		 * Write bytes in the given charset, to a file or socket channel say.
+		 * As for {@link #output(OutputStream, Charset)}, using gathered writes
+		 * where the channel supports them
+		 */
+		public Builder output(WritableByteChannel channel, Charset charset) {
+			clearOutput();
+			this.channel = Preconditions.checkNotNull(channel, "expect output");
+			this.charset = Preconditions.checkNotNull(charset, "expect charset");
 			return this;
 		}
 
 		public Builder output(Appendable w) {
+			clearOutput();
 			this.appender = w;
 			return this;
 		}
 
+		/**
+		 * Compress stream and channel output as gzip, in blocks compressed in
+		 * parallel, see {@link BlockGzipOutputStream}. The writer has to be
+		 * closed to finish off the output. Default is false
+		 */
+		public Builder gzip(boolean gzip) {
+			this.gzip = gzip;
+			return this;
+		}
+
+		/**
+		 * The {@link Deflater} level to {@link #gzip(boolean)} at, 0 to 9.
+		 * Default is zlib's default, 6
+		 */
+		public Builder compressionLevel(int level) {
+			this.compressionLevel = level;
+			return this;
+		}
+
+		/**
+		 * Threads to {@link #gzip(boolean)} on. Default is one per core
+		 */
+		public Builder compressionThreads(int numThreads) {
+			this.compressionThreads = numThreads;
+			return this;
+		}
+
+		private void clearOutput() {
+			this.appender = null;
+			this.os = null;
+			this.channel = null;
+		}
+
 		/**
 		 * Default is '#'
 		 */
@@ -543,6 +861,17 @@ public class CsvWriter implements ICsvWriter {
 			return this;
 		}
 
+		/**
+		 * Number of chars to collect before handing them over to the output.
+		 * Default is 64k. Writing to a string builder, string writer or the
+		 * like, each line is handed over as it ends, so there is no need to
+		 * flush before reading what was written
+		 */
+		public Builder bufferSize(int numChars) {
+			this.bufferSize = numChars;
+			return this;
+		}
+
 		/**
 		 * If empty strings are a thing and need to be quoted (instead of being null). Default is true
 		 */
@@ -552,6 +881,115 @@ public class CsvWriter implements ICsvWriter {
 		}
 	}
 	
+	/**
+	 * Buffer in front of the output, shared by a writer and its embedded
+	 * writers
+	 */
+	private static class Output implements Appendable {
+
+		private final Appendable appender;
+		// set if the appender can take the buffer without copying it char
+		// by char
+		private final Writer writer;
+		private final StringBuilder builder;
+		// set instead of the appender when writing bytes
+		private final ByteOutput bytes;
+		// nothing to save by holding on to lines, and callers expect to
+		// see them without a flush
+		private final boolean inMemory;
+
+		private final char[] buf;
+		private int len;
+
+		Output(Appendable appender, int bufferSize) {
+			this.appender = appender;
+			this.writer = appender instanceof Writer ? (Writer) appender : null;
+			this.builder = appender instanceof StringBuilder ? (StringBuilder) appender : null;
+			this.bytes = null;
+			this.inMemory = appender instanceof StringBuilder || appender instanceof StringBuffer
+					|| appender instanceof StringWriter || appender instanceof CharArrayWriter
+					|| appender instanceof CharBuffer;
+			this.buf = new char[bufferSize];
+		}
+
+		Output(ByteOutput bytes, int bufferSize) {
+			this.appender = null;
+			this.writer = null;
+			this.builder = null;
+			this.bytes = bytes;
+			this.inMemory = false;
+			this.buf = new char[bufferSize];
+		}
+
+		void ensureFree(int numChars) throws IOException {
+			if (buf.length - len < numChars) {
+				flushBuffer();
+			}
+		}
+
+		/**
+		 * End the line, handing it straight over if writing to memory
+		 */
+		void endLine() throws IOException {
+			append(NL);
+			if (inMemory) {
+				flushBuffer();
+			}
+		}
+
+		void flushBuffer() throws IOException {
+			if (len == 0) {
+				return;
+			}
+			if (bytes != null) {
+				bytes.write(buf, 0, len);
+			} else if (writer != null) {
+				writer.write(buf, 0, len);
+			} else if (builder != null) {
+				builder.append(buf, 0, len);
+			} else {
+				appender.append(CharBuffer.wrap(buf, 0, len));
+			}
+			len = 0;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq) throws IOException {
+			return append(csq, 0, csq.length());
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			int numChars = end - start;
+			ensureFree(numChars);
+			if (numChars > buf.length && bytes == null) {
+				// too big to bother buffering
+				appender.append(csq, start, end);
+			} else if (numChars > buf.length) {
+				for (int i = start; i < end; i++) {
+					append(csq.charAt(i));
+				}
+			} else if (csq instanceof String) {
+				((String) csq).getChars(start, end, buf, len);
+				len += numChars;
+			} else {
+				for (int i = start; i < end; i++) {
+					buf[len++] = csq.charAt(i);
+				}
+			}
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) throws IOException {
+			if (len == buf.length) {
+				flushBuffer();
+			}
+			buf[len++] = c;
+			return this;
+		}
+	}
+
 	private static class NoLock implements Lock {
 
 		@Override
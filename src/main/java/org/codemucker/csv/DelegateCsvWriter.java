@@ -4,6 +4,11 @@ import java.util.Date;
 
 import org.joda.time.DateTime;
 
+/**
+ * Passes each call on to another writer. The write methods return this
+ * writer, not the delegate, so chained calls keep going through any
+ * overrides
+ */
 public class DelegateCsvWriter implements ICsvWriter {
 	
 	private final ICsvWriter delegate;
@@ -13,146 +18,178 @@ public class DelegateCsvWriter implements ICsvWriter {
 		this.delegate = parent;
 	}
 	
+	/**
+	 * For subclasses which supply the delegate themselves, by overriding
+	 * {@link #getDelegate()}
+	 */
+	protected DelegateCsvWriter() {
+		this(null);
+	}
+
+	/**
+	 * The writer each call is passed on to
+	 */
 	protected ICsvWriter getDelegate(){
 		return delegate;
 	}
 
 	@Override
 	public void beginRecord() throws CsvWriteException {
-		delegate.beginRecord();
+		getDelegate().beginRecord();
 	}
 
 	@Override
 	public void endRecord() throws CsvWriteException {
-		delegate.endRecord();
+		getDelegate().endRecord();
 	}
 	
 	
 	public ICsvWriter writeRecordComment(String s) throws CsvWriteException {
-		return delegate.writeRecordComment(s);
+		getDelegate().writeRecordComment(s);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Object obj) throws CsvWriteException {
-		return delegate.write(obj);
+		getDelegate().write(obj);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(char c) throws CsvWriteException {
-		return delegate.write(c);
+		getDelegate().write(c);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(boolean b) throws CsvWriteException {
-		return delegate.write(b);
+		getDelegate().write(b);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(int i) throws CsvWriteException {
-		return delegate.write(i);
+		getDelegate().write(i);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(float f) throws CsvWriteException {
-		return delegate.write(f);
+		getDelegate().write(f);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(double d) throws CsvWriteException {
-		return delegate.write(d);
+		getDelegate().write(d);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(byte b) throws CsvWriteException {
-		return delegate.write(b);
+		getDelegate().write(b);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(byte[] b) throws CsvWriteException {
-		return delegate.write(b);
+		getDelegate().write(b);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(long l) throws CsvWriteException {
-		return delegate.write(l);
+		getDelegate().write(l);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(String s) throws CsvWriteException {
-		return delegate.write(s);
+		getDelegate().write(s);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter writeNonEscaped(String s) throws CsvWriteException {
-		return delegate.writeNonEscaped(s);
+		getDelegate().writeNonEscaped(s);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Boolean b) throws CsvWriteException {
-		return delegate.write(b);
+		getDelegate().write(b);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Float f) throws CsvWriteException {
-		return delegate.write(f);
+		getDelegate().write(f);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Long l) throws CsvWriteException {
-		return delegate.write(l);
+		getDelegate().write(l);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Byte b) throws CsvWriteException {
-		return delegate.write(b);
+		getDelegate().write(b);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Integer i) throws CsvWriteException {
-		return delegate.write(i);
+		getDelegate().write(i);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Double d) throws CsvWriteException {
-		return delegate.write(d);
+		getDelegate().write(d);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Character c) throws CsvWriteException {
-		return delegate.write(c);
+		getDelegate().write(c);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(DateTime d) throws CsvWriteException {
-		return delegate.write(d);
+		getDelegate().write(d);
+		return this;
 	}
 
 	@Override
 	public ICsvWriter write(Date d) throws CsvWriteException {
-		return delegate.write(d);
+		getDelegate().write(d);
+		return this;
 	}
 
 	@Override
 	public void flush() throws CsvWriteException {
-		delegate.flush();
+		getDelegate().flush();
 	}
 
 	@Override
 	public Appendable getAppender() {
-		return delegate.getAppender();
+		return getDelegate().getAppender();
 	}
 
 	public ICsvWriter getEmbeddedWriter() {
-		return delegate.getEmbeddedWriter();
+		return getDelegate().getEmbeddedWriter();
 	}
 
 	@Override
 	public void lock() {
-		delegate.lock();
+		getDelegate().lock();
 	}
 
 	@Override
 	public void unlock() {
-		delegate.unlock();
+		getDelegate().unlock();
 	}
 }
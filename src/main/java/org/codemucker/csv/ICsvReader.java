@@ -9,6 +9,14 @@ public interface ICsvReader {
 
 	ICsvRecord readNextRecord(int skipNumLines) throws CsvException;
 
+	/**
+	 * Empty the given batch and fill it with up to the given number of
+	 * records
+	 * 
+	 * @return the number of records read, 0 if there are no more
+	 */
+	int readBatch(RecordBatch batch, int maxRecords) throws CsvException;
+
 	boolean hasMore();
 
 }
@@ -43,6 +43,16 @@ public interface ICsvRecord {
 	String readString(int idx);
 	String readString(int idx, String defaultVal);
 
+	/**
+	 * Read the field without necessarily creating a string. Depending on the
+	 * reader this may be a view onto the reader's buffers which is reused, so
+	 * only valid until the next record is read, and until the same field is
+	 * read again. Call toString() to keep it.
+	 * 
+	 * @return the field, or null if the field is null
+	 */
+	CharSequence readChars(int idx);
+
 	byte[] readBytes(int idx);
 	byte[] readBytes(int idx, byte[] defaultVal);
 
@@ -0,0 +1,438 @@
+package org.codemucker.csv;
+
+import java.math.BigInteger;
+
+/**
+ * Writes numbers straight into a char buffer, without creating a string.
+ *
+ * <p>
+ * Doubles and floats are written as the shortest decimal which reads back as
+ * the same value, using Giulietti's Schubfach algorithm ("The Schubfach way to
+ * render doubles"). The layout is the same as {@link Double#toString(double)}
+ * and {@link Float#toString(float)}, so on newer JDKs the output is identical.
+ * Older JDKs sometimes print more digits than needed.
+ * </p>
+ *
+ * <p>
+ * None of the methods write more than {@link Serialiser#MAX_NUMBER_CHARS}
+ * </p>
+ */
+final class NumberFormatter {
+
+	private static final char[] DIGIT_TENS = new char[100];
+	private static final char[] DIGIT_ONES = new char[100];
+
+	static {
+		for (int i = 0; i < 100; i++) {
+			DIGIT_TENS[i] = (char) ('0' + i / 10);
+			DIGIT_ONES[i] = (char) ('0' + i % 10);
+		}
+	}
+
+	private static final int K_MIN = -324;
+	private static final int K_MAX = 292;
+	private static final long MASK_63 = (1L << 63) - 1;
+	private static final long MASK_32 = (1L << 32) - 1;
+
+	/**
+	 * floor(10^-k 2^(125 - flog2pow10(-k))) + 1 for each k from
+	 * {@link #K_MIN}, split into the high and low 63 bits
+	 */
+	private static final long[] G = tableOfG();
+
+	private static final char[] NAN = "NaN".toCharArray();
+	private static final char[] INFINITY = "Infinity".toCharArray();
+	private static final char[] MIN_INT = "-2147483648".toCharArray();
+	private static final char[] MIN_LONG = "-9223372036854775808".toCharArray();
+
+	private NumberFormatter() {
+	}
+
+	/**
+	 * @return the index after the last char written
+	 */
+	static int formatInt(int i, char[] buf, int pos) {
+		if (i == Integer.MIN_VALUE) {
+			return copy(MIN_INT, buf, pos);
+		}
+		if (i < 0) {
+			buf[pos++] = '-';
+			i = -i;
+		}
+		int end = pos + numDigits(i);
+		int p = end;
+		while (i >= 100) {
+			int q = i / 100;
+			int r = i - q * 100;
+			i = q;
+			buf[--p] = DIGIT_ONES[r];
+			buf[--p] = DIGIT_TENS[r];
+		}
+		if (i >= 10) {
+			buf[--p] = DIGIT_ONES[i];
+			buf[--p] = DIGIT_TENS[i];
+		} else {
+			buf[--p] = (char) ('0' + i);
+		}
+		return end;
+	}
+
+	/**
+	 * @return the index after the last char written
+	 */
+	static int formatLong(long l, char[] buf, int pos) {
+		if (l == Long.MIN_VALUE) {
+			return copy(MIN_LONG, buf, pos);
+		}
+		if (l < 0) {
+			buf[pos++] = '-';
+			l = -l;
+		}
+		int end = pos + numDigits(l);
+		writeDigits(l, buf, end);
+		return end;
+	}
+
+	/**
+	 * Write the digits of the given non negative number, ending just before
+	 * end
+	 */
+	private static void writeDigits(long l, char[] buf, int end) {
+		int p = end;
+		while (l > Integer.MAX_VALUE) {
+			long q = l / 100;
+			int r = (int) (l - q * 100);
+			l = q;
+			buf[--p] = DIGIT_ONES[r];
+			buf[--p] = DIGIT_TENS[r];
+		}
+		int i = (int) l;
+		while (i >= 100) {
+			int q = i / 100;
+			int r = i - q * 100;
+			i = q;
+			buf[--p] = DIGIT_ONES[r];
+			buf[--p] = DIGIT_TENS[r];
+		}
+		if (i >= 10) {
+			buf[--p] = DIGIT_ONES[i];
+			buf[--p] = DIGIT_TENS[i];
+		} else {
+			buf[--p] = (char) ('0' + i);
+		}
+	}
+
+	private static int numDigits(int i) {
+		int n = 1;
+		int limit = 10;
+		while (n < 10 && i >= limit) {
+			n++;
+			limit *= 10;
+		}
+		return n;
+	}
+
+	private static int numDigits(long l) {
+		int n = 1;
+		long limit = 10;
+		while (n < 19 && l >= limit) {
+			n++;
+			limit *= 10;
+		}
+		return n;
+	}
+
+	private static int copy(char[] chars, char[] buf, int pos) {
+		System.arraycopy(chars, 0, buf, pos, chars.length);
+		return pos + chars.length;
+	}
+
+	/**
+	 * @return the index after the last char written
+	 */
+	static int formatDouble(double d, char[] buf, int pos) {
+		long bits = Double.doubleToRawLongBits(d);
+		long t = bits & ((1L << 52) - 1);
+		int bq = (int) (bits >>> 52) & 0x7FF;
+		if (bq == 0x7FF) {
+			if (t != 0) {
+				return copy(NAN, buf, pos);
+			}
+			if (bits < 0) {
+				buf[pos++] = '-';
+			}
+			return copy(INFINITY, buf, pos);
+		}
+		if (bits < 0) {
+			buf[pos++] = '-';
+		}
+		if (bq != 0) {
+			// normal
+			int mq = 1074 + 1 - bq;
+			long c = (1L << 52) | t;
+			if (0 < mq && mq < 53) {
+				// a whole number
+				long f = c >> mq;
+				if (f << mq == c) {
+					return formatDecimal(f, 0, buf, pos);
+				}
+			}
+			return formatDouble(-mq, c, 0, buf, pos);
+		}
+		if (t != 0) {
+			// subnormal, too few digits to work with so scale up
+			return t < 3 ? formatDouble(-1074, 10 * t, -1, buf, pos)
+					: formatDouble(-1074, t, 0, buf, pos);
+		}
+		buf[pos++] = '0';
+		buf[pos++] = '.';
+		buf[pos++] = '0';
+		return pos;
+	}
+
+	/**
+	 * Find the shortest decimal closest to c 2^q, of all those which round to
+	 * it
+	 */
+	private static int formatDouble(int q, long c, int dk, char[] buf, int pos) {
+		int out = (int) c & 1;
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != (1L << 52) || q == -1074) {
+			// regular spacing between neighbouring doubles
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			// closer to the double below, as that has a smaller exponent
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 2;
+
+		int idx = 2 * (k - K_MIN);
+		long g1 = G[idx];
+		long g0 = G[idx + 1];
+
+		long vb = roundToOdd(g1, g0, cb << h);
+		long vbl = roundToOdd(g1, g0, cbl << h);
+		long vbr = roundToOdd(g1, g0, cbr << h);
+
+		long s = vb >> 2;
+		if (s >= 100) {
+			// try one digit less first, floor(s / 10) without dividing
+			long sp10 = 10 * NumberParser.unsignedMultiplyHigh(s, 115292150460684698L << 4);
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				return formatDecimal(upin ? sp10 : tp10, k, buf, pos);
+			}
+		}
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) {
+			return formatDecimal(uin ? s : t, k + dk, buf, pos);
+		}
+		// both round trip, pick the closest
+		long cmp = vb - (s + t << 1);
+		return formatDecimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf, pos);
+	}
+
+	/**
+	 * @return the index after the last char written
+	 */
+	static int formatFloat(float f, char[] buf, int pos) {
+		int bits = Float.floatToRawIntBits(f);
+		int t = bits & ((1 << 23) - 1);
+		int bq = (bits >>> 23) & 0xFF;
+		if (bq == 0xFF) {
+			if (t != 0) {
+				return copy(NAN, buf, pos);
+			}
+			if (bits < 0) {
+				buf[pos++] = '-';
+			}
+			return copy(INFINITY, buf, pos);
+		}
+		if (bits < 0) {
+			buf[pos++] = '-';
+		}
+		if (bq != 0) {
+			int mq = 149 + 1 - bq;
+			int c = (1 << 23) | t;
+			if (0 < mq && mq < 24) {
+				int w = c >> mq;
+				if (w << mq == c) {
+					return formatDecimal(w, 0, buf, pos);
+				}
+			}
+			return formatFloat(-mq, c, 0, buf, pos);
+		}
+		if (t != 0) {
+			return t < 8 ? formatFloat(-149, 10 * t, -1, buf, pos)
+					: formatFloat(-149, t, 0, buf, pos);
+		}
+		buf[pos++] = '0';
+		buf[pos++] = '.';
+		buf[pos++] = '0';
+		return pos;
+	}
+
+	/**
+	 * @see #formatDouble(int, long, int, char[], int)
+	 */
+	private static int formatFloat(int q, int c, int dk, char[] buf, int pos) {
+		int out = c & 1;
+		long cb = (long) c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != (1 << 23) || q == -149) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 33;
+
+		long g = G[2 * (k - K_MIN)] + 1;
+
+		int vb = roundToOdd(g, cb << h);
+		int vbl = roundToOdd(g, cbl << h);
+		int vbr = roundToOdd(g, cbr << h);
+
+		int s = vb >> 2;
+		if (s >= 100) {
+			int sp10 = 10 * (int) (s * 1717986919L >>> 34);
+			int tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				return formatDecimal(upin ? sp10 : tp10, k, buf, pos);
+			}
+		}
+		int t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) {
+			return formatDecimal(uin ? s : t, k + dk, buf, pos);
+		}
+		int cmp = vb - (s + t << 1);
+		return formatDecimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf, pos);
+	}
+
+	/**
+	 * cp g 2^-127 rounded to odd, where g = g1 2^63 + g0
+	 */
+	private static long roundToOdd(long g1, long g0, long cp) {
+		long x1 = NumberParser.unsignedMultiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = NumberParser.unsignedMultiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+	}
+
+	/**
+	 * cp g 2^-95 rounded to odd
+	 */
+	private static int roundToOdd(long g, long cp) {
+		long x1 = NumberParser.unsignedMultiplyHigh(g, cp);
+		long vbp = x1 >>> 31;
+		return (int) (vbp | ((x1 & MASK_32) + MASK_32) >>> 32);
+	}
+
+	/**
+	 * floor(log10(2^e))
+	 */
+	private static int flog10pow2(int e) {
+		return (int) (e * 661971961083L >> 41);
+	}
+
+	/**
+	 * floor(log10(3/4 2^e))
+	 */
+	private static int flog10threeQuartersPow2(int e) {
+		return (int) (e * 661971961083L - 274743187321L >> 41);
+	}
+
+	/**
+	 * floor(log2(10^e))
+	 */
+	private static int flog2pow10(int e) {
+		return (int) (e * 913124641741L >> 38);
+	}
+
+	/**
+	 * Write f 10^e laid out like {@link Double#toString(double)}. Plain if
+	 * between 10^-3 and 10^7, otherwise in scientific notation
+	 */
+	private static int formatDecimal(long f, int e, char[] buf, int pos) {
+		while (f % 10 == 0) {
+			f /= 10;
+			e++;
+		}
+		int n = numDigits(f);
+		// so the value is 0.digits 10^exp
+		int exp = e + n;
+		if (0 < exp && exp <= 7) {
+			if (n <= exp) {
+				writeDigits(f, buf, pos + n);
+				pos += n;
+				for (int i = n; i < exp; i++) {
+					buf[pos++] = '0';
+				}
+				buf[pos++] = '.';
+				buf[pos++] = '0';
+				return pos;
+			}
+			// write the digits one along, then shift the whole part back
+			writeDigits(f, buf, pos + n + 1);
+			System.arraycopy(buf, pos + 1, buf, pos, exp);
+			buf[pos + exp] = '.';
+			return pos + n + 1;
+		}
+		if (-3 < exp && exp <= 0) {
+			buf[pos++] = '0';
+			buf[pos++] = '.';
+			for (int i = exp; i < 0; i++) {
+				buf[pos++] = '0';
+			}
+			writeDigits(f, buf, pos + n);
+			return pos + n;
+		}
+		writeDigits(f, buf, pos + n + 1);
+		buf[pos] = buf[pos + 1];
+		buf[pos + 1] = '.';
+		pos += n + 1;
+		if (n == 1) {
+			buf[pos++] = '0';
+		}
+		buf[pos++] = 'E';
+		return formatInt(exp - 1, buf, pos);
+	}
+
+	private static long[] tableOfG() {
+		long[] table = new long[2 * (K_MAX - K_MIN + 1)];
+		BigInteger mask63 = BigInteger.valueOf(MASK_63);
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			int shift = 125 - flog2pow10(-k);
+			BigInteger g;
+			if (k <= 0) {
+				BigInteger pow10 = BigInteger.TEN.pow(-k);
+				g = shift >= 0 ? pow10.shiftLeft(shift) : pow10.shiftRight(-shift);
+			} else {
+				g = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+			}
+			g = g.add(BigInteger.ONE);
+			int idx = 2 * (k - K_MIN);
+			table[idx] = g.shiftRight(63).longValue();
+			table[idx + 1] = g.and(mask63).longValue();
+		}
+		return table;
+	}
+}
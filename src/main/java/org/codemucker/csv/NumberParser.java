@@ -0,0 +1,411 @@
+package org.codemucker.csv;
+
+import java.math.BigInteger;
+
+/**
+ * Parses numbers straight from a range of chars, without creating a string.
+ *
+ * <p>
+ * Whole numbers follow the same rules as {@link Long#parseLong(String)}.
+ * Decimals give exactly the same result as {@link Double#parseDouble(String)}
+ * and {@link Float#parseFloat(String)}. Plain decimals of up to 19 significant
+ * digits are converted using the Eisel-Lemire algorithm (see Lemire, "Number
+ * Parsing at a Gigabyte per Second"). Anything else, such as whitespace, hex,
+ * NaN, Infinity, type suffixes or more digits, is handed over to the JDK.
+ * </p>
+ */
+final class NumberParser {
+
+	private static final int SMALLEST_POWER_OF_FIVE = -342;
+	private static final int LARGEST_POWER_OF_FIVE = 308;
+
+	/**
+	 * The 128 most significant bits of each power of five from
+	 * {@link #SMALLEST_POWER_OF_FIVE}, as pairs of high then low longs
+	 */
+	private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+	private static final double[] DOUBLE_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	private static final float[] FLOAT_POWERS_OF_TEN = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+	/**
+	 * Most significant digits which are guaranteed to fit into an unsigned
+	 * long
+	 */
+	private static final int MAX_DIGITS = 19;
+
+	private NumberParser() {
+	}
+
+	/**
+	 * @throws NumberFormatException
+	 *             if not a whole number or not within min and max
+	 */
+	static long parseLong(CharSequence s, int start, int end, long min, long max) {
+		if (start >= end) {
+			throw new NumberFormatException("empty number");
+		}
+		int i = start;
+		boolean negative = false;
+		char first = s.charAt(i);
+		if (first == '-' || first == '+') {
+			if (end - start == 1) {
+				throw badNumber(s, start, end);
+			}
+			negative = first == '-';
+			i++;
+		}
+		// accumulate negatively so the min value doesn't overflow
+		long limit = negative ? min : -max;
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = Character.digit(s.charAt(i), 10);
+			if (digit < 0 || result < multmin) {
+				throw badNumber(s, start, end);
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw badNumber(s, start, end);
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * @see #parseLong(CharSequence, int, int, long, long)
+	 */
+	static long parseLong(char[] s, int start, int end, long min, long max) {
+		if (start >= end) {
+			throw new NumberFormatException("empty number");
+		}
+		int i = start;
+		boolean negative = false;
+		char first = s[i];
+		if (first == '-' || first == '+') {
+			if (end - start == 1) {
+				throw badNumber(s, start, end);
+			}
+			negative = first == '-';
+			i++;
+		}
+		long limit = negative ? min : -max;
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = Character.digit(s[i], 10);
+			if (digit < 0 || result < multmin) {
+				throw badNumber(s, start, end);
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw badNumber(s, start, end);
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	private static NumberFormatException badNumber(CharSequence s, int start, int end) {
+		return new NumberFormatException("For input string: \"" + s.subSequence(start, end) + "\"");
+	}
+
+	private static NumberFormatException badNumber(char[] s, int start, int end) {
+		return new NumberFormatException("For input string: \"" + new String(s, start, end - start) + "\"");
+	}
+
+	static double parseDouble(CharSequence s, int start, int end) {
+		return parseDecimal(s, start, end, false);
+	}
+
+	static double parseDouble(char[] s, int start, int end) {
+		return parseDecimal(s, start, end, false);
+	}
+
+	static float parseFloat(CharSequence s, int start, int end) {
+		return (float) parseDecimal(s, start, end, true);
+	}
+
+	static float parseFloat(char[] s, int start, int end) {
+		return (float) parseDecimal(s, start, end, true);
+	}
+
+	/**
+	 * Split a plain decimal into its significant digits and power of ten
+	 *
+	 * @param asFloat
+	 *            if the result should be rounded to a float. This is returned
+	 *            widened to a double, which is exact
+	 */
+	private static double parseDecimal(CharSequence s, int start, int end, boolean asFloat) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		long digits = 0;
+		int numDigits = 0;
+		int exp10 = 0;
+		boolean anyDigits = false;
+		char c;
+		while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+			// leading zeros aren't significant
+			if (numDigits > 0 || c != '0') {
+				digits = digits * 10 + (c - '0');
+				numDigits++;
+			}
+			anyDigits = true;
+			i++;
+		}
+		if (i < end && s.charAt(i) == '.') {
+			i++;
+			while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+				if (numDigits > 0 || c != '0') {
+					digits = digits * 10 + (c - '0');
+					numDigits++;
+				}
+				exp10--;
+				anyDigits = true;
+				i++;
+			}
+		}
+		if (anyDigits && i < end && ((c = s.charAt(i)) == 'e' || c == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+				negativeExp = s.charAt(i) == '-';
+				i++;
+			}
+			int expStart = i;
+			int exp = 0;
+			while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+				// way beyond the range of a double, so stop before overflowing
+				if (exp < 100000) {
+					exp = exp * 10 + (c - '0');
+				}
+				i++;
+			}
+			if (i == expStart) {
+				anyDigits = false;
+			}
+			exp10 += negativeExp ? -exp : exp;
+		}
+		if (!anyDigits || i != end || numDigits > MAX_DIGITS) {
+			String str = s.subSequence(start, end).toString();
+			return asFloat ? Float.parseFloat(str) : Double.parseDouble(str);
+		}
+		return asFloat ? toFloat(negative, digits, exp10) : toDouble(negative, digits, exp10);
+	}
+
+	/**
+	 * @see #parseDecimal(CharSequence, int, int, boolean)
+	 */
+	private static double parseDecimal(char[] s, int start, int end, boolean asFloat) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s[i] == '-' || s[i] == '+')) {
+			negative = s[i] == '-';
+			i++;
+		}
+		long digits = 0;
+		int numDigits = 0;
+		int exp10 = 0;
+		boolean anyDigits = false;
+		char c;
+		while (i < end && (c = s[i]) >= '0' && c <= '9') {
+			if (numDigits > 0 || c != '0') {
+				digits = digits * 10 + (c - '0');
+				numDigits++;
+			}
+			anyDigits = true;
+			i++;
+		}
+		if (i < end && s[i] == '.') {
+			i++;
+			while (i < end && (c = s[i]) >= '0' && c <= '9') {
+				if (numDigits > 0 || c != '0') {
+					digits = digits * 10 + (c - '0');
+					numDigits++;
+				}
+				exp10--;
+				anyDigits = true;
+				i++;
+			}
+		}
+		if (anyDigits && i < end && ((c = s[i]) == 'e' || c == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < end && (s[i] == '-' || s[i] == '+')) {
+				negativeExp = s[i] == '-';
+				i++;
+			}
+			int expStart = i;
+			int exp = 0;
+			while (i < end && (c = s[i]) >= '0' && c <= '9') {
+				if (exp < 100000) {
+					exp = exp * 10 + (c - '0');
+				}
+				i++;
+			}
+			if (i == expStart) {
+				anyDigits = false;
+			}
+			exp10 += negativeExp ? -exp : exp;
+		}
+		if (!anyDigits || i != end || numDigits > MAX_DIGITS) {
+			String str = new String(s, start, end - start);
+			return asFloat ? Float.parseFloat(str) : Double.parseDouble(str);
+		}
+		return asFloat ? toFloat(negative, digits, exp10) : toDouble(negative, digits, exp10);
+	}
+
+	/**
+	 * @param digits
+	 *            unsigned significant digits
+	 * @return digits * 10^exp10 rounded to the nearest double
+	 */
+	static double toDouble(boolean negative, long digits, int exp10) {
+		// exact when both the digits and the power of ten are exact doubles
+		if (exp10 >= -22 && exp10 <= 22 && digits >= 0 && digits <= (1L << 53)) {
+			double d = digits;
+			d = exp10 < 0 ? d / DOUBLE_POWERS_OF_TEN[-exp10] : d * DOUBLE_POWERS_OF_TEN[exp10];
+			return negative ? -d : d;
+		}
+		long bits = eiselLemire(digits, exp10, 52, -1023, 0x7FF, -342, 308, -4, 23);
+		if (negative) {
+			bits |= 1L << 63;
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * @see #toDouble(boolean, long, int)
+	 */
+	static float toFloat(boolean negative, long digits, int exp10) {
+		if (exp10 >= -10 && exp10 <= 10 && digits >= 0 && digits <= (1L << 24)) {
+			float f = digits;
+			f = exp10 < 0 ? f / FLOAT_POWERS_OF_TEN[-exp10] : f * FLOAT_POWERS_OF_TEN[exp10];
+			return negative ? -f : f;
+		}
+		int bits = (int) eiselLemire(digits, exp10, 23, -127, 0xFF, -65, 38, -17, 10);
+		if (negative) {
+			bits |= 1 << 31;
+		}
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Work out the nearest binary float to w * 10^q, from the product of w and
+	 * a truncated 128 bit power of five. This is always enough to round
+	 * correctly (see Mushtak and Lemire, "Fast Number Parsing Without
+	 * Fallback")
+	 *
+	 * @return the bits of the float, without the sign
+	 */
+	private static long eiselLemire(long w, int q, int mantissaBits,
+			int minExponent, int infinitePower, int smallestPowerOfTen,
+			int largestPowerOfTen, int minExponentRoundToEven,
+			int maxExponentRoundToEven) {
+		if (w == 0 || q < smallestPowerOfTen) {
+			return 0;
+		}
+		if (q > largestPowerOfTen) {
+			return (long) infinitePower << mantissaBits;
+		}
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+
+		int idx = 2 * (q - SMALLEST_POWER_OF_FIVE);
+		long hi = unsignedMultiplyHigh(w, POWERS_OF_FIVE[idx]);
+		long lo = w * POWERS_OF_FIVE[idx];
+		long precisionMask = -1L >>> (mantissaBits + 3);
+		if ((hi & precisionMask) == precisionMask) {
+			// not sure of the rounding yet, include the next 64 bits
+			long secondHi = unsignedMultiplyHigh(w, POWERS_OF_FIVE[idx + 1]);
+			lo += secondHi;
+			if (Long.compareUnsigned(secondHi, lo) > 0) {
+				hi++;
+			}
+		}
+
+		int upperBit = (int) (hi >>> 63);
+		int shift = upperBit + 64 - mantissaBits - 3;
+		long mantissa = hi >>> shift;
+		// floor(log2(10^q)) + 63
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz - minExponent;
+
+		if (power2 <= 0) {
+			// subnormal
+			if (-power2 + 1 >= 64) {
+				return 0;
+			}
+			mantissa >>>= -power2 + 1;
+			mantissa += mantissa & 1;
+			mantissa >>>= 1;
+			power2 = mantissa < (1L << mantissaBits) ? 0 : 1;
+			return mantissa | ((long) power2 << mantissaBits);
+		}
+
+		// exactly half way between two floats, round to even rather than up
+		if (Long.compareUnsigned(lo, 1) <= 0 && q >= minExponentRoundToEven
+				&& q <= maxExponentRoundToEven && (mantissa & 3) == 1
+				&& (mantissa << shift) == hi) {
+			mantissa &= ~1L;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= (2L << mantissaBits)) {
+			mantissa = 1L << mantissaBits;
+			power2++;
+		}
+		mantissa &= ~(1L << mantissaBits);
+		if (power2 >= infinitePower) {
+			return (long) infinitePower << mantissaBits;
+		}
+		return mantissa | ((long) power2 << mantissaBits);
+	}
+
+	/**
+	 * The high 64 bits of the unsigned 128 bit product
+	 */
+	static long unsignedMultiplyHigh(long x, long y) {
+		long x0 = x & 0xFFFFFFFFL;
+		long x1 = x >>> 32;
+		long y0 = y & 0xFFFFFFFFL;
+		long y1 = y >>> 32;
+		long p01 = x0 * y1;
+		long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+		return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+	}
+
+	/**
+	 * Each power of five, normalised so the top bit is set and truncated to
+	 * 128 bits. Negative powers are the reciprocal, rounded up
+	 */
+	private static long[] powersOfFive() {
+		long[] table = new long[2 * (LARGEST_POWER_OF_FIVE - SMALLEST_POWER_OF_FIVE + 1)];
+		BigInteger five = BigInteger.valueOf(5);
+		for (int q = SMALLEST_POWER_OF_FIVE; q <= LARGEST_POWER_OF_FIVE; q++) {
+			BigInteger power5 = five.pow(Math.abs(q));
+			BigInteger c;
+			if (q < 0) {
+				int z = power5.bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+			} else {
+				c = power5;
+			}
+			int shift = c.bitLength() - 128;
+			c = shift > 0 ? c.shiftRight(shift) : c.shiftLeft(-shift);
+			int idx = 2 * (q - SMALLEST_POWER_OF_FIVE);
+			table[idx] = c.shiftRight(64).longValue();
+			table[idx + 1] = c.longValue();
+		}
+		return table;
+	}
+}
@@ -0,0 +1,507 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Read a single large file using multiple threads. Use:
+ *
+ * <pre>
+ * ParallelCsvReader r = ParallelCsvReader.with().input(path).numThreads(16).ordered(false).build();
+ *
+ * while (r.hasMore()) {
+ * 	ICsvRecord rec = r.readNextRecord();
+ * 	...
+ * }
+ * r.close();
+ * </pre>
+ *
+ * <p>
+ * The file is split into byte ranges which are each parsed on their own
+ * thread. Splits are moved onto real record boundaries first, taking escaped
+ * newlines and comments into account, by scanning every split in parallel for
+ * its start state (see {@link CsvBoundaryScanner}) and chaining the results.
+ * </p>
+ *
+ * <p>
+ * Records are either returned in file order, or in whatever order the splits
+ * produce them. Line numbers in error messages are relative to the start of
+ * the split. Records are never reused
+ * </p>
+ */
+@NotThreadSafe
+public class ParallelCsvReader implements Closeable, ICsvReader {
+
+	/**
+	 * Largest split we'll map in one go when looking for record boundaries
+	 */
+	private static final long MAX_SPLIT_SIZE = 1024 * 1024 * 1024;
+	/**
+	 * Don't bother splitting smaller than this
+	 */
+	private static final long MIN_SPLIT_SIZE = 1024 * 1024;
+
+	private final Path file;
+	private final Charset charset;
+	private final CsvReader.Builder settings;
+	private final Serialiser serialiser;
+	private final int numThreads;
+	private final long splitSize;
+	private final boolean ordered;
+	private final int batchSize;
+	private final int queueDepth;
+
+	private ExecutorService executor;
+
+	/**
+	 * When ordered, one queue per split so we can read them in turn.
+	 * Otherwise a single shared queue
+	 */
+	private List<BlockingQueue<Batch>> queues;
+	private int numSplits;
+	private int numSplitsDone;
+
+	private List<ICsvRecord> currentBatch;
+	private int currentBatchPos;
+	private CsvException error;
+
+	private ParallelCsvReader(Path file, Charset charset,
+			CsvReader.Builder settings, int numThreads, long splitSize,
+			boolean ordered, int batchSize, int queueDepth) {
+		this.file = file;
+		this.charset = charset;
+		this.settings = settings;
+		this.serialiser = settings.getSerialiser();
+		this.numThreads = numThreads;
+		this.splitSize = splitSize;
+		this.ordered = ordered;
+		this.batchSize = batchSize;
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Return the next record, blocking until one of the splits has parsed it
+	 */
+	@Override
+	public ICsvRecord readNextRecord() throws CsvException {
+		if (!hasMore()) {
+			throw new CsvEndOfStreamException("No more records");
+		}
+		if (error != null) {
+			throw error;
+		}
+		return currentBatch.get(currentBatchPos++);
+	}
+
+	/**
+	 * Skipping lines isn't supported as lines can't be counted across splits
+	 */
+	@Override
+	public ICsvRecord readNextRecord(int skipLines, int skipRecords)
+			throws CsvException {
+		Preconditions.checkArgument(skipLines == 0,
+				"can't skip lines when reading in parallel, skip records instead");
+		for (int i = 0; i < skipRecords; i++) {
+			readNextRecord();
+		}
+		return readNextRecord();
+	}
+
+	@Override
+	public ICsvRecord readNextRecord(int skipNumLines) throws CsvException {
+		return readNextRecord(skipNumLines, 0);
+	}
+
+	/**
+	 * Copies in records already parsed by the split threads
+	 */
+	@Override
+	public int readBatch(RecordBatch batch, int maxRecords) throws CsvException {
+		Preconditions.checkArgument(maxRecords > 0, "expect max records > 0");
+		batch.reset(this, serialiser);
+		while (batch.size() < maxRecords && hasMore()) {
+			batch.add(readNextRecord());
+		}
+		return batch.size();
+	}
+
+	/**
+	 * Blocks until the next record has been parsed, or all the splits are
+	 * done. On the first call the file is split and the parsing started
+	 */
+	@Override
+	public boolean hasMore() {
+		if (error != null) {
+			return true;
+		}
+		if (currentBatch != null && currentBatchPos < currentBatch.size()) {
+			return true;
+		}
+		if (queues == null) {
+			try {
+				start();
+			} catch (CsvException e) {
+				error = e;
+				return true;
+			}
+		}
+		return nextBatch();
+	}
+
+	private boolean nextBatch() {
+		while (numSplitsDone < numSplits) {
+			Batch batch;
+			try {
+				batch = queues.get(ordered ? numSplitsDone : 0).take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = new CsvException("Interrupted waiting for records", e);
+				return true;
+			}
+			if (batch.error != null) {
+				error = batch.error;
+				return true;
+			}
+			if (batch.isEnd()) {
+				numSplitsDone++;
+			} else if (!batch.records.isEmpty()) {
+				currentBatch = batch.records;
+				currentBatchPos = 0;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void start() throws CsvException {
+		executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setDaemon(true)
+						.setNameFormat("csv-reader-%d").build());
+		long[] recordStarts;
+		try {
+			recordStarts = findSplits();
+		} catch (IOException e) {
+			throw new CsvException("Error splitting " + file, e);
+		}
+		numSplits = recordStarts.length - 1;
+		queues = new ArrayList<>();
+		if (ordered) {
+			for (int i = 0; i < numSplits; i++) {
+				queues.add(new ArrayBlockingQueue<Batch>(queueDepth));
+			}
+		} else {
+			queues.add(new ArrayBlockingQueue<Batch>(queueDepth * numThreads));
+		}
+		// splits are submitted in order, so in ordered mode the split being
+		// read is always being parsed
+		for (int i = 0; i < numSplits; i++) {
+			boolean last = i == numSplits - 1;
+			BlockingQueue<Batch> queue = queues.get(ordered ? i : 0);
+			executor.execute(new SplitParser(recordStarts[i],
+					recordStarts[i + 1], last, queue));
+		}
+	}
+
+	/**
+	 * Work out where each split starts, moved onto a record boundary
+	 *
+	 * @return the start offset of each split, followed by the file size
+	 */
+	private long[] findSplits() throws IOException {
+		final CsvBoundaryScanner scanner = settings.buildBoundaryScanner();
+		try (final FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			long chunkSize = splitSize > 0 ? splitSize : Math.max(
+					MIN_SPLIT_SIZE, size / (numThreads * 4L) + 1);
+			chunkSize = Math.min(chunkSize, MAX_SPLIT_SIZE);
+			int numChunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+
+			final long[] chunkStarts = new long[numChunks + 1];
+			for (int i = 0; i < numChunks; i++) {
+				chunkStarts[i] = i * chunkSize;
+			}
+			chunkStarts[numChunks] = size;
+
+			// the state at the end of every chunk for every start state, in
+			// parallel. The last chunk's end state isn't needed
+			List<Future<int[]>> chunkEndStates = new ArrayList<>();
+			for (int i = 0; i < numChunks - 1; i++) {
+				final int chunk = i;
+				chunkEndStates.add(executor.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() throws IOException {
+						ByteBuffer buf = map(channel, chunkStarts[chunk], chunkStarts[chunk + 1]);
+						return scanner.scan(buf, 0, buf.limit());
+					}
+				}));
+			}
+			// chain them together to get the real state at the start of each
+			// chunk, then find the first record start from there
+			List<Future<Long>> recordStarts = new ArrayList<>();
+			int state = CsvBoundaryScanner.RECORD_START;
+			for (int i = 1; i < numChunks; i++) {
+				state = get(chunkEndStates.get(i - 1))[state];
+				final int chunk = i;
+				final int startState = state;
+				recordStarts.add(executor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws IOException {
+						ByteBuffer buf = map(channel, chunkStarts[chunk], chunkStarts[chunk + 1]);
+						int idx = scanner.findRecordStart(buf, 0, buf.limit(), startState);
+						return idx == -1 ? -1 : chunkStarts[chunk] + idx;
+					}
+				}));
+			}
+
+			List<Long> splits = new ArrayList<>();
+			splits.add(0L);
+			for (Future<Long> recordStart : recordStarts) {
+				long start = get(recordStart);
+				// no record starts within the chunk, so it's all part of the
+				// previous split. Also drop splits with nothing left in them
+				if (start != -1 && start < size) {
+					splits.add(start);
+				}
+			}
+			splits.add(size);
+
+			long[] starts = new long[splits.size()];
+			for (int i = 0; i < starts.length; i++) {
+				starts[i] = splits.get(i);
+			}
+			return starts;
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long start, long end)
+			throws IOException {
+		return channel.map(MapMode.READ_ONLY, start, end - start);
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvException("Interrupted while splitting", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new CsvException("Error while splitting", e.getCause());
+		}
+	}
+
+	/**
+	 * Stop all parsing. Any records not yet read are dropped
+	 */
+	@Override
+	public void close() throws IOException {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Parses a single split, handing the records over in batches
+	 */
+	private class SplitParser implements Runnable {
+
+		private final long start;
+		private final long end;
+		private final boolean last;
+		private final BlockingQueue<Batch> queue;
+
+		SplitParser(long start, long end, boolean last,
+				BlockingQueue<Batch> queue) {
+			this.start = start;
+			this.end = end;
+			this.last = last;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				try (CsvParser parser = settings.buildByteParser(
+						new ByteInput.MappedFileInput(file, start, end,
+								settings.getMapWindowSize()), charset)) {
+					List<ICsvRecord> records = new ArrayList<>(batchSize);
+					while (parser.hasMore) {
+						try {
+							parser.parseRecord(0);
+							// the end of a split which isn't the end of the
+							// file isn't a record
+							if (!parser.endedEmpty || last) {
+								ICsvRecord record = parser.newRecord(ParallelCsvReader.this, serialiser);
+								parser.fillRecord(record, false);
+								records.add(record);
+							}
+						} finally {
+							parser.resetBuffers();
+						}
+						if (records.size() == batchSize) {
+							queue.put(new Batch(records, null));
+							records = new ArrayList<>(batchSize);
+						}
+					}
+					queue.put(new Batch(records, null));
+				} catch (IOException | RuntimeException e) {
+					queue.put(new Batch(null, new CsvException("Error reading split "
+							+ start + "-" + end + " of " + file, e)));
+				}
+				queue.put(new Batch(null, null));
+			} catch (InterruptedException e) {
+				// closed, nobody is waiting on us
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Records handed over from a split parser. With no records or error it
+	 * marks the end of the split
+	 */
+	private static class Batch {
+		final List<ICsvRecord> records;
+		final CsvException error;
+
+		Batch(List<ICsvRecord> records, CsvException error) {
+			this.records = records;
+			this.error = error;
+		}
+
+		boolean isEnd() {
+			return records == null && error == null;
+		}
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder implements IBuilder<ParallelCsvReader> {
+
+		private Path file;
+		private Charset charset = StandardCharsets.UTF_8;
+		private CsvReader.Builder settings;
+		private int numThreads = Runtime.getRuntime().availableProcessors();
+		private long splitSize = 0;
+		private boolean ordered = true;
+		private int batchSize = 1024;
+		private int queueDepth = 4;
+
+		@Override
+		public ParallelCsvReader build() {
+			Preconditions.checkNotNull(file, "expect file");
+			Preconditions.checkArgument(numThreads > 0, "expect num threads > 0");
+			Preconditions.checkArgument(batchSize > 0, "expect batch size > 0");
+			Preconditions.checkArgument(queueDepth > 0, "expect queue depth > 0");
+			CsvReader.Builder s = settings == null ? CsvReader.with() : settings;
+			Preconditions.checkArgument(!s.hasHeader(), "can't read a header or require columns in parallel");
+			// fail now on bad settings rather than on the first read
+			s.buildBoundaryScanner();
+
+			return new ParallelCsvReader(file, charset, s, numThreads,
+					splitSize, ordered, batchSize, queueDepth);
+		}
+
+		/**
+		 * The UTF-8 file to read
+		 */
+		public Builder input(Path file) {
+			input(file, StandardCharsets.UTF_8);
+			return this;
+		}
+
+		/**
+		 * The file to read. Same charset restrictions as
+		 * {@link CsvReader.Builder#input(java.io.InputStream, Charset)}
+		 */
+		public Builder input(Path file, Charset charset) {
+			this.file = file;
+			this.charset = charset;
+			return this;
+		}
+
+		/**
+		 * Separator, escape and comment chars, buffer sizes and the serialiser
+		 * to use for each split. Any input set on it is ignored. A header
+		 * can't be read. Default is {@link CsvReader#with()}
+		 */
+		public Builder settings(CsvReader.Builder settings) {
+			this.settings = settings;
+			return this;
+		}
+
+		/**
+		 * Default is the number of processors
+		 */
+		public Builder numThreads(int numThreads) {
+			this.numThreads = numThreads;
+			return this;
+		}
+
+		/**
+		 * Roughly how many bytes each thread parses at a time. Default is
+		 * to split the file into 4 times the number of threads, at least 1MB
+		 * each, at most 1GB
+		 */
+		public Builder splitSize(long numBytes) {
+			this.splitSize = numBytes;
+			return this;
+		}
+
+		/**
+		 * If true records are returned in file order. If false in whatever
+		 * order they are parsed, which means a slow split won't hold up the
+		 * others. Default is true
+		 */
+		public Builder ordered(boolean ordered) {
+			this.ordered = ordered;
+			return this;
+		}
+
+		/**
+		 * Number of records handed over from a parsing thread at a time.
+		 * Default is 1024
+		 */
+		public Builder batchSize(int numRecords) {
+			this.batchSize = numRecords;
+			return this;
+		}
+
+		/**
+		 * Number of batches a split can parse ahead of the reader. When
+		 * unordered this is per thread. Default is 4
+		 */
+		public Builder queueDepth(int numBatches) {
+			this.queueDepth = numBatches;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,565 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Write a single output from many threads, without them queuing on a lock.
+ * Use:
+ *
+ * <pre>
+ * ParallelCsvWriter w = ParallelCsvWriter.with().output(os).ordered(true).build();
+ *
+ * // on each producing thread, for each slice of the rows
+ * try (ParallelCsvWriter.Chunk chunk = w.newChunk()) {
+ * 	for (Trade trade : slice) {
+ * 		chunk.writeRow(trade, schema);
+ * 	}
+ * }
+ *
+ * // once all the chunks are closed
+ * w.close();
+ * </pre>
+ *
+ * <p>
+ * Each chunk formats its records into its own buffer, on the thread writing
+ * it. When writing to a stream the chunk also encodes them. Full buffers are
+ * handed over, at a record boundary, to a single output thread which does
+ * nothing but copy them to the output.
+ * </p>
+ *
+ * <p>
+ * When ordered, chunks appear in the output in the order they were created,
+ * whatever order they are written and closed in. Otherwise each buffer is
+ * written as soon as it's handed over, so records from different chunks are
+ * interleaved, but never split.
+ * </p>
+ *
+ * <p>
+ * Producers wait once too many buffers are queued for the output. When
+ * ordered, the chunk the output is waiting on never waits. Chunks written
+ * far ahead of it are held in memory
+ * </p>
+ */
+@ThreadSafe
+public class ParallelCsvWriter implements Closeable {
+
+	/**
+	 * Marks the end of the chunks
+	 */
+	private static final Block END = new Block(-1, null, null, 0, true);
+
+	private final CsvWriter.Builder settings;
+	private final Appendable appender;
+	private final OutputStream os;
+	private final Charset charset;
+	private final boolean ordered;
+	private final int blockSize;
+	private final int maxPendingBlocks;
+
+	private final BlockingQueue<Block> queue = new LinkedBlockingQueue<>();
+	private final ExecutorService executor;
+	private final Future<Void> output;
+
+	private final AtomicLong nextSeq = new AtomicLong();
+	private final AtomicInteger numOpenChunks = new AtomicInteger();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	/**
+	 * Blocks handed over but not yet written, guarded by the lock
+	 */
+	private int numPendingBlocks;
+	/**
+	 * When ordered, the chunk being written to the output
+	 */
+	private volatile long headSeq;
+	private volatile CsvWriteException error;
+	private boolean closed;
+
+	private ParallelCsvWriter(CsvWriter.Builder settings, Appendable appender,
+			OutputStream os, Charset charset, boolean ordered, int blockSize,
+			int maxPendingBlocks) {
+		this.settings = settings;
+		this.appender = appender;
+		this.os = os;
+		this.charset = charset;
+		this.ordered = ordered;
+		this.blockSize = blockSize;
+		this.maxPendingBlocks = maxPendingBlocks;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("csv-writer-%d").build());
+		this.output = executor.submit(new OutputWriter());
+	}
+
+	/**
+	 * Start a new chunk of records. When ordered its records are output after
+	 * those of all the chunks created before it. Write to it from one thread
+	 * at a time, and close it when done.
+	 *
+	 * <p>
+	 * When ordered, a thread shouldn't write a chunk while holding an earlier
+	 * one open, as it may wait on the output which is waiting on the earlier
+	 * chunk
+	 * </p>
+	 */
+	public Chunk newChunk() throws CsvWriteException {
+		checkError();
+		Preconditions.checkState(!closed, "closed");
+		numOpenChunks.incrementAndGet();
+		return new Chunk(nextSeq.getAndIncrement());
+	}
+
+	/**
+	 * Wait for all the chunks to be output, then flush the output. The output
+	 * is not closed
+	 *
+	 * @throws IllegalStateException
+	 *             if any chunks are still open
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		Preconditions.checkState(numOpenChunks.get() == 0, "%s chunks are still open", numOpenChunks.get());
+		closed = true;
+		queue.add(END);
+		try {
+			output.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvWriteException("Interrupted waiting for the output", e);
+		} catch (ExecutionException e) {
+			throw new CsvWriteException("Error writing the output", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		checkError();
+	}
+
+	private void checkError() throws CsvWriteException {
+		if (error != null) {
+			throw new CsvWriteException("Error writing the output", error);
+		}
+	}
+
+	/**
+	 * Queue a block for the output, waiting while too many are queued
+	 */
+	private void handOver(Block block) throws CsvWriteException {
+		lock.lock();
+		try {
+			while (numPendingBlocks >= maxPendingBlocks && error == null
+					&& !(ordered && block.seq == headSeq)) {
+				notFull.await();
+			}
+			numPendingBlocks++;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvWriteException("Interrupted waiting to hand over records", e);
+		} finally {
+			lock.unlock();
+		}
+		checkError();
+		queue.add(block);
+	}
+
+	/**
+	 * The records of one producer, formatted and encoded on the producer's
+	 * thread. See {@link ParallelCsvWriter#newChunk()}
+	 */
+	@NotThreadSafe
+	public class Chunk extends DelegateCsvWriter implements Closeable {
+
+		private final long seq;
+		private final CsvWriter writer;
+		private final ChunkOutput out;
+		private boolean closed;
+
+		Chunk(long seq) {
+			this(seq, new ChunkOutput(seq));
+		}
+
+		private Chunk(long seq, ChunkOutput out) {
+			// with room for a record or two past the block size, so most
+			// blocks are handed over straight from the writer's buffer
+			this(seq, out, settings.build(out, blockSize * 2, false));
+		}
+
+		private Chunk(long seq, ChunkOutput out, CsvWriter writer) {
+			super(writer);
+			this.seq = seq;
+			this.out = out;
+			this.writer = writer;
+		}
+
+		/**
+		 * The position of this chunk in the output, when ordered
+		 */
+		public long getSeq() {
+			return seq;
+		}
+
+		@Override
+		public void endRecord() throws CsvWriteException {
+			writer.endRecord();
+			if (writer.getBufferedChars() >= blockSize) {
+				handOver();
+			}
+		}
+
+		/**
+		 * Write the row as a record. See
+		 * {@link CsvWriter#writeRow(Object, CsvSchema)}
+		 */
+		public <T> void writeRow(T row, CsvSchema<? super T> schema) throws CsvWriteException {
+			writer.writeRow(row, schema);
+			if (writer.getBufferedChars() >= blockSize) {
+				handOver();
+			}
+		}
+
+		/**
+		 * Ends any record in progress, and hands everything written so far
+		 * over to the output
+		 */
+		@Override
+		public void flush() throws CsvWriteException {
+			writer.endRecord();
+			handOver();
+		}
+
+		private void handOver() throws CsvWriteException {
+			out.handOver = true;
+			try {
+				writer.flush();
+			} finally {
+				out.handOver = false;
+			}
+		}
+
+		/**
+		 * Hand over the rest of the records, ending any in progress
+		 */
+		@Override
+		public void close() throws CsvWriteException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				flush();
+			} finally {
+				try {
+					// always mark the end, so an ordered output can move on
+					ParallelCsvWriter.this.handOver(new Block(seq, null, null, 0, true));
+				} finally {
+					numOpenChunks.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects a chunk's output, turning it into blocks at record boundaries
+	 */
+	private class ChunkOutput extends Writer {
+
+		private final long seq;
+		private final CharsetEncoder encoder;
+		/**
+		 * Set while the chunk's writer is flushed at a record boundary
+		 */
+		boolean handOver;
+		/**
+		 * Output of records too long for the writer's buffer
+		 */
+		private char[] pending = new char[0];
+		private int pendingLen;
+
+		ChunkOutput(long seq) {
+			this.seq = seq;
+			this.encoder = os == null ? null : charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			if (!handOver) {
+				// part of a record, keep it until the record is done
+				keep(cbuf, off, len);
+			} else if (pendingLen > 0) {
+				keep(cbuf, off, len);
+				handOver(pending, 0, pendingLen);
+				pendingLen = 0;
+			} else {
+				handOver(cbuf, off, len);
+			}
+		}
+
+		private void keep(char[] cbuf, int off, int len) {
+			if (pendingLen + len > pending.length) {
+				pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLen + len));
+			}
+			System.arraycopy(cbuf, off, pending, pendingLen, len);
+			pendingLen += len;
+		}
+
+		private void handOver(char[] chars, int off, int len) throws CsvWriteException {
+			if (len == 0) {
+				return;
+			}
+			if (encoder == null) {
+				ParallelCsvWriter.this.handOver(new Block(seq, Arrays.copyOfRange(chars, off, off + len), null, len, false));
+				return;
+			}
+			ByteBuffer bytes;
+			try {
+				bytes = encoder.encode(CharBuffer.wrap(chars, off, len));
+			} catch (CharacterCodingException e) {
+				throw new CsvWriteException("Error encoding records", e);
+			}
+			ParallelCsvWriter.this.handOver(new Block(seq, null, bytes.array(), bytes.limit(), false));
+		}
+
+		@Override
+		public void flush() {
+			// handed over on write
+		}
+
+		@Override
+		public void close() {
+			// nothing to close
+		}
+	}
+
+	/**
+	 * Takes the blocks off the queue and writes them, in chunk order if
+	 * ordered
+	 */
+	private class OutputWriter implements Callable<Void> {
+
+		/**
+		 * Blocks of chunks not yet being output, by chunk
+		 */
+		private final Map<Long, ArrayDeque<Block>> waiting = new HashMap<>();
+		private final Writer writer = appender instanceof Writer ? (Writer) appender : null;
+
+		@Override
+		public Void call() throws Exception {
+			while (true) {
+				Block block = queue.take();
+				if (block == END) {
+					break;
+				}
+				if (!ordered || block.seq == headSeq) {
+					write(block);
+					if (ordered && block.last) {
+						writeWaiting();
+					}
+				} else {
+					ArrayDeque<Block> blocks = waiting.get(block.seq);
+					if (blocks == null) {
+						blocks = new ArrayDeque<>();
+						waiting.put(block.seq, blocks);
+					}
+					blocks.add(block);
+				}
+			}
+			if (error == null) {
+				try {
+					if (os != null) {
+						os.flush();
+					} else if (writer != null) {
+						writer.flush();
+					}
+				} catch (IOException e) {
+					error = new CsvWriteException("Error flushing the output", e);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Write the blocks held for the chunks now at the head, in turn
+		 */
+		private void writeWaiting() {
+			ArrayDeque<Block> blocks;
+			while ((blocks = waiting.get(headSeq)) != null) {
+				Block block;
+				while ((block = blocks.poll()) != null) {
+					write(block);
+				}
+				if (waiting.get(headSeq) == blocks) {
+					// the chunk isn't done yet, the rest will arrive later
+					waiting.remove(headSeq);
+					return;
+				}
+			}
+		}
+
+		private void write(Block block) {
+			if (error == null) {
+				try {
+					if (block.bytes != null) {
+						os.write(block.bytes, 0, block.len);
+					} else if (block.chars != null) {
+						if (writer != null) {
+							writer.write(block.chars, 0, block.len);
+						} else {
+							appender.append(CharBuffer.wrap(block.chars, 0, block.len));
+						}
+					}
+				} catch (IOException | RuntimeException e) {
+					error = new CsvWriteException("Error writing records", e);
+				}
+			}
+			lock.lock();
+			try {
+				numPendingBlocks--;
+				if (ordered && block.last) {
+					waiting.remove(headSeq);
+					headSeq++;
+				}
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Records handed over from a chunk, as chars or encoded bytes. Marks the
+	 * end of the chunk if last
+	 */
+	private static class Block {
+		final long seq;
+		final char[] chars;
+		final byte[] bytes;
+		final int len;
+		final boolean last;
+
+		Block(long seq, char[] chars, byte[] bytes, int len, boolean last) {
+			this.seq = seq;
+			this.chars = chars;
+			this.bytes = bytes;
+			this.len = len;
+			this.last = last;
+		}
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder implements IBuilder<ParallelCsvWriter> {
+
+		private CsvWriter.Builder settings = CsvWriter.with();
+		private Appendable appender;
+		private OutputStream os;
+		private Charset charset = StandardCharsets.UTF_8;
+		private boolean ordered = true;
+		private int blockSize = 64 * 1024;
+		private int maxPendingBlocks = 4 * Runtime.getRuntime().availableProcessors();
+
+		@Override
+		public ParallelCsvWriter build() {
+			Preconditions.checkState(appender != null || os != null, "expect output");
+			Preconditions.checkArgument(blockSize >= Serialiser.MAX_NUMBER_CHARS,
+					"expect block size >= " + Serialiser.MAX_NUMBER_CHARS);
+			Preconditions.checkArgument(maxPendingBlocks > 0, "expect max pending blocks > 0");
+			return new ParallelCsvWriter(settings, appender, os, charset, ordered, blockSize, maxPendingBlocks);
+		}
+
+		/**
+		 * Field separator, quoting and the like for each chunk. The output
+		 * set here is ignored
+		 */
+		public Builder settings(CsvWriter.Builder settings) {
+			this.settings = Preconditions.checkNotNull(settings, "expect settings");
+			return this;
+		}
+
+		/**
+		 * Write to a stream, encoded as UTF-8. Records are encoded on the
+		 * producing threads
+		 */
+		public Builder output(OutputStream os) {
+			return output(os, StandardCharsets.UTF_8);
+		}
+
+		public Builder output(OutputStream os, Charset charset) {
+			this.os = Preconditions.checkNotNull(os, "expect output");
+			this.charset = Preconditions.checkNotNull(charset, "expect charset");
+			this.appender = null;
+			return this;
+		}
+
+		public Builder output(Appendable appender) {
+			this.appender = Preconditions.checkNotNull(appender, "expect output");
+			this.os = null;
+			return this;
+		}
+
+		/**
+		 * If chunks are output in the order they were created. Default is
+		 * true
+		 */
+		public Builder ordered(boolean ordered) {
+			this.ordered = ordered;
+			return this;
+		}
+
+		/**
+		 * Chars each chunk collects before handing them over to the output.
+		 * Default is 64k
+		 */
+		public Builder blockSize(int numChars) {
+			this.blockSize = numChars;
+			return this;
+		}
+
+		/**
+		 * Blocks which can be queued for the output before producers have to
+		 * wait. Default is 4 per core
+		 */
+		public Builder maxPendingBlocks(int max) {
+			this.maxPendingBlocks = max;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.concurrent.ThreadFactory;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Reads chars from another reader on a background thread, up to the given
+ * number of blocks ahead of whoever is reading from this. See
+ * {@link Prefetcher}
+ */
+@NotThreadSafe
+class PrefetchReader extends Reader {
+
+	private final Prefetcher<CharBuffer> prefetcher;
+	private CharBuffer block;
+
+	PrefetchReader(final Reader reader, int blockSize, int depth,
+			ThreadFactory threadFactory, final boolean closeReader) {
+		CharBuffer[] blocks = new CharBuffer[depth + 1];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = CharBuffer.allocate(blockSize);
+		}
+		Prefetcher.Filler<CharBuffer> filler = new Prefetcher.Filler<CharBuffer>() {
+			@Override
+			public void fill(CharBuffer block) throws IOException {
+				char[] chars = block.array();
+				int numRead;
+				do {
+					numRead = reader.read(chars, 0, chars.length);
+				} while (numRead == 0);
+				block.clear();
+				block.limit(Math.max(numRead, 0));
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (closeReader) {
+					reader.close();
+				}
+			}
+		};
+		this.prefetcher = new Prefetcher<CharBuffer>(filler, blocks, threadFactory);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (block == null || !block.hasRemaining()) {
+			block = prefetcher.next();
+			if (block == null) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, block.remaining());
+		block.get(cbuf, off, n);
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		prefetcher.close();
+	}
+}
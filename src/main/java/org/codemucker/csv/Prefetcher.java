@@ -0,0 +1,160 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads blocks of input on a background thread ahead of the parser, so the
+ * wait on the input and the parsing overlap. Blocks cycle through a bounded
+ * ring: the fill thread takes a free block, fills it and hands it over, the
+ * parser hands it back once it has moved onto the next one.
+ *
+ * <p>
+ * The fill thread is only started on the first read, and stops at the end of
+ * the input, on a read error, or when closed. Errors are rethrown to the
+ * parser once it has consumed the blocks read before the error.
+ * </p>
+ *
+ * @param <B>
+ *            the type of block, an empty block marks the end of the input
+ */
+@NotThreadSafe
+final class Prefetcher<B extends Buffer> implements Closeable {
+
+	static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactoryBuilder()
+			.setDaemon(true).setNameFormat("csv-prefetch-%d").build();
+
+	/**
+	 * Fills blocks from the underlying input. Only called from the fill
+	 * thread, apart from close
+	 */
+	interface Filler<B> extends Closeable {
+		/**
+		 * Read the next chunk of input into the block, leaving it empty if at
+		 * the end of the input
+		 */
+		void fill(B block) throws IOException;
+	}
+
+	private final Filler<B> filler;
+	private final ThreadFactory threadFactory;
+	private final BlockingQueue<B> free;
+	private final BlockingQueue<B> filled;
+
+	/**
+	 * The error which stopped the fill thread, published before the final
+	 * empty block
+	 */
+	private volatile IOException error;
+	private volatile boolean closed;
+
+	private Thread thread;
+	/**
+	 * The block the parser is on, handed back on the next call
+	 */
+	private B current;
+	private boolean ended;
+
+	/**
+	 * @param blocks
+	 *            the blocks to cycle through. One is held by the parser, the
+	 *            rest can be filled ahead of it
+	 */
+	Prefetcher(Filler<B> filler, B[] blocks, ThreadFactory threadFactory) {
+		Preconditions.checkArgument(blocks.length >= 2, "expect at least 2 blocks");
+		this.filler = filler;
+		this.threadFactory = threadFactory;
+		this.free = new ArrayBlockingQueue<>(blocks.length);
+		this.filled = new ArrayBlockingQueue<>(blocks.length);
+		for (B block : blocks) {
+			free.add(block);
+		}
+	}
+
+	/**
+	 * Hand back the current block and wait for the next one
+	 *
+	 * @return the next filled block, or null at the end of the input
+	 */
+	B next() throws IOException {
+		if (current != null) {
+			free.add(current);
+			current = null;
+		}
+		if (ended) {
+			return null;
+		}
+		if (thread == null) {
+			thread = threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					fillBlocks();
+				}
+			});
+			thread.start();
+		}
+		B block;
+		try {
+			block = filled.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for input");
+		}
+		if (!block.hasRemaining()) {
+			ended = true;
+			free.add(block);
+			if (error != null) {
+				throw new IOException("Error reading input", error);
+			}
+			return null;
+		}
+		current = block;
+		return block;
+	}
+
+	private void fillBlocks() {
+		try {
+			while (!closed) {
+				B block = free.take();
+				try {
+					filler.fill(block);
+				} catch (IOException | RuntimeException e) {
+					if (closed) {
+						return;
+					}
+					error = e instanceof IOException ? (IOException) e : new IOException(e);
+					block.clear();
+					block.limit(0);
+				}
+				// can't look at the block once handed over
+				boolean end = !block.hasRemaining();
+				filled.put(block);
+				if (end) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed, nobody is waiting on us
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		filler.close();
+	}
+}
@@ -0,0 +1,210 @@
+package org.codemucker.csv;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.codemucker.csv.encode.DefaultSerialiser;
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A reusable batch of records, filled by
+ * {@link ICsvReader#readBatch(RecordBatch, int)}. Use:
+ *
+ * <pre>
+ * RecordBatch batch = new RecordBatch();
+ * while (r.readBatch(batch, 1000) > 0) {
+ * 	for (int i = 0; i &lt; batch.size(); i++) {
+ * 		ICsvRecord rec = batch.get(i);
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * The values of all the fields of all the records are stored back to back in
+ * a single array, as raw bytes when read from bytes, with a table of the start
+ * and length of every field and the first field of every record. Once grown to
+ * size, filling the batch again doesn't allocate. Fields are only turned into
+ * strings when read as one.
+ * </p>
+ */
+@NotThreadSafe
+public class RecordBatch {
+
+	private static final int NULL_LENGTH = -1;
+
+	private char[] chars = new char[1024];
+	private byte[] bytes;
+	/**
+	 * The charset of the bytes, or null if the values are chars
+	 */
+	private Charset charset;
+	private int valueLen;
+
+	/**
+	 * Pairs of start and length of every field in the values. A length of
+	 * {@link #NULL_LENGTH} marks a null
+	 */
+	private int[] fieldOffsets = new int[128 * 2];
+	private int numFields;
+	/**
+	 * The index of the first field of each record, followed by the total
+	 * number of fields
+	 */
+	private int[] recordFields = new int[64 + 1];
+	private int size;
+
+	private ICsvReader reader;
+	private Serialiser serialiser;
+	/**
+	 * Reused to read each record, of the type matching the values
+	 */
+	private SlicedCsvRecord view;
+
+	/**
+	 * Number of records in the batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getNumFields(int recordIdx) {
+		Preconditions.checkElementIndex(recordIdx, size, "record");
+		return recordFields[recordIdx + 1] - recordFields[recordIdx];
+	}
+
+	/**
+	 * Return a view of the given record. The same view is returned for every
+	 * record, so is only valid until the next call or until the batch is
+	 * refilled
+	 */
+	public ICsvRecord get(int recordIdx) {
+		Preconditions.checkElementIndex(recordIdx, size, "record");
+		int fieldBase = recordFields[recordIdx];
+		int count = recordFields[recordIdx + 1] - fieldBase;
+		if (charset == null) {
+			if (!(view instanceof CharCsvRecord)) {
+				view = new CharCsvRecord(reader, serialiser);
+			}
+			((CharCsvRecord) view).setValues(chars, fieldOffsets, fieldBase, count);
+		} else {
+			if (!(view instanceof ByteCsvRecord) || !charset.equals(((ByteCsvRecord) view).getCharset())) {
+				view = new ByteCsvRecord(reader, serialiser, charset);
+			}
+			((ByteCsvRecord) view).setValues(bytes, fieldOffsets, fieldBase, count);
+		}
+		return view;
+	}
+
+	public void clear() {
+		size = 0;
+		numFields = 0;
+		valueLen = 0;
+		charset = null;
+	}
+
+	/**
+	 * Empty the batch ready to be filled by the given reader
+	 */
+	void reset(ICsvReader reader, Serialiser serialiser) {
+		clear();
+		if (this.reader != reader || this.serialiser != serialiser) {
+			this.reader = reader;
+			this.serialiser = serialiser == null ? DefaultSerialiser.get() : serialiser;
+			this.view = null;
+		}
+	}
+
+	/**
+	 * Add a record whose values are the given chars
+	 *
+	 * @param offsets
+	 *            start and length pairs of each field in the values
+	 */
+	void addChars(char[] values, int len, int[] offsets, int count) {
+		if (size > 0) {
+			Preconditions.checkState(charset == null, "batch already holds bytes");
+		}
+		if (valueLen + len > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(valueLen + len, chars.length * 2));
+		}
+		System.arraycopy(values, 0, chars, valueLen, len);
+		addFields(offsets, count);
+		valueLen += len;
+	}
+
+	/**
+	 * Add a record whose values are the given bytes in the given charset
+	 *
+	 * @param offsets
+	 *            start and length pairs of each field in the values
+	 */
+	void addBytes(byte[] values, int len, int[] offsets, int count, Charset charset) {
+		if (size > 0) {
+			Preconditions.checkState(charset.equals(this.charset), "batch already holds values in another charset");
+		}
+		this.charset = charset;
+		if (bytes == null) {
+			bytes = new byte[Math.max(1024, len)];
+		} else if (valueLen + len > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(valueLen + len, bytes.length * 2));
+		}
+		System.arraycopy(values, 0, bytes, valueLen, len);
+		addFields(offsets, count);
+		valueLen += len;
+	}
+
+	/**
+	 * Copy in an already read record
+	 */
+	void add(ICsvRecord record) {
+		String[] data = record.getData();
+		int count = data == null ? 0 : data.length;
+		int len = 0;
+		for (int i = 0; i < count; i++) {
+			if (data[i] != null) {
+				len += data[i].length();
+			}
+		}
+		char[] values = new char[len];
+		int[] offsets = new int[count * 2];
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			String field = data[i];
+			offsets[i * 2] = pos;
+			if (field == null) {
+				offsets[i * 2 + 1] = NULL_LENGTH;
+			} else {
+				field.getChars(0, field.length(), values, pos);
+				offsets[i * 2 + 1] = field.length();
+				pos += field.length();
+			}
+		}
+		addChars(values, len, offsets, count);
+	}
+
+	private void addFields(int[] offsets, int count) {
+		if ((numFields + count) * 2 > fieldOffsets.length) {
+			fieldOffsets = Arrays.copyOf(fieldOffsets, Math.max((numFields + count) * 2, fieldOffsets.length * 2));
+		}
+		int dest = numFields * 2;
+		for (int i = 0; i < count * 2; i += 2) {
+			int len = offsets[i + 1];
+			fieldOffsets[dest + i] = len < 0 ? 0 : offsets[i] + valueLen;
+			fieldOffsets[dest + i + 1] = len;
+		}
+		if (size + 2 > recordFields.length) {
+			recordFields = Arrays.copyOf(recordFields, recordFields.length * 2);
+		}
+		recordFields[size] = numFields;
+		numFields += count;
+		size++;
+		recordFields[size] = numFields;
+	}
+}
@@ -0,0 +1,482 @@
+package org.codemucker.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Write records across a series of files, moving on to the next file once
+ * one is big enough, so the output can be read in parallel. Use:
+ *
+ * <pre>
+ * RollingCsvWriter rolling = RollingCsvWriter.with().directory(dir).maxBytes(1L &lt;&lt; 30).header(schema).build();
+ *
+ * // on each writing thread, each writing its own parts
+ * try (RollingCsvWriter.Writer w = rolling.newWriter()) {
+ * 	for (Trade trade : slice) {
+ * 		w.writeRow(trade, schema);
+ * 	}
+ * }
+ *
+ * // once all the writers are closed
+ * rolling.close();
+ * </pre>
+ *
+ * <p>
+ * Files are only ever cut between records. Each is written on the thread
+ * writing to it, so threads with their own writers write their parts in
+ * parallel. Parts are numbered in the order they are started.
+ * </p>
+ *
+ * <p>
+ * On close a manifest is written alongside the parts, listing each part's
+ * file, record count and size, and where its records and bytes start were
+ * all the parts joined in part order. See {@link #readManifest(Path)}
+ * </p>
+ */
+@ThreadSafe
+public class RollingCsvWriter implements Closeable {
+
+	private static final String[] MANIFEST_COLUMNS = { "part", "file", "records", "bytes", "firstRecord", "firstByte" };
+
+	private final CsvWriter.Builder settings;
+	private final Path dir;
+	private final String fileName;
+	private final String manifestName;
+	private final Charset charset;
+	private final long maxRecords;
+	private final long maxBytes;
+	private final String[] header;
+
+	private final AtomicInteger nextPart = new AtomicInteger();
+	private final AtomicInteger numOpenWriters = new AtomicInteger();
+	private final List<Part> parts = new ArrayList<>();
+	private boolean closed;
+
+	private RollingCsvWriter(CsvWriter.Builder settings, Path dir,
+			String fileName, String manifestName, Charset charset,
+			long maxRecords, long maxBytes, String[] header) {
+		this.settings = settings;
+		this.dir = dir;
+		this.fileName = fileName;
+		this.manifestName = manifestName;
+		this.charset = charset;
+		this.maxRecords = maxRecords;
+		this.maxBytes = maxBytes;
+		this.header = header;
+	}
+
+	/**
+	 * Start writing a new series of parts. Use one per writing thread
+	 */
+	public Writer newWriter() throws CsvWriteException {
+		synchronized (parts) {
+			Preconditions.checkState(!closed, "closed");
+		}
+		numOpenWriters.incrementAndGet();
+		try {
+			return new Writer();
+		} catch (CsvWriteException | RuntimeException e) {
+			numOpenWriters.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * The parts finished so far, in part order
+	 */
+	public List<Part> getParts() {
+		synchronized (parts) {
+			List<Part> sorted = new ArrayList<>(parts);
+			Collections.sort(sorted, new Comparator<Part>() {
+				@Override
+				public int compare(Part a, Part b) {
+					return Integer.compare(a.number, b.number);
+				}
+			});
+			return sorted;
+		}
+	}
+
+	public Path getManifest() {
+		return dir.resolve(manifestName);
+	}
+
+	/**
+	 * Write the manifest listing all the parts
+	 *
+	 * @throws IllegalStateException
+	 *             if any writers are still open
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (parts) {
+			if (closed) {
+				return;
+			}
+			Preconditions.checkState(numOpenWriters.get() == 0, "%s writers are still open", numOpenWriters.get());
+			closed = true;
+		}
+		try (FileChannel channel = FileChannel.open(getManifest(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			CsvWriter w = CsvWriter.with().output(channel, StandardCharsets.UTF_8).build();
+			w.beginRecord();
+			for (String column : MANIFEST_COLUMNS) {
+				w.write(column);
+			}
+			w.endRecord();
+			long firstRecord = 0;
+			long firstByte = 0;
+			for (Part part : getParts()) {
+				w.beginRecord();
+				w.write(part.number);
+				w.write(part.file.getFileName().toString());
+				w.write(part.numRecords);
+				w.write(part.numBytes);
+				w.write(firstRecord);
+				w.write(firstByte);
+				w.endRecord();
+				firstRecord += part.numRecords;
+				firstByte += part.numBytes;
+			}
+			w.flush();
+		}
+	}
+
+	/**
+	 * Read the parts listed in a manifest, with their files resolved against
+	 * the manifest's directory
+	 */
+	public static List<Part> readManifest(Path manifest) throws CsvException {
+		Path dir = manifest.toAbsolutePath().getParent();
+		List<Part> parts = new ArrayList<>();
+		try (CsvReader r = CsvReader.with().input(manifest).requireColumns(MANIFEST_COLUMNS).build()) {
+			CsvHeader header = r.getHeader();
+			ColumnHandle[] columns = header.columns(MANIFEST_COLUMNS);
+			while (r.hasMore()) {
+				ICsvRecord rec = r.readNextRecord();
+				if (rec.getTotalNumFields() < MANIFEST_COLUMNS.length) {
+					// trailing newline
+					continue;
+				}
+				parts.add(new Part(columns[0].readInt(rec), dir.resolve(columns[1].readString(rec)),
+						columns[2].readLong(rec), columns[3].readLong(rec), columns[4].readLong(rec),
+						columns[5].readLong(rec)));
+			}
+		} catch (CsvException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new CsvException("Error closing " + manifest, e);
+		}
+		return parts;
+	}
+
+	private void finished(Part part) {
+		synchronized (parts) {
+			parts.add(part);
+		}
+	}
+
+	/**
+	 * Writes one series of parts, moving on to a new part when the current
+	 * one is full. See {@link RollingCsvWriter#newWriter()}
+	 */
+	@NotThreadSafe
+	public class Writer extends DelegateCsvWriter implements Closeable {
+
+		private CsvWriter current;
+		private int partNumber;
+		private Path file;
+		private long numRecords;
+		private boolean closed;
+
+		Writer() throws CsvWriteException {
+			openPart();
+		}
+
+		@Override
+		protected ICsvWriter getDelegate() {
+			return current;
+		}
+
+		/**
+		 * Ends any record in progress, counting it
+		 */
+		@Override
+		public void beginRecord() throws CsvWriteException {
+			endRecord();
+		}
+
+		/**
+		 * Counted only if fields have been written since the last record
+		 * ended, as only then does the writer end a record
+		 */
+		@Override
+		public void endRecord() throws CsvWriteException {
+			if (current.inRecord()) {
+				current.endRecord();
+				recordWritten();
+			}
+		}
+
+		/**
+		 * Write the row as a record, ending any in progress first. See
+		 * {@link CsvWriter#writeRow(Object, CsvSchema)}
+		 */
+		public <T> void writeRow(T row, CsvSchema<? super T> schema) throws CsvWriteException {
+			endRecord();
+			current.writeRow(row, schema);
+			recordWritten();
+		}
+
+		private void recordWritten() throws CsvWriteException {
+			numRecords++;
+			if ((maxRecords > 0 && numRecords >= maxRecords)
+					|| (maxBytes > 0 && current.getNumBytes() >= maxBytes)) {
+				finishPart();
+				openPart();
+			}
+		}
+
+		private void openPart() throws CsvWriteException {
+			partNumber = nextPart.getAndIncrement();
+			file = dir.resolve(String.format(fileName, partNumber));
+			numRecords = 0;
+			FileChannel channel;
+			try {
+				channel = FileChannel.open(file, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				throw new CsvWriteException("Error creating part " + file, e);
+			}
+			current = settings.build(channel, charset, false);
+			if (header != null) {
+				current.beginRecord();
+				for (String name : header) {
+					current.write(name);
+				}
+				current.endRecord();
+			}
+		}
+
+		private void finishPart() throws CsvWriteException {
+			// closes the channel, and finishes off any compression
+			current.close();
+			try {
+				finished(new Part(partNumber, file, numRecords, Files.size(file), -1, -1));
+			} catch (IOException e) {
+				throw new CsvWriteException("Error closing part " + file, e);
+			}
+		}
+
+		/**
+		 * End any record in progress and finish the last part. A part with no
+		 * records in it is removed
+		 */
+		@Override
+		public void close() throws CsvWriteException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				endRecord();
+				if (numRecords == 0) {
+					try {
+						current.close();
+						Files.delete(file);
+					} catch (IOException e) {
+						throw new CsvWriteException("Error removing empty part " + file, e);
+					}
+				} else {
+					finishPart();
+				}
+			} finally {
+				numOpenWriters.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * One of the files written
+	 */
+	@ThreadSafe
+	public static final class Part {
+		private final int number;
+		private final Path file;
+		private final long numRecords;
+		private final long numBytes;
+		private final long firstRecord;
+		private final long firstByte;
+
+		Part(int number, Path file, long numRecords, long numBytes, long firstRecord, long firstByte) {
+			this.number = number;
+			this.file = file;
+			this.numRecords = numRecords;
+			this.numBytes = numBytes;
+			this.firstRecord = firstRecord;
+			this.firstByte = firstByte;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * Records in the part, not counting the header
+		 */
+		public long getNumRecords() {
+			return numRecords;
+		}
+
+		public long getNumBytes() {
+			return numBytes;
+		}
+
+		/**
+		 * Position of the part's first record across all the parts, or -1 if
+		 * not read from a manifest
+		 */
+		public long getFirstRecord() {
+			return firstRecord;
+		}
+
+		/**
+		 * Offset of the part's first byte across all the parts, or -1 if not
+		 * read from a manifest
+		 */
+		public long getFirstByte() {
+			return firstByte;
+		}
+
+		@Override
+		public String toString() {
+			return "part " + number + " " + file + ", " + numRecords + " records, " + numBytes + " bytes";
+		}
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder implements IBuilder<RollingCsvWriter> {
+
+		private CsvWriter.Builder settings = CsvWriter.with();
+		private Path dir;
+		private String fileName = "part-%05d.csv";
+		private String manifestName = "manifest.csv";
+		private Charset charset = StandardCharsets.UTF_8;
+		private long maxRecords;
+		private long maxBytes;
+		private String[] header;
+
+		@Override
+		public RollingCsvWriter build() {
+			Preconditions.checkNotNull(dir, "expect directory");
+			Preconditions.checkArgument(Files.isDirectory(dir), "expect %s to be a directory", dir);
+			Preconditions.checkArgument(maxRecords > 0 || maxBytes > 0, "expect max records or max bytes");
+			Preconditions.checkArgument(!String.format(fileName, 0).equals(String.format(fileName, 1)),
+					"expect the file name to include the part number, as %%d");
+			return new RollingCsvWriter(settings, dir, fileName, manifestName, charset, maxRecords, maxBytes, header);
+		}
+
+		/**
+		 * Field separator, quoting and the like for each part, including any
+		 * {@link CsvWriter.Builder#gzip(boolean)} compression. The output set
+		 * here is ignored
+		 */
+		public Builder settings(CsvWriter.Builder settings) {
+			this.settings = Preconditions.checkNotNull(settings, "expect settings");
+			return this;
+		}
+
+		/**
+		 * Where the parts and manifest are written
+		 */
+		public Builder directory(Path dir) {
+			this.dir = dir;
+			return this;
+		}
+
+		/**
+		 * Format of the part file names, given the part number. Default is
+		 * 'part-%05d.csv'
+		 */
+		public Builder fileName(String format) {
+			this.fileName = Preconditions.checkNotNull(format, "expect format");
+			return this;
+		}
+
+		/**
+		 * Default is 'manifest.csv'
+		 */
+		public Builder manifestName(String name) {
+			this.manifestName = Preconditions.checkNotNull(name, "expect name");
+			return this;
+		}
+
+		/**
+		 * Default is UTF-8
+		 */
+		public Builder charset(Charset charset) {
+			this.charset = Preconditions.checkNotNull(charset, "expect charset");
+			return this;
+		}
+
+		/**
+		 * Start a new part after this many records
+		 */
+		public Builder maxRecords(long max) {
+			this.maxRecords = max;
+			return this;
+		}
+
+		/**
+		 * Start a new part once a part reaches this size. The record taking it
+		 * over stays in the part, so parts end up slightly bigger. Chars not yet
+		 * encoded are counted as a byte each, and compressed parts are measured
+		 * before compression
+		 */
+		public Builder maxBytes(long max) {
+			this.maxBytes = max;
+			return this;
+		}
+
+		/**
+		 * Start each part with a header record of these names
+		 */
+		public Builder header(String... names) {
+			this.header = names;
+			return this;
+		}
+
+		/**
+		 * Start each part with a header record of the schema's column names
+		 */
+		public Builder header(CsvSchema<?> schema) {
+			List<String> names = schema.getNames();
+			return header(names.toArray(new String[names.size()]));
+		}
+	}
+}
@@ -1,12 +1,18 @@
 package org.codemucker.csv;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Date;
 
 import org.joda.time.DateTime;
 
 public interface Serialiser {
 
+	/**
+	 * Most chars any of the toChars methods may write
+	 */
+	public static final int MAX_NUMBER_CHARS = 32;
+
 	public void toString(Object obj, Appendable appender) throws IOException;
 	public void toString(boolean b, Appendable appender) throws IOException;
 	public void toString(int i, Appendable appender) throws IOException;
@@ -18,6 +24,53 @@ public interface Serialiser {
 	public void toString(double d, Appendable appender) throws IOException;
 	public void toString(Date d, Appendable appender) throws IOException;
 	public void toString(DateTime dt, Appendable appender) throws IOException;
+
+	// write straight into a char buffer with at least MAX_NUMBER_CHARS free,
+	// returning the index after the last char written. Should give the same
+	// output as the toString versions, which these default to
+	public default int toChars(int i, char[] buf, int pos) {
+		StringBuilder sb = new StringBuilder(MAX_NUMBER_CHARS);
+		try {
+			toString(i, sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		sb.getChars(0, sb.length(), buf, pos);
+		return pos + sb.length();
+	}
+
+	public default int toChars(long l, char[] buf, int pos) {
+		StringBuilder sb = new StringBuilder(MAX_NUMBER_CHARS);
+		try {
+			toString(l, sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		sb.getChars(0, sb.length(), buf, pos);
+		return pos + sb.length();
+	}
+
+	public default int toChars(float f, char[] buf, int pos) {
+		StringBuilder sb = new StringBuilder(MAX_NUMBER_CHARS);
+		try {
+			toString(f, sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		sb.getChars(0, sb.length(), buf, pos);
+		return pos + sb.length();
+	}
+
+	public default int toChars(double d, char[] buf, int pos) {
+		StringBuilder sb = new StringBuilder(MAX_NUMBER_CHARS);
+		try {
+			toString(d, sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		sb.getChars(0, sb.length(), buf, pos);
+		return pos + sb.length();
+	}
 	
 	public <T> T toObject(String s,Class<T> type);
 	public short toShort(String s);
@@ -31,7 +84,103 @@ public interface Serialiser {
 	public DateTime toDateTime(String s);
 	public byte toByte(String s);
 	public byte[] toBytes(String s);
-	
 
-	
+	// read straight from a field view, without requiring a string to be
+	// created first. These default to the string versions
+	public default short toShort(CharSequence s) {
+		return toShort(s.toString());
+	}
+
+	public default int toInt(CharSequence s) {
+		return toInt(s.toString());
+	}
+
+	public default long toLong(CharSequence s) {
+		return toLong(s.toString());
+	}
+
+	public default double toDouble(CharSequence s) {
+		return toDouble(s.toString());
+	}
+
+	public default float toFloat(CharSequence s) {
+		return toFloat(s.toString());
+	}
+
+	public default boolean toBool(CharSequence s) {
+		return toBool(s.toString());
+	}
+
+	public default char toChar(CharSequence s) {
+		return toChar(s.toString());
+	}
+
+	public default Date toDate(CharSequence s) {
+		return toDate(s.toString());
+	}
+
+	public default DateTime toDateTime(CharSequence s) {
+		return toDateTime(s.toString());
+	}
+
+	public default byte toByte(CharSequence s) {
+		return toByte(s.toString());
+	}
+
+	// read from part of a field or buffer, from start up to end
+	public default int toInt(CharSequence s, int start, int end) {
+		return toInt(s.subSequence(start, end).toString());
+	}
+
+	public default long toLong(CharSequence s, int start, int end) {
+		return toLong(s.subSequence(start, end).toString());
+	}
+
+	public default double toDouble(CharSequence s, int start, int end) {
+		return toDouble(s.subSequence(start, end).toString());
+	}
+
+	public default float toFloat(CharSequence s, int start, int end) {
+		return toFloat(s.subSequence(start, end).toString());
+	}
+
+	public default boolean toBool(CharSequence s, int start, int end) {
+		return toBool(s.subSequence(start, end).toString());
+	}
+
+	public default Date toDate(CharSequence s, int start, int end) {
+		return toDate(s.subSequence(start, end).toString());
+	}
+
+	public default DateTime toDateTime(CharSequence s, int start, int end) {
+		return toDateTime(s.subSequence(start, end).toString());
+	}
+
+	public default int toInt(char[] chars, int start, int end) {
+		return toInt(new String(chars, start, end - start));
+	}
+
+	public default long toLong(char[] chars, int start, int end) {
+		return toLong(new String(chars, start, end - start));
+	}
+
+	public default double toDouble(char[] chars, int start, int end) {
+		return toDouble(new String(chars, start, end - start));
+	}
+
+	public default float toFloat(char[] chars, int start, int end) {
+		return toFloat(new String(chars, start, end - start));
+	}
+
+	public default boolean toBool(char[] chars, int start, int end) {
+		return toBool(new String(chars, start, end - start));
+	}
+
+	public default Date toDate(char[] chars, int start, int end) {
+		return toDate(new String(chars, start, end - start));
+	}
+
+	public default DateTime toDateTime(char[] chars, int start, int end) {
+		return toDateTime(new String(chars, start, end - start));
+	}
 }
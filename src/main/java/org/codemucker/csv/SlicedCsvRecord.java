@@ -0,0 +1,164 @@
+package org.codemucker.csv;
+
+import java.util.Arrays;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * A record whose fields are slices of a single shared buffer of values, as
+ * filled by a parser. Fields are only turned into strings when read as one,
+ * typed reads go via a view onto the slice instead.
+ *
+ * <p>
+ * Views are reused per field, so reading a field's chars again, or moving the
+ * record onto the next row, changes what an earlier returned view reads
+ * </p>
+ */
+@NotThreadSafe
+abstract class SlicedCsvRecord extends CsvRecord {
+
+	/**
+	 * Pairs of start and length of each field in the values. A negative length
+	 * marks a null
+	 */
+	int[] fieldOffsets;
+	/**
+	 * Index of this record's first field in the offsets, as several records
+	 * can share the same offsets
+	 */
+	int fieldBase;
+	int numFields;
+
+	/**
+	 * Lazily created reusable view per field
+	 */
+	private CharSequence[] views = new CharSequence[0];
+
+	SlicedCsvRecord(ICsvReader reader, Serialiser serialiser) {
+		super(reader, serialiser);
+	}
+
+	/**
+	 * If false this has been given plain string data instead
+	 */
+	abstract boolean hasValues();
+
+	/**
+	 * Create a new string from the given field, which is known to be not
+	 * null
+	 */
+	abstract String decode(int start, int len);
+
+	/**
+	 * Create a new view which {@link #moveView(CharSequence, int, int)} can be
+	 * called on
+	 */
+	abstract CharSequence newView();
+
+	/**
+	 * Point the given view to the given field, which is known to be not null
+	 */
+	abstract void moveView(CharSequence view, int start, int len);
+
+	@Override
+	public void setData(String[] record) {
+		this.fieldOffsets = null;
+		this.fieldBase = 0;
+		this.numFields = 0;
+		super.setData(record);
+	}
+
+	@Override
+	public String[] getData() {
+		if (!hasValues()) {
+			return super.getData();
+		}
+		String[] data = new String[numFields];
+		for (int i = 0; i < numFields; i++) {
+			data[i] = decode(i);
+		}
+		return data;
+	}
+
+	@Override
+	public int getTotalNumFields() {
+		if (!hasValues()) {
+			return super.getTotalNumFields();
+		}
+		return numFields;
+	}
+
+	@Override
+	public String _readStringOrError(int idx) {
+		if (!hasValues()) {
+			return super._readStringOrError(idx);
+		}
+		return decode(toFieldIdxOrError(idx));
+	}
+
+	@Override
+	public String _readStringOrNull(int idx) {
+		if (!hasValues()) {
+			return super._readStringOrNull(idx);
+		}
+		idx = getOffset() + idx;
+		if (idx >= numFields) {
+			return null;
+		}
+		return decode(idx);
+	}
+
+	@Override
+	public CharSequence _readCharsOrError(int idx) {
+		if (!hasValues()) {
+			return super._readCharsOrError(idx);
+		}
+		return view(toFieldIdxOrError(idx));
+	}
+
+	@Override
+	public CharSequence _readCharsOrNull(int idx) {
+		if (!hasValues()) {
+			return super._readCharsOrNull(idx);
+		}
+		idx = getOffset() + idx;
+		if (idx >= numFields) {
+			return null;
+		}
+		return view(idx);
+	}
+
+	private int toFieldIdxOrError(int idx) {
+		idx = getOffset() + idx;
+		if (idx >= numFields) {
+			throw new IllegalArgumentException("Expected not null for field " + idx + ", record is " + Arrays.toString(getData()));
+		}
+		return idx;
+	}
+
+	private String decode(int idx) {
+		int offset = (fieldBase + idx) * 2;
+		int len = fieldOffsets[offset + 1];
+		if (len < 0) {
+			return null;
+		}
+		return decode(fieldOffsets[offset], len);
+	}
+
+	private CharSequence view(int idx) {
+		int offset = (fieldBase + idx) * 2;
+		int len = fieldOffsets[offset + 1];
+		if (len < 0) {
+			return null;
+		}
+		if (idx >= views.length) {
+			views = Arrays.copyOf(views, Math.max(numFields, views.length * 2));
+		}
+		CharSequence view = views[idx];
+		if (view == null) {
+			view = views[idx] = newView();
+		}
+		moveView(view, fieldOffsets[offset], len);
+		return view;
+	}
+}
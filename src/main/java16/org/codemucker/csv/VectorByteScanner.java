@@ -0,0 +1,115 @@
+package org.codemucker.csv;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+/**
+ * Scans for structural bytes using the JDK Vector API, simdcsv style. A
+ * bitmask of the separators, escapes, newlines and carriage returns is built
+ * for a block of 64 bytes at a time, and kept for the following calls, so
+ * short fields are found by just shifting the mask along.
+ *
+ * <p>
+ * Looked up at runtime by {@link ByteScanner#create(byte, byte, boolean)},
+ * fails to construct if there is no hardware support for at least 128 bit
+ * vectors
+ * </p>
+ */
+@NotThreadSafe
+final class VectorByteScanner extends ByteScanner {
+
+	private static final int BLOCK_SIZE = 64;
+
+	private static final VectorSpecies<Byte> SPECIES = pickSpecies();
+
+	private final ByteVector fieldSepVector;
+	private final ByteVector escapeVector;
+	private final ByteVector nlVector;
+	private final ByteVector crVector;
+
+	/**
+	 * Copy of a block when the buffer isn't backed by an array
+	 */
+	private final byte[] scratch = new byte[BLOCK_SIZE];
+
+	/**
+	 * Bitmask of the structural bytes in the block starting at maskStart. Bit
+	 * n is set if the byte at maskStart + n is structural
+	 */
+	private long mask;
+	private int maskStart;
+	private int maskEnd = -1;
+
+	VectorByteScanner(byte fieldSep, byte escape) {
+		super(fieldSep, escape);
+		if (ByteVector.SPECIES_PREFERRED.vectorBitSize() < 128) {
+			throw new UnsupportedOperationException("no hardware vector support");
+		}
+		fieldSepVector = ByteVector.broadcast(SPECIES, fieldSep);
+		escapeVector = ByteVector.broadcast(SPECIES, escape);
+		nlVector = ByteVector.broadcast(SPECIES, (byte) CsvParser.NL);
+		crVector = ByteVector.broadcast(SPECIES, (byte) CsvParser.CR);
+	}
+
+	private static VectorSpecies<Byte> pickSpecies() {
+		int bits = ByteVector.SPECIES_PREFERRED.vectorBitSize();
+		if (bits >= 512) {
+			return ByteVector.SPECIES_512;
+		}
+		return bits >= 256 ? ByteVector.SPECIES_256 : ByteVector.SPECIES_128;
+	}
+
+	@Override
+	void reset() {
+		maskEnd = -1;
+	}
+
+	@Override
+	int findPlainRunEnd(ByteBuffer buf, int from, int to) {
+		while (from < to) {
+			if (from >= maskStart && from < maskEnd) {
+				long m = mask >>> (from - maskStart);
+				if (m != 0) {
+					return from + Long.numberOfTrailingZeros(m);
+				}
+				from = maskEnd;
+			} else if (to - from >= BLOCK_SIZE) {
+				mask = structuralMask(buf, from);
+				maskStart = from;
+				maskEnd = from + BLOCK_SIZE;
+			} else {
+				return scanPlainRun(buf, from, to);
+			}
+		}
+		return to;
+	}
+
+	private long structuralMask(ByteBuffer buf, int from) {
+		byte[] bytes;
+		int offset;
+		if (buf.hasArray()) {
+			bytes = buf.array();
+			offset = buf.arrayOffset() + from;
+		} else {
+			buf.get(from, scratch, 0, BLOCK_SIZE);
+			bytes = scratch;
+			offset = 0;
+		}
+		int len = SPECIES.length();
+		long m = 0;
+		for (int i = 0; i < BLOCK_SIZE; i += len) {
+			ByteVector v = ByteVector.fromArray(SPECIES, bytes, offset + i);
+			VectorMask<Byte> structural = v.eq(fieldSepVector)
+					.or(v.eq(escapeVector))
+					.or(v.eq(nlVector))
+					.or(v.eq(crVector));
+			m |= structural.toLong() << i;
+		}
+		return m;
+	}
+}
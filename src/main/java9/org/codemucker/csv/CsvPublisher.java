@@ -0,0 +1,147 @@
+package org.codemucker.csv;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+
+import org.codemucker.lang.IBuilder;
+import org.codemucker.lang.annotation.NotThreadSafe;
+import org.codemucker.lang.annotation.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Publish the records of a file to a reactive pipeline. Use:
+ *
+ * <pre>
+ * CsvPublisher publisher = CsvPublisher.with().settings(CsvReader.with().input(path)).build();
+ * publisher.subscribe(subscriber);
+ * </pre>
+ *
+ * <p>
+ * Records are only parsed as they are requested, and the file is only read
+ * ahead as far as needed to satisfy the outstanding demand, using non blocking
+ * reads. Records are sent on the executor, up to a batch at a time before
+ * the thread is given back. Each subscriber reads the file from the start on
+ * its own.
+ * </p>
+ *
+ * <p>
+ * Only available when running on java 9 or later
+ * </p>
+ */
+@ThreadSafe
+public class CsvPublisher implements Flow.Publisher<ICsvRecord> {
+
+	private final CsvReader.Builder settings;
+	private final Executor executor;
+	private final int batchSize;
+
+	private CsvPublisher(CsvReader.Builder settings, Executor executor, int batchSize) {
+		this.settings = settings;
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super ICsvRecord> subscriber) {
+		Preconditions.checkNotNull(subscriber, "expect subscriber");
+		AsynchronousFileChannel channel;
+		try {
+			channel = AsynchronousFileChannel.open(settings.getFile(), StandardOpenOption.READ);
+		} catch (IOException e) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(e);
+			return;
+		}
+		final AsyncRecordSource source = new AsyncRecordSource(channel, settings, executor, batchSize,
+				new AsyncRecordSource.Sink() {
+					@Override
+					public void onNext(ICsvRecord record) {
+						subscriber.onNext(record);
+					}
+
+					@Override
+					public void onError(Throwable error) {
+						subscriber.onError(error);
+					}
+
+					@Override
+					public void onComplete() {
+						subscriber.onComplete();
+					}
+				});
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				source.request(n);
+			}
+
+			@Override
+			public void cancel() {
+				source.cancel();
+			}
+		});
+	}
+
+	public static Builder with() {
+		return new Builder();
+	}
+
+	@NotThreadSafe
+	public static class Builder implements IBuilder<CsvPublisher> {
+
+		private CsvReader.Builder settings;
+		private Executor executor = ForkJoinPool.commonPool();
+		private int batchSize = 256;
+
+		@Override
+		public CsvPublisher build() {
+			Preconditions.checkNotNull(settings, "expect settings with the file to read");
+			Preconditions.checkArgument(settings.getFile() != null, "expect settings with a file as the input");
+			Preconditions.checkArgument(!settings.hasHeader(), "can't read a header or require columns asynchronously");
+			Preconditions.checkArgument(batchSize > 0, "expect batch size > 0");
+			return new CsvPublisher(settings, executor, batchSize);
+		}
+
+		/**
+		 * The file to read, along with the charset, separator, escape and
+		 * comment chars, buffer sizes and the serialiser. The file is read a
+		 * read buffer size at a time. Read again on each subscribe, so don't
+		 * change it after building. A header can't be read
+		 */
+		public Builder settings(CsvReader.Builder settings) {
+			this.settings = settings;
+			return this;
+		}
+
+		/**
+		 * Where records are parsed and sent from. Default is the common fork
+		 * join pool
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = Preconditions.checkNotNull(executor, "expect executor");
+			return this;
+		}
+
+		/**
+		 * Most records sent in one go before the thread is given back.
+		 * Default is 256
+		 */
+		public Builder batchSize(int numRecords) {
+			this.batchSize = numRecords;
+			return this;
+		}
+	}
+}
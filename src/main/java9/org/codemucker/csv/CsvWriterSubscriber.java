@@ -0,0 +1,129 @@
+package org.codemucker.csv;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.codemucker.lang.annotation.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes the records of a reactive pipeline out to a writer. Use:
+ *
+ * <pre>
+ * CsvWriterSubscriber subscriber = new CsvWriterSubscriber(writer);
+ * publisher.subscribe(subscriber);
+ * long numWritten = subscriber.getResult().get();
+ * </pre>
+ *
+ * <p>
+ * Asks for a batch of records at a time, asking for more once half have
+ * arrived, so no more than a batch is ever waiting to be written. The writer
+ * is flushed at the end. If writing fails the subscription is cancelled.
+ * </p>
+ *
+ * <p>
+ * Only available when running on java 9 or later. Calls are serialised by the
+ * publisher
+ * </p>
+ */
+@NotThreadSafe
+public class CsvWriterSubscriber implements Flow.Subscriber<ICsvRecord> {
+
+	private final ICsvWriter writer;
+	private final int batchSize;
+	private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+	private Flow.Subscription subscription;
+	/**
+	 * Records asked for but not yet received
+	 */
+	private long outstanding;
+	private long numWritten;
+
+	public CsvWriterSubscriber(ICsvWriter writer) {
+		this(writer, 256);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the most records to ask for at a time
+	 */
+	public CsvWriterSubscriber(ICsvWriter writer, int batchSize) {
+		Preconditions.checkNotNull(writer, "expect writer");
+		Preconditions.checkArgument(batchSize > 0, "expect batch size > 0");
+		this.writer = writer;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		Preconditions.checkNotNull(subscription, "expect subscription");
+		if (this.subscription != null) {
+			// can only write one stream of records
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		outstanding = batchSize;
+		subscription.request(batchSize);
+	}
+
+	@Override
+	public void onNext(ICsvRecord record) {
+		Preconditions.checkNotNull(record, "expect record");
+		if (result.isDone()) {
+			return;
+		}
+		try {
+			writer.beginRecord();
+			String[] fields = record.getData();
+			if (fields != null) {
+				for (String field : fields) {
+					writer.write(field);
+				}
+			}
+			writer.endRecord();
+		} catch (CsvWriteException e) {
+			subscription.cancel();
+			result.completeExceptionally(e);
+			return;
+		}
+		numWritten++;
+		outstanding--;
+		if (outstanding <= batchSize / 2) {
+			long more = batchSize - outstanding;
+			outstanding = batchSize;
+			subscription.request(more);
+		}
+	}
+
+	@Override
+	public void onError(Throwable error) {
+		Preconditions.checkNotNull(error, "expect error");
+		try {
+			writer.flush();
+		} catch (CsvWriteException e) {
+			error.addSuppressed(e);
+		}
+		result.completeExceptionally(error);
+	}
+
+	@Override
+	public void onComplete() {
+		try {
+			writer.flush();
+			result.complete(numWritten);
+		} catch (CsvWriteException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Completes with the number of records written once all have been
+	 * written and the writer flushed, or with the error which stopped them
+	 */
+	public CompletableFuture<Long> getResult() {
+		return result;
+	}
+}
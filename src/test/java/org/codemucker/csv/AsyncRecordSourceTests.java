@@ -0,0 +1,162 @@
+package org.codemucker.csv;
+
+import java.io.File;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncRecordSourceTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void readAllSameAsSequential() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		for (int readBufSize = 1; readBufSize < 40; readBufSize += 3) {
+			Collector sink = new Collector();
+			AsyncRecordSource source = newSource(file, readBufSize, 4, sink);
+			source.request(Long.MAX_VALUE);
+			sink.await();
+			Expect.that(sink.error == null).isEqualTo(true);
+			Expect.that(sink.records()).isEqualTo(expect);
+		}
+	}
+
+	@Test
+	public void onlyReadsWhatIsRequested() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		Collector sink = new Collector();
+		AsyncRecordSource source = newSource(file, 16, 4, sink);
+		source.request(3);
+		sink.awaitRecords(3);
+		Thread.sleep(50);
+		Expect.that(sink.records()).isEqualTo(expect.subList(0, 3));
+		Expect.that(sink.completed.getCount()).isEqualTo(1L);
+
+		for (int i = 3; i < expect.size(); i += 5) {
+			source.request(5);
+		}
+		source.request(1);
+		sink.await();
+		Expect.that(sink.records()).isEqualTo(expect);
+	}
+
+	@Test
+	public void recordsHaveNoNextRecord() throws Exception {
+		final List<ICsvRecord> received = Collections.synchronizedList(new ArrayList<ICsvRecord>());
+		final CountDownLatch first = new CountDownLatch(1);
+		Collector sink = new Collector() {
+			@Override
+			public void onNext(ICsvRecord record) {
+				received.add(record);
+				first.countDown();
+			}
+		};
+		AsyncRecordSource source = newSource(SampleCsv.writeFile(tmpDir), 16, 4, sink);
+		source.request(1);
+		Expect.that(first.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+		try {
+			received.get(0).nextRecord();
+			Assert.fail("expected no reader to read on from");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void nonPositiveRequestIsError() throws Exception {
+		Collector sink = new Collector();
+		AsyncRecordSource source = newSource(SampleCsv.writeFile(tmpDir), 16, 4, sink);
+		source.request(0);
+		sink.await();
+		Expect.that(sink.error instanceof IllegalArgumentException).isEqualTo(true);
+	}
+
+	@Test
+	public void cancelStopsRecords() throws Exception {
+		final CountDownLatch first = new CountDownLatch(1);
+		Collector sink = new Collector() {
+			@Override
+			public void onNext(ICsvRecord record) {
+				super.onNext(record);
+				first.countDown();
+			}
+		};
+		AsyncRecordSource source = newSource(SampleCsv.writeFile(tmpDir), 16, 1, sink);
+		source.request(1);
+		first.await(5, TimeUnit.SECONDS);
+		source.cancel();
+		source.request(10);
+		Thread.sleep(50);
+		Expect.that(sink.records().size()).isEqualTo(1);
+		Expect.that(sink.completed.getCount()).isEqualTo(1L);
+	}
+
+	private AsyncRecordSource newSource(File file, int readBufSize, int batchSize, AsyncRecordSource.Sink sink) throws Exception {
+		AsynchronousFileChannel channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return new AsyncRecordSource(channel, CsvReader.with().input(file.toPath()).readBufSize(readBufSize), executor, batchSize, sink);
+	}
+
+	private static class Collector implements AsyncRecordSource.Sink {
+		private final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch completed = new CountDownLatch(1);
+		volatile Throwable error;
+
+		@Override
+		public void onNext(ICsvRecord record) {
+			records.add(Arrays.toString(record.getData()));
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		List<String> records() {
+			synchronized (records) {
+				return new ArrayList<>(records);
+			}
+		}
+
+		void await() throws InterruptedException {
+			Expect.that(completed.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+		}
+
+		void awaitRecords(int num) throws InterruptedException {
+			long giveUp = System.currentTimeMillis() + 10000;
+			while (records.size() < num && System.currentTimeMillis() < giveUp) {
+				Thread.sleep(1);
+			}
+		}
+	}
+}
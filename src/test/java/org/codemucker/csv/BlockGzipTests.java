@@ -0,0 +1,160 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockGzipTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void blocksReadableAsPlainGzip() throws Exception {
+		byte[] data = sampleData(300 * 1000);
+		byte[] compressed = blockGzip(data, 3);
+
+		Expect.that(latin1(readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))))).isEqualTo(latin1(data));
+		try (BlockGzipInputStream in = new BlockGzipInputStream(new ByteArrayInputStream(compressed), 3)) {
+			Expect.that(in.isParallel()).isEqualTo(true);
+			Expect.that(latin1(readAll(in))).isEqualTo(latin1(data));
+		}
+	}
+
+	@Test
+	public void incompressibleBlocksStored() throws Exception {
+		byte[] data = new byte[200 * 1000];
+		new Random(7).nextBytes(data);
+		byte[] compressed = blockGzip(data, 2);
+
+		try (BlockGzipInputStream in = new BlockGzipInputStream(new ByteArrayInputStream(compressed), 2)) {
+			Expect.that(latin1(readAll(in))).isEqualTo(latin1(data));
+		}
+	}
+
+	@Test
+	public void plainGzipReadInOneGo() throws Exception {
+		byte[] data = sampleData(100 * 1000);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(data);
+		}
+		try (BlockGzipInputStream in = new BlockGzipInputStream(new ByteArrayInputStream(bytes.toByteArray()), 2)) {
+			Expect.that(in.isParallel()).isEqualTo(false);
+			Expect.that(latin1(readAll(in))).isEqualTo(latin1(data));
+		}
+	}
+
+	@Test
+	public void corruptBlockReported() throws Exception {
+		byte[] compressed = blockGzip(sampleData(100 * 1000), 2);
+		compressed[100] ^= 0x55;
+		try (BlockGzipInputStream in = new BlockGzipInputStream(new ByteArrayInputStream(compressed), 2)) {
+			readAll(in);
+			Assert.fail("expected the corrupt block to be reported");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void writeAndReadCompressedCsv() throws Exception {
+		Path file = tmpDir.getRoot().toPath().resolve("rows.csv.gz");
+		CsvSchema<SampleCsv.Row> schema = CsvSchema.of(SampleCsv.Row.class);
+		int numRows = 20000;
+		try (CsvWriter w = CsvWriter.with().output(Files.newOutputStream(file), StandardCharsets.UTF_8)
+				.gzip(true).compressionThreads(2).build()) {
+			w.writeHeader(schema);
+			for (int row = 0; row < numRows; row++) {
+				w.writeRow(new SampleCsv.Row(row % 5, row), schema);
+			}
+		}
+
+		CsvReader r = CsvReader.with().input(file).gzip(true).decompressionThreads(2).header(true).build();
+		ColumnHandle rowCol = r.getHeader().column("row");
+		ColumnHandle nameCol = r.getHeader().column("name");
+		int expectRow = 0;
+		while (r.hasMore()) {
+			ICsvRecord rec = r.readNextRecord();
+			if (rec.getTotalNumFields() < 3) {
+				continue;
+			}
+			Expect.that(rowCol.readInt(rec)).isEqualTo(expectRow);
+			Expect.that(nameCol.readString(rec)).isEqualTo(expectRow % 3 == 0 ? "caf\u00e9, \"" + expectRow + "\"" : "r" + expectRow);
+			expectRow++;
+		}
+		r.close();
+		Expect.that(expectRow).isEqualTo(numRows);
+	}
+
+	@Test
+	public void readPlainGzipStream() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write("a,b\n1,caf\u00e9\n".getBytes(StandardCharsets.UTF_8));
+		}
+		CsvReader r = CsvReader.with().input(new ByteArrayInputStream(bytes.toByteArray()), StandardCharsets.UTF_8)
+				.gzip(true).build();
+		ICsvRecord rec = r.readNextRecord();
+		Expect.that(rec.readString(1)).isEqualTo("b");
+		rec = r.readNextRecord();
+		Expect.that(rec.readString(1)).isEqualTo("caf\u00e9");
+		r.close();
+	}
+
+	private static byte[] blockGzip(byte[] data, int numThreads) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (BlockGzipOutputStream out = new BlockGzipOutputStream(bytes, 6, numThreads)) {
+			// uneven writes so blocks straddle them, and a flush part way
+			// through to end a block early
+			int off = 0;
+			int len = 1;
+			while (off < data.length) {
+				int n = Math.min(len, data.length - off);
+				out.write(data, off, n);
+				off += n;
+				len = len * 3 % 70001;
+				if (off > data.length / 3 && off - n <= data.length / 3) {
+					out.flush();
+				}
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] sampleData(int len) {
+		StringBuilder sb = new StringBuilder();
+		Random random = new Random(3);
+		while (sb.length() < len) {
+			sb.append(random.nextInt(1000)).append(",name ").append(random.nextInt(50)).append('\n');
+		}
+		return sb.substring(0, len).getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[7919];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static String latin1(byte[] bytes) {
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
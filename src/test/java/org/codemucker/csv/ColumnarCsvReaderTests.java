@@ -0,0 +1,117 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnarCsvReaderTests {
+
+	// skipped fields hold escapes, separators and newlines
+	private static final String CSV = "id,skip,price,name,when\n"
+			+ "1,\"a,\"\"b\"\"\nc\",1.5,\"x, y\",1000\n"
+			+ "2,plain,-2.25,,2000\n"
+			+ "3,\"\"\"\",0,\"\"\"q\"\"\",\n"
+			+ "4\n";
+
+	@Test
+	public void readProjectedColumnsFromChars() throws Exception {
+		checkRead(CsvReader.with().input(CSV));
+	}
+
+	@Test
+	public void readProjectedColumnsFromBytes() throws Exception {
+		checkRead(CsvReader.with().input(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+	}
+
+	private static void checkRead(CsvReader.Builder settings) throws Exception {
+		ColumnarCsvReader r = ColumnarCsvReader.with().settings(settings).skipLines(1)
+				.intColumn(0).doubleColumn(2).stringColumn(3).dateColumn(4).longColumn(0)
+				.build();
+		ColumnBatch batch = r.newBatch(3);
+
+		Expect.that(r.readBatch(batch)).isEqualTo(3);
+		Expect.that(batch.getInts(0)[0]).isEqualTo(1);
+		Expect.that(batch.getInts(0)[2]).isEqualTo(3);
+		Expect.that(batch.getDoubles(1)[0]).isEqualTo(1.5);
+		Expect.that(batch.getDoubles(1)[1]).isEqualTo(-2.25);
+		Expect.that(batch.getStrings(2)[0]).isEqualTo("x, y");
+		Expect.that(batch.isNull(2, 1)).isEqualTo(true);
+		Expect.that(batch.getStrings(2)[2]).isEqualTo("\"q\"");
+		Expect.that(batch.getDates(3)[0]).isEqualTo(1000L);
+		Expect.that(batch.getDates(3)[1]).isEqualTo(2000L);
+		Expect.that(batch.isNull(3, 2)).isEqualTo(true);
+		Expect.that(batch.getLongs(4)[1]).isEqualTo(2L);
+
+		Expect.that(r.readBatch(batch)).isEqualTo(1);
+		Expect.that(batch.getInts(0)[0]).isEqualTo(4);
+		Expect.that(batch.isNull(1, 0)).isEqualTo(true);
+		Expect.that(batch.isNull(2, 0)).isEqualTo(true);
+
+		Expect.that(r.readBatch(batch)).isEqualTo(0);
+		r.close();
+	}
+
+	@Test
+	public void readSameValuesAsRecordReader() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i).append(",\"skip ").append(i).append(",\"\"\"\"\",").append(i * 0.5).append(",").append("s").append(i % 7).append("\n");
+		}
+		String csv = sb.toString();
+
+		List<String> expect = new ArrayList<>();
+		CsvReader all = CsvReader.with().input(csv).build();
+		while (all.hasMore()) {
+			ICsvRecord rec = all.readNextRecord();
+			if (rec.getData()[0] == null) {
+				// trailing newline
+				continue;
+			}
+			expect.add(rec.readInt(0) + "|" + rec.readDouble(2) + "|" + rec.readString(3));
+		}
+
+		List<String> actual = new ArrayList<>();
+		ColumnarCsvReader r = ColumnarCsvReader.with().settings(CsvReader.with().input(csv))
+				.stringColumn(3).intColumn(0).doubleColumn(2).build();
+		ColumnBatch batch = r.newBatch(64);
+		while (r.readBatch(batch) > 0) {
+			for (int row = 0; row < batch.size(); row++) {
+				actual.add(batch.getInts(1)[row] + "|" + batch.getDoubles(2)[row] + "|" + batch.getStrings(0)[row]);
+			}
+		}
+		Expect.that(actual).isEqualTo(expect);
+	}
+
+	@Test
+	public void invalidFieldFailsAfterEarlierRows() throws Exception {
+		ColumnarCsvReader r = ColumnarCsvReader.with().settings(CsvReader.with().input("1,a\n2,b\nx,c\n"))
+				.intColumn(0).build();
+		ColumnBatch batch = r.newBatch(10);
+		try {
+			r.readBatch(batch);
+			Assert.fail("expected the bad int to fail");
+		} catch (CsvInvalidRecordException e) {
+			// expected
+		}
+		Expect.that(batch.size()).isEqualTo(2);
+		Expect.that(batch.getInts(0)[1]).isEqualTo(2);
+	}
+
+	@Test
+	public void wrongColumnTypeFails() throws Exception {
+		ColumnarCsvReader r = ColumnarCsvReader.with().settings(CsvReader.with().input("1\n")).intColumn(0).build();
+		ColumnBatch batch = r.newBatch(10);
+		r.readBatch(batch);
+		try {
+			batch.getLongs(0);
+			Assert.fail("expected an int column");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
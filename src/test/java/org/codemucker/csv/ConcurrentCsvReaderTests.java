@@ -0,0 +1,108 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentCsvReaderTests {
+
+	@Test
+	public void readFromManyThreadsSameRecordsAsSequential() throws Exception {
+		String csv = SampleCsv.csv(5000);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(csv));
+		Collections.sort(expect);
+
+		final ConcurrentCsvReader r = ConcurrentCsvReader.with().settings(CsvReader.with().input(csv)).batchSize(7).ringSize(4).build();
+		final List<String> actual = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while (r.hasMore()) {
+							actual.add(Arrays.toString(r.readNextRecord().getData()));
+						}
+					} catch (Throwable e) {
+						error.set(e);
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		r.close();
+
+		Expect.that(error.get() == null).isEqualTo(true);
+		Collections.sort(actual);
+		Expect.that(actual).isEqualTo(expect);
+
+		ConcurrentCsvReader.Stats stats = r.getStats();
+		Expect.that(stats.getRecordsPublished()).isEqualTo((long) expect.size());
+		Expect.that(stats.getBatchesClaimed()).isEqualTo(stats.getBatchesPublished());
+	}
+
+	@Test
+	public void readBatchesInOrder() throws Exception {
+		String csv = SampleCsv.csv(100);
+		ConcurrentCsvReader r = ConcurrentCsvReader.with().settings(CsvReader.with().input(csv)).batchSize(16).ringSize(2).build();
+		List<String> actual = new ArrayList<>();
+		List<ICsvRecord> batch;
+		while ((batch = r.nextBatch()) != null) {
+			for (ICsvRecord rec : batch) {
+				actual.add(Arrays.toString(rec.getData()));
+			}
+		}
+		Expect.that(actual).isEqualTo(SampleCsv.readSequential(CsvReader.with().input(csv)));
+		Expect.that(r.hasMore()).isEqualTo(false);
+	}
+
+	@Test
+	public void readIntoRecordBatches() throws Exception {
+		String csv = SampleCsv.csv(100);
+		ConcurrentCsvReader r = ConcurrentCsvReader.with().settings(CsvReader.with().input(csv)).batchSize(16).build();
+		List<String> actual = new ArrayList<>();
+		RecordBatch batch = new RecordBatch();
+		while (r.readBatch(batch, 10) > 0) {
+			for (int i = 0; i < batch.size(); i++) {
+				actual.add(Arrays.toString(batch.get(i).getData()));
+			}
+		}
+		Expect.that(actual).isEqualTo(SampleCsv.readSequential(CsvReader.with().input(csv)));
+	}
+
+	@Test
+	public void readErrorPassedOnAfterEarlierRecords() throws Exception {
+		InputStream failing = new SequenceInputStream(new ByteArrayInputStream("a,b\nc,d\n".getBytes(StandardCharsets.UTF_8)), new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("disk on fire");
+			}
+		});
+		ConcurrentCsvReader r = ConcurrentCsvReader.with().settings(CsvReader.with().input(failing, StandardCharsets.UTF_8).readBufSize(4)).batchSize(1).build();
+		Expect.that(r.readNextRecord().readString(0)).isEqualTo("a");
+		Expect.that(r.readNextRecord().readString(0)).isEqualTo("c");
+		Expect.that(r.hasMore()).isEqualTo(true);
+		try {
+			r.readNextRecord();
+			Assert.fail("expected the read error");
+		} catch (CsvException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.codemucker.csv;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CsvBinderTests {
+
+	@Test
+	public void readViaSetters() throws Exception {
+		CsvBinder<PublicTrade> binder = CsvBinder.with(PublicTrade.class).build();
+		Expect.that(binder.getPropertyNames()).isEqualTo(Arrays.asList("id", "symbol", "qty", "price", "buy"));
+
+		CsvReader r = CsvReader.with().input("7,ABC,100,1.5,true").build();
+		PublicTrade trade = binder.read(r.readNextRecord());
+		Expect.that(trade.getId()).isEqualTo(7L);
+		Expect.that(trade.getSymbol()).isEqualTo("ABC");
+		Expect.that(trade.getQty()).isEqualTo(100);
+		Expect.that(trade.getPrice()).isEqualTo(1.5);
+		Expect.that(trade.isBuy()).isEqualTo(true);
+	}
+
+	@Test
+	public void readPrivateFieldsByHeader() throws Exception {
+		CsvReader r = CsvReader.with().input("side,price,name,extra,count\nSELL,2.25,xyz,ignored,\n").header(true).build();
+		CsvBinder<PrivateTrade> binder = CsvBinder.with(PrivateTrade.class).header(r.getHeader()).build();
+
+		PrivateTrade trade = binder.read(r.readNextRecord());
+		Expect.that(trade.name).isEqualTo("xyz");
+		Expect.that(trade.price).isEqualTo(2.25f);
+		Expect.that(trade.side).isEqualTo(Side.SELL);
+		Expect.that(trade.count).isNull();
+	}
+
+	@Test
+	public void readChosenProperties() throws Exception {
+		CsvBinder<PublicTrade> binder = CsvBinder.with(PublicTrade.class).properties("qty", "symbol").build();
+		CsvReader r = CsvReader.with().input("5,DEF").build();
+
+		PublicTrade trade = new PublicTrade();
+		trade.setId(3);
+		binder.read(r.readNextRecord(), trade);
+		Expect.that(trade.getQty()).isEqualTo(5);
+		Expect.that(trade.getSymbol()).isEqualTo("DEF");
+		Expect.that(trade.getId()).isEqualTo(3L);
+	}
+
+	@Test
+	public void writeReadRoundTrip() throws Exception {
+		PrivateTrade trade = new PrivateTrade();
+		trade.name = "a, \"b\"";
+		trade.price = 0.5f;
+		trade.side = Side.BUY;
+		trade.count = 12;
+		PrivateTrade empty = new PrivateTrade();
+
+		CsvBinder<PrivateTrade> binder = CsvBinder.with(PrivateTrade.class).build();
+		StringWriter out = new StringWriter();
+		ICsvWriter w = CsvWriter.with().output(out).build();
+		binder.writeHeader(w);
+		binder.write(trade, w);
+		binder.write(empty, w);
+		w.flush();
+
+		CsvReader r = CsvReader.with().input(out.toString()).header(true).build();
+		Expect.that(r.getHeader().getNames()).isEqualTo(Arrays.asList("name", "price", "side", "count"));
+		PrivateTrade read = binder.read(r.readNextRecord());
+		Expect.that(read.name).isEqualTo(trade.name);
+		Expect.that(read.price).isEqualTo(0.5f);
+		Expect.that(read.side).isEqualTo(Side.BUY);
+		Expect.that(read.count).isEqualTo(12);
+
+		read = binder.read(r.readNextRecord());
+		Expect.that(read.name).isNull();
+		Expect.that(read.side).isNull();
+		Expect.that(read.count).isNull();
+	}
+
+	@Test
+	public void invalidValuesRejected() throws Exception {
+		CsvBinder<PrivateTrade> binder = CsvBinder.with(PrivateTrade.class).build();
+		try {
+			binder.read(CsvReader.with().input("x,1,HOLD,2").build().readNextRecord());
+			Assert.fail("expected the unknown enum name to be rejected");
+		} catch (IllegalArgumentException e) {
+			Expect.that(e.getMessage().contains("HOLD")).isEqualTo(true);
+		}
+		try {
+			CsvBinder.with(PublicTrade.class).properties("qty", "colour").build();
+			Assert.fail("expected the unknown property to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public static class PublicTrade {
+		private long id;
+		private String symbol;
+		private int qty;
+		private double price;
+		private boolean buy;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+
+		public void setSymbol(String symbol) {
+			this.symbol = symbol;
+		}
+
+		public int getQty() {
+			return qty;
+		}
+
+		public void setQty(int qty) {
+			this.qty = qty;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public void setPrice(double price) {
+			this.price = price;
+		}
+
+		public boolean isBuy() {
+			return buy;
+		}
+
+		public void setBuy(boolean buy) {
+			this.buy = buy;
+		}
+	}
+
+	enum Side {
+		BUY, SELL
+	}
+
+	static class PrivateTrade {
+		private static final int IGNORED = 1;
+		private String name;
+		private float price;
+		private Side side;
+		private Integer count;
+		private transient String cached;
+	}
+}
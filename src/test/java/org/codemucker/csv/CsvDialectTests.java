@@ -0,0 +1,156 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Test;
+
+public class CsvDialectTests {
+
+	/**
+	 * A dialect expecting no quotes, so the fast path is taken
+	 */
+	private static final CsvDialect QUOTE_FREE = CsvDialect.sniff("a,b\n");
+
+	@Test
+	public void sniffSeparators() {
+		Expect.that(CsvDialect.sniff("a,b,c\n1,2,3\n4,5,6\n").getFieldSeparator()).isEqualTo(',');
+		Expect.that(CsvDialect.sniff("a\tb,c\n1\t2,x\n4\t5\n").getFieldSeparator()).isEqualTo('\t');
+		Expect.that(CsvDialect.sniff("a|b|c\n1|2|3\n").getFieldSeparator()).isEqualTo('|');
+		Expect.that(CsvDialect.sniff("price;qty\n1,5;2\n2,25;3\n").getFieldSeparator()).isEqualTo(';');
+		// nothing to go on
+		Expect.that(CsvDialect.sniff("abc\ndef\n").getFieldSeparator()).isEqualTo(',');
+		// separators inside quotes and comment lines don't count
+		Expect.that(CsvDialect.sniff("# a,b,c,d\nx\t\"y,z,w\"\n1\t\"2,3\"\n").getFieldSeparator()).isEqualTo('\t');
+		// last line cut off by the sample
+		Expect.that(CsvDialect.sniff("a|b\n1|2\n3|4,5,6,7,8").getFieldSeparator()).isEqualTo('|');
+	}
+
+	@Test
+	public void sniffQuotesAndLineEndings() {
+		CsvDialect dialect = CsvDialect.sniff("a,b\r\n1,2\r\n");
+		Expect.that(dialect.isQuoted()).isEqualTo(false);
+		Expect.that(dialect.getLineEnding()).isEqualTo("\r\n");
+
+		dialect = CsvDialect.sniff("a,b\n\"1\",2\n");
+		Expect.that(dialect.isQuoted()).isEqualTo(true);
+		Expect.that(dialect.getLineEnding()).isEqualTo("\n");
+	}
+
+	@Test
+	public void sniffWithGivenQuoteAndComment() {
+		// '|' inside single quotes, and '!' comment lines, don't count
+		CsvDialect dialect = CsvDialect.sniff("! a|b|c|d\na;'b|c'\n1;'2|3'\n", '\'', '!');
+		Expect.that(dialect.getFieldSeparator()).isEqualTo(';');
+		Expect.that(dialect.getQuote()).isEqualTo('\'');
+		Expect.that(dialect.isQuoted()).isEqualTo(true);
+		// no comments, so a line starting with '#' is data
+		Expect.that(CsvDialect.sniff("#a|b\n1|2\n", '"', (char) 0).isQuoted()).isEqualTo(false);
+	}
+
+	@Test
+	public void sniffKeepsEscapeChar() throws Exception {
+		String csv = "a;b\n'x;y';2\n";
+		CsvReader r = CsvReader.with().input(csv).escapChar('\'').sniffDialect(true).build();
+		r.readNextRecord();
+		ICsvRecord rec = r.readNextRecord();
+		Expect.that(rec.readString(0)).isEqualTo("x;y");
+		Expect.that(rec.readString(1)).isEqualTo("2");
+	}
+
+	@Test
+	public void quoteFreeSameAsNormalParse() throws Exception {
+		String[] inputs = {
+				"a,b,c\n1,,3\n\n,x,\n",
+				"a,b\r\n1,2\r\nlast,line",
+				"a,b\n1,2\n3,\"4,5\"\n6,7\n",
+				"a,b\n# comment,here\n1,#2\n",
+				"a,b\n1\r2,3\n4,5\r",
+				"x\n\"\"\n",
+				"",
+				"\n\n",
+		};
+		for (String input : inputs) {
+			Expect.that(readAll(input, true, 64)).isEqualTo(readAll(input, false, 64));
+		}
+
+		// records straddling blocks, and a quote turning up late
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.append(i).append(",name ").append(i % 17).append(",,").append(i * 0.5);
+			if (i == 1500) {
+				sb.append(",\"quoted, \"\"late\"\"\"");
+			}
+			sb.append(i % 3 == 0 ? "\r\n" : "\n");
+		}
+		String input = sb.toString();
+		for (int bufSize : new int[] { 16, 100, 4096 }) {
+			Expect.that(readAll(input, true, bufSize)).isEqualTo(readAll(input, false, bufSize));
+		}
+	}
+
+	@Test
+	public void quoteFreeSkipsRecords() throws Exception {
+		String input = "a,b\n1,2\n3,4\n5,6\n";
+		CsvReader r = CsvReader.with().input(input.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)
+				.dialect(QUOTE_FREE).build();
+		ICsvRecord rec = r.readNextRecord(0, 2);
+		Expect.that(rec.readString(0)).isEqualTo("3");
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("6");
+	}
+
+	@Test
+	public void sniffWhenBuilt() throws Exception {
+		String csv = "id|name\r\n1|caf\u00e9\r\n2|x\r\n";
+		byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+
+		CsvReader r = CsvReader.with().input(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)
+				.sniffDialect(true).header(true).build();
+		Expect.that(r.getHeader().getNames()).isEqualTo(Arrays.asList("id", "name"));
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("caf\u00e9");
+
+		r = CsvReader.with().input(csv).sniffDialect(true).build();
+		r.readNextRecord();
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("caf\u00e9");
+
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+			out.write(bytes);
+		}
+		r = CsvReader.with().input(new ByteArrayInputStream(gzipped.toByteArray()), StandardCharsets.UTF_8)
+				.gzip(true).sniffDialect(true).build();
+		r.readNextRecord();
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("caf\u00e9");
+		r.close();
+	}
+
+	/**
+	 * Each record as a list of its fields, nulls included
+	 */
+	private static List<List<String>> readAll(String input, boolean quoteFree, int bufSize) throws Exception {
+		// a stream, so read a block of the buffer size at a time
+		CsvReader.Builder builder = CsvReader.with()
+				.input(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+				.readBufSize(bufSize);
+		if (quoteFree) {
+			builder.dialect(QUOTE_FREE);
+		}
+		CsvReader r = builder.build();
+		List<List<String>> records = new ArrayList<>();
+		while (r.hasMore()) {
+			ICsvRecord rec = r.readNextRecord();
+			List<String> fields = new ArrayList<>();
+			for (int i = 0; i < rec.getTotalNumFields(); i++) {
+				fields.add(rec.readString(i));
+			}
+			records.add(fields);
+		}
+		return records;
+	}
+}
@@ -0,0 +1,128 @@
+package org.codemucker.csv;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvHeaderTests {
+
+	private static final String CSV = "id,name,price\n1,apple,0.5\n2,\"pear, green\",0.75\n";
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void readByName() throws Exception {
+		checkReadByName(CsvReader.with().input(CSV).header(true));
+		checkReadByName(CsvReader.with().input(CSV.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).header(true));
+		checkReadByName(CsvReader.with().input(CSV).header(true).threadSafe(false).flyweight(true));
+	}
+
+	private static void checkReadByName(CsvReader.Builder settings) throws Exception {
+		CsvReader r = settings.build();
+		CsvHeader header = r.getHeader();
+		Expect.that(header.getNames()).isEqualTo(Arrays.asList("id", "name", "price"));
+		ColumnHandle id = header.column("id");
+		ColumnHandle name = header.column("name");
+		ColumnHandle price = header.column("price");
+		Expect.that(price.getIndex()).isEqualTo(2);
+
+		ICsvRecord rec = r.readNextRecord();
+		Expect.that(id.readInt(rec)).isEqualTo(1);
+		Expect.that(name.readString(rec)).isEqualTo("apple");
+		Expect.that(price.readDouble(rec)).isEqualTo(0.5);
+
+		rec = r.readNextRecord();
+		Expect.that(id.readInt(rec)).isEqualTo(2);
+		Expect.that(name.readString(rec)).isEqualTo("pear, green");
+		Expect.that(price.readDouble(rec)).isEqualTo(0.75);
+	}
+
+	@Test
+	public void headerReadBeforeFirstRecord() throws Exception {
+		CsvReader r = CsvReader.with().input(CSV).header(true).build();
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("apple");
+		Expect.that(r.getHeader().column("name").getIndex()).isEqualTo(1);
+	}
+
+	@Test
+	public void reorderColumns() throws Exception {
+		CsvReader r = CsvReader.with().input(CSV).header(true).build();
+		ColumnHandle[] columns = r.getHeader().columns("price", "id");
+		Expect.that(Arrays.asList(CsvHeader.reorder(r.readNextRecord(), columns))).isEqualTo(Arrays.asList("0.5", "1"));
+	}
+
+	@Test
+	public void missingColumnRejected() throws Exception {
+		CsvReader r = CsvReader.with().input(CSV).requireColumns("id", "qty", "price", "colour").build();
+		try {
+			r.readNextRecord();
+			Assert.fail("expected the missing columns to be reported");
+		} catch (CsvInvalidRecordException e) {
+			Expect.that(e.getMessage().contains("[qty, colour]")).isEqualTo(true);
+		}
+		// still rejected, rather than reading on as if it were fine
+		try {
+			r.readNextRecord();
+			Assert.fail("expected the missing columns to be reported again");
+		} catch (CsvInvalidRecordException e) {
+			Expect.that(e.getMessage().contains("[qty, colour]")).isEqualTo(true);
+		}
+		try {
+			r.getHeader();
+			Assert.fail("expected the missing columns to be reported again");
+		} catch (CsvInvalidRecordException e) {
+			// expected
+		}
+		try {
+			CsvReader.with().input(CSV).header(true).build().getHeader().column("qty");
+			Assert.fail("expected the missing column to be reported");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void otherReadersRejectHeader() throws Exception {
+		File file = tmpDir.newFile();
+		Files.write(file.toPath(), CSV.getBytes(StandardCharsets.UTF_8));
+		try {
+			ParallelCsvReader.with().input(file.toPath()).settings(CsvReader.with().header(true)).build();
+			Assert.fail("expected the header to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			ConcurrentCsvReader.with().settings(CsvReader.with().input(CSV).requireColumns("id")).build();
+			Assert.fail("expected the required columns to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			ColumnarCsvReader.with().settings(CsvReader.with().input(CSV).header(true)).intColumn(0).build();
+			Assert.fail("expected the header to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void seekSkipsHeader() throws Exception {
+		File file = tmpDir.newFile();
+		Files.write(file.toPath(), CSV.getBytes(StandardCharsets.UTF_8));
+		CsvIndex index = CsvIndex.with().settings(CsvReader.with().input(file.toPath())).interval(2).build();
+		CsvReader r = CsvReader.with().input(file.toPath()).header(true).index(index).build();
+		r.seek(1);
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("pear, green");
+		r.seek(0);
+		Expect.that(r.readNextRecord().readString(1)).isEqualTo("apple");
+		Expect.that(r.getHeader().getNumColumns()).isEqualTo(3);
+	}
+}
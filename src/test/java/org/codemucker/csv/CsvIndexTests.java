@@ -0,0 +1,113 @@
+package org.codemucker.csv;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvIndexTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void seekSameAsSequential() throws Exception {
+		Path file = SampleCsv.writeFile(tmpDir).toPath();
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file));
+		for (int interval = 1; interval < 8; interval++) {
+			CsvIndex index = CsvIndex.with().settings(CsvReader.with().input(file)).interval(interval).build();
+			Expect.that(index.getRecordCount()).isEqualTo((long) expect.size());
+
+			CsvReader r = CsvReader.with().input(file).index(index).build();
+			// backwards, so every seek has to move the parser back
+			for (int n = expect.size() - 1; n >= 0; n--) {
+				r.seek(n);
+				Expect.that(Arrays.toString(r.readNextRecord().getData())).isEqualTo(expect.get(n));
+			}
+			r.close();
+		}
+	}
+
+	@Test
+	public void readOnAfterSeek() throws Exception {
+		Path file = SampleCsv.writeFile(tmpDir).toPath();
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file));
+		CsvIndex index = CsvIndex.with().settings(CsvReader.with().input(file)).interval(4).build();
+		CsvReader r = CsvReader.with().input(file).index(index).build();
+
+		r.seek(9);
+		List<String> actual = new ArrayList<>();
+		while (r.hasMore()) {
+			actual.add(Arrays.toString(r.readNextRecord().getData()));
+		}
+		Expect.that(actual).isEqualTo(expect.subList(9, expect.size()));
+
+		// parsed on from the indexed record before, the stream still splits
+		// from where that left off
+		r.seek(9);
+		Spliterator<ICsvRecord> spliterator = r.stream().spliterator();
+		Expect.that(spliterator instanceof CsvFileSpliterator).isEqualTo(true);
+		List<String> streamed = new ArrayList<>();
+		for (ICsvRecord record : StreamSupport.stream(spliterator, true).collect(Collectors.<ICsvRecord> toList())) {
+			streamed.add(Arrays.toString(record.getData()));
+		}
+		Expect.that(streamed).isEqualTo(expect.subList(9, expect.size()));
+	}
+
+	@Test
+	public void writeAndReadSidecar() throws Exception {
+		Path file = SampleCsv.writeFile(tmpDir).toPath();
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file));
+		Path sidecar = CsvIndex.sidecarFor(file);
+		CsvIndex.with().settings(CsvReader.with().input(file)).interval(3).build().writeTo(sidecar);
+
+		CsvIndex index = CsvIndex.readFrom(sidecar);
+		Expect.that(index.getRecordCount()).isEqualTo((long) expect.size());
+		Expect.that(index.getInterval()).isEqualTo(3);
+		Expect.that(index.isCurrentFor(file)).isEqualTo(true);
+
+		CsvReader r = CsvReader.with().input(file).index(index).build();
+		for (int n = 0; n < expect.size(); n += 5) {
+			r.seek(n);
+			Expect.that(Arrays.toString(r.readNextRecord().getData())).isEqualTo(expect.get(n));
+		}
+	}
+
+	@Test
+	public void changedFileNotSeeked() throws Exception {
+		Path file = SampleCsv.writeFile(tmpDir).toPath();
+		CsvIndex index = CsvIndex.with().settings(CsvReader.with().input(file)).build();
+		Files.write(file, "a,b\n".getBytes(StandardCharsets.UTF_8));
+
+		CsvReader r = CsvReader.with().input(file).index(index).build();
+		try {
+			r.seek(1);
+			Assert.fail("expected the changed file to be detected");
+		} catch (CsvException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void indexSettingsMustMatch() throws Exception {
+		Path file = SampleCsv.writeFile(tmpDir).toPath();
+		CsvIndex index = CsvIndex.with().settings(CsvReader.with().input(file)).build();
+		try {
+			CsvReader.with().input(file).fieldSeparator(';').index(index).build();
+			Assert.fail("expected the different separator to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
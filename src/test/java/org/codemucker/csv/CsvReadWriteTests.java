@@ -1,13 +1,35 @@
 package org.codemucker.csv;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
 
 import org.codemucker.jmatch.AList;
 import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class CsvReadWriteTests {
 
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
 	@Test
 	public void happyPathSingleLine() throws Exception {
 		checkReadWrite("a,b,c", new String[] { "a", "b", "c" });
@@ -22,6 +44,403 @@ public class CsvReadWriteTests {
 		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"f"}));
 	}
 
+	@Test
+	public void readEscapedLastField() throws Exception {
+		CsvReader r = CsvReader.with().input(stod("a,'b'\nc,'d'\r\ne")).defaults().build();
+		
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"a","b"}));
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"c","d"}));
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"e"}));
+	}
+
+	@Test
+	public void readAcrossBufferBoundaries() throws Exception {
+		String csv = stod("#comment\nabc,'d,e''f'\r\n,'g\nh',ij\u00e9klmnop\nq,,'',r\u20ac");
+		byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+		for (int bufSize = 1; bufSize < bytes.length + 2; bufSize++) {
+			checkReadAcrossBufferBoundaries(CsvReader.with().input(csv).readBufSize(bufSize).build());
+			checkReadAcrossBufferBoundaries(CsvReader.with().input(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).readBufSize(bufSize).build());
+		}
+	}
+
+	@Test
+	public void readMappedFileAcrossWindows() throws Exception {
+		String csv = stod("#comment\nabc,'d,e''f'\r\n,'g\nh',ij\u00e9klmnop\nq,,'',r\u20ac");
+		byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+		File file = tmpDir.newFile();
+		Files.write(file.toPath(), bytes);
+		for (int windowSize = 1; windowSize < bytes.length + 2; windowSize++) {
+			CsvReader r = CsvReader.with().input(file.toPath()).mapWindowSize(windowSize).build();
+			checkReadAcrossBufferBoundaries(r);
+			r.close();
+		}
+	}
+
+	private void checkReadAcrossBufferBoundaries(CsvReader r) throws Exception {
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"abc",stod("d,e'f")}));
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{null,"g\nh","ij\u00e9klmnop"}));
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"q",null,"","r\u20ac"}));
+	}
+
+	@Test
+	public void readWithPrefetch() throws Exception {
+		String csv = stod("#comment\nabc,'d,e''f'\r\n,'g\nh',ij\u00e9klmnop\nq,,'',r\u20ac");
+		byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+		for (int depth = 1; depth <= 3; depth++) {
+			for (int bufSize = 1; bufSize < bytes.length + 2; bufSize += 3) {
+				CsvReader r = CsvReader.with().input(csv).readBufSize(bufSize).prefetch(depth).build();
+				checkReadAcrossBufferBoundaries(r);
+				r.close();
+				r = CsvReader.with().input(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).readBufSize(bufSize).prefetch(depth).build();
+				checkReadAcrossBufferBoundaries(r);
+				r.close();
+			}
+		}
+	}
+
+	@Test
+	public void readWithPrefetchPassesOnErrors() throws Exception {
+		InputStream failing = new SequenceInputStream(new ByteArrayInputStream("a,b\nc,d\n".getBytes(StandardCharsets.UTF_8)), new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("disk on fire");
+			}
+		});
+		CsvReader r = CsvReader.with().input(failing, StandardCharsets.UTF_8).readBufSize(4).prefetch(2).build();
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"a","b"}));
+		Expect.that(r.readNextRecord().getData()).is(AList.inOrder().withOnly().items(new String[]{"c","d"}));
+		try {
+			r.readNextRecord();
+			Assert.fail("expected the read error");
+		} catch (CsvException e) {
+			Expect.that(e.getCause().getCause().getMessage()).isEqualTo("disk on fire");
+		}
+		r.close();
+	}
+
+	@Test
+	public void closeStopsPrefetchThread() throws Exception {
+		final List<Thread> threads = new ArrayList<>();
+		ThreadFactory factory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				threads.add(t);
+				return t;
+			}
+		};
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			csv.append(i).append(",x\n");
+		}
+		CsvReader r = CsvReader.with().input(csv.toString()).readBufSize(16).prefetch(2).prefetchThreadFactory(factory).build();
+		Expect.that(threads.size()).isEqualTo(0);
+		Expect.that(r.readNextRecord().readInt(0)).isEqualTo(0);
+		Expect.that(threads.size()).isEqualTo(1);
+		r.close();
+		threads.get(0).join(5000);
+		Expect.that(threads.get(0).isAlive()).isEqualTo(false);
+	}
+
+	@Test
+	public void readLongFieldsWithAndWithoutVectorScan() throws Exception {
+		// long runs so the vector scan works on whole blocks, custom chars to check they're honoured
+		Random rand = new Random(7);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			int numFields = 1 + rand.nextInt(6);
+			for (int f = 0; f < numFields; f++) {
+				if (f > 0) {
+					sb.append(';');
+				}
+				int len = rand.nextInt(150);
+				boolean escaped = rand.nextInt(5) == 0;
+				if (escaped) {
+					sb.append('\'');
+				}
+				for (int c = 0; c < len; c++) {
+					sb.append(escaped && rand.nextInt(20) == 0 ? "''" : "ab,c\"d e".charAt(rand.nextInt(8)));
+				}
+				if (escaped) {
+					sb.append('\'');
+				}
+			}
+			sb.append(rand.nextBoolean() ? "\n" : "\r\n");
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		for (int bufSize : new int[] { 63, 64, 100, 4096 }) {
+			CsvReader vector = CsvReader.with().input(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)
+					.fieldSeparator(';').escapChar('\'').readBufSize(bufSize).vectorScan(true).build();
+			CsvReader scalar = CsvReader.with().input(sb.toString())
+					.fieldSeparator(';').escapChar('\'').vectorScan(false).build();
+			while (scalar.hasMore()) {
+				Expect.that(vector.readNextRecord().getData()).is(AList.inOrder().withOnly().items(scalar.readNextRecord().getData()));
+			}
+			Expect.that(vector.hasMore()).isEqualTo(false);
+		}
+	}
+
+	@Test
+	public void readBatches() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append(i).append(",,x\u00e9").append(i % 3 == 0 ? ",\"q,\"\"\"" : "").append('\n');
+		}
+		String csv = sb.toString();
+		checkReadBatches(csv, CsvReader.with().input(csv).build());
+		checkReadBatches(csv, CsvReader.with().input(csv.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).build());
+		checkReadBatches(csv, CsvReader.with().input(csv.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1).threadSafe(false).build());
+	}
+
+	private void checkReadBatches(String csv, CsvReader r) throws Exception {
+		List<String> expect = new ArrayList<>();
+		CsvReader sequential = CsvReader.with().input(csv).build();
+		while (sequential.hasMore()) {
+			expect.add(Arrays.toString(sequential.readNextRecord().getData()));
+		}
+		List<String> actual = new ArrayList<>();
+		RecordBatch batch = new RecordBatch();
+		int n;
+		while ((n = r.readBatch(batch, 7)) > 0) {
+			Expect.that(batch.size()).isEqualTo(n);
+			for (int i = 0; i < batch.size(); i++) {
+				ICsvRecord rec = batch.get(i);
+				Expect.that(batch.getNumFields(i)).isEqualTo(rec.getTotalNumFields());
+				actual.add(Arrays.toString(rec.getData()));
+			}
+		}
+		Expect.that(actual).isEqualTo(expect);
+		Expect.that(r.readBatch(batch, 7)).isEqualTo(0);
+		Expect.that(batch.isEmpty()).isEqualTo(true);
+	}
+
+	@Test
+	public void readBatchFields() throws Exception {
+		CsvReader r = CsvReader.with().input("1,a,2.5\n,b,\n3,\"c,d\",-1".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).build();
+		RecordBatch batch = new RecordBatch();
+		Expect.that(r.readBatch(batch, 10)).isEqualTo(3);
+		Expect.that(batch.get(0).readInt(0)).isEqualTo(1);
+		Expect.that(batch.get(0).readChars(1).toString()).isEqualTo("a");
+		Expect.that(batch.get(0).readDouble(2)).isEqualTo(2.5d);
+		Expect.that(batch.get(1).readIntOrNull(0) == null).isEqualTo(true);
+		Expect.that(batch.get(1).readString(1)).isEqualTo("b");
+		Expect.that(batch.get(1).readString(2, "none")).isEqualTo("none");
+		Expect.that(batch.get(2).readString(1)).isEqualTo("c,d");
+		Expect.that(batch.get(2).readShort(2)).isEqualTo((short) -1);
+		try {
+			batch.get(3);
+			Assert.fail("expected out of bounds");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void readBytesReusingRecord() throws Exception {
+		CsvReader r = CsvReader.with().input("a,1\nb,2".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).threadSafe(false).reuseRecord(true).build();
+		
+		ICsvRecord rec = r.readNextRecord();
+		Expect.that(rec.readString(0)).isEqualTo("a");
+		Expect.that(rec.readInt(1)).isEqualTo(1);
+		Expect.that(r.readNextRecord()).isEqualTo(rec);
+		Expect.that(rec.readString(0)).isEqualTo("b");
+		Expect.that(rec.readInt(1)).isEqualTo(2);
+	}
+
+	@Test
+	public void readFlyweightFields() throws Exception {
+		String csv = "a,-12,t,,1.5\nb\u00e9,2147483647,f,9223372036854775807,-2\n";
+		checkReadFlyweightFields(CsvReader.with().input(csv).threadSafe(false).flyweight(true).build());
+		checkReadFlyweightFields(CsvReader.with().input(csv.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).threadSafe(false).flyweight(true).build());
+	}
+
+	private void checkReadFlyweightFields(CsvReader r) throws Exception {
+		ICsvRecord rec = r.readNextRecord();
+		CharSequence view = rec.readChars(0);
+		Expect.that(view.toString()).isEqualTo("a");
+		Expect.that(rec.readInt(1)).isEqualTo(-12);
+		Expect.that(rec.readBool(2)).isEqualTo(true);
+		Expect.that(rec.readChars(3) == null).isEqualTo(true);
+		Expect.that(rec.readLong(3, 7L)).isEqualTo(7L);
+		Expect.that(rec.readDouble(4)).isEqualTo(1.5d);
+
+		Expect.that(r.readNextRecord()).isEqualTo(rec);
+		// views are reused, so now read the current record
+		Expect.that(rec.readChars(0)).isEqualTo(view);
+		Expect.that(view.toString()).isEqualTo("b\u00e9");
+		Expect.that(view.length()).isEqualTo(2);
+		Expect.that(view.charAt(1)).isEqualTo('\u00e9');
+		Expect.that(rec.readString(0)).isEqualTo("b\u00e9");
+		Expect.that(rec.readInt(1)).isEqualTo(Integer.MAX_VALUE);
+		Expect.that(rec.readBool(2)).isEqualTo(false);
+		Expect.that(rec.readLong(3)).isEqualTo(Long.MAX_VALUE);
+		Expect.that(rec.readShort(4)).isEqualTo((short) -2);
+	}
+
+	@Test
+	public void readFlyweightBadNumbers() throws Exception {
+		for (String bad : new String[] { "2147483648", "-", "1a", "+" }) {
+			CsvReader r = CsvReader.with().input(bad).threadSafe(false).flyweight(true).build();
+			try {
+				r.readNextRecord().readInt(0);
+				Assert.fail("expected error parsing " + bad);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		Expect.that(CsvReader.with().input("-2147483648").threadSafe(false).flyweight(true).build().readNextRecord().readInt(0)).isEqualTo(Integer.MIN_VALUE);
+	}
+
+	@Test
+	public void invalidValueShowsRecord() throws Exception {
+		ICsvRecord record = CsvReader.with().input("1,abc,\"x, y\"").build().readNextRecord();
+		IllegalArgumentException e = record.newInvalidValue(1, "abc", "int");
+		Expect.that(e.getMessage()).isEqualTo("Invalid value 'abc' at field # 1, int. CSV record:1,abc,\"x, y\"");
+	}
+
+	@Test
+	public void writeNumbersAcrossBufferBoundaries() throws Exception {
+		StringWriter out = new StringWriter();
+		StringBuilder expect = new StringBuilder();
+		// smallest buffer allowed, so most fields are split over a flush
+		CsvWriter w = CsvWriter.with().output(out).bufferSize(Serialiser.MAX_NUMBER_CHARS).build();
+		for (int i = 0; i < 50; i++) {
+			w.beginRecord();
+			int n = i * 7919 - 100000;
+			long l = n * 1234567891L;
+			w.write(n);
+			w.write(l);
+			w.write(n / 64d);
+			w.write(n / 8f);
+			w.write(Long.valueOf(l));
+			w.write("a\"" + i);
+			w.endRecord();
+			expect.append(n).append(',').append(l).append(',').append(n / 64d).append(',').append(n / 8f).append(',').append(l).append(",\"a\"\"" + i + "\"\n");
+		}
+		w.write(Integer.MIN_VALUE);
+		w.write(Long.MIN_VALUE);
+		w.write(-0d);
+		w.write(1e-4);
+		w.write(1e7);
+		w.write(Double.NaN);
+		w.write(Float.NEGATIVE_INFINITY);
+		w.endRecord();
+		expect.append("-2147483648,-9223372036854775808,-0.0,1.0E-4,1.0E7,NaN,-Infinity\n");
+
+		Expect.that(out.toString()).isEqualTo(expect.toString());
+	}
+
+	@Test
+	public void inMemoryOutputSeenWithoutFlush() throws Exception {
+		StringWriter chars = new StringWriter();
+		StringBuilder sb = new StringBuilder();
+		CsvWriter[] writers = { CsvWriter.with().output(chars).build(), CsvWriter.with().output(sb).build() };
+		for (CsvWriter w : writers) {
+			w.write("a");
+			w.write(1);
+			w.endRecord();
+			w.write("b");
+			w.beginRecord();
+			// not yet ended, so still held
+			w.write("c");
+		}
+		Expect.that(chars.toString()).isEqualTo("a,1\nb\n");
+		Expect.that(sb.toString()).isEqualTo("a,1\nb\n");
+	}
+
+	@Test
+	public void writeBytesSameAsChars() throws Exception {
+		// ascii, 2 and 3 byte chars and a surrogate pair, landing on every
+		// position relative to the buffer flushes
+		String[] fields = { "abc", "caf\u00e9", "\u20ac1,5", "x\ud83d\ude00y", "\ud83d\ude00", "lone\ud83d", "" };
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16BE }) {
+			StringWriter chars = new StringWriter();
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			File file = tmpDir.newFile();
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				CsvWriter[] writers = {
+						CsvWriter.with().output(chars).bufferSize(Serialiser.MAX_NUMBER_CHARS).build(),
+						CsvWriter.with().output(stream, charset).bufferSize(Serialiser.MAX_NUMBER_CHARS).build(),
+						CsvWriter.with().output(channel, charset).bufferSize(Serialiser.MAX_NUMBER_CHARS).build() };
+				for (CsvWriter w : writers) {
+					for (int i = 0; i < 200; i++) {
+						w.beginRecord();
+						w.write(fields[i % fields.length]);
+						w.write(i * 31);
+						w.write(fields[(i * 3) % fields.length] + i);
+						w.endRecord();
+					}
+					w.flush();
+				}
+			}
+			// compare the raw bytes as latin1, which maps each byte to a char
+			String expect = new String(chars.toString().getBytes(charset), StandardCharsets.ISO_8859_1);
+			Expect.that(new String(stream.toByteArray(), StandardCharsets.ISO_8859_1)).isEqualTo(expect);
+			Expect.that(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1)).isEqualTo(expect);
+		}
+	}
+
+	@Test
+	public void surrogatesEncodedAcrossFlushesAndOnClose() throws Exception {
+		// a pair split by a buffer flush, and a high surrogate left waiting on
+		// its pair when closed
+		StringBuilder split = new StringBuilder();
+		for (int i = 0; i < Serialiser.MAX_NUMBER_CHARS - 1; i++) {
+			split.append('x');
+		}
+		split.append("\ud83d\ude00y");
+		String expectChars = split + "\nend\ud83d";
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16BE }) {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			File file = tmpDir.newFile();
+			CsvWriter[] writers = {
+					CsvWriter.with().output(stream, charset).bufferSize(Serialiser.MAX_NUMBER_CHARS).build(),
+					CsvWriter.with().output(FileChannel.open(file.toPath(), StandardOpenOption.WRITE), charset).bufferSize(Serialiser.MAX_NUMBER_CHARS).build() };
+			for (CsvWriter w : writers) {
+				w.write(split.toString());
+				w.endRecord();
+				w.write("end\ud83d");
+				w.flush();
+				w.close();
+			}
+			// the lone surrogate is encoded as the charset's replacement
+			String expect = new String(expectChars.getBytes(charset), StandardCharsets.ISO_8859_1);
+			Expect.that(new String(stream.toByteArray(), StandardCharsets.ISO_8859_1)).isEqualTo(expect);
+			Expect.that(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1)).isEqualTo(expect);
+		}
+	}
+
+	@Test
+	public void skipSameAsReading() throws Exception {
+		String csv = stod("skip me\n#comment, 'x\n1,'a\n,''b'''\n2,#mid\nc\n3,'d'\r\n4,e\n5,f");
+		byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+		for (int bufSize = 1; bufSize < bytes.length + 2; bufSize++) {
+			for (int skipRecords = 0; skipRecords < 5; skipRecords++) {
+				CsvReader expect = CsvReader.with().input(csv).readBufSize(bufSize).build();
+				ICsvRecord expectRecord = expect.readNextRecord(1);
+				for (int i = 0; i < skipRecords; i++) {
+					expectRecord = expect.readNextRecord();
+				}
+				ICsvRecord expectNext = expect.readNextRecord();
+				checkSkip(expectRecord, expectNext, CsvReader.with().input(csv).readBufSize(bufSize).build(), skipRecords);
+				checkSkip(expectRecord, expectNext, CsvReader.with().input(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).readBufSize(bufSize).build(), skipRecords);
+			}
+		}
+	}
+
+	private static void checkSkip(ICsvRecord expectRecord, ICsvRecord expectNext, CsvReader actual, int skipRecords) throws CsvException {
+		Expect.that(Arrays.toString(actual.readNextRecord(1, skipRecords).getData())).isEqualTo(Arrays.toString(expectRecord.getData()));
+		Expect.that(Arrays.toString(actual.readNextRecord().getData())).isEqualTo(Arrays.toString(expectNext.getData()));
+	}
+
+	@Test
+	public void skipRecordsStopsAtEnd() throws Exception {
+		CsvReader r = CsvReader.with().input(stod("a\n'b\nc'\nd")).build();
+		Expect.that(r.skipRecords(2)).isEqualTo(2L);
+		Expect.that(Arrays.toString(r.readNextRecord().getData())).isEqualTo("[d]");
+		Expect.that(r.skipRecords(5)).isEqualTo(0L);
+	}
+
 	@Test
 	public void handlesNulls() throws Exception {
 		checkReadWrite("", new String[] {null});
@@ -84,15 +503,22 @@ public class CsvReadWriteTests {
 			w.write(field);
 		}
 		w.unlock();
+		w.flush();
 		
 		Expect.that(roundTripLine.toString()).isEqualTo(expectCsvLine);
 	
 	}
 
 	private void checkRead(String line,String[] expect) throws CsvException {
+		checkRead(line, expect, CsvReader.with().input(line));
+		checkRead(line, expect, CsvReader.with().input(line.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		checkRead(line, expect, CsvReader.with().input(line).threadSafe(false).flyweight(true));
+	}
+
+	private void checkRead(String line,String[] expect, CsvReader.Builder reader) throws CsvException {
 		ICsvRecord actual;
 		try {
-			actual = CsvReader.with().input(line).build().readNextRecord();
+			actual = reader.build().readNextRecord();
 		} catch (CsvException e) {
 			throw new CsvException("error while reading line:" + line, e);
 		}
@@ -0,0 +1,142 @@
+package org.codemucker.csv;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Test;
+
+public class CsvSchemaTests {
+
+	@Test
+	public void writeDeclaredColumns() throws Exception {
+		CsvSchema<Item> schema = CsvSchema.<Item> with()
+				.intColumn("qty", new ToIntFunction<Item>() {
+					@Override
+					public int applyAsInt(Item item) {
+						return item.qty;
+					}
+				})
+				.plainStringColumn("code", new Function<Item, String>() {
+					@Override
+					public String apply(Item item) {
+						return item.code;
+					}
+				})
+				.stringColumn("name", new Function<Item, String>() {
+					@Override
+					public String apply(Item item) {
+						return item.name;
+					}
+				})
+				.doubleColumn("price", new ToDoubleFunction<Item>() {
+					@Override
+					public double applyAsDouble(Item item) {
+						return item.price;
+					}
+				})
+				.column("colour", new Function<Item, Colour>() {
+					@Override
+					public Colour apply(Item item) {
+						return item.colour;
+					}
+				})
+				.build();
+		Expect.that(schema.getNames()).isEqualTo(Arrays.asList("qty", "code", "name", "price", "colour"));
+
+		StringWriter out = new StringWriter();
+		CsvWriter w = CsvWriter.with().output(out).build();
+		w.writeHeader(schema);
+		w.writeRow(new Item(3, "A1", "plain", 0.5, Colour.RED), schema);
+		w.writeRows(Arrays.asList(new Item(-1, "", "say \"hi\", bye", 2.25, null), new Item(0, null, null, 0, Colour.BLUE)), schema);
+		w.flush();
+
+		Expect.that(out.toString()).isEqualTo("qty,code,name,price,colour\n"
+				+ "3,A1,plain,0.5,RED\n"
+				+ "-1,\"\",\"say \"\"hi\"\", bye\",2.25,\n"
+				+ "0,,,0.0,BLUE\n");
+	}
+
+	@Test
+	public void sameAsWritingFieldByField() throws Exception {
+		CsvSchema<Item> schema = CsvSchema.of(Item.class);
+		Item[] items = { new Item(7, "B2", "x,y", 1e-3, Colour.BLUE), new Item(Integer.MIN_VALUE, "", "", -4, null) };
+
+		StringWriter expect = new StringWriter();
+		CsvWriter w = CsvWriter.with().output(expect).build();
+		for (Item item : items) {
+			w.beginRecord();
+			w.write(item.qty);
+			w.write(item.code);
+			w.write(item.name);
+			w.write(item.price);
+			w.write(item.colour == null ? null : item.colour.name());
+			w.endRecord();
+		}
+		w.flush();
+
+		StringWriter actual = new StringWriter();
+		// small buffer so rows straddle flushes
+		w = CsvWriter.with().output(actual).bufferSize(Serialiser.MAX_NUMBER_CHARS).build();
+		w.writeRows(Arrays.asList(items), schema);
+		w.flush();
+		Expect.that(actual.toString()).isEqualTo(expect.toString());
+	}
+
+	@Test
+	public void writeChosenPropertiesWithOtherSeparator() throws Exception {
+		CsvSchema<Item> schema = CsvSchema.of(Item.class, "name", "qty");
+		StringWriter out = new StringWriter();
+		CsvWriter w = CsvWriter.with().output(out).fieldSep(';').build();
+		w.writeRow(new Item(5, "C3", "a;b,c", 1, Colour.RED), schema);
+		w.beginRecord();
+		w.write("d");
+		w.write(6);
+		w.endRecord();
+		w.flush();
+		Expect.that(out.toString()).isEqualTo("\"a;b,c\";5\nd;6\n");
+	}
+
+	@Test
+	public void embeddedRowsNumbered() throws Exception {
+		CsvSchema<Item> schema = CsvSchema.of(Item.class, "name", "qty");
+		StringWriter out = new StringWriter();
+		CsvWriter w = CsvWriter.with().output(out).build();
+		CsvWriter embedded = (CsvWriter) w.getEmbeddedWriter();
+		embedded.writeRow(new Item(1, "A", "a", 0, null), schema);
+		embedded.write("b");
+		embedded.write(2);
+		embedded.endRecord();
+		embedded.writeRows(Arrays.asList(new Item(3, "C", "c", 0, null), new Item(4, "D", "d", 0, null)), schema);
+		embedded.beginRecord();
+		embedded.write("e");
+		Expect.that(embedded.getRecordNumber()).isEqualTo(4);
+		embedded.endRecord();
+		Expect.that(embedded.getRecordNumber()).isEqualTo(5);
+		w.flush();
+		Expect.that(out.toString()).isEqualTo("0,a,1\n1,b,2\n2,c,3\n3,d,4\n4,e\n");
+	}
+
+	enum Colour {
+		RED, BLUE
+	}
+
+	static class Item {
+		private final int qty;
+		private final String code;
+		private final String name;
+		private final double price;
+		private final Colour colour;
+
+		Item(int qty, String code, String name, double price, Colour colour) {
+			this.qty = qty;
+			this.code = code;
+			this.name = name;
+			this.price = price;
+			this.colour = colour;
+		}
+	}
+}
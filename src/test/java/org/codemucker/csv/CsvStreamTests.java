@@ -0,0 +1,143 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvStreamTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void streamSameAsSequential() throws Exception {
+		String csv = SampleCsv.csv(5000);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(csv));
+
+		Expect.that(toStrings(CsvReader.with().input(csv).build().stream().collect(Collectors.<ICsvRecord> toList()))).isEqualTo(expect);
+		Expect.that(toStrings(CsvReader.with().input(csv).build().stream().parallel().collect(Collectors.<ICsvRecord> toList()))).isEqualTo(expect);
+	}
+
+	@Test
+	public void streamedRecordsNotReused() throws Exception {
+		String csv = SampleCsv.csv(10);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(csv));
+		List<ICsvRecord> records = CsvReader.with().input(csv).threadSafe(false).flyweight(true).build().stream().collect(Collectors.<ICsvRecord> toList());
+		Expect.that(toStrings(records)).isEqualTo(expect);
+	}
+
+	@Test
+	public void parallelFileStreamSameAsSequential() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+
+		Expect.that(toStrings(CsvReader.with().input(file.toPath()).build().stream().parallel().collect(Collectors.<ICsvRecord> toList()))).isEqualTo(expect);
+
+		long fileSize = file.length();
+		for (int minSplitSize = 1; minSplitSize < 40; minSplitSize++) {
+			CsvReader.Builder settings = CsvReader.with().input(file.toPath());
+			Spliterator<ICsvRecord> spliterator = new CsvFileSpliterator(null, settings.getSerialiser(),
+					(ByteCsvParser) settings.buildParser(), file.toPath(), fileSize, 16, minSplitSize);
+			List<ICsvRecord> actual = StreamSupport.stream(spliterator, true).collect(Collectors.<ICsvRecord> toList());
+			Expect.that(toStrings(actual)).isEqualTo(expect);
+		}
+	}
+
+	@Test
+	public void fileSplitsOnRecordBoundaries() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		CsvReader.Builder settings = CsvReader.with().input(file.toPath());
+		Spliterator<ICsvRecord> first = new CsvFileSpliterator(null, settings.getSerialiser(),
+				(ByteCsvParser) settings.buildParser(), file.toPath(), file.length(), 16, 1);
+		Spliterator<ICsvRecord> prefix = first.trySplit();
+		Expect.that(prefix != null).isEqualTo(true);
+		Expect.that(prefix.estimateSize() + first.estimateSize()).isEqualTo(file.length());
+
+		List<ICsvRecord> actual = new ArrayList<>();
+		while (prefix.tryAdvance(new Add(actual))) {
+		}
+		while (first.tryAdvance(new Add(actual))) {
+		}
+		Expect.that(toStrings(actual)).isEqualTo(expect);
+		Expect.that(first.characteristics()).isEqualTo(Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	@Test
+	public void streamFileAfterReadingSomeRecords() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		CsvReader r = CsvReader.with().input(file.toPath()).build();
+		List<String> actual = new ArrayList<>();
+		actual.add(Arrays.toString(r.readNextRecord().getData()));
+		actual.addAll(toStrings(r.stream().parallel().collect(Collectors.<ICsvRecord> toList())));
+		Expect.that(actual).isEqualTo(expect);
+	}
+
+	@Test
+	public void streamFileAfterHeaderSplits() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		CsvReader r = CsvReader.with().input(file.toPath()).header(true).build();
+		Spliterator<ICsvRecord> spliterator = r.stream().spliterator();
+		Expect.that(spliterator instanceof CsvFileSpliterator).isEqualTo(true);
+		Expect.that(r.getHeader().getNames().toString()).isEqualTo(expect.get(0));
+
+		List<ICsvRecord> actual = StreamSupport.stream(spliterator, true).collect(Collectors.<ICsvRecord> toList());
+		Expect.that(toStrings(actual)).isEqualTo(expect.subList(1, expect.size()));
+	}
+
+	@Test
+	public void streamReadErrorThrown() throws Exception {
+		InputStream failing = new SequenceInputStream(new ByteArrayInputStream("a,b\nc,d\n".getBytes(StandardCharsets.UTF_8)), new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("disk on fire");
+			}
+		});
+		try {
+			CsvReader.with().input(failing, StandardCharsets.UTF_8).readBufSize(4).build().stream().count();
+			Assert.fail("expected the read error");
+		} catch (UncheckedIOException e) {
+			// expected
+		}
+	}
+
+	private static class Add implements Consumer<ICsvRecord> {
+		private final List<ICsvRecord> records;
+
+		Add(List<ICsvRecord> records) {
+			this.records = records;
+		}
+
+		@Override
+		public void accept(ICsvRecord record) {
+			records.add(record);
+		}
+	}
+
+	private static List<String> toStrings(List<ICsvRecord> records) {
+		List<String> strings = new ArrayList<>();
+		for (ICsvRecord record : records) {
+			strings.add(Arrays.toString(record.getData()));
+		}
+		return strings;
+	}
+}
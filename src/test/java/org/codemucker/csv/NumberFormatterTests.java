@@ -0,0 +1,101 @@
+package org.codemucker.csv;
+
+import java.util.Random;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NumberFormatterTests {
+
+	private final char[] buf = new char[Serialiser.MAX_NUMBER_CHARS];
+
+	@Test
+	public void formatWholeNumbers() {
+		for (long l : new long[] { 0, 1, -1, 9, 10, 99, 100, -100, Integer.MAX_VALUE, Integer.MIN_VALUE,
+				Integer.MAX_VALUE + 1L, Long.MAX_VALUE, Long.MIN_VALUE, 1000000000000000000L }) {
+			checkLong(l);
+		}
+		Random r = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			checkLong(r.nextLong() >> r.nextInt(64));
+			int n = r.nextInt() >> r.nextInt(32);
+			Expect.that(new String(buf, 0, NumberFormatter.formatInt(n, buf, 0))).isEqualTo(Integer.toString(n));
+		}
+	}
+
+	private void checkLong(long l) {
+		Expect.that(new String(buf, 0, NumberFormatter.formatLong(l, buf, 0))).isEqualTo(Long.toString(l));
+	}
+
+	@Test
+	public void formatDoublesLikeToString() {
+		checkDouble(0d, "0.0");
+		checkDouble(-0d, "-0.0");
+		checkDouble(1d, "1.0");
+		checkDouble(100d, "100.0");
+		checkDouble(123.456, "123.456");
+		checkDouble(0.001, "0.001");
+		checkDouble(0.0001, "1.0E-4");
+		checkDouble(9999999d, "9999999.0");
+		checkDouble(1e7, "1.0E7");
+		checkDouble(-1.5e300, "-1.5E300");
+		checkDouble(Double.MAX_VALUE, "1.7976931348623157E308");
+		checkDouble(Double.MIN_VALUE, "4.9E-324");
+		checkDouble(Double.MIN_NORMAL, "2.2250738585072014E-308");
+		checkDouble(Double.NaN, "NaN");
+		checkDouble(Double.NEGATIVE_INFINITY, "-Infinity");
+		// where older JDKs print more digits than needed
+		checkDouble(1e23, "1.0E23");
+		checkDouble(2e23, "2.0E23");
+	}
+
+	private void checkDouble(double d, String expect) {
+		Expect.that(new String(buf, 0, NumberFormatter.formatDouble(d, buf, 0))).isEqualTo(expect);
+	}
+
+	@Test
+	public void formatFloatsLikeToString() {
+		checkFloat(0f, "0.0");
+		checkFloat(0.1f, "0.1");
+		checkFloat(1e7f, "1.0E7");
+		checkFloat(1.5e-3f, "0.0015");
+		checkFloat(Float.MAX_VALUE, "3.4028235E38");
+		checkFloat(Float.MIN_VALUE, "1.4E-45");
+		// older JDKs give 1.17549435E-38
+		checkFloat(Float.MIN_NORMAL, "1.1754944E-38");
+	}
+
+	private void checkFloat(float f, String expect) {
+		Expect.that(new String(buf, 0, NumberFormatter.formatFloat(f, buf, 0))).isEqualTo(expect);
+	}
+
+	/**
+	 * Everything must read back the same and be no longer than the JDK
+	 */
+	@Test
+	public void formatShortestRoundTrip() {
+		Random r = new Random(2);
+		for (int i = 0; i < 500000; i++) {
+			double d = i % 2 == 0 ? Double.longBitsToDouble(r.nextLong()) : r.nextGaussian() * Math.pow(10, r.nextInt(40) - 20);
+			String s = new String(buf, 0, NumberFormatter.formatDouble(d, buf, 0));
+			if (Double.isNaN(d)) {
+				continue;
+			}
+			if (Double.doubleToRawLongBits(Double.parseDouble(s)) != Double.doubleToRawLongBits(d)
+					|| s.length() > Double.toString(d).length()) {
+				Assert.fail("formatted " + Double.toString(d) + " as " + s);
+			}
+
+			float f = Float.intBitsToFloat(r.nextInt());
+			if (Float.isNaN(f)) {
+				continue;
+			}
+			s = new String(buf, 0, NumberFormatter.formatFloat(f, buf, 0));
+			if (Float.floatToRawIntBits(Float.parseFloat(s)) != Float.floatToRawIntBits(f)
+					|| s.length() > Float.toString(f).length()) {
+				Assert.fail("formatted " + Float.toString(f) + " as " + s);
+			}
+		}
+	}
+}
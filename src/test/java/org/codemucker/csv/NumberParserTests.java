@@ -0,0 +1,140 @@
+package org.codemucker.csv;
+
+import java.util.Random;
+
+import org.codemucker.csv.encode.DefaultSerialiser;
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NumberParserTests {
+
+	private static final String[] DECIMALS = {
+		"0", "-0", "0.0", "-0.0", "+1", "1", "1.", ".5", "-.5", "0.1", "0.3", "1.5e3", "1E-3", "1e+3",
+		"3.141592653589793", "2.718281828459045", "123456789012345678", "1234567890123456789",
+		"12345678901234567890", "0.000000000000000000000000001234",
+		"9007199254740993", "9007199254740992", "9007199254740991",
+		"1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308", "1e309", "-1e400",
+		"4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "1e-400",
+		"2.2250738585072011e-308", "2.2250738585072014e-308", "2.225073858507201e-308",
+		"3.4028235e38", "3.4028236e38", "1.4e-45", "7.0e-46", "1.17549435e-38",
+		"7.2057594037927933e16", "9.5e-5", "1e23", "8.41e21", "5e-324", "1e22", "1e-22",
+		"0.1e-0", "00000.00012", "123e00000000001", "1e1000000000000",
+		// handed over to the jdk
+		" 1", "1 ", "NaN", "-Infinity", "0x1p3", "1d", "2.5f", "123456789012345678901234567890" };
+
+	private static final String[] BAD_DECIMALS = { "", "-", ".", "e5", "1e", "1e+", "1.2.3", "abc", "1,5" };
+
+	@Test
+	public void parseDoubleMatchesJdk() {
+		for (String s : DECIMALS) {
+			checkDouble(s);
+		}
+		Random r = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			checkDouble(Double.toString(Double.longBitsToDouble(r.nextLong())));
+			checkDouble(randomDecimal(r));
+		}
+	}
+
+	@Test
+	public void parseFloatMatchesJdk() {
+		for (String s : DECIMALS) {
+			checkFloat(s);
+		}
+		Random r = new Random(43);
+		for (int i = 0; i < 200000; i++) {
+			checkFloat(Float.toString(Float.intBitsToFloat(r.nextInt())));
+			checkFloat(randomDecimal(r));
+		}
+	}
+
+	@Test
+	public void parseBadDecimals() {
+		for (String s : BAD_DECIMALS) {
+			try {
+				NumberParser.parseDouble(s, 0, s.length());
+				Assert.fail("expected error parsing '" + s + "'");
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void parseRanges() {
+		String s = "x,-123,4.5e1,x";
+		char[] chars = s.toCharArray();
+		Serialiser ser = DefaultSerialiser.get();
+
+		Expect.that(ser.toInt(s, 2, 6)).isEqualTo(-123);
+		Expect.that(ser.toInt(chars, 2, 6)).isEqualTo(-123);
+		Expect.that(ser.toLong(chars, 3, 6)).isEqualTo(123L);
+		Expect.that(ser.toDouble(s, 7, 12)).isEqualTo(45d);
+		Expect.that(ser.toDouble(chars, 7, 12)).isEqualTo(45d);
+		Expect.that(ser.toFloat(chars, 7, 10)).isEqualTo(4.5f);
+		Expect.that(ser.toBool("xtruex", 1, 5)).isEqualTo(true);
+		Expect.that(ser.toBool("xnox".toCharArray(), 1, 3)).isEqualTo(false);
+		Expect.that(ser.toDate(chars, 3, 6).getTime()).isEqualTo(123L);
+	}
+
+	@Test
+	public void parseLongLimits() {
+		checkLong(Long.toString(Long.MAX_VALUE));
+		checkLong(Long.toString(Long.MIN_VALUE));
+		checkLong("+0");
+		checkLong("-0");
+		for (String bad : new String[] { "", "-", "+", "9223372036854775808", "-9223372036854775809", "1-", "1.0" }) {
+			try {
+				NumberParser.parseLong(bad.toCharArray(), 0, bad.length(), Long.MIN_VALUE, Long.MAX_VALUE);
+				Assert.fail("expected error parsing '" + bad + "'");
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	private static void checkLong(String s) {
+		Expect.that(NumberParser.parseLong(s, 0, s.length(), Long.MIN_VALUE, Long.MAX_VALUE)).isEqualTo(Long.parseLong(s));
+		Expect.that(NumberParser.parseLong(s.toCharArray(), 0, s.length(), Long.MIN_VALUE, Long.MAX_VALUE)).isEqualTo(Long.parseLong(s));
+	}
+
+	/**
+	 * Random digits with a random exponent, to cover more than the shortest
+	 * representations which toString gives
+	 */
+	private static String randomDecimal(Random r) {
+		StringBuilder sb = new StringBuilder();
+		if (r.nextBoolean()) {
+			sb.append('-');
+		}
+		int numDigits = 1 + r.nextInt(19);
+		int point = r.nextInt(numDigits + 1);
+		for (int i = 0; i < numDigits; i++) {
+			if (i == point) {
+				sb.append('.');
+			}
+			sb.append((char) ('0' + r.nextInt(10)));
+		}
+		sb.append('e').append(r.nextInt(700) - 350);
+		return sb.toString();
+	}
+
+	private static void checkDouble(String s) {
+		long expect = Double.doubleToRawLongBits(Double.parseDouble(s));
+		long actual = Double.doubleToRawLongBits(NumberParser.parseDouble(s, 0, s.length()));
+		long actualChars = Double.doubleToRawLongBits(NumberParser.parseDouble(("x" + s + "x").toCharArray(), 1, s.length() + 1));
+		if (actual != expect || actualChars != expect) {
+			Assert.fail("parsing '" + s + "' expected " + Double.longBitsToDouble(expect) + " but got " + Double.longBitsToDouble(actual));
+		}
+	}
+
+	private static void checkFloat(String s) {
+		int expect = Float.floatToRawIntBits(Float.parseFloat(s));
+		int actual = Float.floatToRawIntBits(NumberParser.parseFloat(s, 0, s.length()));
+		int actualChars = Float.floatToRawIntBits(NumberParser.parseFloat(("x" + s + "x").toCharArray(), 1, s.length() + 1));
+		if (actual != expect || actualChars != expect) {
+			Assert.fail("parsing '" + s + "' expected " + Float.intBitsToFloat(expect) + " but got " + Float.intBitsToFloat(actual));
+		}
+	}
+}
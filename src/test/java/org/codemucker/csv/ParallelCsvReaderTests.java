@@ -0,0 +1,50 @@
+package org.codemucker.csv;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelCsvReaderTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void readInOrderSameAsSequential() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		for (int splitSize = 1; splitSize < 40; splitSize++) {
+			List<String> actual = readParallel(file, splitSize, true);
+			Expect.that(actual).isEqualTo(expect);
+		}
+	}
+
+	@Test
+	public void readUnorderedSameRecordsAsSequential() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		Collections.sort(expect);
+		for (int splitSize = 1; splitSize < 40; splitSize++) {
+			List<String> actual = readParallel(file, splitSize, false);
+			Collections.sort(actual);
+			Expect.that(actual).isEqualTo(expect);
+		}
+	}
+
+	private static List<String> readParallel(File file, int splitSize, boolean ordered) throws Exception {
+		List<String> records = new ArrayList<>();
+		ParallelCsvReader r = ParallelCsvReader.with().input(file.toPath()).numThreads(3).splitSize(splitSize).batchSize(2).ordered(ordered).build();
+		while (r.hasMore()) {
+			records.add(Arrays.toString(r.readNextRecord().getData()));
+		}
+		r.close();
+		return records;
+	}
+}
@@ -0,0 +1,135 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelCsvWriterTests {
+
+	private static final int NUM_CHUNKS = 24;
+	private static final int NUM_ROWS = 200;
+
+	@Test
+	public void orderedSameAsSequential() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ParallelCsvWriter w = ParallelCsvWriter.with().output(out).ordered(true).blockSize(64).maxPendingBlocks(2).build();
+		writeChunks(w);
+		Expect.that(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(sequential());
+	}
+
+	@Test
+	public void unorderedKeepsRecordsWhole() throws Exception {
+		StringWriter out = new StringWriter();
+		ParallelCsvWriter w = ParallelCsvWriter.with().output(out).ordered(false).blockSize(64).maxPendingBlocks(2).build();
+		writeChunks(w);
+		Expect.that(sortedLines(out.toString())).isEqualTo(sortedLines(sequential()));
+	}
+
+	@Test
+	public void recordsLongerThanTheBlock() throws Exception {
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		String longField = new String(chars);
+
+		StringWriter out = new StringWriter();
+		ParallelCsvWriter w = ParallelCsvWriter.with().output(out).blockSize(64).build();
+		try (ParallelCsvWriter.Chunk first = w.newChunk(); ParallelCsvWriter.Chunk second = w.newChunk()) {
+			second.beginRecord();
+			second.write("b");
+			second.endRecord();
+			first.beginRecord();
+			first.write(longField);
+			first.write(1);
+			first.endRecord();
+			first.beginRecord();
+			first.write(longField + ",");
+			first.endRecord();
+		}
+		w.close();
+		Expect.that(out.toString()).isEqualTo(longField + ",1\n\"" + longField + ",\"\nb\n");
+	}
+
+	@Test
+	public void closeWithOpenChunkRejected() throws Exception {
+		ParallelCsvWriter w = ParallelCsvWriter.with().output(new StringWriter()).build();
+		ParallelCsvWriter.Chunk chunk = w.newChunk();
+		try {
+			w.close();
+			Assert.fail("expected the open chunk to be reported");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		chunk.close();
+		w.close();
+	}
+
+	/**
+	 * Create the chunks in order, then write them all at once, last first
+	 */
+	private static void writeChunks(ParallelCsvWriter w) throws Exception {
+		final CsvSchema<SampleCsv.Row> schema = CsvSchema.of(SampleCsv.Row.class);
+		List<ParallelCsvWriter.Chunk> chunks = new ArrayList<>();
+		for (int i = 0; i < NUM_CHUNKS; i++) {
+			chunks.add(w.newChunk());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_CHUNKS);
+		try {
+			List<Future<Void>> done = new ArrayList<>();
+			for (int i = NUM_CHUNKS - 1; i >= 0; i--) {
+				final ParallelCsvWriter.Chunk chunk = chunks.get(i);
+				final int chunkNum = i;
+				done.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						try {
+							for (int row = 0; row < NUM_ROWS; row++) {
+								chunk.writeRow(new SampleCsv.Row(chunkNum, row), schema);
+							}
+						} finally {
+							chunk.close();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : done) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		w.close();
+	}
+
+	private static String sequential() throws Exception {
+		StringWriter out = new StringWriter();
+		CsvWriter w = CsvWriter.with().output(out).build();
+		List<SampleCsv.Row> rows = new ArrayList<>();
+		for (int i = 0; i < NUM_CHUNKS; i++) {
+			for (int row = 0; row < NUM_ROWS; row++) {
+				rows.add(new SampleCsv.Row(i, row));
+			}
+		}
+		w.writeRows(rows, CsvSchema.of(SampleCsv.Row.class));
+		w.flush();
+		return out.toString();
+	}
+
+	private static List<String> sortedLines(String s) {
+		List<String> lines = new ArrayList<>(Arrays.asList(s.split("\n")));
+		Collections.sort(lines);
+		return lines;
+	}
+}
@@ -0,0 +1,222 @@
+package org.codemucker.csv;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RollingCsvWriterTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void rollOnRecordCount() throws Exception {
+		Path dir = tmpDir.getRoot().toPath();
+		RollingCsvWriter rolling = RollingCsvWriter.with().directory(dir).maxRecords(2).header("a", "b").build();
+		try (RollingCsvWriter.Writer w = rolling.newWriter()) {
+			for (int i = 0; i < 5; i++) {
+				w.beginRecord();
+				w.write(i);
+				w.write("r" + i);
+				w.endRecord();
+			}
+		}
+		rolling.close();
+
+		List<RollingCsvWriter.Part> parts = RollingCsvWriter.readManifest(rolling.getManifest());
+		Expect.that(parts.size()).isEqualTo(3);
+		Expect.that(read(parts.get(0).getFile())).isEqualTo("a,b\n0,r0\n1,r1\n");
+		Expect.that(read(parts.get(1).getFile())).isEqualTo("a,b\n2,r2\n3,r3\n");
+		Expect.that(read(parts.get(2).getFile())).isEqualTo("a,b\n4,r4\n");
+
+		long firstByte = 0;
+		for (int i = 0; i < parts.size(); i++) {
+			RollingCsvWriter.Part part = parts.get(i);
+			Expect.that(part.getNumber()).isEqualTo(i);
+			Expect.that(part.getFirstRecord()).isEqualTo(i * 2L);
+			Expect.that(part.getFirstByte()).isEqualTo(firstByte);
+			Expect.that(part.getNumBytes()).isEqualTo(Files.size(part.getFile()));
+			firstByte += part.getNumBytes();
+		}
+		Expect.that(parts.get(2).getNumRecords()).isEqualTo(1L);
+	}
+
+	@Test
+	public void chainedWritesStillRoll() throws Exception {
+		Path dir = tmpDir.getRoot().toPath();
+		RollingCsvWriter rolling = RollingCsvWriter.with().directory(dir).maxRecords(2).build();
+		try (RollingCsvWriter.Writer w = rolling.newWriter()) {
+			for (int i = 0; i < 5; i++) {
+				w.write(i).write("r" + i).endRecord();
+			}
+		}
+		rolling.close();
+
+		List<RollingCsvWriter.Part> parts = rolling.getParts();
+		Expect.that(parts.size()).isEqualTo(3);
+		Expect.that(read(parts.get(1).getFile())).isEqualTo("2,r2\n3,r3\n");
+	}
+
+	@Test
+	public void countOnlyRecordsEnded() throws Exception {
+		Path dir = tmpDir.getRoot().toPath();
+		RollingCsvWriter rolling = RollingCsvWriter.with().directory(dir).maxRecords(2).build();
+		try (RollingCsvWriter.Writer w = rolling.newWriter()) {
+			// nothing written, so no records
+			w.endRecord();
+			w.endRecord();
+			// ended by the next begin
+			w.beginRecord();
+			w.write("a");
+			w.beginRecord();
+			w.write("b");
+			w.beginRecord();
+			w.write("c");
+			w.endRecord();
+			// ended on close
+			w.write("d");
+		}
+		rolling.close();
+
+		List<RollingCsvWriter.Part> parts = rolling.getParts();
+		Expect.that(parts.size()).isEqualTo(2);
+		Expect.that(read(parts.get(0).getFile())).isEqualTo("a\nb\n");
+		Expect.that(read(parts.get(1).getFile())).isEqualTo("c\nd\n");
+		Expect.that(parts.get(1).getNumRecords()).isEqualTo(2L);
+	}
+
+	@Test
+	public void rollOnSizeWithoutSplittingRecords() throws Exception {
+		Path dir = tmpDir.getRoot().toPath();
+		RollingCsvWriter rolling = RollingCsvWriter.with().directory(dir).maxBytes(100).build();
+		StringBuilder expect = new StringBuilder();
+		try (RollingCsvWriter.Writer w = rolling.newWriter()) {
+			for (int i = 0; i < 50; i++) {
+				String name = "caf\u00e9 \"" + i + "\"";
+				w.beginRecord();
+				w.write(i);
+				w.write(name);
+				w.endRecord();
+				expect.append(i).append(",\"caf\u00e9 \"\"").append(i).append("\"\"\"\n");
+			}
+		}
+		rolling.close();
+
+		List<RollingCsvWriter.Part> parts = rolling.getParts();
+		Expect.that(parts.size() > 1).isEqualTo(true);
+		StringBuilder joined = new StringBuilder();
+		long numRecords = 0;
+		for (RollingCsvWriter.Part part : parts) {
+			String content = read(part.getFile());
+			Expect.that(content.endsWith("\n")).isEqualTo(true);
+			// only the last record, at most 17 bytes, may take a part over the limit
+			Expect.that(part.getNumBytes() - 100 <= 24).isEqualTo(true);
+			joined.append(content);
+			numRecords += part.getNumRecords();
+		}
+		Expect.that(joined.toString()).isEqualTo(expect.toString());
+		Expect.that(numRecords).isEqualTo(50L);
+	}
+
+	@Test
+	public void writePartsInParallel() throws Exception {
+		final int numThreads = 4;
+		final int numRows = 500;
+		Path dir = tmpDir.getRoot().toPath();
+		final CsvSchema<SampleCsv.Row> schema = CsvSchema.of(SampleCsv.Row.class);
+		final RollingCsvWriter rolling = RollingCsvWriter.with().directory(dir).maxRecords(64).header(schema).build();
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Void>> done = new ArrayList<>();
+			for (int i = 0; i < numThreads; i++) {
+				final int thread = i;
+				done.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						try (RollingCsvWriter.Writer w = rolling.newWriter()) {
+							for (int row = 0; row < numRows; row++) {
+								w.writeRow(new SampleCsv.Row(thread, row), schema);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : done) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		rolling.close();
+
+		List<RollingCsvWriter.Part> parts = RollingCsvWriter.readManifest(rolling.getManifest());
+		List<String> lines = new ArrayList<>();
+		long numRecords = 0;
+		for (RollingCsvWriter.Part part : parts) {
+			Expect.that(part.getFirstRecord()).isEqualTo(numRecords);
+			numRecords += part.getNumRecords();
+			List<String> partLines = Arrays.asList(read(part.getFile()).split("\n"));
+			Expect.that(partLines.get(0)).isEqualTo("chunk,row,name");
+			Expect.that((long) partLines.size() - 1).isEqualTo(part.getNumRecords());
+			lines.addAll(partLines.subList(1, partLines.size()));
+		}
+		Expect.that(numRecords).isEqualTo((long) numThreads * numRows);
+
+		List<String> expect = new ArrayList<>();
+		for (int i = 0; i < numThreads; i++) {
+			for (int row = 0; row < numRows; row++) {
+				expect.add(rowLine(new SampleCsv.Row(i, row), schema));
+			}
+		}
+		Collections.sort(lines);
+		Collections.sort(expect);
+		Expect.that(lines).isEqualTo(expect);
+	}
+
+	@Test
+	public void closeWithOpenWriterRejected() throws Exception {
+		RollingCsvWriter rolling = RollingCsvWriter.with().directory(tmpDir.getRoot().toPath()).maxRecords(10).build();
+		RollingCsvWriter.Writer w = rolling.newWriter();
+		try {
+			rolling.close();
+			Assert.fail("expected the open writer to be reported");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		w.close();
+		rolling.close();
+		// nothing written, so the empty part is removed
+		Expect.that(rolling.getParts().size()).isEqualTo(0);
+		Expect.that(Files.exists(tmpDir.getRoot().toPath().resolve("part-00000.csv"))).isEqualTo(false);
+	}
+
+	private static String rowLine(SampleCsv.Row row, CsvSchema<SampleCsv.Row> schema) throws Exception {
+		StringWriter out = new StringWriter();
+		CsvWriter w = CsvWriter.with().output(out).build();
+		w.writeRow(row, schema);
+		w.flush();
+		String s = out.toString();
+		return s.substring(0, s.length() - 1);
+	}
+
+	private static String read(Path file) throws Exception {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+}
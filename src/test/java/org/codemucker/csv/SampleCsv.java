@@ -0,0 +1,81 @@
+package org.codemucker.csv;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Csv inputs shared by the tests of the different readers, and the records
+ * they should read as. Also rows shared by the tests of the writers
+ */
+final class SampleCsv {
+
+	private SampleCsv() {
+	}
+
+	/**
+	 * Records with quoted newlines and escapes, CRLF line endings, whole line
+	 * and mid record comments, and comment chars and quotes inside quotes.
+	 * Everything a boundary scan could get wrong
+	 */
+	static File writeFile(TemporaryFolder tmpDir) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			sb.append(i).append(",plain,\"quoted, with\nnewline\",\"a \"\"b\"\"\"\r\n");
+			if (i % 7 == 0) {
+				sb.append("# comment, with \"quote\n");
+			}
+			if (i % 5 == 0) {
+				sb.append("\"\n\n\",x,#mid record comment \"\nmore\n");
+			}
+		}
+		File file = tmpDir.newFile();
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * The given number of records, each with a quoted newline
+	 */
+	static String csv(int numRecords) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < numRecords; i++) {
+			sb.append(i).append(",plain,\"quoted, with\nnewline\"\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Each record read by a plain reader, as a string
+	 */
+	static List<String> readSequential(CsvReader.Builder settings) throws Exception {
+		List<String> records = new ArrayList<>();
+		CsvReader r = settings.build();
+		while (r.hasMore()) {
+			records.add(Arrays.toString(r.readNextRecord().getData()));
+		}
+		r.close();
+		return records;
+	}
+
+	/**
+	 * A row for writing with a schema, its name needing quoting every third
+	 * row
+	 */
+	static class Row {
+		private final int chunk;
+		private final int row;
+		private final String name;
+
+		Row(int chunk, int row) {
+			this.chunk = chunk;
+			this.row = row;
+			this.name = row % 3 == 0 ? "caf\u00e9, \"" + row + "\"" : "r" + row;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package org.codemucker.csv;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvPublisherTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void publishSameAsSequential() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		for (int batchSize = 1; batchSize < 10; batchSize += 4) {
+			Collector subscriber = new Collector();
+			newPublisher(file, batchSize).subscribe(subscriber);
+			subscriber.subscription.request(Long.MAX_VALUE);
+			subscriber.await();
+			Expect.that(subscriber.error == null).isEqualTo(true);
+			Expect.that(subscriber.records()).isEqualTo(expect);
+		}
+	}
+
+	@Test
+	public void onlySendsWhatIsRequested() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		Collector subscriber = new Collector();
+		newPublisher(file, 4).subscribe(subscriber);
+		subscriber.subscription.request(3);
+		subscriber.awaitRecords(3);
+		Thread.sleep(50);
+		Expect.that(subscriber.records()).isEqualTo(expect.subList(0, 3));
+		Expect.that(subscriber.completed.getCount()).isEqualTo(1L);
+
+		// adds to what is still outstanding
+		subscriber.subscription.request(2);
+		subscriber.subscription.request(2);
+		subscriber.awaitRecords(7);
+		Thread.sleep(50);
+		Expect.that(subscriber.records()).isEqualTo(expect.subList(0, 7));
+
+		subscriber.subscription.request(expect.size() - 7);
+		subscriber.await();
+		Expect.that(subscriber.records()).isEqualTo(expect);
+	}
+
+	@Test
+	public void cancelMidStream() throws Exception {
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		Collector subscriber = new Collector() {
+			@Override
+			public void onNext(ICsvRecord record) {
+				super.onNext(record);
+				if (records().size() == 2) {
+					subscription.cancel();
+					cancelled.countDown();
+				}
+			}
+		};
+		newPublisher(SampleCsv.writeFile(tmpDir), 1).subscribe(subscriber);
+		subscriber.subscription.request(5);
+		Expect.that(cancelled.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+		subscriber.subscription.request(10);
+		Thread.sleep(50);
+		Expect.that(subscriber.records().size()).isEqualTo(2);
+		Expect.that(subscriber.completed.getCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void nonPositiveRequestIsError() throws Exception {
+		Collector subscriber = new Collector();
+		newPublisher(SampleCsv.writeFile(tmpDir), 4).subscribe(subscriber);
+		subscriber.subscription.request(0);
+		subscriber.await();
+		Expect.that(subscriber.error instanceof IllegalArgumentException).isEqualTo(true);
+		Expect.that(subscriber.records().size()).isEqualTo(0);
+	}
+
+	@Test
+	public void missingFileIsError() throws Exception {
+		File file = new File(tmpDir.getRoot(), "missing.csv");
+		Collector subscriber = new Collector();
+		newPublisher(file, 4).subscribe(subscriber);
+		subscriber.await();
+		Expect.that(subscriber.subscription != null).isEqualTo(true);
+		Expect.that(subscriber.error != null).isEqualTo(true);
+	}
+
+	@Test
+	public void headerRejected() throws Exception {
+		try {
+			CsvPublisher.with().settings(CsvReader.with().input(SampleCsv.writeFile(tmpDir).toPath()).header(true)).build();
+			Assert.fail("expected the header to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private CsvPublisher newPublisher(File file, int batchSize) {
+		return CsvPublisher.with()
+				.settings(CsvReader.with().input(file.toPath()).readBufSize(16))
+				.executor(executor)
+				.batchSize(batchSize)
+				.build();
+	}
+
+	private static class Collector implements Flow.Subscriber<ICsvRecord> {
+		private final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch completed = new CountDownLatch(1);
+		volatile Flow.Subscription subscription;
+		volatile Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(ICsvRecord record) {
+			records.add(Arrays.toString(record.getData()));
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		List<String> records() {
+			synchronized (records) {
+				return new ArrayList<>(records);
+			}
+		}
+
+		void await() throws InterruptedException {
+			Expect.that(completed.await(10, TimeUnit.SECONDS)).isEqualTo(true);
+		}
+
+		void awaitRecords(int num) throws InterruptedException {
+			long giveUp = System.currentTimeMillis() + 10000;
+			while (records.size() < num && System.currentTimeMillis() < giveUp) {
+				Thread.sleep(1);
+			}
+		}
+	}
+}
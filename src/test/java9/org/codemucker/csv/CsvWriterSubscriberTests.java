@@ -0,0 +1,157 @@
+package org.codemucker.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.codemucker.jmatch.Expect;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvWriterSubscriberTests {
+
+	@Rule
+	public TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void neverMoreThanABatchOutstanding() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CsvWriterSubscriber subscriber = new CsvWriterSubscriber(CsvWriter.with().output(out, StandardCharsets.UTF_8).build(), 8);
+		Demand demand = new Demand();
+		subscriber.onSubscribe(demand);
+		Expect.that(demand.requested).isEqualTo(8L);
+
+		StringBuilder expect = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			// send all that was asked for, as a publisher may
+			Expect.that(demand.requested - i > 0).isEqualTo(true);
+			Expect.that(demand.requested - i <= 8).isEqualTo(true);
+			subscriber.onNext(record(i + ",r" + i));
+			expect.append(i).append(",r").append(i).append('\n');
+		}
+		// asked for more once half arrived
+		Expect.that(demand.requests.get(1)).isEqualTo(4L);
+		Expect.that(demand.cancelled).isEqualTo(false);
+
+		// buffered until the end
+		Expect.that(out.size()).isEqualTo(0);
+		subscriber.onComplete();
+		Expect.that(subscriber.getResult().get()).isEqualTo(100L);
+		Expect.that(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(expect.toString());
+	}
+
+	@Test
+	public void flushedOnError() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CsvWriterSubscriber subscriber = new CsvWriterSubscriber(CsvWriter.with().output(out, StandardCharsets.UTF_8).build());
+		subscriber.onSubscribe(new Demand());
+		subscriber.onNext(record("a,b"));
+		IOException error = new IOException("disk on fire");
+		subscriber.onError(error);
+		Expect.that(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("a,b\n");
+		try {
+			subscriber.getResult().get();
+			Assert.fail("expected the error");
+		} catch (ExecutionException e) {
+			Expect.that(e.getCause() == error).isEqualTo(true);
+		}
+	}
+
+	@Test
+	public void writeFailureCancels() throws Exception {
+		Appendable failing = new Appendable() {
+			@Override
+			public Appendable append(CharSequence csq) throws IOException {
+				throw new IOException("disk on fire");
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) throws IOException {
+				throw new IOException("disk on fire");
+			}
+
+			@Override
+			public Appendable append(char c) throws IOException {
+				throw new IOException("disk on fire");
+			}
+		};
+		CsvWriterSubscriber subscriber = new CsvWriterSubscriber(CsvWriter.with().output(failing).bufferSize(Serialiser.MAX_NUMBER_CHARS).build());
+		Demand demand = new Demand();
+		subscriber.onSubscribe(demand);
+		for (int i = 0; i < 20 && !demand.cancelled; i++) {
+			subscriber.onNext(record("some,longer,fields," + i));
+		}
+		Expect.that(demand.cancelled).isEqualTo(true);
+		try {
+			subscriber.getResult().get();
+			Assert.fail("expected the write error");
+		} catch (ExecutionException e) {
+			Expect.that(e.getCause() instanceof CsvWriteException).isEqualTo(true);
+		}
+	}
+
+	@Test
+	public void secondSubscriptionCancelled() throws Exception {
+		CsvWriterSubscriber subscriber = new CsvWriterSubscriber(CsvWriter.with().output(new StringBuilder()).build());
+		Demand first = new Demand();
+		Demand second = new Demand();
+		subscriber.onSubscribe(first);
+		subscriber.onSubscribe(second);
+		Expect.that(first.cancelled).isEqualTo(false);
+		Expect.that(second.cancelled).isEqualTo(true);
+		Expect.that(second.requested).isEqualTo(0L);
+	}
+
+	@Test
+	public void copyFileFromPublisher() throws Exception {
+		File file = SampleCsv.writeFile(tmpDir);
+		List<String> expect = SampleCsv.readSequential(CsvReader.with().input(file.toPath()));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			CsvWriterSubscriber subscriber = new CsvWriterSubscriber(CsvWriter.with().output(out, StandardCharsets.UTF_8).build(), 4);
+			CsvPublisher.with().settings(CsvReader.with().input(file.toPath()).readBufSize(16)).executor(executor).batchSize(3).build().subscribe(subscriber);
+			Expect.that(subscriber.getResult().get(10, TimeUnit.SECONDS)).isEqualTo((long) expect.size());
+			// the empty record read after the last newline is written out as
+			// an empty line, so is read back followed by another
+			List<String> actual = SampleCsv.readSequential(CsvReader.with().input(out.toByteArray(), StandardCharsets.UTF_8));
+			Expect.that(actual.subList(0, expect.size())).isEqualTo(expect);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static ICsvRecord record(String line) throws Exception {
+		return CsvReader.with().input(line).build().readNextRecord();
+	}
+
+	/**
+	 * Keeps track of what was asked for
+	 */
+	private static class Demand implements Flow.Subscription {
+		final List<Long> requests = new ArrayList<>();
+		long requested;
+		boolean cancelled;
+
+		@Override
+		public void request(long n) {
+			requests.add(n);
+			requested += n;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+}